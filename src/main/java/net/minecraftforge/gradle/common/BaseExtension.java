@@ -31,6 +31,7 @@ import java.net.URL;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Future;
 
 public abstract class BaseExtension
 {
@@ -48,7 +49,7 @@ public abstract class BaseExtension
     protected String                        mcpVersion = "unknown";
 
     // this should never be touched except by the base plugin in this package
-    Map<String, Map<String, int[]>>        mcpJson;
+    Future<Map<String, Map<String, int[]>>> mcpJson;
     protected boolean                      mappingsSet     = false;
     protected String                       mappingsChannel = null;
     protected int                          mappingsVersion = -1;
@@ -261,6 +262,7 @@ public abstract class BaseExtension
             return;
 
         // check if it exists
+        Map<String, Map<String, int[]>> mcpJson = RemoteJson.get(this.mcpJson);
         Map<String, int[]> versionMap = mcpJson.get(version);
         String channel = getMappingsChannelNoSubtype();
         if (versionMap != null)
@@ -28,7 +28,6 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import com.google.gson.reflect.TypeToken;
 import groovy.lang.Closure;
@@ -58,14 +57,12 @@ import org.gradle.testfixtures.ProjectBuilder;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import static net.minecraftforge.gradle.common.Constants.*;
 public abstract class BasePlugin<K extends BaseExtension> implements Plugin<Project>
@@ -76,8 +73,12 @@ public abstract class BasePlugin<K extends BaseExtension> implements Plugin<Proj
     public BasePlugin<?> otherPlugin;
     public ReplacementProvider replacer = new ReplacementProvider();
 
-    private Map<String, ManifestVersion> mcManifest;
-    private Version                      mcVersionJson;
+    private static final String FG_VERSION_URL = "https://www.abrarsyed.com/ForgeGradleVersion.json";
+
+    // fetched in the background from apply, only waited for when theyre needed
+    private Future<Map<String, ManifestVersion>> mcManifest;
+    private Future<FGVersionWrapper>             fgVersionJson;
+    private Version                              mcVersionJson;
 
     @SuppressWarnings({ "rawtypes", "unchecked" })
     @Override
@@ -200,20 +201,31 @@ public abstract class BasePlugin<K extends BaseExtension> implements Plugin<Proj
 
     private void getRemoteJsons()
     {
+        boolean offline = project.getGradle().getStartParameter().isOffline();
+
         // MCP json
-        File jsonCache = cacheFile("McpMappings.json");
-        File etagFile = new File(jsonCache.getAbsolutePath() + ".etag");
-        String mcpJson = getWithEtag(URLS_MCP_JSON, jsonCache, etagFile);
-        getExtension().mcpJson = JsonFactory.GSON.fromJson(mcpJson, new TypeToken<Map<String, Map<String, int[]>>>() {}.getType());
+        getExtension().mcpJson = RemoteJson.fetch(URLS_MCP_JSON, cacheFile("McpMappings.json"), new TypeToken<Map<String, Map<String, int[]>>>() {}.getType(), offline);
 
         // MC manifest json
-        jsonCache = cacheFile("McManifest.json");
-        etagFile = new File(jsonCache.getAbsolutePath() + ".etag");
-        mcManifest = JsonFactory.GSON.fromJson(getWithEtag(URL_MC_MANIFEST, jsonCache, etagFile), new TypeToken<Map<String, ManifestVersion>>() {}.getType());
+        mcManifest = RemoteJson.fetch(Collections.singletonList(URL_MC_MANIFEST), cacheFile("McManifest.json"), new TypeToken<Map<String, ManifestVersion>>() {}.getType(), offline);
+
+        // not the FG version json, the update checker can still be disabled by the buildscript. see afterEvaluate
+    }
+
+    private boolean isUpdateCheckDisabled()
+    {
+        Object disableUpdateCheck = project.getProperties().get("net.minecraftforge.gradle.disableUpdateChecker");
+        return "true".equals(disableUpdateCheck) || "yes".equals(disableUpdateCheck) || new Boolean(true).equals(disableUpdateCheck);
     }
 
     protected void afterEvaluate()
     {
+        // the buildscript has had its chance to disable the update checker, so it can be fetched while the rest is set up
+        if (!isUpdateCheckDisabled() && !getExtension().forgeGradleVersion.endsWith("-SNAPSHOT"))
+        {
+            fgVersionJson = RemoteJson.fetch(Collections.singletonList(FG_VERSION_URL), cacheFile("ForgeGradleVersion.json"), FGVersionWrapper.class, project.getGradle().getStartParameter().isOffline());
+        }
+
         // validate MC version
         if (Strings.isNullOrEmpty(getExtension().getVersion()))
         {
@@ -240,8 +252,7 @@ public abstract class BasePlugin<K extends BaseExtension> implements Plugin<Proj
 
         // Check FG Version, unless its disabled
         List<String> lines = Lists.newArrayListWithExpectedSize(5);
-        Object disableUpdateCheck = project.getProperties().get("net.minecraftforge.gradle.disableUpdateChecker");
-        if (!"true".equals(disableUpdateCheck) && !"yes".equals(disableUpdateCheck) && !new Boolean(true).equals(disableUpdateCheck))
+        if (!isUpdateCheckDisabled())
         {
             doFGVersionCheck(lines);
         }
@@ -286,11 +297,13 @@ public abstract class BasePlugin<K extends BaseExtension> implements Plugin<Proj
             return;
         }
 
-        final String checkUrl = "https://www.abrarsyed.com/ForgeGradleVersion.json";
-        final File jsonCache = cacheFile("ForgeGradleVersion.json");
-        final File etagFile = new File(jsonCache.getAbsolutePath() + ".etag");
+        // usually started at the start of afterEvaluate already
+        if (fgVersionJson == null)
+        {
+            fgVersionJson = RemoteJson.fetch(Collections.singletonList(FG_VERSION_URL), cacheFile("ForgeGradleVersion.json"), FGVersionWrapper.class, project.getGradle().getStartParameter().isOffline());
+        }
 
-        FGVersionWrapper wrapper = JsonFactory.GSON.fromJson(getWithEtag(checkUrl, jsonCache, etagFile), FGVersionWrapper.class);
+        FGVersionWrapper wrapper = RemoteJson.get(fgVersionJson);
         FGVersion webVersion = wrapper.versionObjects.get(version);
         String latestVersion = wrapper.versions.get(wrapper.versions.size()-1);
 
@@ -386,7 +399,7 @@ public abstract class BasePlugin<K extends BaseExtension> implements Plugin<Proj
                 @Override
                 public String call()
                 {
-                    return mcManifest.get(getExtension().getVersion()).url;
+                    return RemoteJson.get(mcManifest).get(getExtension().getVersion()).url;
                 }
             });
             getVersionJson.setFile(delayedFile(JSON_VERSION));
@@ -665,96 +678,7 @@ public abstract class BasePlugin<K extends BaseExtension> implements Plugin<Proj
 
     protected String getWithEtag(List<String> strUrls, File cache, File etagFile)
     {
-        for (String strUrl : strUrls)
-        {
-            try
-            {
-                if (project.getGradle().getStartParameter().isOffline()) // dont even try the internet
-                    return Files.toString(cache, Charsets.UTF_8);
-
-                // dude, its been less than 1 minute since the last time..
-                if (cache.exists() && cache.lastModified() + 60000 >= System.currentTimeMillis())
-                    return Files.toString(cache, Charsets.UTF_8);
-
-                String etag;
-                if (etagFile.exists())
-                {
-                    etag = Files.toString(etagFile, Charsets.UTF_8);
-                }
-                else
-                {
-                    etagFile.getParentFile().mkdirs();
-                    etag = "";
-                }
-
-                URL url = new URL(strUrl);
-
-                HttpURLConnection con = (HttpURLConnection) url.openConnection();
-                con.setInstanceFollowRedirects(true);
-                con.setRequestProperty("User-Agent", USER_AGENT);
-                con.setIfModifiedSince(cache.lastModified());
-
-                if (!Strings.isNullOrEmpty(etag))
-                {
-                    con.setRequestProperty("If-None-Match", etag);
-                }
-
-                con.connect();
-
-                if (con.getResponseCode() == 304)
-                {
-                    // the existing file is good
-                    Files.touch(cache); // touch it to update last-modified time, to wait another minute
-                    return Files.toString(cache, Charsets.UTF_8);
-                }
-                else if (con.getResponseCode() == 200)
-                {
-                    byte[] data;
-                    try (InputStream stream = con.getInputStream())
-                    {
-                        data = ByteStreams.toByteArray(stream);
-                    }
-                    Files.write(data, cache);
-
-                    // write etag
-                    etag = con.getHeaderField("ETag");
-                    if (Strings.isNullOrEmpty(etag))
-                    {
-                        Files.touch(etagFile);
-                    }
-                    else
-                    {
-                        Files.write(etag, etagFile, Charsets.UTF_8);
-                    }
-
-                    return new String(data);
-                }
-                else
-                {
-                    LOGGER.error("Etag download for " + strUrl + " failed with code " + con.getResponseCode());
-                }
-
-                con.disconnect();
-            }
-            catch (Exception e)
-            {
-                e.printStackTrace();
-            }
-        }
-
-        if (cache.exists())
-        {
-            try
-            {
-                return Files.toString(cache, Charsets.UTF_8);
-            }
-            catch (IOException e)
-            {
-                throw new RuntimeException(e);
-            }
-        }
-
-        throw new RuntimeException("Unable to obtain url (" + strUrls + ") with etag!");
+        return RemoteJson.getWithEtag(strUrls, cache, etagFile, project.getGradle().getStartParameter().isOffline());
     }
 
     /**
@@ -0,0 +1,266 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.common;
+
+import static net.minecraftforge.gradle.common.Constants.USER_AGENT;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import net.minecraftforge.gradle.util.json.JsonFactory;
+
+/**
+ * Fetches the small jsons the plugins need while configuring, in the background.
+ * Downloads of the same cache file are shared while they are running, and the parsed
+ * results are kept for as long as the daemon lives, for as long as the file doesnt change.
+ */
+final class RemoteJson
+{
+    private static final Logger LOGGER = Logging.getLogger(RemoteJson.class);
+
+    // these are all small files, if it takes longer than this the cache will do.
+    static final int CONNECT_TIMEOUT = 10000;
+    static final int READ_TIMEOUT    = 20000;
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("ForgeGradle remote json %d")
+            .build());
+
+    private static final Map<File, CompletableFuture<String>> FETCHING = Maps.newHashMap();
+    private static final Map<File, Parsed>                    PARSED   = Maps.newHashMap();
+
+    private RemoteJson()
+    {
+    }
+
+    /**
+     * Starts getting the json with {@link #getWithEtag(List, File, File, boolean)} and parsing it.
+     *
+     * @param urls URLs to try in order
+     * @param cache The file the json is cached in
+     * @param type The type to parse the json as
+     * @param offline If the internet should be left alone
+     * @param <T> The parsed type
+     * @return The parsed json, when its ready
+     */
+    static <T> Future<T> fetch(final List<String> urls, final File cache, final Type type, final boolean offline)
+    {
+        final File etagFile = new File(cache.getAbsolutePath() + ".etag");
+
+        CompletableFuture<String> download;
+        synchronized (FETCHING)
+        {
+            // finished ones get asked again, the etag and the 1 minute check keep that cheap
+            download = FETCHING.get(cache);
+            if (download == null || download.isDone())
+            {
+                download = CompletableFuture.supplyAsync(() -> getWithEtag(urls, cache, etagFile, offline), EXECUTOR);
+                FETCHING.put(cache, download);
+            }
+        }
+
+        return download.thenApply(text -> RemoteJson.<T> parse(cache, type, text));
+    }
+
+    /**
+     * Waits for something from {@link #fetch(List, File, Type, boolean)}, rethrowing whatever went wrong getting it.
+     *
+     * @param future The future to wait for
+     * @param <T> The parsed type
+     * @return The parsed json
+     */
+    static <T> T get(Future<T> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwables.propagateIfPossible(e.getCause());
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T parse(File cache, Type type, String text)
+    {
+        HashCode hash = Hashing.sha1().hashString(text, Charsets.UTF_8);
+
+        synchronized (PARSED)
+        {
+            Parsed parsed = PARSED.get(cache);
+            if (parsed != null && parsed.hash.equals(hash) && parsed.type.equals(type))
+            {
+                return (T) parsed.value;
+            }
+        }
+
+        // parse outside the lock, at worst two projects parse the same thing at once.
+        T value = JsonFactory.GSON.fromJson(text, type);
+
+        synchronized (PARSED)
+        {
+            PARSED.put(cache, new Parsed(hash, type, value));
+        }
+
+        return value;
+    }
+
+    static String getWithEtag(List<String> strUrls, File cache, File etagFile, boolean offline)
+    {
+        for (String strUrl : strUrls)
+        {
+            try
+            {
+                if (offline) // dont even try the internet
+                    return Files.toString(cache, Charsets.UTF_8);
+
+                // dude, its been less than 1 minute since the last time..
+                if (cache.exists() && cache.lastModified() + 60000 >= System.currentTimeMillis())
+                    return Files.toString(cache, Charsets.UTF_8);
+
+                String etag;
+                if (etagFile.exists())
+                {
+                    etag = Files.toString(etagFile, Charsets.UTF_8);
+                }
+                else
+                {
+                    etagFile.getParentFile().mkdirs();
+                    etag = "";
+                }
+
+                URL url = new URL(strUrl);
+
+                HttpURLConnection con = (HttpURLConnection) url.openConnection();
+                con.setInstanceFollowRedirects(true);
+                con.setRequestProperty("User-Agent", USER_AGENT);
+                con.setIfModifiedSince(cache.lastModified());
+                con.setConnectTimeout(CONNECT_TIMEOUT);
+                con.setReadTimeout(READ_TIMEOUT);
+
+                if (!Strings.isNullOrEmpty(etag))
+                {
+                    con.setRequestProperty("If-None-Match", etag);
+                }
+
+                con.connect();
+
+                if (con.getResponseCode() == 304)
+                {
+                    // the existing file is good
+                    Files.touch(cache); // touch it to update last-modified time, to wait another minute
+                    return Files.toString(cache, Charsets.UTF_8);
+                }
+                else if (con.getResponseCode() == 200)
+                {
+                    byte[] data;
+                    try (InputStream stream = con.getInputStream())
+                    {
+                        data = ByteStreams.toByteArray(stream);
+                    }
+                    Files.write(data, cache);
+
+                    // write etag
+                    etag = con.getHeaderField("ETag");
+                    if (Strings.isNullOrEmpty(etag))
+                    {
+                        Files.touch(etagFile);
+                    }
+                    else
+                    {
+                        Files.write(etag, etagFile, Charsets.UTF_8);
+                    }
+
+                    return new String(data);
+                }
+                else
+                {
+                    LOGGER.error("Etag download for " + strUrl + " failed with code " + con.getResponseCode());
+                }
+
+                con.disconnect();
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+            }
+        }
+
+        if (cache.exists())
+        {
+            try
+            {
+                return Files.toString(cache, Charsets.UTF_8);
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+
+        throw new RuntimeException("Unable to obtain url (" + strUrls + ") with etag!");
+    }
+
+    private static class Parsed
+    {
+        final HashCode hash;
+        final Type     type;
+        final Object   value;
+
+        Parsed(HashCode hash, Type type, Object value)
+        {
+            this.hash = hash;
+            this.type = type;
+            this.value = value;
+        }
+    }
+}
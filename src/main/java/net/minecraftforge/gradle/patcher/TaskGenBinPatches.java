@@ -19,30 +19,29 @@
  */
 package net.minecraftforge.gradle.patcher;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.jar.JarInputStream;
-import java.util.jar.JarOutputStream;
-import java.util.jar.Pack200;
-import java.util.jar.Pack200.Packer;
-
-import lzma.streams.LzmaOutputStream;
 
+import net.minecraftforge.gradle.util.ParallelUtil;
+import net.minecraftforge.gradle.util.patching.BinPatchWriter;
 import net.minecraftforge.gradle.util.patching.BinPatches;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.InputFiles;
 import org.gradle.api.tasks.OutputFile;
@@ -53,6 +52,7 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
@@ -76,7 +76,9 @@ class TaskGenBinPatches extends DefaultTask
     private HashMap<String, String>  srgMapping   = new HashMap<String, String>();
     private Multimap<String, String> innerClasses = ArrayListMultimap.create();
     private Set<String>              patchedFiles = new HashSet<String>();
-    private Delta                    delta        = new Delta();
+    private BinPatches.Format        format       = BinPatches.Format.PACK200;
+
+    private int                      threads      = ParallelUtil.DEFAULT_THREADS;
 
     //@formatter:off
     public TaskGenBinPatches() { super(); }
@@ -107,24 +109,14 @@ class TaskGenBinPatches extends DefaultTask
             }
         }
 
-        HashMap<String, byte[]> runtime = new HashMap<String, byte[]>();
-        HashMap<String, byte[]> devtime = new HashMap<String, byte[]>();
-
         File dirtyJar = getDirtyJar();
 
-        createBinPatches(runtime, "client/", getCleanClient(), dirtyJar);
-        createBinPatches(runtime, "server/", getCleanServer(), dirtyJar);
-        createBinPatches(devtime, "merged/", getCleanMerged(), dirtyJar);
+        Map<String, File> runtime = Maps.newLinkedHashMap();
+        runtime.put("client/", getCleanClient());
+        runtime.put("server/", getCleanServer());
+        createBinPatches(getRuntimeBinPatches(), runtime, dirtyJar);
 
-        byte[] runtimedata = createPatchJar(runtime);
-        runtimedata = pack200(runtimedata);
-        runtimedata = compress(runtimedata);
-        Files.write(runtimedata, getRuntimeBinPatches());
-
-        byte[] devtimedata = createPatchJar(devtime);
-        devtimedata = pack200(devtimedata);
-        devtimedata = compress(devtimedata);
-        Files.write(devtimedata, getDevBinPatches());
+        createBinPatches(getDevBinPatches(), Collections.singletonMap("merged/", getCleanMerged()), dirtyJar);
     }
 
     private void addInnerClasses(String parent, Set<String> patchList)
@@ -172,84 +164,113 @@ class TaskGenBinPatches extends DefaultTask
         });
     }
 
-    private void createBinPatches(HashMap<String, byte[]> patches, String root, File base, File target) throws Exception
+    private void createBinPatches(File output, Map<String, File> roots, File target) throws IOException
     {
-        try (JarFile cleanJ = new JarFile(base);
-             JarFile dirtyJ = new JarFile(target))
-        {
+        // written next to the output, so a failure doesnt leave a partial archive behind
+        File temp = new File(output.getParentFile(), output.getName() + ".tmp");
 
-            for (Map.Entry<String, String> entry : obfMapping.entrySet())
+        List<JarFile> opened = Lists.newArrayList();
+        ExecutorService executor = ParallelUtil.newExecutor(getThreads());
+        try (JarFile dirtyJ = new JarFile(target);
+             BinPatchWriter writer = BinPatchWriter.create(temp, getFormat()))
+        {
+            // sorted by entry name, so the archive doesnt depend on hash order or on which thread finishes first
+            SortedMap<String, PatchJob> jobs = Maps.newTreeMap();
+            for (Map.Entry<String, File> root : roots.entrySet())
             {
-                String obf = entry.getKey();
-                String srg = entry.getValue();
+                JarFile cleanJ = new JarFile(root.getValue());
+                opened.add(cleanJ);
 
-                if (!patchedFiles.contains(obf)) // Not in the list of patch files.. we didn't edit it.
+                for (Map.Entry<String, String> entry : obfMapping.entrySet())
                 {
-                    continue;
-                }
+                    String obf = entry.getKey();
+                    String srg = entry.getValue();
 
-                JarEntry cleanE = cleanJ.getJarEntry(obf + ".class");
-                JarEntry dirtyE = dirtyJ.getJarEntry(obf + ".class");
+                    if (!patchedFiles.contains(obf)) // Not in the list of patch files.. we didn't edit it.
+                    {
+                        continue;
+                    }
 
-                if (dirtyE == null) //Something odd happened.. a base MC class wasn't in the obfed jar?
-                {
-                    continue;
+                    if (dirtyJ.getJarEntry(obf + ".class") == null) //Something odd happened.. a base MC class wasn't in the obfed jar?
+                    {
+                        continue;
+                    }
+
+                    jobs.put("binpatch/" + root.getKey() + srg.replace('/', '.') + ".binpatch", new PatchJob(writer, cleanJ, dirtyJ, obf, srg));
                 }
+            }
 
-                byte[] clean = (cleanE != null ? ByteStreams.toByteArray(cleanJ.getInputStream(cleanE)) : null);
-                byte[] dirty = ByteStreams.toByteArray(dirtyJ.getInputStream(dirtyE));
-                byte[] patchBytes = BinPatches.getBinPatchBytesWithHeader(delta, obf, srg, clean, dirty);
+            ParallelUtil.OrderedWindow<String, byte[]> window = new ParallelUtil.OrderedWindow<String, byte[]>(executor, getThreads(), new ParallelUtil.ResultWriter<String, byte[]>() {
+                @Override
+                public void write(String name, byte[] encoded) throws IOException
+                {
+                    writer.write(name, encoded);
+                }
+            });
 
-                patches.put(root + srg.replace('/', '.') + ".binpatch", patchBytes);
+            for (Map.Entry<String, PatchJob> job : jobs.entrySet())
+            {
+                window.add(job.getKey(), job.getValue());
             }
-        }
-    }
+            window.finish();
 
-    private byte[] createPatchJar(HashMap<String, byte[]> patches) throws Exception
-    {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try (JarOutputStream jar = new JarOutputStream(out))
+            getLogger().info("Wrote {} binpatches to {}", jobs.size(), output.getName());
+        }
+        catch (IOException | RuntimeException e)
         {
-            for (Map.Entry<String, byte[]> entry : patches.entrySet())
+            temp.delete();
+            throw e;
+        }
+        finally
+        {
+            executor.shutdownNow();
+
+            for (JarFile jar : opened)
             {
-                jar.putNextEntry(new JarEntry("binpatch/" + entry.getKey()));
-                jar.write(entry.getValue());
+                jar.close();
             }
         }
-        return out.toByteArray();
+
+        try
+        {
+            java.nio.file.Files.move(temp.toPath(), output.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            java.nio.file.Files.move(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 
-    private byte[] pack200(byte[] data) throws Exception
+    private static class PatchJob implements Callable<byte[]>
     {
-        JarInputStream in = new JarInputStream(new ByteArrayInputStream(data));
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-        Packer packer = Pack200.newPacker();
+        private final BinPatchWriter writer;
+        private final JarFile        cleanJ;
+        private final JarFile        dirtyJ;
+        private final String         obf;
+        private final String         srg;
 
-        SortedMap<String, String> props = packer.properties();
-        props.put(Packer.EFFORT, "9");
-        props.put(Packer.KEEP_FILE_ORDER, Packer.TRUE);
-        props.put(Packer.UNKNOWN_ATTRIBUTE, Packer.PASS);
-
-        final PrintStream err = new PrintStream(System.err);
-        System.setErr(new PrintStream(ByteStreams.nullOutputStream()));
-        packer.pack(in, out);
-        System.setErr(err);
+        private PatchJob(BinPatchWriter writer, JarFile cleanJ, JarFile dirtyJ, String obf, String srg)
+        {
+            this.writer = writer;
+            this.cleanJ = cleanJ;
+            this.dirtyJ = dirtyJ;
+            this.obf = obf;
+            this.srg = srg;
+        }
 
-        in.close();
-        out.close();
+        @Override
+        public byte[] call() throws IOException
+        {
+            JarEntry cleanE = cleanJ.getJarEntry(obf + ".class");
+            JarEntry dirtyE = dirtyJ.getJarEntry(obf + ".class");
 
-        return out.toByteArray();
-    }
+            byte[] clean = (cleanE != null ? ByteStreams.toByteArray(cleanJ.getInputStream(cleanE)) : null);
+            byte[] dirty = ByteStreams.toByteArray(dirtyJ.getInputStream(dirtyE));
 
-    private byte[] compress(byte[] data) throws Exception
-    {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try (LzmaOutputStream lzma = new LzmaOutputStream.Builder(out).useEndMarkerMode(true).build())
-        {
-            lzma.write(data);
+            // delta keeps state while computing, so each job gets its own
+            byte[] patchBytes = BinPatches.getBinPatchBytesWithHeader(new Delta(), obf, srg, clean, dirty);
+            return writer.encode(patchBytes);
         }
-        return out.toByteArray();
     }
 
     public File getCleanClient()
@@ -347,6 +368,33 @@ class TaskGenBinPatches extends DefaultTask
         this.runBinPatches = runBinPatches;
     }
 
+    /**
+     * @return The container the binpatches are written in
+     */
+    @Input
+    public BinPatches.Format getFormat()
+    {
+        return format;
+    }
+
+    public void setFormat(BinPatches.Format format)
+    {
+        this.format = format;
+    }
+
+    /**
+     * @return The number of threads to compute the deltas on
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     public File getDevBinPatches()
     {
         return getProject().file(devBinPatches);
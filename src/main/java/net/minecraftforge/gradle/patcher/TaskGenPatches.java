@@ -25,13 +25,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
+import net.minecraftforge.gradle.util.ParallelUtil;
 import net.minecraftforge.gradle.util.SequencedInputSupplier;
 import net.minecraftforge.srg2source.util.io.FolderSupplier;
 import net.minecraftforge.srg2source.util.io.InputSupplier;
@@ -68,7 +72,10 @@ class TaskGenPatches extends DefaultTask
     public TaskGenPatches() { super(); }
     //@formatter:on
 
-    private Set<File> created = new HashSet<File>();
+    private int       threads = ParallelUtil.DEFAULT_THREADS;
+
+    // patch paths relative to the patch dir
+    private Set<String> created = new HashSet<String>();
 
     @TaskAction
     public void doTask() throws IOException, PatchException
@@ -117,19 +124,11 @@ class TaskGenPatches extends DefaultTask
             @Override
             public void visitFile(FileVisitDetails f)
             {
-                File file;
-                try
-                {
-                    file = f.getFile().getCanonicalFile();
-                    if (!created.contains(file))
-                    {
-                        getLogger().debug("Removed patch: " + f.getRelativePath());
-                        file.delete();
-                    }
-                }
-                catch (IOException e)
+                // relative paths, so every patch doesnt need its canonical path looked up
+                if (!created.contains(f.getRelativePath().getPathString()))
                 {
-                    // impossibru
+                    getLogger().debug("Removed patch: " + f.getRelativePath());
+                    f.getFile().delete();
                 }
             }
         });
@@ -159,51 +158,107 @@ class TaskGenPatches extends DefaultTask
 
     public void processFiles(InputSupplier original, InputSupplier changed) throws IOException
     {
-        List<String> paths = original.gatherAll("");
-        for (String path : paths)
+        ExecutorService executor = ParallelUtil.newExecutor(getThreads());
+        File patchDir = getPatchDir();
+        try
         {
-            InputStream o = original.getInput(path); //Moved cuz sometimes shit can screw up...
-            path = path.replace('\\', '/');
-            InputStream c = changed.getInput(path);
-            try
-            {
-                processFile(path, o, c);
-            }
-            finally
+            // reading stays on this thread, the suppliers arent safe to share. only the diffing is spread out.
+            ParallelUtil.OrderedWindow<String, String> window = new ParallelUtil.OrderedWindow<String, String>(executor, getThreads(), new ParallelUtil.ResultWriter<String, String>() {
+                @Override
+                public void write(String path, String patch)
+                {
+                    addCreated(patch);
+                }
+            });
+            int same = 0;
+
+            List<String> paths = original.gatherAll("");
+            for (String path : paths)
             {
-                if (o != null) o.close();
-                if (c != null) c.close();
+                InputStream o = original.getInput(path); //Moved cuz sometimes shit can screw up...
+                path = path.replace('\\', '/');
+                InputStream c = changed.getInput(path);
+                byte[] oData;
+                byte[] cData;
+                try
+                {
+                    getLogger().debug("Diffing: " + path);
+
+                    if (c == null)
+                    {
+                        getLogger().debug("    Changed File does not exist");
+                        continue;
+                    }
+
+                    if (o == null)
+                        throw new IllegalArgumentException("Original data for " + path + " is null");
+
+                    // We have to cache the bytes because diff reads the stream twice.. why.. who knows.
+                    oData = ByteStreams.toByteArray(o);
+                    cData = ByteStreams.toByteArray(c);
+                }
+                finally
+                {
+                    if (o != null) o.close();
+                    if (c != null) c.close();
+                }
+
+                // most files are untouched, and identical files never make a patch
+                if (Arrays.equals(oData, cData))
+                {
+                    same++;
+                    continue;
+                }
+
+                window.add(path, new DiffJob(patchDir, path, oData, cData));
             }
+            window.finish();
+
+            getLogger().info("Skipped diffing {} identical files", same);
+        }
+        finally
+        {
+            executor.shutdownNow();
         }
     }
 
-    public void processFile(String relative, InputStream original, InputStream changed) throws IOException
+    private void addCreated(String patch)
     {
-        getLogger().debug("Diffing: " + relative);
+        if (patch != null)
+            created.add(patch);
+    }
 
-        File patchFile = new File(getPatchDir(), relative + ".patch").getCanonicalFile();
+    /**
+     * Makes the patch for one file, writing it only if its different from the one thats there.
+     * Returns the path of the patch, relative to the patch dir, or null if there is no patch.
+     */
+    private class DiffJob implements Callable<String>
+    {
+        private final File   patchDir;
+        private final String relative;
+        private final byte[] oData;
+        private final byte[] cData;
 
-        if (changed == null)
+        private DiffJob(File patchDir, String relative, byte[] oData, byte[] cData)
         {
-            getLogger().debug("    Changed File does not exist");
-            return;
+            this.patchDir = patchDir;
+            this.relative = relative;
+            this.oData = oData;
+            this.cData = cData;
         }
 
-        if (original == null)
-            throw new IllegalArgumentException("Original data for " + relative + " is null");
-
-        // We have to cache the bytes because diff reads the stream twice.. why.. who knows.
-        byte[] oData = ByteStreams.toByteArray(original);
-        byte[] cData = ByteStreams.toByteArray(changed);
+        @Override
+        public String call() throws IOException
+        {
+            File patchFile = new File(patchDir, relative + ".patch");
 
-        Diff diff = Diff.diff(new InputStreamReader(new ByteArrayInputStream(oData), Charsets.UTF_8), new InputStreamReader(new ByteArrayInputStream(cData), Charsets.UTF_8), false);
+            Diff diff = Diff.diff(new InputStreamReader(new ByteArrayInputStream(oData), Charsets.UTF_8), new InputStreamReader(new ByteArrayInputStream(cData), Charsets.UTF_8), false);
 
-        if (!relative.startsWith("/"))
-            relative = "/" + relative;
+            if (diff.isEmpty())
+                return null;
 
-        if (!diff.isEmpty())
-        {
-            String unidiff = diff.toUnifiedDiff(originalPrefix + relative, changedPrefix + relative,
+            String path = relative.startsWith("/") ? relative : "/" + relative;
+            String unidiff = diff.toUnifiedDiff(originalPrefix + path, changedPrefix + path,
                     new InputStreamReader(new ByteArrayInputStream(oData), Charsets.UTF_8),
                     new InputStreamReader(new ByteArrayInputStream(cData), Charsets.UTF_8), 3);
             unidiff = unidiff.replace("\r\n", "\n"); //Normalize lines
@@ -219,14 +274,13 @@ class TaskGenPatches extends DefaultTask
             {
                 getLogger().debug("Writing patch: " + patchFile);
                 patchFile.getParentFile().mkdirs();
-                Files.touch(patchFile);
                 Files.write(unidiff, patchFile, Charsets.UTF_8);
             }
             else
             {
                 getLogger().debug("Patch did not change");
             }
-            created.add(patchFile);
+            return relative.startsWith("/") ? relative.substring(1) + ".patch" : relative + ".patch";
         }
     }
 
@@ -268,6 +322,19 @@ class TaskGenPatches extends DefaultTask
         this.changed.add(in);
     }
 
+    /**
+     * @return The number of threads to diff files on
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     public File getPatchDir()
     {
         return getProject().file(patchDir);
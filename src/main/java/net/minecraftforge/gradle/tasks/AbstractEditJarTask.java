@@ -23,14 +23,22 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import net.minecraftforge.gradle.common.Constants;
+import net.minecraftforge.gradle.util.ParallelUtil;
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
 
@@ -39,6 +47,7 @@ import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
 
@@ -51,9 +60,14 @@ public abstract class AbstractEditJarTask extends CachedTask
     @OutputFile
     private Object outJar;
 
+    private int threads = ParallelUtil.DEFAULT_THREADS;
+
     protected File resolvedInJar;
     protected File resolvedOutJar;
 
+    // only set while the jar is being read in parallel
+    private ForkJoinPool pool;
+
     @TaskAction
     public void doTask() throws Throwable
     {
@@ -62,24 +76,41 @@ public abstract class AbstractEditJarTask extends CachedTask
 
         doStuffBefore();
 
-        if (storeJarInRam())
+        if (readInParallel() && getThreads() > 1)
+        {
+            pool = new ForkJoinPool(getThreads());
+        }
+
+        try
         {
-            getLogger().debug("Reading jar: " + resolvedInJar);
+            if (storeJarInRam())
+            {
+                getLogger().debug("Reading jar: " + resolvedInJar);
 
-            Map<String, String> sourceMap = Maps.newHashMap();
-            Map<String, byte[]> resourceMap = Maps.newHashMap();
+                // linked so that the jar comes out in the same order it went in
+                Map<String, String> sourceMap = Maps.newLinkedHashMap();
+                Map<String, byte[]> resourceMap = Maps.newLinkedHashMap();
 
-            readAndStoreJarInRam(resolvedInJar, sourceMap, resourceMap);
+                readAndStoreJarInRam(resolvedInJar, sourceMap, resourceMap);
 
-            doStuffMiddle(sourceMap, resourceMap);
+                doStuffMiddle(sourceMap, resourceMap);
 
-            saveJar(resolvedOutJar, sourceMap, resourceMap);
+                saveJar(resolvedOutJar, sourceMap, resourceMap);
 
-            getLogger().debug("Saving jar: " + resolvedOutJar);
+                getLogger().debug("Saving jar: " + resolvedOutJar);
+            }
+            else
+            {
+                copyJar(resolvedInJar, resolvedOutJar);
+            }
         }
-        else
+        finally
         {
-            copyJar(resolvedInJar, resolvedOutJar);
+            if (pool != null)
+            {
+                pool.shutdownNow();
+                pool = null;
+            }
         }
 
         doStuffAfter();
@@ -136,8 +167,25 @@ public abstract class AbstractEditJarTask extends CachedTask
      */
     protected abstract boolean storeJarInRam();
 
+    /**
+     * Whether {@link #asRead(String, String)} may be called for several files at once from different threads.
+     * Only tasks that dont keep any state between files should return true.
+     * If this returns true, source files are processed on {@link #getThreads()} threads, and the jar is still written in the original order.
+     * @return read the sources in parallel
+     */
+    protected boolean readInParallel()
+    {
+        return false;
+    }
+
     final void readAndStoreJarInRam(File jar, Map<String, String> sourceMap, Map<String, byte[]> resourceMap) throws Exception
     {
+        if (pool != null)
+        {
+            readAndStoreJarInRamParallel(jar, sourceMap, resourceMap);
+            return;
+        }
+
         try (ZipInputStream zin = new ZipInputStream(new FileInputStream(jar)))
         {
             ZipEntry entry;
@@ -169,6 +217,42 @@ public abstract class AbstractEditJarTask extends CachedTask
         }
     }
 
+    private void readAndStoreJarInRamParallel(File jar, Map<String, String> sourceMap, Map<String, byte[]> resourceMap) throws Exception
+    {
+        try (ZipFile zip = new ZipFile(jar))
+        {
+            List<ZipEntry> sources = Lists.newArrayList();
+            List<Future<String>> results = Lists.newArrayList();
+
+            for (ZipEntry entry : Collections.list(zip.entries()))
+            {
+                // ignore META-INF, it shouldnt be here. If it is we remove it from the output jar.
+                if (entry.getName().contains("META-INF"))
+                {
+                    continue;
+                }
+
+                if (!isSourceFile(entry))
+                {
+                    try (InputStream in = zip.getInputStream(entry))
+                    {
+                        resourceMap.put(entry.getName(), ByteStreams.toByteArray(in));
+                    }
+                }
+                else
+                {
+                    sources.add(entry);
+                    results.add(pool.submit(new ReadSource(zip, entry)));
+                }
+            }
+
+            for (int i = 0; i < sources.size(); i++)
+            {
+                sourceMap.put(sources.get(i).getName(), ParallelUtil.getResult(results.get(i), Exception.class));
+            }
+        }
+    }
+
     protected void saveJar(File output, Map<String, String> sourceMap, Map<String, byte[]> resourceMap) throws IOException
     {
         output.getParentFile().mkdirs();
@@ -207,9 +291,15 @@ public abstract class AbstractEditJarTask extends CachedTask
      * @return true if entry is a source file
      */
     protected boolean isSourceFile(ZipEntry entry) {
-        if (entry.isDirectory())
-            return false;
-        String extension = FilenameUtils.getExtension(entry.getName());
+        return !entry.isDirectory() && isSourceFile(entry.getName());
+    }
+
+    /**
+     * @param name the name of a file
+     * @return true if it is the name of a source file
+     */
+    public static boolean isSourceFile(String name) {
+        String extension = FilenameUtils.getExtension(name);
         switch (extension) {
             case "java":
             case "scala":
@@ -222,6 +312,12 @@ public abstract class AbstractEditJarTask extends CachedTask
 
     private void copyJar(File input, File output) throws Exception
     {
+        if (pool != null)
+        {
+            copyJarParallel(input, output);
+            return;
+        }
+
         // begin reading jar
         try (ZipInputStream zin = new ZipInputStream(new FileInputStream(input));
              JarOutputStream zout = new JarOutputStream(new FileOutputStream(output)))
@@ -264,6 +360,95 @@ public abstract class AbstractEditJarTask extends CachedTask
         }
     }
 
+    private void copyJarParallel(final File input, final File output) throws Exception
+    {
+        try (ZipFile zip = new ZipFile(input);
+             JarOutputStream zout = new JarOutputStream(new FileOutputStream(output)))
+        {
+            // the sources are read on the pool, and everything is written in the order it was in.
+            ParallelUtil.OrderedWindow<ZipEntry, String> window = new ParallelUtil.OrderedWindow<ZipEntry, String>(pool, getThreads(), new ParallelUtil.ResultWriter<ZipEntry, String>() {
+                @Override
+                public void write(ZipEntry entry, String source) throws IOException
+                {
+                    try
+                    {
+                        if (!isSourceFile(entry))
+                        {
+                            // the central directory always knows the compressed size, which wont match once its deflated again
+                            JarEntry copy = new JarEntry(entry);
+                            copy.setCompressedSize(-1);
+                            zout.putNextEntry(copy);
+                            try (InputStream in = zip.getInputStream(entry))
+                            {
+                                ByteStreams.copy(in, zout);
+                            }
+                            zout.closeEntry();
+                            postWriteEntry(zout, entry.getName());
+                        }
+                        else
+                        {
+                            // source
+                            zout.putNextEntry(new JarEntry(entry.getName()));
+                            zout.write(source.getBytes());
+                            zout.closeEntry();
+                            postWriteEntry(zout, entry.getName());
+                        }
+                    }
+                    catch (ZipException ex)
+                    {
+                        getLogger().debug("Duplicate zip entry " + entry.getName() + " in " + input + " writing " + output);
+                    }
+                }
+            });
+
+            for (ZipEntry entry : Collections.list(zip.entries()))
+            {
+                // no META or dirs. wel take care of dirs later.
+                if (!entry.getName().contains("META-INF"))
+                {
+                    window.add(entry, isSourceFile(entry) ? new ReadSource(zip, entry) : null);
+                }
+            }
+            window.finish();
+
+            postWrite(zout);
+        }
+    }
+
+    private class ReadSource implements Callable<String>
+    {
+        private final ZipFile  zip;
+        private final ZipEntry entry;
+
+        private ReadSource(ZipFile zip, ZipEntry entry)
+        {
+            this.zip = zip;
+            this.entry = entry;
+        }
+
+        @Override
+        public String call() throws Exception
+        {
+            try (InputStream in = zip.getInputStream(entry))
+            {
+                return asRead(entry.getName(), new String(ByteStreams.toByteArray(in), Constants.CHARSET));
+            }
+        }
+    }
+
+    /**
+     * @return the number of threads used to process source files, if the task reads them in parallel.
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     public File getInJar()
     {
         return getProject().file(inJar);
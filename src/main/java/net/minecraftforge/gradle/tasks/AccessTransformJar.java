@@ -1,9 +1,14 @@
 package net.minecraftforge.gradle.tasks;
 
 import com.google.common.collect.Lists;
+import net.minecraftforge.gradle.util.ParallelUtil;
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
+import net.minecraftforge.gradle.util.zip.RawZipFile;
+import net.minecraftforge.gradle.util.zip.RawZipOutput;
+import net.minecraftforge.gradle.util.zip.RawZipOutput.PreparedEntry;
 import org.dimdev.accesstransform.AccessTransformationSet;
+import org.dimdev.accesstransform.AccessTransformationSet.Transformation;
 import org.dimdev.accesstransform.AccessTransformer;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.tasks.InputFile;
@@ -14,11 +19,10 @@ import org.gradle.api.tasks.TaskAction;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Enumeration;
 import java.util.Scanner;
-import java.util.jar.JarEntry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
 
 public class AccessTransformJar extends CachedTask {
@@ -30,6 +34,8 @@ public class AccessTransformJar extends CachedTask {
     @InputFiles
     private ArrayList<Object> ats = Lists.newArrayList();
 
+    private int threads = ParallelUtil.DEFAULT_THREADS;
+
     @TaskAction
     public void doTask() throws IOException {
         getLogger().lifecycle("Applying access transformers...");
@@ -61,49 +67,69 @@ public class AccessTransformJar extends CachedTask {
             }
         }
 
-        AccessTransformer accessTransformer = new AccessTransformer(transformations);
-
-        try (JarFile jar = new JarFile(getInJar());
-             FileOutputStream os = new FileOutputStream(getOutJar());
-             JarOutputStream out = new JarOutputStream(os)) {
-            Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-
-                // Read the entry
-                InputStream in = jar.getInputStream(entry);
-                String name = entry.getName();
-                byte[] data = readStream(in);
+        int transformed = 0;
+        int total = 0;
+
+        try (RawZipFile jar = new RawZipFile(getInJar());
+             RawZipOutput out = new RawZipOutput(getOutJar())) {
+            ExecutorService executor = ParallelUtil.newExecutor(getThreads());
+            try {
+                ParallelUtil.OrderedWindow<RawZipFile.Entry, PreparedEntry> window = new ParallelUtil.OrderedWindow<RawZipFile.Entry, PreparedEntry>(executor, getThreads(), new ParallelUtil.ResultWriter<RawZipFile.Entry, PreparedEntry>() {
+                    @Override
+                    public void write(RawZipFile.Entry entry, PreparedEntry result) throws IOException {
+                        if (result == null) {
+                            out.copy(entry, jar.getRaw(entry));
+                        } else {
+                            out.write(result);
+                        }
+                    }
+                });
+
+                for (RawZipFile.Entry entry : jar.getEntries()) {
+                    String name = entry.getName();
+                    Transformation transform = null;
+                    if (name.endsWith(".class")) {
+                        total++;
+                        transform = transformations.popTransformations(name.substring(0, name.length() - 6));
+                    }
 
-                // Remap classes
-                if (name.endsWith(".class")) {
-                    String className = name.substring(0, name.length() - 6);
-                    data = accessTransformer.transformClass(className, data);
+                    if (transform == null) {
+                        // untouched, so it can be copied without inflating it
+                        window.add(entry, null);
+                    } else {
+                        window.add(entry, new TransformJob(jar, entry, transform));
+                        transformed++;
+                    }
                 }
-
-                // Write the new entry
-                JarEntry newEntry = new JarEntry(name);
-                out.putNextEntry(newEntry);
-                out.write(data);
-                out.closeEntry();
+                window.finish();
+            } finally {
+                executor.shutdownNow();
             }
         }
 
+        getLogger().info("Transformed {} of {} classes, copied the rest", transformed, total);
+
         //Make sure there aren't any more transformations that failed to find their classes
         transformations.ensureClear();
     }
 
-    private static byte[] readStream(InputStream inputStream) throws IOException {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        byte[] data = new byte[4096];
-        int bytesRead;
-        while ((bytesRead = inputStream.read(data, 0, data.length)) != -1) {
-            outputStream.write(data, 0, bytesRead);
+    private static class TransformJob implements Callable<PreparedEntry> {
+        private final RawZipFile jar;
+        private final RawZipFile.Entry entry;
+        private final Transformation transform;
+
+        private TransformJob(RawZipFile jar, RawZipFile.Entry entry, Transformation transform) {
+            this.jar = jar;
+            this.entry = entry;
+            this.transform = transform;
         }
-        outputStream.flush();
-        return outputStream.toByteArray();
-    }
 
+        @Override
+        public PreparedEntry call() throws IOException {
+            byte[] data = AccessTransformer.transformClass(jar.getBytes(entry), transform);
+            return RawZipOutput.prepare(entry.getName(), data, entry.getDosTime());
+        }
+    }
 
     public File getInJar() {
         return getProject().file(inJar);
@@ -123,6 +149,17 @@ public class AccessTransformJar extends CachedTask {
         this.outJar = outJar;
     }
 
+    /**
+     * @return The number of threads to transform classes on
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     public void addAts(Object... objs) {
         ats.addAll(Arrays.asList(objs));
     }
@@ -19,12 +19,10 @@
  */
 package net.minecraftforge.gradle.tasks;
 
-import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
-import com.google.common.io.LineProcessor;
 
 import de.oceanlabs.mcp.mcinjector.lvt.LVTNaming;
 import de.oceanlabs.mcp.mcinjector.MCInjector;
@@ -38,6 +36,7 @@ import net.md_5.specialsource.provider.JointProvider;
 import net.minecraftforge.gradle.common.Constants;
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
+import net.minecraftforge.gradle.util.mcp.McpMappings;
 
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.tasks.*;
@@ -123,7 +122,7 @@ public class DeobfuscateJar extends CachedTask
         mapping.loadMappings(srg);
 
         // load in ATs
-        ErroringRemappingAccessMap accessMap = new ErroringRemappingAccessMap(new File[] { getMethodCsv(), getFieldCsv() });
+        ErroringRemappingAccessMap accessMap = new ErroringRemappingAccessMap(McpMappings.load(getProject(), getMethodCsv(), getFieldCsv(), null));
 
         getLogger().info("Using AccessTransformers...");
         //Make SS shutup about access maps
@@ -355,38 +354,13 @@ public class DeobfuscateJar extends CachedTask
 
     private static final class ErroringRemappingAccessMap extends AccessMap
     {
-        private final Map<String, String> renames     = Maps.newHashMap();
+        private final McpMappings         renames;
         public final Map<String, String>  brokenLines = Maps.newTreeMap();
 
-        public ErroringRemappingAccessMap(File[] renameCsvs) throws IOException
+        public ErroringRemappingAccessMap(McpMappings renames)
         {
             super();
-
-            for (File f : renameCsvs)
-            {
-                if (f == null)
-                    continue;
-                Files.readLines(f, Charsets.UTF_8, new LineProcessor<String>()
-                {
-                    @Override
-                    public boolean processLine(String line) throws IOException
-                    {
-                        String[] pts = line.split(",");
-                        if (!"searge".equals(pts[0]))
-                        {
-                            renames.put(pts[0], pts[1]);
-                        }
-
-                        return true;
-                    }
-
-                    @Override
-                    public String getResult()
-                    {
-                        return null;
-                    }
-                });
-            }
+            this.renames = renames;
         }
 
         @Override
@@ -415,7 +389,7 @@ public class DeobfuscateJar extends CachedTask
                     end = pts[1].substring(idx);
                 }
 
-                String rename = renames.get(start);
+                String rename = renames.getName(start);
                 if (rename != null)
                 {
                     pts[1] = rename + end;
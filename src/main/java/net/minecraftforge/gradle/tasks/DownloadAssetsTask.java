@@ -22,19 +22,30 @@ package net.minecraftforge.gradle.tasks;
 import groovy.lang.Closure;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.FileChannel;
-import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.minecraftforge.gradle.common.Constants;
+import net.minecraftforge.gradle.util.ParallelUtil;
 import net.minecraftforge.gradle.util.delayed.DelayedFile;
 import net.minecraftforge.gradle.util.json.JsonFactory;
 import net.minecraftforge.gradle.util.json.version.AssetIndex;
@@ -45,6 +56,8 @@ import org.gradle.api.tasks.TaskAction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 
 public class DownloadAssetsTask extends DefaultTask
@@ -53,10 +66,17 @@ public class DownloadAssetsTask extends DefaultTask
 
     Object                assetIndex;
 
+    private String        assetsUrl    = Constants.URL_ASSETS;
+
+    // downloads mostly wait on the network, so more than one per core
+    private int           threads      = ParallelUtil.DEFAULT_THREADS * 2;
+
     private File          virtualRoot  = null;
     private final File    minecraftDir = new File(Constants.getMinecraftDirectory(), "assets/objects");
 
     private static final int MAX_TRIES = 5;
+    private static final int TIMEOUT   = 30 * 1000;
+    private static final int BUFFER    = 64 * 1024;
 
     @TaskAction
     public void doTask() throws IOException, InterruptedException
@@ -76,25 +96,41 @@ public class DownloadAssetsTask extends DefaultTask
             virtualRoot = new File(getAssetsDir(), "virtual/" + Files.getNameWithoutExtension(indexFile.getName()));
             virtualRoot.mkdirs();
         }
-        
-        // make thread pool
-        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()*2);
-        
+
+        // the same object is often listed under several names, only fetch it once.
+        Map<String, Asset> assets = Maps.newLinkedHashMap();
         for (Entry<String, AssetEntry> e : index.objects.entrySet())
         {
-            Asset asset = new Asset(e.getKey(), e.getValue().hash, e.getValue().size);
-            executor.submit(new GetAssetTask(asset, outDir, minecraftDir, virtualRoot));
+            String hash = e.getValue().hash.toLowerCase();
+            Asset asset = assets.get(hash);
+            if (asset == null)
+            {
+                asset = new Asset(e.getValue().hash, e.getValue().size);
+                assets.put(hash, asset);
+            }
+            asset.names.add(e.getKey());
+        }
+
+        Progress progress = new Progress(assets.values());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+
+        for (Asset asset : assets.values())
+        {
+            executor.submit(new GetAssetTask(asset, outDir, minecraftDir, virtualRoot, assetsUrl, progress));
         }
-        
+
         executor.shutdown(); // complete all the tasks then shutdown.
 
-        int max = (int) executor.getTaskCount(); // its gonna be somewhere around 600-700 I think
+        while (!progress.await(1, TimeUnit.SECONDS))
+        {
+            progress.log(getLogger());
+        }
+
+        executor.awaitTermination(1, TimeUnit.MINUTES);
 
-        // as long as the excutor isnt dead yet.
-        while (!executor.awaitTermination(1, TimeUnit.SECONDS))
+        if (progress.failed.get() > 0)
         {
-            int done = (int) executor.getCompletedTaskCount();
-            getLogger().lifecycle("Current status: {}/{}   {}%", done, max, (int) ((double) done / max * 100));
+            getLogger().error("{} of {} asset objects could not be downloaded", progress.failed.get(), progress.total);
         }
     }
 
@@ -118,32 +154,123 @@ public class DownloadAssetsTask extends DefaultTask
         this.assetIndex = index;
     }
 
+    public String getAssetsUrl()
+    {
+        return assetsUrl;
+    }
+
+    public void setAssetsUrl(String assetsUrl)
+    {
+        this.assetsUrl = assetsUrl;
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     private static class Asset
     {
-        public final String name;
+        public final List<String> names = Lists.newArrayList();
         public final String path;
         public final String hash;
         public final long   size;
 
-        Asset(String name, String hash, long size)
+        Asset(String hash, long size)
         {
-            this.name = name;
             this.path = hash.substring(0, 2) + "/" + hash;
             this.hash = hash.toLowerCase();
             this.size = size;
         }
-    }    
+    }
+
+    private static class Progress
+    {
+        private final CountDownLatch latch;
+        private final long           start      = System.nanoTime();
+        public final int             total;
+        public final long            totalBytes;
+        public final AtomicInteger   failed     = new AtomicInteger();
+        public final AtomicLong      doneBytes  = new AtomicLong();
+        public final AtomicLong      downloaded = new AtomicLong();
+
+        Progress(Iterable<Asset> assets)
+        {
+            int count = 0;
+            long bytes = 0;
+            for (Asset asset : assets)
+            {
+                count++;
+                bytes += asset.size;
+            }
+
+            total = count;
+            totalBytes = bytes;
+            latch = new CountDownLatch(count);
+        }
+
+        public void finished(Asset asset, boolean worked)
+        {
+            if (!worked)
+                failed.incrementAndGet();
+
+            doneBytes.addAndGet(asset.size);
+            latch.countDown();
+        }
+
+        public boolean await(long time, TimeUnit unit) throws InterruptedException
+        {
+            return latch.await(time, unit);
+        }
+
+        public void log(org.gradle.api.logging.Logger logger)
+        {
+            int done = total - (int) latch.getCount();
+            long bytes = doneBytes.get();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            String eta = "?";
+            if (bytes > 0)
+            {
+                eta = formatTime((long) (seconds * (totalBytes - bytes) / bytes));
+            }
+
+            logger.lifecycle("Current status: {}/{}   {}%   {}/s   ETA {}",
+                    done, total, (int) ((double) done / total * 100), formatBytes((long) (downloaded.get() / seconds)), eta);
+        }
+
+        private static String formatBytes(long bytes)
+        {
+            if (bytes < 1024)
+                return bytes + " B";
+            else if (bytes < 1024 * 1024)
+                return String.format("%.1f KB", bytes / 1024.0);
+            else
+                return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+        }
+
+        private static String formatTime(long seconds)
+        {
+            return String.format("%d:%02d", seconds / 60, seconds % 60);
+        }
+    }
+
     private static boolean checkFileCorrupt(File file, long size, String expectedHash)
     {
         if (!file.exists())
             return true;
-        
+
         if (file.length() != size)
             return true;
-        
+
         if (!expectedHash.equalsIgnoreCase(Constants.hash(file, "SHA1")))
             return true;
-        
+
         return false;
     }
 
@@ -152,76 +279,203 @@ public class DownloadAssetsTask extends DefaultTask
         private static final Logger LOGGER = LoggerFactory.getLogger(GetAssetTask.class);
         private final Asset asset;
         private final File assetDir, minecraftDir, virtualRoot;
-        
-        private GetAssetTask(Asset asset, File assetDir, File minecraftDir, File virtualRoot)
+        private final String url;
+        private final Progress progress;
+
+        private GetAssetTask(Asset asset, File assetDir, File minecraftDir, File virtualRoot, String assetsUrl, Progress progress)
         {
             this.asset = asset;
             this.assetDir = assetDir;
             this.minecraftDir = minecraftDir;
             this.virtualRoot = virtualRoot;
+            this.url = assetsUrl + "/" + asset.path;
+            this.progress = progress;
         }
-        
+
         @Override
         public Boolean call()
         {
-            boolean worked = true;
-            
-            for (int tryNum = 1; tryNum < MAX_TRIES + 1; tryNum++)
+            boolean worked = false;
+
+            try
             {
-                try
+                for (int tryNum = 1; tryNum < MAX_TRIES + 1 && !worked; tryNum++)
                 {
-                    File file = new File(assetDir, asset.path);
-
-                    if (checkFileCorrupt(file, asset.size, asset.hash))
+                    try
+                    {
+                        fetch();
+                        worked = true;
+                    }
+                    catch (Exception e)
                     {
-                        file.delete();
+                        LOGGER.error("Error downloading asset (try {}) : {}", tryNum, asset.names.get(0));
+                        e.printStackTrace();
                     }
+                }
+            }
+            finally
+            {
+                progress.finished(asset, worked);
+            }
 
-                    // if it exists, its good, so we dont do this stuff...
-                    if (!file.exists())
+            return worked;
+        }
+
+        private void fetch() throws IOException
+        {
+            File file = new File(assetDir, asset.path);
+
+            // if it exists, its good, so we dont do this stuff...
+            if (checkFileCorrupt(file, asset.size, asset.hash))
+            {
+                file.getParentFile().mkdirs();
+                File part = new File(file.getParentFile(), file.getName() + ".part");
+
+                File localMc = new File(minecraftDir, asset.path);
+                if (!localMc.exists() || localMc.length() != asset.size || !copyLocal(localMc, part))
+                {
+                    download(part);
+                }
+
+                moveAtomic(part, file);
+            }
+
+            if (virtualRoot != null)
+            {
+                for (String name : asset.names)
+                {
+                    File virtual = new File(virtualRoot, name);
+
+                    if (checkFileCorrupt(virtual, asset.size, asset.hash))
                     {
-                        file.getParentFile().mkdirs();
-                        File localMc = new File(minecraftDir, asset.path);
-                        
-                        if (checkFileCorrupt(localMc, asset.size, asset.hash))
-                        {
-                            // download
-                            ReadableByteChannel channel = Channels.newChannel(new URL(Constants.URL_ASSETS + "/" + asset.path).openStream());
-                            try (FileOutputStream fout = new FileOutputStream(file);
-                                 FileChannel fileChannel = fout.getChannel())
-                            {
-                                fileChannel.transferFrom(channel, 0, asset.size);
-                            }
-                        }
-                        else
-                        {
-                            // copy from MC
-                            Constants.copyFile(localMc, file, asset.size);
-                        }
+                        virtual.getParentFile().mkdirs();
+                        File part = new File(virtual.getParentFile(), virtual.getName() + ".part");
+                        Constants.copyFile(file, part);
+                        moveAtomic(part, virtual);
                     }
-                    
-                    
-                    if (virtualRoot != null)
+                }
+            }
+        }
+
+        /**
+         * Copies the object from the local minecraft install, verifying it on the way.
+         * @return FALSE if the local copy is corrupt
+         */
+        private boolean copyLocal(File localMc, File part) throws IOException
+        {
+            MessageDigest digest = newDigest();
+            try (InputStream in = new FileInputStream(localMc);
+                 OutputStream out = new FileOutputStream(part))
+            {
+                copy(in, out, digest, null);
+            }
+
+            return asset.hash.equals(toHex(digest.digest()));
+        }
+
+        /**
+         * Downloads the object into the part file, resuming whatever is already there.
+         */
+        private void download(File part) throws IOException
+        {
+            MessageDigest digest = newDigest();
+            long offset = part.exists() && part.length() < asset.size ? part.length() : 0;
+
+            HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+            con.setRequestProperty("User-Agent", Constants.USER_AGENT);
+            con.setConnectTimeout(TIMEOUT);
+            con.setReadTimeout(TIMEOUT);
+            if (offset > 0)
+            {
+                con.setRequestProperty("Range", "bytes=" + offset + "-");
+            }
+
+            int code = con.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK && code != HttpURLConnection.HTTP_PARTIAL)
+            {
+                // drain it so the connection can be kept alive
+                InputStream err = con.getErrorStream();
+                if (err != null)
+                {
+                    try (InputStream in = err)
                     {
-                        File virtual = new File(virtualRoot, asset.name);
-                        
-                        if (checkFileCorrupt(virtual, asset.size, asset.hash))
-                        {
-                            virtual.delete();
-                            Constants.copyFile(file, virtual);
-                        }
+                        copy(in, null, null, null);
                     }
-                    
                 }
-                catch (Exception e)
+                throw new IOException("Server returned HTTP " + code + " for " + url);
+            }
+
+            boolean append = offset > 0 && code == HttpURLConnection.HTTP_PARTIAL;
+            if (append)
+            {
+                try (InputStream in = new FileInputStream(part))
                 {
-                    LOGGER.error("Error downloading asset (try {}) : {}", tryNum, asset.name);
-                    e.printStackTrace();
-                    worked = false;
+                    copy(in, null, digest, null);
                 }
             }
-            
-            return worked;
+
+            // close the stream, but never disconnect, or the connection cannot be reused.
+            try (InputStream in = con.getInputStream();
+                 OutputStream out = new FileOutputStream(part, append))
+            {
+                copy(in, out, digest, progress.downloaded);
+            }
+
+            String hash = toHex(digest.digest());
+            if (part.length() != asset.size || !asset.hash.equals(hash))
+            {
+                part.delete();
+                throw new IOException("Downloaded asset " + asset.hash + " is corrupt, got " + hash);
+            }
+        }
+
+        private static void copy(InputStream in, OutputStream out, MessageDigest digest, AtomicLong counter) throws IOException
+        {
+            byte[] buf = new byte[BUFFER];
+            int read;
+            while ((read = in.read(buf)) != -1)
+            {
+                if (out != null)
+                    out.write(buf, 0, read);
+                if (digest != null)
+                    digest.update(buf, 0, read);
+                if (counter != null)
+                    counter.addAndGet(read);
+            }
+        }
+
+        private static String toHex(byte[] hash)
+        {
+            StringBuilder buf = new StringBuilder(hash.length * 2);
+            for (byte b : hash)
+            {
+                buf.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+            }
+            return buf.toString();
+        }
+
+        private static MessageDigest newDigest()
+        {
+            try
+            {
+                return MessageDigest.getInstance("SHA1");
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private static void moveAtomic(File from, File to) throws IOException
+        {
+            try
+            {
+                java.nio.file.Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                java.nio.file.Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
         }
     }
 }
@@ -29,6 +29,7 @@ import java.util.Set;
 import net.minecraftforge.gradle.util.ExtractionVisitor;
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
+import net.minecraftforge.gradle.util.zip.RawZipTree;
 
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.FileTreeElement;
@@ -78,7 +79,7 @@ public class ExtractTask extends CachedTask implements PatternFilterable
         for (File source : getSourcePaths())
         {
             getLogger().debug("Extracting: " + source);
-            getProject().zipTree(source).visit(visitor);
+            RawZipTree.visit(source, visitor);
         }
     }
 
@@ -24,17 +24,16 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
-import net.minecraftforge.gradle.common.Constants;
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
 import net.minecraftforge.gradle.util.delayed.DelayedFile;
+import net.minecraftforge.gradle.util.mcp.McpMappings;
 import net.minecraftforge.srg2source.rangeapplier.MethodData;
 import net.minecraftforge.srg2source.rangeapplier.SrgContainer;
 
@@ -45,7 +44,6 @@ import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
 import org.objectweb.asm.Type;
 
-import au.com.bytecode.opencsv.CSVReader;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
@@ -80,9 +78,9 @@ public class GenSrgs extends CachedTask
     public void doTask() throws IOException
     {
         // csv data.  SRG -> MCP
-        HashMap<String, String> methods = new HashMap<String, String>();
-        HashMap<String, String> fields = new HashMap<String, String>();
-        readCSVs(getMethodsCsv(), getFieldsCsv(), methods, fields);
+        McpMappings mappings = McpMappings.load(getProject(), getMethodsCsv(), getFieldsCsv(), null);
+        Map<String, String> methods = mappings.getMethods();
+        Map<String, String> fields = mappings.getFields();
 
         // Do SRG stuff
         SrgContainer inSrg = new SrgContainer().readSrg(getInSrg());
@@ -94,24 +92,6 @@ public class GenSrgs extends CachedTask
 
     }
 
-    private static void readCSVs(File methodCsv, File fieldCsv, Map<String, String> methodMap, Map<String, String> fieldMap) throws IOException
-    {
-
-        // read methods
-        CSVReader csvReader = Constants.getReader(methodCsv);
-        for (String[] s : csvReader.readAll())
-        {
-            methodMap.put(s[0], s[1]);
-        }
-
-        // read fields
-        csvReader = Constants.getReader(fieldCsv);
-        for (String[] s : csvReader.readAll())
-        {
-            fieldMap.put(s[0], s[1]);
-        }
-    }
-
     private Map<String, String> readExtraSrgs(FileCollection extras, SrgContainer inSrg)
     {
         return Maps.newHashMap(); //Nop this out.
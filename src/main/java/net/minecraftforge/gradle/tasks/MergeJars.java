@@ -26,12 +26,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -51,13 +55,17 @@ import org.objectweb.asm.tree.InnerClassNode;
 import com.google.common.base.Function;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteStreams;
 
 import groovy.lang.Closure;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
+import net.minecraftforge.gradle.util.ParallelUtil;
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
 
@@ -76,6 +84,8 @@ public class MergeJars extends CachedTask
     private final Class<Side>     sideClass     = net.minecraftforge.fml.relauncher.Side.class;
     private final Class<SideOnly> sideOnlyClass = net.minecraftforge.fml.relauncher.SideOnly.class;
 
+    private int                   threads       = ParallelUtil.DEFAULT_THREADS;
+
     private static final boolean  DEBUG         = false;
 
     @TaskAction
@@ -95,32 +105,21 @@ public class MergeJars extends CachedTask
             HashMap<String, ZipEntry> cClasses = getClassEntries(cInJar, outJar, resources);
             HashMap<String, ZipEntry> sClasses = getClassEntries(sInJar, outJar, resources);
             HashSet<String> cAdded = new HashSet<String>();
+            List<MergeJob> jobs = Lists.newArrayList();
 
             // start processing
             for (Entry<String, ZipEntry> entry : cClasses.entrySet())
             {
                 String name = entry.getKey();
-                ZipEntry cEntry = entry.getValue();
-                ZipEntry sEntry = sClasses.get(name);
+                ZipEntry sEntry = sClasses.remove(name);
 
                 if (sEntry == null)
                 {
-                    copyClass(cInJar, cEntry, outJar, true);
-                    cAdded.add(name);
-                    continue;
+                    jobs.add(new MergeJob(cInJar, entry.getValue(), null, null, true));
                 }
-
-                sClasses.remove(name);
-                byte[] cData = readEntry(cInJar, entry.getValue());
-                byte[] sData = readEntry(sInJar, sEntry);
-                byte[] data = processClass(cData, sData);
-
-                ZipEntry newEntry = new ZipEntry(cEntry.getName());
-                try {
-                    outJar.putNextEntry(newEntry);
-                    outJar.write(data);
-                } finally {
-                    outJar.closeEntry();
+                else
+                {
+                    jobs.add(new MergeJob(cInJar, entry.getValue(), sInJar, sEntry, true));
                 }
                 cAdded.add(name);
             }
@@ -131,9 +130,11 @@ public class MergeJars extends CachedTask
                 {
                     System.out.println("Copy class s->c : " + entry.getKey());
                 }
-                copyClass(sInJar, entry.getValue(), outJar, false);
+                jobs.add(new MergeJob(sInJar, entry.getValue(), null, null, false));
             }
 
+            writeClasses(jobs, outJar);
+
             for (String name : new String[] { sideOnlyClass.getName(), sideClass.getName() })
             {
                 String eName = name.replace(".", "/");
@@ -157,9 +158,76 @@ public class MergeJars extends CachedTask
         }
     }
 
-    private void copyClass(ZipFile inJar, ZipEntry entry, ZipOutputStream outJar, boolean isClientOnly) throws IOException
+    /**
+     * Merges the classes on {@link #getThreads()} threads, but writes them in the order they are given.
+     */
+    private void writeClasses(List<MergeJob> jobs, final ZipOutputStream outJar) throws IOException
+    {
+        ExecutorService executor = ParallelUtil.newExecutor(getThreads());
+        try
+        {
+            ParallelUtil.OrderedWindow<String, byte[]> window = new ParallelUtil.OrderedWindow<String, byte[]>(executor, getThreads(), new ParallelUtil.ResultWriter<String, byte[]>() {
+                @Override
+                public void write(String name, byte[] data) throws IOException
+                {
+                    writeClass(outJar, name, data);
+                }
+            });
+
+            for (MergeJob job : jobs)
+            {
+                window.add(job.entry.getName(), job);
+            }
+            window.finish();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void writeClass(ZipOutputStream outJar, String name, byte[] data) throws IOException
+    {
+        try {
+            outJar.putNextEntry(new ZipEntry(name));
+            outJar.write(data);
+        } finally {
+            outJar.closeEntry();
+        }
+    }
+
+    private class MergeJob implements Callable<byte[]>
+    {
+        private final ZipFile  jar;
+        private final ZipEntry entry;
+        private final ZipFile  otherJar;
+        private final ZipEntry other;
+        private final boolean  isClient;
+
+        private MergeJob(ZipFile jar, ZipEntry entry, ZipFile otherJar, ZipEntry other, boolean isClient)
+        {
+            this.jar = jar;
+            this.entry = entry;
+            this.otherJar = otherJar;
+            this.other = other;
+            this.isClient = isClient;
+        }
+
+        @Override
+        public byte[] call() throws IOException
+        {
+            byte[] data = readEntry(jar, entry);
+
+            if (other == null)
+                return markSideOnly(data, isClient);
+            else
+                return processClass(data, readEntry(otherJar, other));
+        }
+    }
+
+    private byte[] markSideOnly(byte[] data, boolean isClientOnly)
     {
-        ClassReader reader = new ClassReader(readEntry(inJar, entry));
+        ClassReader reader = new ClassReader(data);
         ClassNode classNode = new ClassNode();
 
         reader.accept(classNode, 0);
@@ -172,14 +240,7 @@ public class MergeJars extends CachedTask
 
         ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
         classNode.accept(writer);
-        byte[] data = writer.toByteArray();
-
-        ZipEntry newEntry = new ZipEntry(entry.getName());
-        if (outJar != null)
-        {
-            outJar.putNextEntry(newEntry);
-            outJar.write(data);
-        }
+        return writer.toByteArray();
     }
 
     private byte[] readEntry(ZipFile inFile, ZipEntry entry) throws IOException
@@ -267,6 +328,12 @@ public class MergeJars extends CachedTask
 
     public byte[] processClass(byte[] cIn, byte[] sIn)
     {
+        // the same on both sides, nothing to merge.
+        if (Arrays.equals(cIn, sIn))
+        {
+            return cIn;
+        }
+
         ClassNode cClassNode = getClassNode(cIn);
         ClassNode sClassNode = getClassNode(sIn);
 
@@ -289,27 +356,68 @@ public class MergeJars extends CachedTask
         if (o.outerName != null && o.outerName.equals(o2.outerName)) return false;
         return true;
     }
-    private static boolean contains(List<InnerClassNode> list, InnerClassNode node)
-    {
-        for (InnerClassNode n : list)
-            if (innerMatches(n, node))
-                return true;
-        return false;
-    }
     private static void processInners(ClassNode cClass, ClassNode sClass)
     {
         List<InnerClassNode> cIners = cClass.innerClasses;
         List<InnerClassNode> sIners = sClass.innerClasses;
+        InnerIndex cIndex = new InnerIndex(cIners);
+        InnerIndex sIndex = new InnerIndex(sIners);
 
         for (InnerClassNode n : cIners)
         {
-            if (!contains(sIners, n))
-                sIners.add(n);
+            if (!sIndex.contains(n))
+                sIndex.add(n);
         }
         for (InnerClassNode n : sIners)
         {
-            if (!contains(cIners, n))
-                cIners.add(n);
+            if (!cIndex.contains(n))
+                cIndex.add(n);
+        }
+    }
+
+    /**
+     * Buckets the inner classes by name, so only the few with the same name need to be checked with {@link #innerMatches}.
+     */
+    private static class InnerIndex
+    {
+        private final List<InnerClassNode> list;
+        private final Map<List<String>, List<InnerClassNode>> buckets = Maps.newHashMap();
+
+        InnerIndex(List<InnerClassNode> list)
+        {
+            this.list = list;
+            for (InnerClassNode n : list)
+                bucket(n).add(n);
+        }
+
+        private List<InnerClassNode> bucket(InnerClassNode node)
+        {
+            List<String> key = Arrays.asList(node.innerName, node.name);
+            List<InnerClassNode> bucket = buckets.get(key);
+            if (bucket == null)
+            {
+                bucket = Lists.newArrayListWithCapacity(1);
+                buckets.put(key, bucket);
+            }
+            return bucket;
+        }
+
+        public boolean contains(InnerClassNode node)
+        {
+            List<InnerClassNode> bucket = buckets.get(Arrays.asList(node.innerName, node.name));
+            if (bucket != null)
+            {
+                for (InnerClassNode n : bucket)
+                    if (innerMatches(n, node))
+                        return true;
+            }
+            return false;
+        }
+
+        public void add(InnerClassNode node)
+        {
+            list.add(node);
+            bucket(node).add(node);
         }
     }
 
@@ -321,11 +429,19 @@ public class MergeJars extends CachedTask
         return classNode;
     }
 
-    private void processFields(ClassNode cClass, ClassNode sClass)
+    void processFields(ClassNode cClass, ClassNode sClass)
     {
         List<FieldNode> cFields = cClass.fields;
         List<FieldNode> sFields = sClass.fields;
 
+        // the names after the current index on each side, so we dont have to search the rest of the lists.
+        Multiset<String> sAhead = HashMultiset.create();
+        Multiset<String> cAhead = HashMultiset.create();
+        for (int i = 1; i < sFields.size(); i++)
+            sAhead.add(sFields.get(i).name);
+        for (int i = 1; i < cFields.size(); i++)
+            cAhead.add(cFields.get(i).name);
+
         int serverFieldIdx = 0;
         if (DEBUG)
             System.out.printf("B: Server List: %s\nB: Client List: %s\n", Lists.transform(sFields, FieldName.instance), Lists.transform(cFields, FieldName.instance));
@@ -337,28 +453,10 @@ public class MergeJars extends CachedTask
                 FieldNode serverField = sFields.get(serverFieldIdx);
                 if (!clientField.name.equals(serverField.name))
                 {
-                    boolean foundServerField = false;
-                    for (int serverFieldSearchIdx = serverFieldIdx + 1; serverFieldSearchIdx < sFields.size(); serverFieldSearchIdx++)
-                    {
-                        if (clientField.name.equals(sFields.get(serverFieldSearchIdx).name))
-                        {
-                            foundServerField = true;
-                            break;
-                        }
-                    }
                     // Found a server field match ahead in the list - walk to it and add the missing server fields to the client
-                    if (foundServerField)
+                    if (sAhead.contains(clientField.name))
                     {
-                        boolean foundClientField = false;
-                        for (int clientFieldSearchIdx = clientFieldIdx + 1; clientFieldSearchIdx < cFields.size(); clientFieldSearchIdx++)
-                        {
-                            if (serverField.name.equals(cFields.get(clientFieldSearchIdx).name))
-                            {
-                                foundClientField = true;
-                                break;
-                            }
-                        }
-                        if (!foundClientField)
+                        if (!cAhead.contains(serverField.name))
                         {
                             if (serverField.visibleAnnotations == null)
                             {
@@ -366,6 +464,7 @@ public class MergeJars extends CachedTask
                             }
                             serverField.visibleAnnotations.add(getSideAnn(false));
                             cFields.add(clientFieldIdx, serverField);
+                            cAhead.add(clientField.name);
                             if (DEBUG)
                                 System.out.printf("1. Server List: %s\n1. Client List: %s\nIdx: %d %d\n", Lists.transform(sFields, FieldName.instance), Lists.transform(cFields, FieldName.instance), serverFieldIdx, clientFieldIdx);
                         }
@@ -378,6 +477,7 @@ public class MergeJars extends CachedTask
                         }
                         clientField.visibleAnnotations.add(getSideAnn(true));
                         sFields.add(serverFieldIdx, clientField);
+                        sAhead.add(serverField.name);
                         if (DEBUG)
                             System.out.printf("2. Server List: %s\n2. Client List: %s\nIdx: %d %d\n", Lists.transform(sFields, FieldName.instance), Lists.transform(cFields, FieldName.instance), serverFieldIdx, clientFieldIdx);
                     }
@@ -395,6 +495,12 @@ public class MergeJars extends CachedTask
                     System.out.printf("3. Server List: %s\n3. Client List: %s\nIdx: %d %d\n", Lists.transform(sFields, FieldName.instance), Lists.transform(cFields, FieldName.instance), serverFieldIdx, clientFieldIdx);
             }
             serverFieldIdx++;
+
+            // whatever is current now isnt ahead anymore
+            if (serverFieldIdx < sFields.size())
+                sAhead.remove(sFields.get(serverFieldIdx).name);
+            if (clientFieldIdx + 1 < cFields.size())
+                cAhead.remove(cFields.get(clientFieldIdx + 1).name);
         }
         if (DEBUG)
             System.out.printf("A. Server List: %s\nA. Client List: %s\n", Lists.transform(sFields, FieldName.instance), Lists.transform(cFields, FieldName.instance));
@@ -567,6 +673,19 @@ public class MergeJars extends CachedTask
         }
     }
 
+    /**
+     * @return the number of threads classes are merged on
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     public File getClient()
     {
         return getProject().file(client);
@@ -26,9 +26,15 @@ import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.minecraftforge.gradle.common.Constants;
 import net.minecraftforge.gradle.util.GradleConfigurationException;
+import net.minecraftforge.gradle.util.ParallelUtil;
 import net.minecraftforge.gradle.util.ThrowableUtil;
 import net.minecraftforge.gradle.util.patching.ContextualPatch;
 import net.minecraftforge.gradle.util.patching.ContextualPatch.PatchStatus;
@@ -47,19 +53,11 @@ import com.cloudbees.diff.PatchException;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 
 public class PatchSourcesTask extends AbstractEditJarTask
 {
-    /*
-     * TODO: optimization plans
-     * 1) doStufBefore> read all the patch files into a map as strings stored by relative path.
-     * 2) doStufBefore> Create a threaded Executor to patch the files
-     * 3) AsRead > kick off the patching threads
-     * 4) ????
-     * 5) profit from multithreaded oatching. Its CPU bound anyways.
-     */
-
     @Input
     private int                    maxFuzz       = 0;
 
@@ -143,12 +141,16 @@ public class PatchSourcesTask extends AbstractEditJarTask
         getLogger().info("Injecting injects (sources and resources)");
         this.inject(getInjects(), sourceMap, resourceMap);
 
-        // fix the context provider
-        context.fileMap = sourceMap;
+        // fix the context provider. Patches for different files are applied at the same time, so the map has to be concurrent.
+        Map<String, String> concurrentMap = new ConcurrentHashMap<String, String>(sourceMap);
+        context.fileMap = concurrentMap;
 
         // apply patches
         getLogger().info("Applying patches");
         applyPatches();
+
+        // patches only ever add or replace files, so this catches everything.
+        sourceMap.putAll(concurrentMap);
     }
 
     private void inject(FileCollection injects, final Map<String, String> sourceMap, final Map<String, byte[]> resourceMap) throws IOException
@@ -204,15 +206,113 @@ public class PatchSourcesTask extends AbstractEditJarTask
         }
     }
 
-    private void applyPatches() throws IOException, PatchException
+    private void applyPatches() throws Exception
+    {
+        // patches for the same file are always applied on the same thread.
+        List<List<PatchedFile>> chains = groupByTarget();
+        int threads = Math.max(1, Math.min(getThreads(), chains.size()));
+
+        if (threads == 1)
+        {
+            for (List<PatchedFile> chain : chains)
+            {
+                new PatchChain(chain).call();
+            }
+        }
+        else
+        {
+            getLogger().debug("Applying {} patch chains on {} threads", chains.size(), threads);
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try
+            {
+                List<Future<Void>> futures = Lists.newArrayList();
+                for (List<PatchedFile> chain : chains)
+                {
+                    futures.add(executor.submit(new PatchChain(chain)));
+                }
+
+                for (Future<Void> future : futures)
+                {
+                    ParallelUtil.getResult(future, Exception.class);
+                }
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+        }
+
+        // reports are only looked at once everything is done, so that the log and rejects come out in the same order every time.
+        reportPatches();
+    }
+
+    /**
+     * Groups the loaded patches into chains that can safely be applied at the same time.
+     * Patches that touch the same file end up in the same chain, in the order they were loaded.
+     */
+    private List<List<PatchedFile>> groupByTarget() throws IOException, PatchException
+    {
+        int[] parent = new int[loadedPatches.size()];
+        Map<String, Integer> firstPatch = Maps.newHashMap();
+
+        for (int i = 0; i < parent.length; i++)
+        {
+            parent[i] = i;
+
+            for (String target : loadedPatches.get(i).patch.getTargets())
+            {
+                if (target == null)
+                {
+                    continue;
+                }
+
+                Integer other = firstPatch.get(context.strip(target));
+                if (other == null)
+                {
+                    firstPatch.put(context.strip(target), i);
+                }
+                else
+                {
+                    parent[findRoot(parent, i)] = findRoot(parent, other);
+                }
+            }
+        }
+
+        Map<Integer, List<PatchedFile>> chains = Maps.newLinkedHashMap();
+        for (int i = 0; i < parent.length; i++)
+        {
+            int root = findRoot(parent, i);
+            List<PatchedFile> chain = chains.get(root);
+            if (chain == null)
+            {
+                chain = Lists.newArrayList();
+                chains.put(root, chain);
+            }
+            chain.add(loadedPatches.get(i));
+        }
+
+        return Lists.newArrayList(chains.values());
+    }
+
+    private static int findRoot(int[] parent, int index)
+    {
+        while (parent[index] != index)
+        {
+            parent[index] = parent[parent[index]];
+            index = parent[index];
+        }
+        return index;
+    }
+
+    private void reportPatches() throws IOException
     {
         boolean fuzzed = false;
         Throwable failure = null;
 
         for (PatchedFile patch : loadedPatches)
         {
-            List<ContextualPatch.PatchReport> errors = patch.patch.patch(false);
-            for (ContextualPatch.PatchReport report : errors)
+            for (ContextualPatch.PatchReport report : patch.reports)
             {
                 // catch failed patches
                 if (!report.getStatus().isSuccess())
@@ -449,10 +549,31 @@ public class PatchSourcesTask extends AbstractEditJarTask
         }
     }
 
+    private static class PatchChain implements Callable<Void>
+    {
+        private final List<PatchedFile> patches;
+
+        public PatchChain(List<PatchedFile> patches)
+        {
+            this.patches = patches;
+        }
+
+        @Override
+        public Void call() throws Exception
+        {
+            for (PatchedFile patch : patches)
+            {
+                patch.reports = patch.patch.patch(false);
+            }
+            return null;
+        }
+    }
+
     private static class PatchedFile
     {
         public final File            fileToPatch;
         public final ContextualPatch patch;
+        public List<ContextualPatch.PatchReport> reports;
 
         public PatchedFile(File file, ContextProvider provider, int maxFuzz) throws IOException
         {
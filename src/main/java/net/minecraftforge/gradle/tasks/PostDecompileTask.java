@@ -27,6 +27,8 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -83,8 +85,9 @@ public class PostDecompileTask extends AbstractEditJarTask
 
     private final Set<String>            seenPackages = Sets.newHashSet();
     private final Multimap<String, File> patchesMap  = ArrayListMultimap.create();
-    private final List<PatchAttempt>     patchErrors = Lists.newArrayList();
-    private final ASFormatter            formatter   = new ASFormatter();
+    // files are processed in parallel, so these get filled from several threads.
+    private final List<PatchAttempt>     patchErrors = Collections.synchronizedList(Lists.<PatchAttempt>newArrayList());
+    private ThreadLocal<ASFormatter>     formatter;
     private GLConstantFixer              oglFixer;
 
     @Override
@@ -104,18 +107,26 @@ public class PostDecompileTask extends AbstractEditJarTask
             patchesMap.put(name.substring(0, patchIndex), f);
         }
 
-        formatter.setUseProperInnerClassIndenting(false);
-        OptParser parser = new OptParser(formatter);
-        parser.parseOptionFile(getAstyleConfig());
+        // the formatter keeps state while formatting, so every thread gets its own.
+        final File astyleConfig = getAstyleConfig();
+        formatter = ThreadLocal.withInitial(() -> {
+            ASFormatter formatter = new ASFormatter();
+            formatter.setUseProperInnerClassIndenting(false);
+            OptParser parser = new OptParser(formatter);
+            parser.parseOptionFile(astyleConfig);
+            return formatter;
+        });
 
         oglFixer = new GLConstantFixer();
     }
     class PatchAttempt {
-        public PatchAttempt(List<PatchReport> report, String file) {
+        public PatchAttempt(String name, List<PatchReport> report, String file) {
             super();
+            this.name = name;
             this.report = report;
             this.file = file;
         }
+        final String name;
         final List<PatchReport> report;
         final String file;
     }
@@ -134,7 +145,7 @@ public class PostDecompileTask extends AbstractEditJarTask
             ContextProvider provider = new ContextProvider(file);
             ContextualPatch patch = findPatch(patchFiles, provider,getLogger());
             if (patch != null) {
-                patchErrors.add(new PatchAttempt(patch.patch(false),file));
+                patchErrors.add(new PatchAttempt(name, patch.patch(false), file));
                 file = provider.getAsString();
             } else {
             	//This shouldn't ever happen
@@ -157,7 +168,7 @@ public class PostDecompileTask extends AbstractEditJarTask
         getLogger().debug("formatting source");
         Reader reader = new StringReader(file);
         Writer writer = new StringWriter();
-        formatter.format(reader, writer);
+        formatter.get().format(reader, writer);
         reader.close();
         writer.flush();
         writer.close();
@@ -207,6 +218,10 @@ public class PostDecompileTask extends AbstractEditJarTask
     {
         boolean fuzzed = false;
         Throwable error = null;
+
+        // the files were patched in whatever order the threads got to them
+        Collections.sort(patchErrors, Comparator.comparing((PatchAttempt attempt) -> attempt.name));
+
         for (PatchAttempt attempt: patchErrors)
         {
             for (PatchReport report : attempt.report) {
@@ -359,4 +374,10 @@ public class PostDecompileTask extends AbstractEditJarTask
     {
         return false;
     }
+
+    @Override
+    protected boolean readInParallel()
+    {
+        return true;
+    }
 }
@@ -20,7 +20,7 @@
 package net.minecraftforge.gradle.tasks;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -28,14 +28,11 @@ import java.util.function.Function;
 import net.minecraftforge.gradle.common.Constants;
 import net.minecraftforge.gradle.util.delayed.DelayedFile;
 import net.minecraftforge.gradle.util.mcp.JavadocAdder;
+import net.minecraftforge.gradle.util.mcp.McpMappings;
 
 import org.gradle.api.tasks.InputFile;
 
-import au.com.bytecode.opencsv.CSVReader;
-
-import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
-import com.google.common.collect.Maps;
 import com.google.code.regexp.Matcher;
 import com.google.code.regexp.Pattern;
 
@@ -52,42 +49,18 @@ public class RemapSources extends AbstractEditJarTask
 
     private boolean                   addsJavadocs = true;
 
-    private final Map<String, String> methods      = Maps.newHashMap();
-    private final Map<String, String> methodDocs   = Maps.newHashMap();
-    private final Map<String, String> fields       = Maps.newHashMap();
-    private final Map<String, String> fieldDocs    = Maps.newHashMap();
-    private final Map<String, String> params       = Maps.newHashMap();
+    private McpMappings               mappings;
 
+    private static final ThreadLocal<RemapBuffer> BUFFER = ThreadLocal.withInitial(RemapBuffer::new);
 
-    private static final Pattern      SRG_FINDER             = Pattern.compile("func_[0-9]+_[a-zA-Z_]+|field_[0-9]+_[a-zA-Z_]+|p_[\\w]+_\\d+_\\b");
     private static final Pattern      METHOD_JAVADOC_PATTERN = Pattern.compile("^(?<indent>(?: {4})+|\\t+)(?!return)(?:\\w+\\s+)*(?<generic><[\\w\\W]*>\\s+)?(?<return>\\w+[\\w$.]*(?:<[\\w\\W]*>)?[\\[\\]]*)\\s+(?<name>func_[0-9]+_[a-zA-Z_]+)\\(");
     private static final Pattern      FIELD_JAVADOC_PATTERN  = Pattern.compile("^(?<indent>(?: {4})+|\\t+)(?!return)(?:\\w+\\s+)*(?:\\w+[\\w$.]*(?:<[\\w\\W]*>)?[\\[\\]]*)\\s+(?<name>field_[0-9]+_[a-zA-Z_]+) *(?:=|;)");
 
     @Override
     public void doStuffBefore() throws Exception
     {
-        // read CSV files
-        CSVReader reader = Constants.getReader(getMethodsCsv());
-        for (String[] s : reader.readAll())
-        {
-            methods.put(s[0], s[1]);
-            if (!s[3].isEmpty() && addsJavadocs)
-                methodDocs.put(s[0], s[3]);
-        }
-
-        reader = Constants.getReader(getFieldsCsv());
-        for (String[] s : reader.readAll())
-        {
-            fields.put(s[0], s[1]);
-            if (!s[3].isEmpty() && addsJavadocs)
-                fieldDocs.put(s[0], s[3]);
-        }
-
-        reader = Constants.getReader(getParamsCsv());
-        for (String[] s : reader.readAll())
-        {
-            params.put(s[0], s[1]);
-        }
+        // shared with every other task using the same CSVs
+        mappings = McpMappings.load(getProject(), getMethodsCsv(), getFieldsCsv(), getParamsCsv());
     }
 
     @Override
@@ -96,22 +69,73 @@ public class RemapSources extends AbstractEditJarTask
         return false;
     }
 
+    @Override
+    protected boolean readInParallel()
+    {
+        // the maps are only read once the CSVs are loaded.
+        return true;
+    }
+
     @Override
     public String asRead(String name, String text)
     {
-        ArrayList<String> newLines = new ArrayList<String>();
-        for (String line : Constants.lines(text))
+        // if we aren't doing javadocs... screw dat.
+        if (addsJavadocs)
+            return remap(text, mappings.getMethods()::get, mappings.getFields()::get, mappings.getParams()::get, mappings.getMethodDocs()::get, mappings.getFieldDocs()::get);
+        else
+            return remap(text, mappings.getMethods()::get, mappings.getFields()::get, mappings.getParams()::get, null, null);
+    }
+
+    /**
+     * Replaces every SRG name in the given source with its MCP name, and adds javadocs above the members that have them.
+     * The names are found in a single pass over the text, the javadoc regexes are only tried on lines that contain a method or field name.
+     * Lines are separated with {@link Constants#NEWLINE} in the result.
+     *
+     * @param text The source to remap
+     * @param methods Takes a method SRG name and returns its MCP name, or null
+     * @param fields Takes a field SRG name and returns its MCP name, or null
+     * @param params Takes a parameter SRG name and returns its MCP name, or null
+     * @param methodDocs Takes a method SRG name and returns its javadoc, or null to not add method javadocs at all
+     * @param fieldDocs Takes a field SRG name and returns its javadoc, or null to not add field javadocs at all
+     * @return The remapped source
+     */
+    public static String remap(String text, Function<String, String> methods, Function<String, String> fields, Function<String, String> params, Function<String, String> methodDocs, Function<String, String> fieldDocs)
+    {
+        RemapBuffer out = BUFFER.get();
+        out.reset(text.length());
+
+        // same lines as Constants.lines, without making the list
+        int length = text.length();
+        int start = 0;
+        while (start < length)
         {
-            // basically all this code is to find the javadocs for a field before replacing it.
-            // if we aren't doing javadocs... screw dat.
-            if (addsJavadocs)
+            int end = start;
+            while (end < length && text.charAt(end) != '\n' && text.charAt(end) != '\r')
+            {
+                end++;
+            }
+
+            out.newLine();
+            boolean member = remapLine(out.text, text, start, end, methods, fields, params);
+
+            // basically all this code is to find the javadocs for a member before replacing it.
+            if (member && (methodDocs != null || fieldDocs != null))
             {
-                injectJavadoc(newLines, line, methodDocs::get, fieldDocs::get);
+                String javadoc = findJavadoc(text.substring(start, end), methodDocs != null ? methodDocs : n -> null, fieldDocs != null ? fieldDocs : n -> null);
+                if (javadoc != null)
+                {
+                    out.insertAboveAnnotations(javadoc);
+                }
             }
-            newLines.add(replaceInLine(line));
+
+            // \r\n is one line break
+            if (end + 1 < length && text.charAt(end) == '\r' && text.charAt(end + 1) == '\n')
+                start = end + 2;
+            else
+                start = end + 1;
         }
 
-        return Joiner.on(Constants.NEWLINE).join(newLines);
+        return out.text.toString();
     }
 
     /**
@@ -124,6 +148,18 @@ public class RemapSources extends AbstractEditJarTask
      * @param fieldFunc A function that takes a field SRG id and returns its javadoc
      */
     public static void injectJavadoc(List<String> lines, String line, Function<String, String> methodFunc, Function<String, String> fieldFunc)
+    {
+        String javadoc = findJavadoc(line, methodFunc, fieldFunc);
+        if (javadoc != null)
+        {
+            insertAboveAnnotations(lines, javadoc);
+        }
+    }
+
+    /**
+     * @return The formatted javadoc for the member declared on this line, or null if it doesnt declare one or there is no javadoc for it
+     */
+    private static String findJavadoc(String line, Function<String, String> methodFunc, Function<String, String> fieldFunc)
     {
         // methods
         Matcher matcher = METHOD_JAVADOC_PATTERN.matcher(line);
@@ -132,11 +168,11 @@ public class RemapSources extends AbstractEditJarTask
             String javadoc = methodFunc.apply(matcher.group("name"));
             if (!Strings.isNullOrEmpty(javadoc))
             {
-                insertAboveAnnotations(lines, JavadocAdder.buildJavadoc(matcher.group("indent"), javadoc, true));
+                return JavadocAdder.buildJavadoc(matcher.group("indent"), javadoc, true);
             }
 
             // worked, so return and don't try the fields.
-            return;
+            return null;
         }
 
         // fields
@@ -146,45 +182,202 @@ public class RemapSources extends AbstractEditJarTask
             String javadoc = fieldFunc.apply(matcher.group("name"));
             if (!Strings.isNullOrEmpty(javadoc))
             {
-                insertAboveAnnotations(lines, JavadocAdder.buildJavadoc(matcher.group("indent"), javadoc, false));
+                return JavadocAdder.buildJavadoc(matcher.group("indent"), javadoc, false);
             }
         }
+
+        return null;
     }
 
     /** Inserts the given javadoc line into the list of lines before any annotations */
     private static void insertAboveAnnotations(List<String> list, String line)
     {
         int back = 0;
-        while (list.get(list.size() - 1 - back).trim().startsWith("@"))
+        while (back < list.size() && list.get(list.size() - 1 - back).trim().startsWith("@"))
         {
             back++;
         }
         list.add(list.size() - back, line);
     }
 
-    private String replaceInLine(String line)
+    /**
+     * Copies a line to the buffer, replacing the SRG names in it as it goes.
+     * Finds exactly what <code>func_[0-9]+_[a-zA-Z_]+|field_[0-9]+_[a-zA-Z_]+|p_[\\w]+_\\d+_\\b</code> would.
+     * @return true if the line contains a method or field name
+     */
+    private static boolean remapLine(StringBuilder out, String text, int start, int end, Function<String, String> methods, Function<String, String> fields, Function<String, String> params)
     {
-        // FAR all methods
-        StringBuffer buf = new StringBuffer();
-        Matcher matcher = SRG_FINDER.matcher(line);
-        while (matcher.find())
+        boolean member = false;
+        int copied = start;
+
+        for (int i = start; i < end;)
         {
-            String find = matcher.group();
+            Function<String, String> names = null;
+            int tokenEnd = -1;
+
+            char c = text.charAt(i);
+            if (c == 'f')
+            {
+                if ((tokenEnd = matchMember(text, i, end, "func_")) != -1)
+                    names = methods;
+                else if ((tokenEnd = matchMember(text, i, end, "field_")) != -1)
+                    names = fields;
+
+                member |= names != null;
+            }
+            else if (c == 'p')
+            {
+                if ((tokenEnd = matchParam(text, i, end)) != -1)
+                    names = params;
+            }
+
+            if (names == null)
+            {
+                i++;
+                continue;
+            }
 
-            if (find.startsWith("p_"))
-                find = params.get(find);
-            else if (find.startsWith("func_"))
-                find = methods.get(find);
-            else if (find.startsWith("field_"))
-                find = fields.get(find);
+            String token = text.substring(i, tokenEnd);
+            String mapped = names.apply(token);
+            out.append(text, copied, i).append(mapped == null ? token : mapped);
+            copied = i = tokenEnd;
+        }
 
-            if (find == null)
-                find = matcher.group();
+        out.append(text, copied, end);
+        return member;
+    }
 
-            matcher.appendReplacement(buf, find);
+    /**
+     * Matches <code>prefix[0-9]+_[a-zA-Z_]+</code>
+     * @return the end of the match, or -1
+     */
+    private static int matchMember(String text, int start, int end, String prefix)
+    {
+        if (end - start < prefix.length() || !text.startsWith(prefix, start))
+            return -1;
+
+        int i = start + prefix.length();
+        int digits = i;
+        while (i < end && isDigit(text.charAt(i)))
+            i++;
+
+        if (i == digits || i >= end || text.charAt(i) != '_')
+            return -1;
+
+        int letters = ++i;
+        while (i < end && (isLetter(text.charAt(i)) || text.charAt(i) == '_'))
+            i++;
+
+        return i == letters ? -1 : i;
+    }
+
+    /**
+     * Matches <code>p_[\\w]+_\\d+_\\b</code>
+     * @return the end of the match, or -1
+     */
+    private static int matchParam(String text, int start, int end)
+    {
+        if (end - start < 2 || !text.startsWith("p_", start))
+            return -1;
+
+        // everything in the match is a word character, and it has to end on a boundary, so it can only end at the end of the word.
+        int wordStart = start + 2;
+        int wordEnd = wordStart;
+        while (wordEnd < end && isWordChar(text.charAt(wordEnd)))
+            wordEnd++;
+
+        if (wordEnd < end && Character.isLetterOrDigit(text.charAt(wordEnd)))
+            return -1;
+
+        // the word has to look like  \w+ _ \d+ _
+        int last = wordEnd - 1;
+        if (last <= wordStart || text.charAt(last) != '_')
+            return -1;
+
+        int digits = last;
+        while (digits > wordStart && isDigit(text.charAt(digits - 1)))
+            digits--;
+
+        if (digits == last || digits - 1 <= wordStart || text.charAt(digits - 1) != '_')
+            return -1;
+
+        return wordEnd;
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWordChar(char c)
+    {
+        return isLetter(c) || isDigit(c) || c == '_';
+    }
+
+    /**
+     * The output of {@link RemapSources#remap}, along with where its lines start so javadocs can be added above annotations.
+     * One of these is kept per thread and reused for every file.
+     */
+    private static final class RemapBuffer
+    {
+        private final StringBuilder text = new StringBuilder();
+        private int[] lineStarts = new int[1024];
+        private int lines;
+
+        private void reset(int capacity)
+        {
+            text.setLength(0);
+            text.ensureCapacity(capacity);
+            lines = 0;
+        }
+
+        private void newLine()
+        {
+            if (lines > 0)
+                text.append(Constants.NEWLINE);
+
+            if (lines == lineStarts.length)
+                lineStarts = Arrays.copyOf(lineStarts, lines * 2);
+
+            lineStarts[lines++] = text.length();
+        }
+
+        /** Inserts the given text as a line above the current line, and above any annotations just before it. */
+        private void insertAboveAnnotations(String line)
+        {
+            int index = lines - 1;
+            while (index > 0 && isAnnotation(index - 1))
+                index--;
+
+            int offset = lineStarts[index];
+            text.insert(offset, line + Constants.NEWLINE);
+
+            if (lines == lineStarts.length)
+                lineStarts = Arrays.copyOf(lineStarts, lines * 2);
+
+            int shift = line.length() + Constants.NEWLINE.length();
+            for (int i = lines; i > index; i--)
+                lineStarts[i] = lineStarts[i - 1] + shift;
+            lineStarts[index] = offset;
+            lines++;
+        }
+
+        /** Same as line.trim().startsWith("@") */
+        private boolean isAnnotation(int line)
+        {
+            int end = line + 1 < lines ? lineStarts[line + 1] : text.length();
+            for (int i = lineStarts[line]; i < end; i++)
+            {
+                if (text.charAt(i) > ' ')
+                    return text.charAt(i) == '@';
+            }
+            return false;
         }
-        matcher.appendTail(buf);
-        return buf.toString();
     }
 
     public File getMethodsCsv()
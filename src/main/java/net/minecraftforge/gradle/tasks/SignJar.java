@@ -21,20 +21,14 @@ package net.minecraftforge.gradle.tasks;
 
 import static net.minecraftforge.gradle.common.Constants.resolveString;
 
-import java.io.*;
-import java.util.Collections;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.util.Set;
-import java.util.jar.JarOutputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.concurrent.ExecutorService;
 
-import com.google.common.io.Closeables;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.file.FileTreeElement;
-import org.gradle.api.file.FileVisitDetails;
-import org.gradle.api.file.FileVisitor;
 import org.gradle.api.specs.Spec;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
@@ -44,11 +38,13 @@ import org.gradle.api.tasks.util.PatternFilterable;
 import org.gradle.api.tasks.util.PatternSet;
 
 import com.google.common.base.Strings;
-import com.google.common.collect.Maps;
-import com.google.common.io.ByteStreams;
+import com.google.common.collect.Sets;
 
 import groovy.lang.Closure;
-import groovy.util.MapEntry;
+import net.minecraftforge.gradle.util.ParallelUtil;
+import net.minecraftforge.gradle.util.zip.JarSigner;
+import net.minecraftforge.gradle.util.zip.RawZipFile;
+import net.minecraftforge.gradle.util.zip.RawZipTree;
 
 public class SignJar extends DefaultTask implements PatternFilterable
 {
@@ -62,125 +58,39 @@ public class SignJar extends DefaultTask implements PatternFilterable
     @OutputFile private Object     outputFile;
     //@formatter:on
 
+    private int threads = ParallelUtil.DEFAULT_THREADS;
+
     @TaskAction
-    public void doTask() throws IOException
+    public void doTask() throws IOException, GeneralSecurityException
     {
-        final Map<String, Entry<byte[], Long>> ignoredStuff = Maps.newHashMap();
-        File input = getInputFile();
-        File toSign = new File(getTemporaryDir(), input.getName() + ".unsigned.tmp");
-        File signed = new File(getTemporaryDir(), input.getName() + ".signed.tmp");
-        File output = getOutputFile();
-
-        // load in input jar, and create temp jar
-        processInputJar(input, toSign, ignoredStuff);
-
-        // SIGN!
-        Map<String, Object> map = Maps.newHashMap();
-        map.put("alias", getAlias());
-        map.put("storePass", getStorePass());
-        map.put("jar", toSign.getAbsolutePath());
-        map.put("signedJar", signed.getAbsolutePath());
-
-        if (!Strings.isNullOrEmpty(getKeyPass()))
-            map.put("keypass", getKeyPass());
-        if (!Strings.isNullOrEmpty(getKeyStore()))
-            map.put("keyStore", getKeyStore());
+        // the same default jarsigner uses
+        File store = Strings.isNullOrEmpty(getKeyStore()) ? new File(System.getProperty("user.home"), ".keystore") : getProject().file(getKeyStore());
+        JarSigner signer = JarSigner.load(store, getStorePass(), getAlias(), Strings.emptyToNull(getKeyPass()));
 
-        getProject().getAnt().invokeMethod("signjar", map);
-
-        // write out
-        writeOutputJar(signed, output, ignoredStuff);
-    }
-
-    private void processInputJar(File inputJar, File toSign, final Map<String, Entry<byte[], Long>> unsigned) throws IOException
-    {
-        final Spec<FileTreeElement> spec = patternSet.getAsSpec();
+        File output = getOutputFile();
+        output.getParentFile().mkdirs();
 
-        toSign.getParentFile().mkdirs();
-        try (JarOutputStream outs = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(toSign))))
+        ExecutorService executor = ParallelUtil.newExecutor(getThreads());
+        try (RawZipFile zip = new RawZipFile(getInputFile()))
         {
+            final Spec<FileTreeElement> spec = patternSet.getAsSpec();
+            RawZipTree tree = new RawZipTree(zip);
 
-            getProject().zipTree(inputJar).visit(new FileVisitor()
+            // everything else is copied in unsigned
+            Set<String> signed = Sets.newHashSet();
+            for (RawZipFile.Entry entry : zip.getEntries())
             {
-
-                @Override
-                public void visitDir(FileVisitDetails details)
-                {
-                    try
-                    {
-                        String path = details.getPath();
-                        ZipEntry entry = new ZipEntry(path.endsWith("/") ? path : path + "/");
-                        outs.putNextEntry(entry);
-                    }
-                    catch (IOException e)
-                    {
-                        e.printStackTrace();
-                    }
-                }
-
-                @Override
-                @SuppressWarnings("unchecked")
-                public void visitFile(FileVisitDetails details)
+                if (!entry.isDirectory() && spec.isSatisfiedBy(tree.getDetails(entry)))
                 {
-                    try
-                    {
-                        if (spec.isSatisfiedBy(details))
-                        {
-                            ZipEntry entry = new ZipEntry(details.getPath());
-                            entry.setTime(details.getLastModified());
-                            outs.putNextEntry(entry);
-                            details.copyTo(outs);
-                            outs.closeEntry();
-                        }
-                        else
-                        {
-                            try (InputStream stream = details.open())
-                            {
-                                unsigned.put(details.getPath(), new MapEntry(ByteStreams.toByteArray(stream), details.getLastModified()));
-                            }
-                        }
-                    }
-                    catch (IOException e)
-                    {
-                        e.printStackTrace();
-                    }
+                    signed.add(entry.getName());
                 }
+            }
 
-            });
+            signer.sign(zip, signed, output, executor);
         }
-    }
-
-    private void writeOutputJar(File signedJar, File outputJar, Map<String, Entry<byte[], Long>> unsigned) throws IOException
-    {
-        outputJar.getParentFile().mkdirs();
-
-        try (JarOutputStream outs = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(outputJar)));
-             ZipFile base = new ZipFile(signedJar))
+        finally
         {
-            for (ZipEntry e : Collections.list(base.entries()))
-            {
-                if (e.isDirectory())
-                {
-                    outs.putNextEntry(e);
-                }
-                else
-                {
-                    ZipEntry n = new ZipEntry(e.getName());
-                    n.setTime(e.getTime());
-                    outs.putNextEntry(n);
-                    ByteStreams.copy(base.getInputStream(e), outs);
-                    outs.closeEntry();
-                }
-            }
-
-            for (Map.Entry<String, Map.Entry<byte[], Long>> e : unsigned.entrySet())
-            {
-                ZipEntry n = new ZipEntry(e.getKey());
-                n.setTime(e.getValue().getValue());
-                outs.putNextEntry(n);
-                outs.write(e.getValue().getKey());
-                outs.closeEntry();
-            }
+            executor.shutdownNow();
         }
     }
 
@@ -258,6 +168,19 @@ public class SignJar extends DefaultTask implements PatternFilterable
         return patternSet.setIncludes(arg0);
     }
 
+    /**
+     * @return The number of threads to digest entries on
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     public File getInputFile()
     {
         if (inputFile == null)
@@ -22,18 +22,16 @@ package net.minecraftforge.gradle.tasks;
 import groovy.lang.Closure;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarOutputStream;
 
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
+import net.minecraftforge.gradle.util.zip.RawZipFile;
+import net.minecraftforge.gradle.util.zip.RawZipOutput;
+import net.minecraftforge.gradle.util.zip.RawZipTree;
 
 import org.gradle.api.file.FileTreeElement;
-import org.gradle.api.file.FileVisitDetails;
-import org.gradle.api.file.FileVisitor;
 import org.gradle.api.specs.Spec;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
@@ -42,6 +40,8 @@ import org.gradle.api.tasks.TaskAction;
 import org.gradle.api.tasks.util.PatternFilterable;
 import org.gradle.api.tasks.util.PatternSet;
 
+import com.google.common.collect.Sets;
+
 public class SplitJarTask extends CachedTask implements PatternFilterable
 {
     @InputFile
@@ -73,46 +73,32 @@ public class SplitJarTask extends CachedTask implements PatternFilterable
         out2.getParentFile().mkdirs();
 
         // begin reading jar
-        try (JarOutputStream zout1 = new JarOutputStream(new FileOutputStream(out1));
-             JarOutputStream zout2 = new JarOutputStream(new FileOutputStream(out2)))
+        try (RawZipFile zip = new RawZipFile(input);
+             RawZipOutput zout1 = new RawZipOutput(out1);
+             RawZipOutput zout2 = new RawZipOutput(out2))
         {
+            RawZipTree tree = new RawZipTree(zip);
+            Set<String> seen = Sets.newHashSet();
 
-            getProject().zipTree(input).visit(new FileVisitor() {
+            for (RawZipFile.Entry entry : zip.getEntries())
+            {
+                // ignore directories
+                if (entry.isDirectory())
+                    continue;
 
-                @Override
-                public void visitDir(FileVisitDetails details)
+                // shaded jars can have the same name twice, the first one wins
+                if (!seen.add(entry.getName()))
                 {
-                    // ignore directories
+                    getLogger().warn("Skipping duplicate entry {} in {}", entry.getName(), input);
+                    continue;
                 }
 
-                @Override
-                public void visitFile(FileVisitDetails details)
-                {
-                    JarEntry entry = new JarEntry(details.getPath());
-                    entry.setSize(details.getSize());
-                    entry.setTime(details.getLastModified());
-
-                    try
-                    {
-                        if (spec.isSatisfiedBy(details))
-                        {
-                            zout1.putNextEntry(entry);
-                            details.copyTo(zout1);
-                            zout1.closeEntry();
-                        }
-                        else
-                        {
-                            zout2.putNextEntry(entry);
-                            details.copyTo(zout2);
-                            zout2.closeEntry();
-                        }
-                    }
-                    catch (IOException e)
-                    {
-                        throw new RuntimeException(e);
-                    }
-                }
-            });
+                // nothing changes, so the entries are copied still compressed
+                if (spec.isSatisfiedBy(tree.getDetails(entry)))
+                    zout1.copy(zip, entry);
+                else
+                    zout2.copy(zip, entry);
+            }
         }
     }
 
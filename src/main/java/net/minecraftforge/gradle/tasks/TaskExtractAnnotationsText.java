@@ -35,6 +35,8 @@ import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 
 import net.minecraftforge.gradle.util.AnnotationUtils;
 import net.minecraftforge.gradle.util.AnnotationUtils.ASMInfo;
@@ -80,6 +82,8 @@ public class TaskExtractAnnotationsText extends DefaultTask
         File input = getJar();
 
         Map<String, ASMInfo> asm_info = Maps.newTreeMap(); //Tree map because I like sorted outputs.
+        JsonObject json = new JsonObject();
+        int subtypes = 0;
         //Map<String, Integer> class_versions = Maps.newTreeMap();
 
         try (ZipFile in = new ZipFile(input))
@@ -118,7 +122,16 @@ public class TaskExtractAnnotationsText extends DefaultTask
                 }
             }
 
-            Files.write(GSON.toJson(asm_info), getOutput(), Charsets.UTF_8);
+            // subtype ids are per class, so shift them to be unique in the whole jar
+            for (Map.Entry<String, ASMInfo> e : asm_info.entrySet())
+            {
+                JsonElement info = GSON.toJsonTree(e.getValue());
+                AnnotationUtils.offsetSubtypes(info, subtypes);
+                subtypes += e.getValue().getSubtypeCount();
+                json.add(e.getKey(), info);
+            }
+
+            Files.write(GSON.toJson(json), getOutput(), Charsets.UTF_8);
         }
     }
 }
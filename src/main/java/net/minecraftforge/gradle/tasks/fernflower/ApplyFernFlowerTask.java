@@ -19,26 +19,22 @@
  */
 package net.minecraftforge.gradle.tasks.fernflower;
 
-import com.google.common.collect.ImmutableList;
-import groovy.lang.Closure;
 import net.minecraftforge.gradle.common.Constants;
+import net.minecraftforge.gradle.util.ParallelUtil;
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
-import org.codehaus.groovy.runtime.ResourceGroovyMethods;
-import org.gradle.api.Action;
 import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
-import org.gradle.process.ExecResult;
-import org.gradle.process.JavaExecSpec;
 import org.jetbrains.java.decompiler.main.DecompilerContext;
 import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 public class ApplyFernFlowerTask extends CachedTask {
@@ -46,6 +42,9 @@ public class ApplyFernFlowerTask extends CachedTask {
     // 2.5 GB
     private static final long REQUIRED_MEMORY = (long) (2.5 * 1024 * 1024 * 1024);
     private static final String FORK_FLAG = "forkDecompile";
+    private static final String INCREMENTAL_FLAG = "incrementalDecompile";
+    private static final String MAX_HEAP_PROP = "decompileMaxHeap";
+    private static final String MAX_WORKERS_PROP = "decompileWorkers";
 
     @InputFile
     Object inJar;
@@ -57,6 +56,18 @@ public class ApplyFernFlowerTask extends CachedTask {
     private FileCollection classpath;
     private FileCollection forkedClasspath;
 
+    // can differ slightly from a full decompile, so its an input, see isIncremental()
+    private boolean incremental = false;
+
+    // these dont change the output, so they are not inputs
+    private Object classCache;
+    private int threads = ParallelUtil.DEFAULT_THREADS;
+    private String maxHeap = "3G";
+    private int maxWorkers = 1;
+
+    private long lastDuration = -1;
+    private long lastPeakMemory = -1;
+
     @TaskAction
     public void applyFernFlower() throws IOException
     {
@@ -79,7 +90,8 @@ public class ApplyFernFlowerTask extends CachedTask {
         mapOptions.put(IFernflowerPreferences.MAX_PROCESSING_METHOD, "0");
         mapOptions.put(DecompilerContext.RENAMER_FACTORY, AdvancedJadRenamerFactory.class.getName());
 
-        FernFlowerSettings settings = new FernFlowerSettings(tempDir, in, tempJar, Constants.getTaskLogFile(getProject(), getName() + ".log"), classpath.getFiles(), mapOptions);
+        File classCache = isIncremental() ? getClassCache() : null;
+        FernFlowerSettings settings = new FernFlowerSettings(tempDir, in, tempJar, Constants.getTaskLogFile(getProject(), getName() + ".log"), classpath.getFiles(), mapOptions, classCache, getThreads());
 
         runFernFlower(settings);
 
@@ -90,62 +102,67 @@ public class ApplyFernFlowerTask extends CachedTask {
     {
         // forking allowed if the property is not present or it is "true" ("true" is the default)
         boolean forkAllowed = !getProject().hasProperty(FORK_FLAG) || Boolean.parseBoolean(getProject().property(FORK_FLAG).toString());
-        if (!forkAllowed || Runtime.getRuntime().maxMemory() >= REQUIRED_MEMORY) {
+        if (!forkAllowed || Runtime.getRuntime().maxMemory() >= getRequiredMemory(getMaxHeap())) {
             // no fork, either not allowed or memory is OK
+            long start = System.nanoTime();
             FernFlowerInvoker.runFernFlower(settings);
+            lastDuration = (System.nanoTime() - start) / 1000000;
+            lastPeakMemory = -1;
         } else {
             // put this in the info logs, but day-to-day use doesn't need to see it
-            getLogger().info("Note: " + Constants.GROUP_FG + " is forking a new process to run decompilation.");
+            getLogger().info("Note: " + Constants.GROUP_FG + " is decompiling in a separate process with " + getMaxHeap() + " of heap.");
             getLogger().debug("Settings: {}", settings);
-            final File data = File.createTempFile("fg-fernflowersettings", ".ser");
+
+            DecompilerWorkerService service = DecompilerWorkerService.get(getProject().getGradle(), forkedClasspath.getFiles(), getMaxHeap(), getMaxWorkers());
+            DecompileResult result;
             try {
-                writeSettings(settings, data);
-                runForkedFernFlower(data);
-            } finally {
-                data.delete();
+                result = service.decompile(settings);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a decompiler worker", e);
             }
-        }
-    }
 
-    @SuppressWarnings("serial")
-    private void writeSettings(final FernFlowerSettings settings, File data) throws IOException
-    {
-        ResourceGroovyMethods.withObjectOutputStream(data, new Closure<Void>(this, this) {
+            lastDuration = result.getMillis();
+            lastPeakMemory = result.getPeakMemory();
 
-            @Override
-            public Void call(Object... args)
-            {
-                ObjectOutputStream out = (ObjectOutputStream) args[0];
-                try {
-                    out.writeObject(settings);
-                } catch (IOException e) {
-                    throwRuntimeException(e);
-                }
-                return null;
+            if (!result.isSuccess()) {
+                throw new RuntimeException("Decompiling " + settings.getJarFrom() + " failed:\n" + result.getError());
             }
-        });
+        }
+
+        getLogger().info("Decompiled in {}ms, peak memory {}", lastDuration, lastPeakMemory < 0 ? "unknown" : (lastPeakMemory / (1024 * 1024)) + "MB");
     }
 
-    private void runForkedFernFlower(final File data)
+    /**
+     * The heap this process needs to decompile without forking. A bigger configured heap is taken
+     * to mean the decompile needs it, so that much is required too.
+     */
+    static long getRequiredMemory(String maxHeap)
     {
-        ExecResult result = getProject().javaexec(new Action<JavaExecSpec>() {
-
-            @Override
-            public void execute(JavaExecSpec exec)
-            {
-                exec.classpath(forkedClasspath);
-                exec.setMain(FernFlowerInvoker.class.getName());
-                exec.setJvmArgs(ImmutableList.of("-Xmx3G"));
-                // pass the temporary file
-                exec.args(data);
+        return Math.max(REQUIRED_MEMORY, parseMemory(maxHeap));
+    }
 
-                // Forward std streams
-                exec.setStandardOutput(System.out);
-                exec.setErrorOutput(System.err);
-            }
-        });
-        result.rethrowFailure();
-        result.assertNormalExitValue();
+    /**
+     * Parses a -Xmx style size, like 3G or 512m.
+     */
+    static long parseMemory(String size)
+    {
+        String str = size.trim().toUpperCase(Locale.ROOT);
+        long multiplier = 1;
+        switch (str.charAt(str.length() - 1))
+        {
+            case 'G':
+                multiplier *= 1024;
+            case 'M':
+                multiplier *= 1024;
+            case 'K':
+                multiplier *= 1024;
+                str = str.substring(0, str.length() - 1);
+                break;
+            default:
+                break;
+        }
+        return Long.parseLong(str) * multiplier;
     }
 
     public File getInJar()
@@ -178,6 +195,100 @@ public class ApplyFernFlowerTask extends CachedTask {
         this.classpath = classpath;
     }
 
+    /**
+     * Whether only the classes that changed since they were last decompiled are decompiled again.
+     * Can also be turned on with the incrementalDecompile project property.
+     * @return TRUE if decompiling incrementally
+     */
+    @Input
+    public boolean isIncremental()
+    {
+        if (getProject().hasProperty(INCREMENTAL_FLAG))
+            return Boolean.parseBoolean(getProject().property(INCREMENTAL_FLAG).toString());
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental)
+    {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return The directory decompiled classes are cached in when decompiling incrementally
+     */
+    public File getClassCache()
+    {
+        if (classCache == null)
+            return new File(getProject().getGradle().getGradleUserHomeDir(), "caches/minecraft/decompiledClasses");
+        return getProject().file(classCache);
+    }
+
+    public void setClassCache(Object classCache)
+    {
+        this.classCache = classCache;
+    }
+
+    /**
+     * @return The number of threads to decompile on when decompiling incrementally
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    /**
+     * Can also be set with the decompileMaxHeap project property.
+     * @return The -Xmx of the forked decompiler, like 3G
+     */
+    public String getMaxHeap()
+    {
+        if (getProject().hasProperty(MAX_HEAP_PROP))
+            return getProject().property(MAX_HEAP_PROP).toString();
+        return maxHeap;
+    }
+
+    public void setMaxHeap(String maxHeap)
+    {
+        this.maxHeap = maxHeap;
+    }
+
+    /**
+     * Can also be set with the decompileWorkers project property.
+     * @return The number of forked decompilers that may run at once in this build
+     */
+    public int getMaxWorkers()
+    {
+        if (getProject().hasProperty(MAX_WORKERS_PROP))
+            return Integer.parseInt(getProject().property(MAX_WORKERS_PROP).toString());
+        return maxWorkers;
+    }
+
+    public void setMaxWorkers(int maxWorkers)
+    {
+        this.maxWorkers = maxWorkers;
+    }
+
+    /**
+     * @return How long the last decompile took in milliseconds, or -1 if it hasnt run
+     */
+    public long getLastDuration()
+    {
+        return lastDuration;
+    }
+
+    /**
+     * @return The peak memory of the worker during the last decompile in bytes, or -1 if it isnt known
+     */
+    public long getLastPeakMemory()
+    {
+        return lastPeakMemory;
+    }
+
     public FileCollection getForkedClasspath()
     {
         return forkedClasspath;
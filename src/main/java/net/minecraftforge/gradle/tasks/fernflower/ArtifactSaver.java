@@ -45,8 +45,18 @@ class ArtifactSaver implements IResultSaver {
     private final Map<String, ZipOutputStream> mapArchiveStreams = new HashMap<>();
     private final Map<String, Set<String>> mapArchiveEntries = new HashMap<>();
     private final File root;
+    private final Map<String, String> collected;
+
     public ArtifactSaver(File tempDir) {
+        this(tempDir, null);
+    }
+
+    /**
+     * @param collected If not null, decompiled classes are put in here by entry name instead of being written to the archive
+     */
+    public ArtifactSaver(File tempDir, Map<String, String> collected) {
         this.root = tempDir;
+        this.collected = collected;
     }
 
     private String getAbsolutePath(String path) {
@@ -141,6 +151,11 @@ class ArtifactSaver implements IResultSaver {
             return;
         }
 
+        if (collected != null && content != null) {
+            collected.put(entryName, content);
+            return;
+        }
+
         try {
             ZipOutputStream out = mapArchiveStreams.get(file);
             out.putNextEntry(new ZipEntry(entryName));
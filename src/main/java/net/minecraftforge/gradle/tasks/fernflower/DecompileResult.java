@@ -0,0 +1,77 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.tasks.fernflower;
+
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.io.StringWriter;
+
+/**
+ * What a decompile worker sends back for each jar.
+ */
+public class DecompileResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String error;
+    private final boolean reusable;
+    private final long millis;
+    private final long peakMemory;
+
+    public DecompileResult(Throwable error, long millis, long peakMemory) {
+        if (error != null) {
+            StringWriter writer = new StringWriter();
+            error.printStackTrace(new PrintWriter(writer));
+            this.error = writer.toString();
+        } else {
+            this.error = null;
+        }
+        // after an OutOfMemoryError or such, the worker cant be trusted with the next jar
+        this.reusable = !(error instanceof Error);
+        this.millis = millis;
+        this.peakMemory = peakMemory;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return The stack trace of whatever the decompiler threw, or null if it worked
+     */
+    public String getError() {
+        return error;
+    }
+
+    public boolean isReusable() {
+        return reusable;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * @return The peak resident set size of the worker while decompiling, or its peak heap usage where that cant be read. -1 if neither is known.
+     */
+    public long getPeakMemory() {
+        return peakMemory;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.tasks.fernflower;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.gradle.BuildAdapter;
+import org.gradle.BuildResult;
+import org.gradle.api.invocation.Gradle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps forked decompiler JVMs around for the rest of the build, so every decompile after the first gets a warm one.
+ * At most maxWorkers of them run at once, any more decompiles wait for one to be free.
+ */
+public class DecompilerWorkerService {
+
+    private static final Map<List<Object>, DecompilerWorkerService> SERVICES = Maps.newHashMap();
+
+    private final List<File> classpath;
+    private final String maxHeap;
+    private final int maxWorkers;
+
+    private final Deque<Worker> idle = new ArrayDeque<Worker>();
+    private final List<Worker> all = Lists.newArrayList();
+    private int started = 0;
+    private boolean closed = false;
+
+    DecompilerWorkerService(Set<File> classpath, String maxHeap, int maxWorkers) {
+        this.classpath = Lists.newArrayList(classpath);
+        this.maxHeap = maxHeap;
+        this.maxWorkers = Math.max(1, maxWorkers);
+    }
+
+    /**
+     * Gets the service for this classpath and sizing, which is shut down when the build finishes.
+     */
+    public static DecompilerWorkerService get(Gradle gradle, Set<File> classpath, String maxHeap, int maxWorkers) {
+        final List<Object> key = Lists.<Object>newArrayList(classpath, maxHeap, maxWorkers);
+
+        synchronized (SERVICES) {
+            DecompilerWorkerService service = SERVICES.get(key);
+            if (service == null) {
+                final DecompilerWorkerService newService = new DecompilerWorkerService(classpath, maxHeap, maxWorkers);
+                gradle.addBuildListener(new BuildAdapter() {
+                    @Override
+                    public void buildFinished(BuildResult result) {
+                        synchronized (SERVICES) {
+                            SERVICES.remove(key);
+                        }
+                        newService.close();
+                    }
+                });
+
+                service = newService;
+                SERVICES.put(key, service);
+            }
+            return service;
+        }
+    }
+
+    public DecompileResult decompile(FernFlowerSettings settings) throws IOException, InterruptedException {
+        Worker worker = borrow();
+        boolean reusable = false;
+        try {
+            DecompileResult result = worker.decompile(settings);
+            reusable = result.isReusable();
+            return result;
+        } finally {
+            release(worker, reusable);
+        }
+    }
+
+    /**
+     * @return How many worker JVMs have been started so far
+     */
+    public synchronized int getStarted() {
+        return started;
+    }
+
+    public void close() {
+        List<Worker> workers;
+        synchronized (this) {
+            closed = true;
+            workers = Lists.newArrayList(all);
+            idle.clear();
+            notifyAll();
+        }
+
+        for (Worker worker : workers) {
+            worker.close();
+        }
+    }
+
+    private Worker borrow() throws IOException, InterruptedException {
+        synchronized (this) {
+            while (true) {
+                if (closed) {
+                    throw new IllegalStateException("The decompiler workers have already been shut down");
+                }
+
+                Worker worker = idle.poll();
+                if (worker != null) {
+                    if (worker.process.isAlive()) {
+                        return worker;
+                    }
+                    all.remove(worker);
+                    continue;
+                }
+
+                if (all.size() < maxWorkers) {
+                    break;
+                }
+
+                wait();
+            }
+
+            // hold the slot while it starts
+            all.add(null);
+        }
+
+        Worker worker = null;
+        try {
+            worker = new Worker(start());
+            return worker;
+        } finally {
+            synchronized (this) {
+                all.remove(null);
+                if (worker != null) {
+                    all.add(worker);
+                    started++;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private void release(Worker worker, boolean reusable) {
+        synchronized (this) {
+            if (reusable && !closed && worker.process.isAlive()) {
+                idle.push(worker);
+                notifyAll();
+                return;
+            }
+
+            all.remove(worker);
+            notifyAll();
+        }
+
+        worker.close();
+    }
+
+    private Process start() throws IOException {
+        String java = new File(System.getProperty("java.home"), "bin/java").getAbsolutePath();
+        ProcessBuilder builder = new ProcessBuilder(java, "-Xmx" + maxHeap, "-cp", Joiner.on(File.pathSeparatorChar).join(classpath), FernFlowerInvoker.class.getName());
+        final Process process = builder.start();
+
+        // forward anything the worker prints, as it used to be.
+        Thread errors = new Thread("Decompiler worker output") {
+            @Override
+            public void run() {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        System.err.println(line);
+                    }
+                } catch (IOException e) {
+                    // its gone
+                }
+            }
+        };
+        errors.setDaemon(true);
+        errors.start();
+
+        return process;
+    }
+
+    private static class Worker {
+        private final Process process;
+        private final ObjectOutputStream out;
+        private ObjectInputStream in;
+
+        private Worker(Process process) throws IOException {
+            this.process = process;
+            this.out = new ObjectOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.out.flush();
+        }
+
+        private DecompileResult decompile(FernFlowerSettings settings) throws IOException {
+            out.writeObject(settings);
+            out.flush();
+            out.reset();
+
+            try {
+                if (in == null) {
+                    in = new ObjectInputStream(new BufferedInputStream(process.getInputStream()));
+                }
+                return (DecompileResult) in.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            } catch (IOException e) {
+                throw new IOException("Decompiler worker died" + (process.isAlive() ? "" : " with exit code " + process.exitValue()), e);
+            }
+        }
+
+        private void close() {
+            try {
+                // no more settings, so it exits on its own
+                out.close();
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroy();
+                }
+            } catch (IOException e) {
+                process.destroy();
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
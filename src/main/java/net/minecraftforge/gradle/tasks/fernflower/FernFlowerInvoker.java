@@ -19,56 +19,126 @@
  */
 package net.minecraftforge.gradle.tasks.fernflower;
 
-import groovy.lang.Closure;
-import org.codehaus.groovy.runtime.ResourceGroovyMethods;
 import org.jetbrains.java.decompiler.main.decompiler.BaseDecompiler;
 import org.jetbrains.java.decompiler.main.decompiler.PrintStreamLogger;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
 
 public class FernFlowerInvoker {
-    
+
+    private static final File PROC_STATUS = new File("/proc/self/status");
+    private static final File PROC_CLEAR_REFS = new File("/proc/self/clear_refs");
+
+    /**
+     * Runs as a decompiler worker, see {@link DecompilerWorkerService}.
+     * Settings are read from stdin and a result written to stdout for each, until stdin is closed.
+     */
     public static void main(String[] args) throws Exception {
-        // Data file is the first argument
-        File data = new File(args[0]);
-        if (!data.exists()) {
-            throw new IllegalStateException("missing data file");
+        // stdout is only for the results, everything else goes to stderr
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        out.flush();
+        System.setOut(System.err);
+
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(System.in));
+        while (true) {
+            FernFlowerSettings settings;
+            try {
+                settings = (FernFlowerSettings) in.readObject();
+            } catch (EOFException e) {
+                return;
+            }
+
+            resetPeakMemory();
+            long start = System.nanoTime();
+            Throwable error = null;
+            try {
+                runFernFlower(settings);
+            } catch (Throwable t) {
+                error = t;
+            }
+
+            DecompileResult result = new DecompileResult(error, (System.nanoTime() - start) / 1000000, getPeakMemory());
+            out.writeObject(result);
+            out.flush();
+            out.reset();
+
+            if (!result.isReusable()) {
+                System.exit(1);
+            }
         }
-        FernFlowerSettings settings = readSettings(data);
-        runFernFlower(settings);
     }
-    
-    @SuppressWarnings("serial")
-    private static FernFlowerSettings readSettings(File data) throws IOException
-    {
-        return ResourceGroovyMethods.withObjectInputStream(data, new Closure<FernFlowerSettings>(FernFlowerInvoker.class, FernFlowerInvoker.class) {
-            @Override
-            public FernFlowerSettings call(Object... args)
-            {
-                ObjectInputStream in = (ObjectInputStream) args[0];
-                try {
-                    return (FernFlowerSettings) in.readObject();
-                } catch (Exception e) {
-                    // never returns, only throws
-                    return (FernFlowerSettings) throwRuntimeException(e);
+
+    private static void resetPeakMemory() {
+        try {
+            // 5 resets the peak RSS
+            Files.write(PROC_CLEAR_REFS.toPath(), "5".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | UnsupportedOperationException e) {
+            // not linux, the heap peak will have to do
+        }
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    private static long getPeakMemory() {
+        if (PROC_STATUS.exists()) {
+            try {
+                List<String> lines = Files.readAllLines(PROC_STATUS.toPath(), StandardCharsets.UTF_8);
+                for (String line : lines) {
+                    if (line.startsWith("VmHWM:")) {
+                        // VmHWM:    123456 kB
+                        return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+                    }
                 }
+            } catch (IOException | NumberFormatException e) {
+                // fall back to the heap
+            }
+        }
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
             }
-        });
+        }
+        return peak > 0 ? peak : -1;
     }
 
     public static void runFernFlower(FernFlowerSettings settings) throws IOException {
-        PrintStreamLogger logger = new PrintStreamLogger(new PrintStream(settings.getTaskLogFile()));
-        BaseDecompiler decompiler = new BaseDecompiler(new ByteCodeProvider(), new ArtifactSaver(settings.getCacheDirectory()), settings.getMapOptions(), logger);
+        // the worker lives on after this, so the log has to be closed
+        try (PrintStream log = new PrintStream(settings.getTaskLogFile())) {
+            PrintStreamLogger logger = new PrintStreamLogger(log);
 
-        decompiler.addSpace(settings.getJarFrom(), true);
-        for (File library : settings.getClasspath()) {
-            decompiler.addSpace(library, false);
-        }
+            if (settings.getClassCache() != null) {
+                new IncrementalDecompiler(settings, logger).decompile();
+                return;
+            }
+
+            BaseDecompiler decompiler = new BaseDecompiler(new ByteCodeProvider(), new ArtifactSaver(settings.getCacheDirectory()), settings.getMapOptions(), logger);
 
-        decompiler.decompileContext();
+            decompiler.addSpace(settings.getJarFrom(), true);
+            for (File library : settings.getClasspath()) {
+                decompiler.addSpace(library, false);
+            }
+
+            decompiler.decompileContext();
+        }
     }
 
 }
@@ -36,8 +36,16 @@ public class FernFlowerSettings implements Serializable {
     // note: while this field is String->Object, realistically only Strings
     // should be entered.
     private final Map<String, Object> mapOptions;
+    // null unless decompiling incrementally
+    private final File classCache;
+    private final int threads;
 
     public FernFlowerSettings(File cacheDirectory, File jarFrom, File jarTo, File taskLogFile, Set<File> classpath, Map<String, Object> mapOptions)
+    {
+        this(cacheDirectory, jarFrom, jarTo, taskLogFile, classpath, mapOptions, null, 1);
+    }
+
+    public FernFlowerSettings(File cacheDirectory, File jarFrom, File jarTo, File taskLogFile, Set<File> classpath, Map<String, Object> mapOptions, File classCache, int threads)
     {
         this.cacheDirectory = cacheDirectory;
         this.jarFrom = jarFrom;
@@ -45,6 +53,8 @@ public class FernFlowerSettings implements Serializable {
         this.taskLogFile = taskLogFile;
         this.classpath = classpath;
         this.mapOptions = mapOptions;
+        this.classCache = classCache;
+        this.threads = threads;
     }
 
     public File getCacheDirectory()
@@ -77,10 +87,23 @@ public class FernFlowerSettings implements Serializable {
         return mapOptions;
     }
 
+    /**
+     * @return The directory decompiled classes are cached in, or null to decompile the whole jar every time
+     */
+    public File getClassCache()
+    {
+        return classCache;
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
     @Override
     public String toString()
     {
-        return "FernFlowerSettings[cacheDirectory=" + cacheDirectory + ",jarFrom=" + jarFrom + ",jarTo=" + jarTo + ",taskLogFile=" + taskLogFile + ",classpath=" + classpath + ",mapOptions=" + mapOptions + "]";
+        return "FernFlowerSettings[cacheDirectory=" + cacheDirectory + ",jarFrom=" + jarFrom + ",jarTo=" + jarTo + ",taskLogFile=" + taskLogFile + ",classpath=" + classpath + ",mapOptions=" + mapOptions + ",classCache=" + classCache + ",threads=" + threads + "]";
     }
 
 }
@@ -0,0 +1,534 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.tasks.fernflower;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import net.minecraftforge.gradle.util.ParallelUtil;
+import org.jetbrains.java.decompiler.main.DecompilerContext;
+import org.jetbrains.java.decompiler.main.decompiler.BaseDecompiler;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Decompiles a jar one top level class at a time, caching the source of each class by the hash of its bytecode.
+ * Only the classes that are not in the cache yet are given to FernFlower, split across several workers.
+ */
+class IncrementalDecompiler {
+    // bump if the same key could now decompile to something else
+    private static final int CACHE_VERSION = 2;
+    // about what one worker needs to hold the minecraft jar and its libraries
+    private static final long WORKER_MEMORY = 1024L * 1024 * 1024;
+    // cached classes not used for this long are deleted
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(30);
+    private static final long CLEAN_EVERY = TimeUnit.DAYS.toMillis(1);
+    // only worth marking a class as used again every so often
+    private static final long TOUCH_AFTER = TimeUnit.DAYS.toMillis(1);
+    // libraries rarely change, so dont hash them again for every decompile in the same daemon
+    private static final Map<String, String> LIBRARY_HASHES = new ConcurrentHashMap<String, String>();
+
+    private final FernFlowerSettings settings;
+    private final IFernflowerLogger logger;
+
+    IncrementalDecompiler(FernFlowerSettings settings, IFernflowerLogger logger) {
+        this.settings = settings;
+        this.logger = logger;
+    }
+
+    public void decompile() throws IOException {
+        Map<String, ClassInfo> classes = Maps.newLinkedHashMap();
+        List<ZipEntry> others = Lists.newArrayList();
+        Manifest manifest;
+
+        try (JarFile jar = new JarFile(settings.getJarFrom())) {
+            manifest = jar.getManifest();
+            for (ZipEntry entry : Collections.list(jar.entries())) {
+                if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        ClassInfo info = new ClassInfo(entry.getName(), ByteStreams.toByteArray(in));
+                        classes.put(info.name, info);
+                    }
+                } else {
+                    others.add(entry);
+                }
+            }
+        }
+
+        Map<String, Group> groups = group(classes);
+        String base = baseKey(classes);
+
+        long now = System.currentTimeMillis();
+        List<Group> missing = Lists.newArrayList();
+        for (Group group : groups.values()) {
+            group.key = group.key(base, classes);
+            File cached = getCacheFile(group.key);
+            group.outputs = readCache(cached);
+            if (group.outputs == null) {
+                missing.add(group);
+            } else if (cached.lastModified() < now - TOUCH_AFTER) {
+                // marks it as used, so its not cleaned up
+                cached.setLastModified(now);
+            }
+        }
+
+        logger.writeMessage("Decompiling " + missing.size() + " of " + groups.size() + " classes, the rest are cached", IFernflowerLogger.Severity.INFO);
+        if (!missing.isEmpty()) {
+            decompile(missing);
+        }
+
+        assemble(manifest, others, groups.values());
+        cleanCache(settings.getClassCache(), now);
+    }
+
+    /**
+     * Deletes the classes no decompile has used for a while, at most once a day.
+     */
+    static void cleanCache(File cache, long now) throws IOException {
+        File marker = new File(cache, "lastCleaned");
+        if (marker.lastModified() > now - CLEAN_EVERY) {
+            return;
+        }
+
+        File[] dirs = cache.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                File[] files = dir.listFiles();
+                if (files == null) {
+                    continue;
+                }
+
+                for (File file : files) {
+                    // temp files are left behind by builds that died
+                    long maxAge = file.getName().endsWith(".tmp") ? CLEAN_EVERY : MAX_AGE;
+                    if (file.lastModified() < now - maxAge) {
+                        file.delete();
+                    }
+                }
+                dir.delete(); // only if its empty
+            }
+        }
+
+        com.google.common.io.Files.touch(marker);
+        marker.setLastModified(now);
+    }
+
+    /**
+     * Puts every class with the outermost class it is nested in, as FernFlower writes them all into one file.
+     */
+    static Map<String, Group> group(Map<String, ClassInfo> classes) {
+        Map<String, Group> groups = Maps.newLinkedHashMap();
+        for (ClassInfo info : classes.values()) {
+            ClassInfo root = info;
+            // the limit is just in case of broken circular nesting
+            for (int i = 0; i < classes.size() && root.outer != null && classes.containsKey(root.outer); i++) {
+                root = classes.get(root.outer);
+            }
+
+            Group group = groups.get(root.name);
+            if (group == null) {
+                group = new Group(root.name);
+                groups.put(root.name, group);
+            }
+            group.members.add(info);
+        }
+        return groups;
+    }
+
+    /**
+     * Everything that goes into the key of every class.
+     */
+    private String baseKey(Map<String, ClassInfo> classes) throws IOException {
+        Hasher hasher = Hashing.sha1().newHasher();
+        hasher.putInt(CACHE_VERSION);
+        hasher.putString(new TreeMap<String, Object>(settings.getMapOptions()).toString(), Charsets.UTF_8);
+
+        // the decompiler itself, named by the jar its in
+        hasher.putString(String.valueOf(BaseDecompiler.class.getProtectionDomain().getCodeSource()), Charsets.UTF_8);
+
+        List<File> libraries = Lists.newArrayList(settings.getClasspath());
+        Collections.sort(libraries);
+        for (File library : libraries) {
+            hasher.putString(library.getName(), Charsets.UTF_8).putString(hashLibrary(library), Charsets.UTF_8);
+        }
+
+        // which names are taken changes how other classes are imported
+        List<String> names = Lists.newArrayList(classes.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            hasher.putString(name, Charsets.UTF_8);
+        }
+
+        return hasher.hash().toString();
+    }
+
+    /**
+     * The hash of the contents of a library, only hashed again if the file looks like it changed.
+     */
+    private static String hashLibrary(File library) throws IOException {
+        if (!library.isFile()) {
+            return "missing";
+        }
+
+        String stamp = library.getAbsolutePath() + ':' + library.length() + ':' + library.lastModified();
+        String hash = LIBRARY_HASHES.get(stamp);
+        if (hash == null) {
+            hash = com.google.common.io.Files.hash(library, Hashing.sha1()).toString();
+            LIBRARY_HASHES.put(stamp, hash);
+        }
+        return hash;
+    }
+
+    private File getCacheFile(String key) {
+        return new File(settings.getClassCache(), key.substring(0, 2) + "/" + key);
+    }
+
+    private void decompile(List<Group> missing) throws IOException {
+        int workers = (int) Math.min(Math.min(settings.getThreads(), missing.size()), Runtime.getRuntime().maxMemory() / WORKER_MEMORY);
+        workers = Math.max(1, workers);
+
+        // biggest first, each onto the smallest chunk, so the workers finish at about the same time
+        Collections.sort(missing, new Comparator<Group>() {
+            @Override
+            public int compare(Group o1, Group o2) {
+                return Long.compare(o2.size(), o1.size());
+            }
+        });
+
+        List<List<Group>> chunks = Lists.newArrayList();
+        long[] sizes = new long[workers];
+        for (int i = 0; i < workers; i++) {
+            chunks.add(Lists.<Group>newArrayList());
+        }
+        for (Group group : missing) {
+            int smallest = 0;
+            for (int i = 1; i < workers; i++) {
+                if (sizes[i] < sizes[smallest]) {
+                    smallest = i;
+                }
+            }
+            chunks.get(smallest).add(group);
+            sizes[smallest] += group.size();
+        }
+
+        if (workers == 1) {
+            new Worker(0, chunks.get(0)).call();
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Void>> futures = Lists.newArrayList();
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(new Worker(i, chunks.get(i))));
+            }
+
+            for (Future<Void> future : futures) {
+                ParallelUtil.getResult(future);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes the output jar the same way FernFlower would, from the cached and freshly decompiled classes.
+     */
+    private void assemble(Manifest manifest, List<ZipEntry> others, Iterable<Group> groups) {
+        File jarTo = settings.getJarTo();
+        String name = jarTo.getName();
+
+        DecompilerContext.initContext(settings.getMapOptions(), logger);
+        try {
+            ArtifactSaver saver = new ArtifactSaver(jarTo.getParentFile());
+            saver.createArchive("", name, manifest);
+
+            for (ZipEntry entry : others) {
+                if (entry.isDirectory()) {
+                    saver.saveDirEntry("", name, entry.getName());
+                } else if (manifest == null || !JarFile.MANIFEST_NAME.equalsIgnoreCase(entry.getName())) {
+                    saver.copyEntry(settings.getJarFrom().getAbsolutePath(), "", name, entry.getName());
+                }
+            }
+
+            for (Group group : groups) {
+                for (Map.Entry<String, String> e : group.outputs.entrySet()) {
+                    saver.saveClassEntry("", name, null, e.getKey(), e.getValue());
+                }
+            }
+
+            saver.closeArchive("", name);
+        } finally {
+            DecompilerContext.setCurrentContext(null);
+        }
+    }
+
+    private static Map<String, String> readCache(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Map<String, String> outputs = Maps.newLinkedHashMap();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String entry = in.readUTF();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                outputs.put(entry, new String(data, Charsets.UTF_8));
+            }
+            return outputs;
+        } catch (IOException e) {
+            // broken, so just decompile it again
+            return null;
+        }
+    }
+
+    private static void writeCache(File file, Map<String, String> outputs) throws IOException {
+        file.getParentFile().mkdirs();
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(outputs.size());
+            for (Map.Entry<String, String> e : outputs.entrySet()) {
+                byte[] data = e.getValue().getBytes(Charsets.UTF_8);
+                out.writeUTF(e.getKey());
+                out.writeInt(data.length);
+                out.write(data);
+            }
+        }
+
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Decompiles its chunk of classes, with the rest of the jar as a library so everything still resolves.
+     */
+    private class Worker implements Callable<Void> {
+        private final int index;
+        private final List<Group> chunk;
+
+        private Worker(int index, List<Group> chunk) {
+            this.index = index;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            File dir = new File(settings.getCacheDirectory(), "chunk" + index);
+            File outDir = new File(dir, "out");
+            File jar = new File(dir, "chunk.jar");
+            outDir.mkdirs();
+
+            try {
+                try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(jar)))) {
+                    for (Group group : chunk) {
+                        for (ClassInfo info : group.members) {
+                            out.putNextEntry(new ZipEntry(info.entry));
+                            out.write(info.data);
+                            out.closeEntry();
+                        }
+                    }
+                }
+
+                Map<String, String> collected = Maps.newHashMap();
+                BaseDecompiler decompiler = new BaseDecompiler(new ByteCodeProvider(), new ArtifactSaver(outDir, collected), settings.getMapOptions(), logger);
+
+                // own classes are added last, so they replace their copies from the full jar
+                decompiler.addSpace(settings.getJarFrom(), false);
+                decompiler.addSpace(jar, true);
+                for (File library : settings.getClasspath()) {
+                    decompiler.addSpace(library, false);
+                }
+
+                decompiler.decompileContext();
+
+                for (Group group : chunk) {
+                    Map<String, String> outputs = Maps.newLinkedHashMap();
+                    for (ClassInfo info : group.members) {
+                        String entry = info.name + ".java";
+                        if (collected.containsKey(entry)) {
+                            outputs.put(entry, collected.get(entry));
+                        }
+                    }
+
+                    group.outputs = outputs;
+                    if (!outputs.isEmpty()) {
+                        writeCache(getCacheFile(group.key), outputs);
+                    }
+                }
+            } finally {
+                jar.delete();
+                new File(outDir, jar.getName()).delete();
+            }
+
+            return null;
+        }
+    }
+
+    static class Group {
+        final String name;
+        final List<ClassInfo> members = Lists.newArrayList();
+        String key;
+        Map<String, String> outputs;
+
+        Group(String name) {
+            this.name = name;
+        }
+
+        long size() {
+            long size = 0;
+            for (ClassInfo info : members) {
+                size += info.data.length;
+            }
+            return size;
+        }
+
+        /**
+         * The bytecode of the class and everything nested in it, and of every class in the jar they extend, however far up.
+         */
+        String key(String base, Map<String, ClassInfo> classes) {
+            List<ClassInfo> sorted = Lists.newArrayList(members);
+            Collections.sort(sorted, new Comparator<ClassInfo>() {
+                @Override
+                public int compare(ClassInfo o1, ClassInfo o2) {
+                    return o1.name.compareTo(o2.name);
+                }
+            });
+
+            Hasher hasher = Hashing.sha1().newHasher();
+            hasher.putString(base, Charsets.UTF_8);
+            for (ClassInfo info : sorted) {
+                hasher.putString(info.name, Charsets.UTF_8).putBytes(info.data);
+
+                for (String parent : supertypes(info, classes)) {
+                    hasher.putString(parent, Charsets.UTF_8).putString(classes.get(parent).hash(), Charsets.UTF_8);
+                }
+            }
+            return hasher.hash().toString();
+        }
+
+        /**
+         * Every class and interface in the jar the class inherits from, sorted.
+         */
+        private static Set<String> supertypes(ClassInfo info, Map<String, ClassInfo> classes) {
+            Set<String> found = Sets.newTreeSet();
+            Deque<ClassInfo> queue = new ArrayDeque<ClassInfo>();
+            queue.add(info);
+            while (!queue.isEmpty()) {
+                for (String parent : queue.poll().parents) {
+                    ClassInfo parentInfo = classes.get(parent);
+                    if (parentInfo != null && found.add(parent)) {
+                        queue.add(parentInfo);
+                    }
+                }
+            }
+            return found;
+        }
+    }
+
+    static class ClassInfo extends ClassVisitor {
+        final String entry;
+        final byte[] data;
+        final List<String> parents = Lists.newArrayList();
+        String name;
+        String outer;
+        private String hash;
+
+        ClassInfo(String entry, byte[] data) {
+            super(Opcodes.ASM6);
+            this.entry = entry;
+            this.data = data;
+            this.name = entry.substring(0, entry.length() - ".class".length());
+            new ClassReader(data).accept(this, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            if (superName != null) {
+                parents.add(superName);
+            }
+            if (interfaces != null) {
+                Collections.addAll(parents, interfaces);
+            }
+        }
+
+        @Override
+        public void visitOuterClass(String owner, String name, String desc) {
+            // local and anonymous classes
+            outer = owner;
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            if (name.equals(this.name) && outerName != null) {
+                outer = outerName;
+            }
+        }
+
+        String hash() {
+            if (hash == null) {
+                hash = Hashing.sha1().hashBytes(data).toString();
+            }
+            return hash;
+        }
+    }
+}
@@ -21,11 +21,13 @@ package net.minecraftforge.gradle.user;
 
 import java.io.Serializable;
 
+@SuppressWarnings("serial")
 public interface ReobfTransformer extends Serializable
 {
 
     /**
-     * Called for each class to be reobfuscated
+     * Called for each class to be reobfuscated, one class at a time on the task thread
+     * unless the transformer says it is {@link #isThreadSafe() thread safe}
      *
      * <em>Don't use {@link org.objectweb.asm.ClassReader#EXPAND_FRAMES EXPAND_FRAMES}</em>
      *
@@ -34,4 +36,15 @@ public interface ReobfTransformer extends Serializable
      * @return The modified class bytes
      */
     public abstract byte[] transform(byte[] data);
+
+    /**
+     * Opts in to {@link #transform(byte[])} being called for several classes at once, from other threads.
+     * Classes are only transformed in parallel when every transformer of the stage opts in.
+     *
+     * @return TRUE if the transformer is safe to call from any thread
+     */
+    public default boolean isThreadSafe()
+    {
+        return false;
+    }
 }
@@ -0,0 +1,356 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.user;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import net.minecraftforge.gradle.common.Constants;
+import net.minecraftforge.gradle.tasks.AbstractEditJarTask;
+import net.minecraftforge.gradle.tasks.RemapSources;
+import net.minecraftforge.gradle.util.ParallelUtil;
+import net.minecraftforge.gradle.util.mcp.McpMappings;
+import net.minecraftforge.gradle.util.zip.RawZipFile;
+import net.minecraftforge.gradle.util.zip.RawZipOutput;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputFiles;
+import org.gradle.api.tasks.TaskAction;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+/**
+ * Deobfuscates the binaries and remaps the sources of every deobfCompile and deobfProvided artifact at once.
+ * Results are kept in a cache shared by every project on the machine, keyed by the hash of the artifact and of the mappings,
+ * so an artifact is only ever deobfuscated once for any given mappings.
+ */
+public class TaskDeobfDeps extends DefaultTask
+{
+    // bump if what is done to the artifacts changes
+    private static final String FORMAT = "1";
+
+    private static final Logger LOGGER = Logging.getLogger(TaskDeobfDeps.class);
+
+    // cached artifacts not used for this long are deleted
+    private static final long MAX_AGE      = TimeUnit.DAYS.toMillis(30);
+    private static final long CLEAN_EVERY  = TimeUnit.DAYS.toMillis(1);
+    // only worth marking an artifact as used again every so often
+    private static final long TOUCH_AFTER  = TimeUnit.DAYS.toMillis(1);
+
+    @InputFile
+    private Object methodCsv;
+
+    @InputFile
+    private Object fieldCsv;
+
+    @InputFile
+    private Object paramCsv;
+
+    private final List<Job> jobs = Lists.newArrayList();
+
+    // these dont change the output, so they are not inputs
+    private Object cacheDir;
+    private int threads = ParallelUtil.DEFAULT_THREADS;
+
+    @TaskAction
+    public void doTask() throws IOException
+    {
+        if (jobs.isEmpty())
+            return;
+
+        final McpMappings mappings = McpMappings.load(getProject(), getMethodCsv(), getFieldCsv(), getParamCsv());
+        final File cache = getCacheDir();
+
+        ExecutorService executor = ParallelUtil.newExecutor(Math.min(getThreads(), jobs.size()));
+        try
+        {
+            List<Future<Boolean>> results = Lists.newArrayList();
+            for (final Job job : jobs)
+            {
+                final File output = getProject().file(job.out);
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws IOException
+                    {
+                        return job.run(cache, mappings, output);
+                    }
+                }));
+            }
+
+            int cached = 0;
+            for (Future<Boolean> result : results)
+            {
+                if (ParallelUtil.getResult(result))
+                    cached++;
+            }
+            getLogger().info("Deobfuscated {} dependency artifacts, {} of them were already cached", jobs.size(), cached);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        cleanCache(cache, System.currentTimeMillis());
+    }
+
+    /**
+     * Deletes the artifacts no build has used for a while, at most once a day.
+     */
+    static void cleanCache(File cache, long now) throws IOException
+    {
+        File marker = new File(cache, "lastCleaned");
+        if (marker.lastModified() > now - CLEAN_EVERY)
+            return;
+
+        File[] dirs = cache.listFiles();
+        if (dirs != null)
+        {
+            for (File dir : dirs)
+            {
+                File[] files = dir.listFiles();
+                if (files == null)
+                    continue;
+
+                for (File file : files)
+                {
+                    // temp files are left behind by builds that died
+                    long maxAge = file.getName().endsWith(".tmp") ? CLEAN_EVERY : MAX_AGE;
+                    if (file.lastModified() < now - maxAge)
+                        file.delete();
+                }
+                dir.delete(); // only if its empty
+            }
+        }
+
+        Files.touch(marker);
+        marker.setLastModified(now);
+    }
+
+    /**
+     * Renames the SRG names in every source file of a jar, adding javadocs where there are any.
+     * Everything else but META-INF is copied as it is.
+     */
+    static void remapSources(File input, File output, McpMappings mappings) throws IOException
+    {
+        output.getParentFile().mkdirs();
+
+        try (RawZipFile zip = new RawZipFile(input);
+             RawZipOutput out = new RawZipOutput(output))
+        {
+            Set<String> seen = Sets.newHashSet();
+            for (RawZipFile.Entry entry : zip.getEntries())
+            {
+                if (entry.getName().contains("META-INF"))
+                    continue;
+
+                if (!seen.add(entry.getName()))
+                {
+                    LOGGER.debug("Duplicate zip entry " + entry.getName() + " in " + input + " writing " + output);
+                    continue;
+                }
+
+                if (entry.isDirectory() || !AbstractEditJarTask.isSourceFile(entry.getName()))
+                {
+                    out.copy(entry, zip.getRaw(entry));
+                    continue;
+                }
+
+                String source = new String(zip.getBytes(entry), Constants.CHARSET);
+                source = RemapSources.remap(source, mappings.getMethods()::get, mappings.getFields()::get, mappings.getParams()::get, mappings.getMethodDocs()::get, mappings.getFieldDocs()::get);
+                out.write(entry.getName(), source.getBytes(Constants.CHARSET), entry.getDosTime());
+            }
+        }
+    }
+
+    /**
+     * Deobfuscates the classes of a binary artifact into the given file.
+     */
+    public void addBinary(File artifact, Object out)
+    {
+        jobs.add(new Job(artifact, out, false));
+    }
+
+    /**
+     * Remaps the sources of a sources artifact into the given file.
+     */
+    public void addSources(File artifact, Object out)
+    {
+        jobs.add(new Job(artifact, out, true));
+    }
+
+    @InputFiles
+    public FileCollection getArtifacts()
+    {
+        List<File> files = Lists.newArrayList();
+        for (Job job : jobs)
+            files.add(job.artifact);
+        return getProject().files(files);
+    }
+
+    @OutputFiles
+    public FileCollection getOutJars()
+    {
+        List<Object> files = Lists.newArrayList();
+        for (Job job : jobs)
+            files.add(job.out);
+        return getProject().files(files);
+    }
+
+    public File getMethodCsv()
+    {
+        return getProject().file(methodCsv);
+    }
+
+    public void setMethodCsv(Object methodCsv)
+    {
+        this.methodCsv = methodCsv;
+    }
+
+    public File getFieldCsv()
+    {
+        return getProject().file(fieldCsv);
+    }
+
+    public void setFieldCsv(Object fieldCsv)
+    {
+        this.fieldCsv = fieldCsv;
+    }
+
+    public File getParamCsv()
+    {
+        return getProject().file(paramCsv);
+    }
+
+    public void setParamCsv(Object paramCsv)
+    {
+        this.paramCsv = paramCsv;
+    }
+
+    /**
+     * @return The directory deobfuscated artifacts are cached in, shared by every project
+     */
+    public File getCacheDir()
+    {
+        if (cacheDir == null)
+            return new File(getProject().getGradle().getGradleUserHomeDir(), "caches/minecraft/deobfedDepsCache");
+        return getProject().file(cacheDir);
+    }
+
+    public void setCacheDir(Object cacheDir)
+    {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * @return The number of artifacts to deobfuscate at once
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    private static class Job
+    {
+        private final File    artifact;
+        private final Object  out;
+        private final boolean sources;
+
+        private Job(File artifact, Object out, boolean sources)
+        {
+            this.artifact = artifact;
+            this.out = out;
+            this.sources = sources;
+        }
+
+        /**
+         * @return TRUE if it was already in the cache
+         */
+        private boolean run(File cache, McpMappings mappings, File output) throws IOException
+        {
+            String key = Constants.hash(FORMAT + (sources ? ":sources:" : ":binary:") + Constants.hash(artifact) + ":" + mappings.getHash());
+            File cached = new File(cache, key.substring(0, 2) + "/" + key + ".jar");
+
+            boolean hit = cached.isFile();
+            if (!hit)
+            {
+                cached.getParentFile().mkdirs();
+                File temp = File.createTempFile(key, ".tmp", cached.getParentFile());
+                try
+                {
+                    if (sources)
+                        remapSources(artifact, temp, mappings);
+                    else
+                        TaskSingleDeobfBin.deobfJar(artifact, temp, mappings.getMethods(), mappings.getFields());
+
+                    // another build may have just done the same, its the same either way.
+                    try
+                    {
+                        java.nio.file.Files.move(temp.toPath(), cached.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    catch (AtomicMoveNotSupportedException e)
+                    {
+                        java.nio.file.Files.move(temp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                finally
+                {
+                    temp.delete();
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            if (hit && cached.lastModified() < now - TOUCH_AFTER)
+            {
+                // marks it as used, so its not cleaned up
+                cached.setLastModified(now);
+            }
+
+            // the maven repo the project depends on is keyed by artifact only, so may hold another mapping's output.
+            // the copy gets the time of the cached file, so an unchanged one can be told apart without reading it
+            if (!output.isFile() || output.length() != cached.length() || output.lastModified() != cached.lastModified())
+            {
+                Constants.copyFile(cached, output);
+                output.setLastModified(cached.lastModified());
+            }
+
+            return hit;
+        }
+    }
+}
@@ -19,36 +19,49 @@
  */
 package net.minecraftforge.gradle.user;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.Date;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
 import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import org.gradle.api.DefaultTask;
 import org.gradle.api.tasks.TaskAction;
 import com.google.common.base.Charsets;
 import com.google.common.collect.Maps;
-import com.google.common.io.ByteStreams;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
 import net.minecraftforge.gradle.common.Constants;
 import net.minecraftforge.gradle.util.AnnotationUtils;
 import net.minecraftforge.gradle.util.AnnotationUtils.ASMInfo;
 import net.minecraftforge.gradle.util.AnnotationUtils.Annotation;
+import net.minecraftforge.gradle.util.ParallelUtil;
+import net.minecraftforge.gradle.util.zip.RawZipFile;
+import net.minecraftforge.gradle.util.zip.RawZipOutput;
 
 public class TaskExtractAnnotations extends DefaultTask
 {
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final String ANNOTATION_CACHE = "META-INF/fml_cache_annotation.json";
+    private static final String VERSION_CACHE = "META-INF/fml_cache_class_versions.json";
+    private static final String SCAN_HEADER = "FG-ANNOTATIONS 1";
 
     private Object jar;
 
+    private int threads = ParallelUtil.DEFAULT_THREADS;
+
     public TaskExtractAnnotations()
     {
         this.getOutputs().upToDateWhen(Constants.CALL_FALSE);
@@ -59,84 +72,237 @@ public class TaskExtractAnnotations extends DefaultTask
     {
         try { //Temporary for now, so we dont break people's builds... at least... we shouldn't.
         File out = getJar();
-        File tempIn = File.createTempFile("input", ".jar", getTemporaryDir());
         File tempOut = File.createTempFile("output", ".jar", getTemporaryDir());
-        tempIn.deleteOnExit();
         tempOut.deleteOnExit();
 
-        Constants.copyFile(out, tempIn); // copy the to-be-output jar to the temporary input location. because output == input
+        // what every class scanned to last time, keyed on the hash of its bytes
+        File cacheFile = new File(getTemporaryDir(), "scanned.bin");
+        Map<String, Scanned> cache = readCache(cacheFile);
+
+        Map<String, Scanned> scanned = processJar(out, tempOut, cache); // output == input, so its written aside first
 
-        processJar(tempIn, tempOut);
+        // This is the only 'destructive' line, IF we do error on here. then something is screwy... If we error above then it'd be just like this never run.
+        try
+        {
+            java.nio.file.Files.move(tempOut.toPath(), out.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            java.nio.file.Files.move(tempOut.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
 
-        Constants.copyFile(tempOut, out);// This is the only 'destructive' line, IF we do error on here. then something is screwy... If we error above then it'd be just like this never run.
-        tempOut.delete();
+        try
+        {
+            writeCache(cacheFile, scanned);
+        }
+        catch (IOException e)
+        {
+            // its only a cache
+            getLogger().debug("Could not write annotation cache {}", cacheFile, e);
+        }
         } catch (IOException e) {
             this.getProject().getLogger().error("Error while building FML annotations cache: " + e.getMessage(), e);
         }
     }
 
-    private void processJar(File input, File output) throws IOException
+    /**
+     * @return What each class scanned to, keyed on class name
+     */
+    private Map<String, Scanned> processJar(File input, File output, Map<String, Scanned> cache) throws IOException
     {
-        Map<String, ASMInfo> asm_info = Maps.newTreeMap(); //Tree map because I like sorted outputs.
-        Map<String, Integer> class_versions = Maps.newTreeMap();
+        final Map<String, Scanned> scanned = Maps.newTreeMap(); //Tree map because I like sorted outputs.
+        int rescanned = 0;
+        int newest = RawZipOutput.toDosTime(0);
 
-        try (ZipFile in = new ZipFile(input);
-             ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(output))))
+        ExecutorService executor = ParallelUtil.newExecutor(getThreads());
+        try (RawZipFile in = new RawZipFile(input);
+             RawZipOutput out = new RawZipOutput(output))
         {
-            for (ZipEntry e : Collections.list(in.entries()))
-            {
-                if (e.isDirectory())
+            ParallelUtil.OrderedWindow<String, Scanned> window = new ParallelUtil.OrderedWindow<String, Scanned>(executor, getThreads(), new ParallelUtil.ResultWriter<String, Scanned>() {
+                @Override
+                public void write(String name, Scanned result)
                 {
-                    out.putNextEntry(e);
-                    continue;
+                    scanned.put(name, result);
                 }
+            });
 
-                ZipEntry n = new ZipEntry(e.getName());
-                n.setTime(e.getTime());
-                out.putNextEntry(n);
+            for (RawZipFile.Entry e : in.getEntries())
+            {
+                // made again below, from whats in the jar now
+                if (e.getName().equals(ANNOTATION_CACHE) || e.getName().equals(VERSION_CACHE))
+                    continue;
 
-                byte[] data = ByteStreams.toByteArray(in.getInputStream(e));
-                out.write(data);
+                newest = Math.max(newest, e.getDosTime());
+                out.copy(e, in.getRaw(e));
 
                 // correct source name
-                if (e.getName().endsWith(".class"))
+                if (!e.isDirectory() && e.getName().endsWith(".class"))
+                {
+                    String name = e.getName().substring(0, e.getName().length() - 6);
+                    window.add(name, new ScanJob(name, in.getBytes(e), cache));
+                }
+            }
+            window.finish();
+
+            JsonObject asm_info = new JsonObject();
+            JsonObject class_versions = new JsonObject();
+            int subtypes = 0;
+
+            for (Scanned result : scanned.values())
+            {
+                if (!result.cached)
+                    rescanned++;
+
+                if (result.version != null)
+                    class_versions.addProperty(result.name, result.version);
+
+                if (result.json != null)
+                {
+                    // subtype ids are per class, so shift them to be unique in the whole jar
+                    JsonElement info = new JsonParser().parse(result.json);
+                    AnnotationUtils.offsetSubtypes(info, subtypes);
+                    subtypes += result.subtypes;
+                    asm_info.add(result.name, info);
+                }
+            }
+
+            if (asm_info.entrySet().size() > 0)
+            {
+                // dated like the newest thing in the jar, so the same classes make the same jar
+                out.write(ANNOTATION_CACHE, GSON.toJson(asm_info).getBytes(Charsets.UTF_8), newest);
+                out.write(VERSION_CACHE, GSON.toJson(class_versions).getBytes(Charsets.UTF_8), newest);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        getLogger().info("Scanned {} classes for annotations, {} were unchanged", rescanned, scanned.size() - rescanned);
+        return scanned;
+    }
+
+    private static final class Scanned
+    {
+        private final String  name;
+        private final String  hash;
+        private final Integer version;
+        private final String  json; // null if theres nothing to say about the class
+        private final int     subtypes;
+        private final boolean cached;
+
+        private Scanned(String name, String hash, Integer version, String json, int subtypes, boolean cached)
+        {
+            this.name = name;
+            this.hash = hash;
+            this.version = version;
+            this.json = json;
+            this.subtypes = subtypes;
+            this.cached = cached;
+        }
+    }
+
+    private static final class ScanJob implements Callable<Scanned>
+    {
+        private final String               name;
+        private final byte[]               data;
+        private final Map<String, Scanned> cache;
+
+        private ScanJob(String name, byte[] data, Map<String, Scanned> cache)
+        {
+            this.name = name;
+            this.data = data;
+            this.cache = cache;
+        }
+
+        @Override
+        public Scanned call()
+        {
+            String hash = Constants.hash(data);
+            Scanned cached = cache.get(hash);
+            if (cached != null)
+                return new Scanned(name, hash, cached.version, cached.json, cached.subtypes, true);
+
+            ASMInfo info = AnnotationUtils.processClass(data);
+            Integer version = info.version;
+            info.version = null;
+            if (info.annotations != null)
+            {
+                for (Annotation anno : info.annotations)
                 {
-                    ASMInfo info = AnnotationUtils.processClass(data);
-                    if (info != null)
+                    if (anno.values != null && anno.values.size() == 1 && anno.values.containsKey("value"))
                     {
-                        String name = e.getName().substring(0, e.getName().length() - 6);
-                        class_versions.put(name, info.version);
-                        info.version = null;
-                        if (info.annotations != null)
-                        {
-                            for (Annotation anno : info.annotations)
-                            {
-                                if (anno.values != null && anno.values.size() == 1 && anno.values.containsKey("value"))
-                                {
-                                    anno.value = anno.values.get("value");
-                                    anno.values = null;
-                                }
-                            }
-                        }
-                        if (info.annotations != null || info.interfaces != null)
-                            asm_info.put(name, info);
+                        anno.value = anno.values.get("value");
+                        anno.values = null;
                     }
                 }
             }
 
-            if (!asm_info.isEmpty())
+            String json = info.annotations != null || info.interfaces != null ? GSON.toJson(info) : null;
+            return new Scanned(name, hash, version, json, info.getSubtypeCount(), false);
+        }
+    }
+
+    private static Map<String, Scanned> readCache(File file)
+    {
+        Map<String, Scanned> cache = Maps.newHashMap();
+        if (!file.isFile())
+            return cache;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (!SCAN_HEADER.equals(in.readUTF()))
+                return cache;
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                String hash = in.readUTF();
+                Integer version = in.readBoolean() ? in.readInt() : null;
+                String json = null;
+                if (in.readBoolean())
+                {
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    json = new String(data, Charsets.UTF_8);
+                }
+                cache.put(hash, new Scanned(null, hash, version, json, in.readInt(), true));
+            }
+        }
+        catch (IOException e)
+        {
+            // everything just gets scanned again
+            cache.clear();
+        }
+
+        return cache;
+    }
+
+    private static void writeCache(File file, Map<String, Scanned> scanned) throws IOException
+    {
+        // only whats in the jar now, so it doesnt grow forever
+        Map<String, Scanned> byHash = Maps.newTreeMap();
+        for (Scanned s : scanned.values())
+            byHash.put(s.hash, s);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
+        {
+            out.writeUTF(SCAN_HEADER);
+            out.writeInt(byHash.size());
+            for (Scanned s : byHash.values())
             {
-                String data = GSON.toJson(asm_info);
-                ZipEntry cache = new ZipEntry("META-INF/fml_cache_annotation.json");
-                cache.setTime(new Date().getTime());
-                out.putNextEntry(cache);
-                out.write(data.getBytes(Charsets.UTF_8));
-
-                data = GSON.toJson(class_versions);
-                cache = new ZipEntry("META-INF/fml_cache_class_versions.json");
-                cache.setTime(new Date().getTime());
-                out.putNextEntry(cache);
-                out.write(data.getBytes(Charsets.UTF_8));
+                out.writeUTF(s.hash);
+                out.writeBoolean(s.version != null);
+                if (s.version != null)
+                    out.writeInt(s.version);
+                out.writeBoolean(s.json != null);
+                if (s.json != null)
+                {
+                    byte[] data = s.json.getBytes(Charsets.UTF_8);
+                    out.writeInt(data.length);
+                    out.write(data);
+                }
+                out.writeInt(s.subtypes);
             }
         }
     }
@@ -150,4 +316,17 @@ public class TaskExtractAnnotations extends DefaultTask
     {
         this.jar = jar;
     }
+
+    /**
+     * @return The number of threads to scan classes on
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
 }
@@ -23,15 +23,24 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+import net.minecraftforge.gradle.common.Constants;
 import net.minecraftforge.gradle.tasks.CreateStartTask;
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
+import net.minecraftforge.gradle.util.compile.CompileState;
+import net.minecraftforge.gradle.util.compile.MemoryCompiler;
+import net.minecraftforge.gradle.util.zip.RawZipFile;
+import net.minecraftforge.gradle.util.zip.RawZipOutput;
 
 import org.gradle.api.AntBuilder;
 import org.gradle.api.file.FileVisitDetails;
@@ -42,7 +51,10 @@ import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
 
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 
@@ -62,9 +74,29 @@ public class TaskRecompileMc extends CachedTask
     @OutputFile
     private Object outJar;
 
+    // javac gives the same classes either way
+    private boolean inMemory = true;
+
+    // how many compilation units the last run compiled
+    private int compiledUnits;
+
+    // recompiling dependents can cascade, past this it just compiles everything.
+    private static final int MAX_ROUNDS = 8;
+
     @TaskAction
     public void doStuff() throws IOException
     {
+        if (isInMemory())
+        {
+            if (MemoryCompiler.isAvailable())
+            {
+                compileInMemory();
+                return;
+            }
+
+            getLogger().warn("No java compiler available in this JVM, falling back to ant");
+        }
+
         File inJar = getInSources();
         File tempSrc = new File(getTemporaryDir(), "sources");
         File tempCls = new File(getTemporaryDir(), "compiled");
@@ -100,6 +132,229 @@ public class TaskRecompileMc extends CachedTask
         createOutput(outJar, inJar, tempCls, getInResources());
     }
 
+    private void compileInMemory() throws IOException
+    {
+        File inJar = getInSources();
+        File outJar = getOutJar();
+        File stateFile = new File(getTemporaryDir(), "recompile.bin");
+
+        List<String> options = Lists.newArrayList(
+                "-classpath", getProject().getConfigurations().getByName(classpath).getAsPath(),
+                "-encoding", "utf-8",
+                "-source", "1.8",
+                "-target", "1.8",
+                "-g",
+                "-nowarn",
+                "-Xpkginfo:always", // ant makes them too
+                "-proc:none");
+
+        // same osx workaround as the ant compile, java 9+ has no ext dirs
+        if (System.getProperty("java.ext.dirs") != null)
+        {
+            options.add("-extdirs");
+            options.add(getExtPath());
+        }
+
+        // sources, straight from the jar
+        Map<String, byte[]> sources = Maps.newTreeMap();
+        Map<String, Integer> times = Maps.newHashMap();
+        try (RawZipFile zip = new RawZipFile(inJar))
+        {
+            for (RawZipFile.Entry entry : zip.getEntries())
+            {
+                if (!entry.isDirectory() && entry.getName().endsWith(".java"))
+                {
+                    sources.put(entry.getName(), zip.getBytes(entry));
+                    times.put(entry.getName(), entry.getDosTime());
+                }
+            }
+        }
+
+        String key = getStateKey(options);
+        CompileState state = null;
+        try
+        {
+            state = CompileState.load(stateFile, key);
+        }
+        catch (IOException e)
+        {
+            getLogger().debug("Ignoring broken compile state {}", stateFile, e);
+        }
+
+        MemoryCompiler compiler = new MemoryCompiler(options);
+        state = compile(compiler, sources, state, key);
+
+        try
+        {
+            state.save(stateFile);
+        }
+        catch (IOException e)
+        {
+            // the next run will just compile everything
+            getLogger().debug("Could not write compile state {}", stateFile, e);
+        }
+
+        outJar.getParentFile().mkdirs();
+        createOutput(outJar, inJar, state, times, getInResources());
+    }
+
+    /**
+     * Everything that makes the classes from the last run useless when it changes.
+     */
+    private String getStateKey(List<String> options)
+    {
+        List<String> parts = Lists.newArrayList(options);
+        parts.add(System.getProperty("java.version"));
+        for (File file : getProject().getConfigurations().getByName(classpath))
+        {
+            parts.add(file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified());
+        }
+        return Constants.hash(Joiner.on('\n').join(parts));
+    }
+
+    private CompileState compile(MemoryCompiler compiler, Map<String, byte[]> sources, CompileState state, String key) throws IOException
+    {
+        Map<String, String> hashes = Maps.newTreeMap();
+        for (Map.Entry<String, byte[]> e : sources.entrySet())
+        {
+            hashes.put(e.getKey(), Constants.hash(e.getValue()));
+        }
+
+        // added or removed sources can change what names resolve to anywhere, so only edits are followed.
+        if (state != null && state.getUnits().keySet().equals(hashes.keySet()))
+        {
+            Set<String> changed = Sets.newTreeSet();
+            for (Map.Entry<String, String> e : hashes.entrySet())
+            {
+                if (!e.getValue().equals(state.getUnits().get(e.getKey())))
+                    changed.add(e.getKey());
+            }
+
+            try
+            {
+                if (compileChanged(compiler, sources, hashes, state, changed))
+                    return state;
+            }
+            catch (IOException e)
+            {
+                // let a full compile report the errors, incase its something the partial compile got wrong
+                getLogger().lifecycle("Incremental compile failed, compiling everything");
+                getLogger().debug("Incremental compile failed", e);
+            }
+        }
+
+        getLogger().info("Compiling {} sources", sources.size());
+        compiledUnits = sources.size();
+
+        state = new CompileState(key);
+        Map<String, Map<String, byte[]>> compiled = compiler.compile(getText(sources, sources.keySet()), Collections.<String, byte[]> emptyMap());
+        for (Map.Entry<String, Map<String, byte[]>> e : compiled.entrySet())
+        {
+            state.update(e.getKey(), hashes.get(e.getKey()), e.getValue());
+        }
+        return state;
+    }
+
+    /**
+     * Compiles the changed sources, and whatever uses the api they changed.
+     * @return FALSE if it cant be done incrementally, and the state is no longer usable
+     */
+    private boolean compileChanged(MemoryCompiler compiler, Map<String, byte[]> sources, Map<String, String> hashes, CompileState state, Set<String> changed) throws IOException
+    {
+        compiledUnits = 0;
+        Set<String> toCompile = changed;
+
+        for (int round = 0; !toCompile.isEmpty(); round++)
+        {
+            if (round == MAX_ROUNDS)
+                return false;
+
+            getLogger().info("Compiling {} changed sources", toCompile.size());
+            compiledUnits += toCompile.size();
+
+            Map<String, Map<String, byte[]>> compiled = compiler.compile(getText(sources, toCompile), state.getClasses(toCompile));
+
+            Set<String> apiChanged = Sets.newHashSet();
+            for (String unit : toCompile)
+            {
+                Set<String> classes = state.update(unit, hashes.get(unit), compiled.get(unit));
+                if (classes == null)
+                {
+                    getLogger().info("{} changed classes or constants, compiling everything", unit);
+                    return false;
+                }
+                apiChanged.addAll(classes);
+            }
+
+            Set<String> dependents = state.getDependents(apiChanged);
+            dependents.removeAll(toCompile);
+            toCompile = dependents;
+        }
+
+        if (compiledUnits == 0)
+            getLogger().info("Sources are unchanged, nothing to compile");
+
+        return true;
+    }
+
+    private static Map<String, String> getText(Map<String, byte[]> sources, Set<String> units)
+    {
+        Map<String, String> ret = Maps.newTreeMap();
+        for (String unit : units)
+        {
+            ret.put(unit, new String(sources.get(unit), StandardCharsets.UTF_8));
+        }
+        return ret;
+    }
+
+    private static void createOutput(File outJar, File sourceJar, CompileState state, Map<String, Integer> times, File resourceJar) throws IOException
+    {
+        Set<String> elementsAdded = Sets.newHashSet();
+
+        try (RawZipOutput out = new RawZipOutput(outJar))
+        {
+            // custom resources should override existing ones, so resources first.
+            if (resourceJar != null)
+            {
+                copyEntries(out, resourceJar, elementsAdded);
+            }
+
+            copyEntries(out, sourceJar, elementsAdded); // then the ones from the the original sources
+
+            // then the classes, dated like the source they came from
+            for (Map.Entry<String, byte[]> e : state.getClasses(Collections.<String> emptySet()).entrySet())
+            {
+                String name = e.getKey() + ".class";
+                int time = times.get(state.getUnit(e.getKey()));
+
+                for (int idx = name.indexOf('/'); idx >= 0; idx = name.indexOf('/', idx + 1))
+                {
+                    String dir = name.substring(0, idx + 1);
+                    if (elementsAdded.add(dir))
+                        out.write(dir, new byte[0], time);
+                }
+
+                if (elementsAdded.add(name))
+                    out.write(name, e.getValue(), time);
+            }
+        }
+    }
+
+    private static void copyEntries(RawZipOutput out, File jar, Set<String> elementsAdded) throws IOException
+    {
+        try (RawZipFile zip = new RawZipFile(jar))
+        {
+            for (RawZipFile.Entry entry : zip.getEntries())
+            {
+                String name = entry.getName();
+                if (name.endsWith(".java") || !elementsAdded.add(name))
+                    continue;
+
+                out.copy(entry, zip.getRaw(entry));
+            }
+        }
+    }
+
     private static String getExtPath()
     {
         String currentExtDirs = System.getProperty("java.ext.dirs");
@@ -249,6 +504,24 @@ public class TaskRecompileMc extends CachedTask
         this.classpath = classpath;
     }
 
+    /**
+     * @return TRUE if the sources are compiled in this JVM without extracting them, and only whats changed is compiled again. FALSE to use ant.
+     */
+    public boolean isInMemory()
+    {
+        return inMemory;
+    }
+
+    public void setInMemory(boolean inMemory)
+    {
+        this.inMemory = inMemory;
+    }
+
+    int getCompiledUnits()
+    {
+        return compiledUnits;
+    }
+
     public File getOutJar()
     {
         return getProject().file(outJar);
@@ -30,9 +30,9 @@ import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
-import net.minecraftforge.gradle.common.Constants;
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
+import net.minecraftforge.gradle.util.mcp.McpMappings;
 
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.OutputFile;
@@ -42,9 +42,7 @@ import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.commons.ClassRemapper;
 import org.objectweb.asm.commons.Remapper;
 
-import au.com.bytecode.opencsv.CSVReader;
 
-import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
 
 public class TaskSingleDeobfBin extends CachedTask
@@ -65,30 +63,17 @@ public class TaskSingleDeobfBin extends CachedTask
     @TaskAction
     public void doTask() throws IOException
     {
-        final Map<String, String> methods = Maps.newHashMap();
-        final Map<String, String> fields = Maps.newHashMap();
-
-        // read CSV files
-        try (CSVReader reader = Constants.getReader(getMethodCsv()))
-        {
-            for (String[] s : reader.readAll())
-            {
-                methods.put(s[0], s[1]);
-            }
-        }
-
-        try (CSVReader reader = Constants.getReader(getFieldCsv()))
-        {
-            for (String[] s : reader.readAll())
-            {
-                fields.put(s[0], s[1]);
-            }
-        }
+        McpMappings mappings = McpMappings.load(getProject(), getMethodCsv(), getFieldCsv(), null);
 
         // actually do the jar copy..
-        File input = getInJar();
-        File output = getOutJar();
+        deobfJar(getInJar(), getOutJar(), mappings.getMethods(), mappings.getFields());
+    }
 
+    /**
+     * Renames the SRG methods and fields in the classes of a jar, and strips its signatures.
+     */
+    static void deobfJar(File input, File output, Map<String, String> methods, Map<String, String> fields) throws IOException
+    {
         output.getParentFile().mkdirs();
 
         // begin reading jar
@@ -19,40 +19,49 @@
  */
 package net.minecraftforge.gradle.user;
 
-import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URLClassLoader;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.gradle.api.DefaultTask;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.tasks.TaskAction;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
-import com.google.common.io.ByteStreams;
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import groovy.lang.Closure;
-import net.md_5.specialsource.Jar;
+import net.md_5.specialsource.InheritanceMap;
 import net.md_5.specialsource.JarMapping;
 import net.md_5.specialsource.JarRemapper;
 import net.md_5.specialsource.provider.ClassLoaderProvider;
-import net.md_5.specialsource.provider.JarProvider;
+import net.md_5.specialsource.provider.InheritanceProvider;
 import net.md_5.specialsource.provider.JointProvider;
+import net.md_5.specialsource.repo.CachingRepo;
 import net.minecraftforge.gradle.common.Constants;
 import net.minecraftforge.gradle.util.GradleConfigurationException;
+import net.minecraftforge.gradle.util.ParallelUtil;
+import net.minecraftforge.gradle.util.mcp.McpMappings;
 import net.minecraftforge.gradle.util.mcp.ReobfExceptor;
+import net.minecraftforge.gradle.util.zip.RawZipFile;
+import net.minecraftforge.gradle.util.zip.RawZipOutput;
+import net.minecraftforge.gradle.util.zip.RawZipOutput.PreparedEntry;
 
 /**
  * Reobfuscates an arbitrary jar artifact.
@@ -113,6 +122,8 @@ public class TaskSingleReobf extends DefaultTask
     private List<ReobfTransformer> preTransformers   = Lists.newArrayList();
     private List<ReobfTransformer> postTransformers  = Lists.newArrayList();
 
+    private int                    threads           = ParallelUtil.DEFAULT_THREADS;
+
     public TaskSingleReobf()
     {
         super();
@@ -140,6 +151,7 @@ public class TaskSingleReobf extends DefaultTask
             exc.excConfig = getExceptorCfg();
             exc.fieldCSV = getFieldCsv();
             exc.methodCSV = getMethodCsv();
+            exc.mappings = McpMappings.load(getProject(), getMethodCsv(), getFieldCsv(), null);
             exc.doFirstThings();
             exc.buildSrg(getPrimarySrg(), srg);
         }
@@ -166,113 +178,246 @@ public class TaskSingleReobf extends DefaultTask
             }
         }
 
-        // prepare jar for reobf
-        File out = getJar(); // we will repalce the file on output
-        File tempIn = File.createTempFile("input", ".jar", getTemporaryDir());
-        tempIn.deleteOnExit();
-        Constants.copyFile(out, tempIn); // copy the to-be-output jar to the temporary input location. because output == input
-
-        // pre-transform
-        List<ReobfTransformer> transformers = getPreTransformers();
-        if (!transformers.isEmpty())
-        {
-            File transformed = File.createTempFile("preTransformed", ".jar", getTemporaryDir());
-            transformed.deleteOnExit();
-            applyExtraTransformers(tempIn, transformed, transformers);
-            tempIn.delete();
-
-            tempIn = transformed; // for later copying
-        }
-
-        // obfuscate
-        File obfuscated = File.createTempFile("obfuscated", ".jar", getTemporaryDir());
-        obfuscated.deleteOnExit();
-        applySpecialSource(tempIn, obfuscated, srg, srgLines, getSecondarySrgFiles());
-        tempIn.delete();
-
-        // post transform
-        transformers = getPostTransformers();
-        if (!transformers.isEmpty())
-        {
-            File transformed = File.createTempFile("postTransformed", ".jar", getTemporaryDir());
-            transformed.deleteOnExit();
-            applyExtraTransformers(obfuscated, transformed, transformers);
-
-            obfuscated = transformed; // for later copying
-        }
-
-        // copy to output
-        Constants.copyFile(obfuscated, out);
-        obfuscated.delete();
-    }
-
-    private void applySpecialSource(File input, File output, File srg, File extraSrg, FileCollection extraSrgFiles) throws IOException
-    {
         // load mapping
         JarMapping mapping = new JarMapping();
         mapping.loadMappings(srg);
-        mapping.loadMappings(extraSrg);
+        mapping.loadMappings(srgLines);
 
-        for (File f : extraSrgFiles)
+        for (File f : getSecondarySrgFiles())
         {
             mapping.loadMappings(f);
         }
 
-        // make remapper
-        JarRemapper remapper = new JarRemapper(null, mapping);
+        // the workers all climb the inheritance at once
+        mapping.setInheritanceMap(new SyncedInheritanceMap());
+
+        File out = getJar(); // we will replace the file on output
+        File temp = new File(out.getParentFile(), out.getName() + ".tmp");
 
-        // load jar
+        ExecutorService executor = ParallelUtil.newExecutor(getThreads());
+        // transformers that didnt opt in are run on this thread, one class at a time
+        ExecutorService preExecutor = isThreadSafe(getPreTransformers()) ? executor : MoreExecutors.newDirectExecutorService();
+        ExecutorService postExecutor = isThreadSafe(getPostTransformers()) ? executor : MoreExecutors.newDirectExecutorService();
         URLClassLoader classLoader = null;
-        try (Jar inputJar = Jar.init(input))
+        try (RawZipFile in = new RawZipFile(out))
         {
+            // pre-transform everything first, the inheritance has to be read from the transformed classes
+            Map<String, Future<byte[]>> futures = Maps.newLinkedHashMap();
+            for (RawZipFile.Entry entry : in.getEntries())
+            {
+                String name = entry.getName();
+                if (!entry.isDirectory() && name.endsWith(".class"))
+                {
+                    futures.put(name.substring(0, name.length() - 6), preExecutor.submit(new PreTransformJob(in, entry, getPreTransformers())));
+                }
+            }
+
+            Map<String, byte[]> classes = Maps.newHashMap();
+            for (Map.Entry<String, Future<byte[]>> e : futures.entrySet())
+            {
+                classes.put(e.getKey(), ParallelUtil.getResult(e.getValue()));
+            }
+
+            InputClasses inputClasses = new InputClasses(classes);
+
             // ensure that inheritance provider is used
             JointProvider inheritanceProviders = new JointProvider();
-            inheritanceProviders.add(new JarProvider(inputJar));
+            inheritanceProviders.add(inputClasses);
 
             if (classpath != null && !classpath.isEmpty())
                 inheritanceProviders.add(new ClassLoaderProvider(classLoader = new URLClassLoader(Constants.toUrls(classpath))));
 
             mapping.setFallbackInheritanceProvider(inheritanceProviders);
 
-            // remap jar
-            remapper.remapJar(inputJar, output);
+            JarRemapper remapper = new JarRemapper(null, mapping);
+
+            try (RawZipOutput output = new RawZipOutput(temp))
+            {
+                ParallelUtil.OrderedWindow<RawZipFile.Entry, PreparedEntry> window = new ParallelUtil.OrderedWindow<RawZipFile.Entry, PreparedEntry>(postExecutor, getThreads(), new ParallelUtil.ResultWriter<RawZipFile.Entry, PreparedEntry>() {
+                    @Override
+                    public void write(RawZipFile.Entry entry, PreparedEntry remapped) throws IOException
+                    {
+                        if (remapped == null)
+                        {
+                            output.copy(entry, in.getRaw(entry));
+                        }
+                        else
+                        {
+                            output.write(remapped);
+                        }
+                    }
+                });
+
+                for (RawZipFile.Entry entry : in.getEntries())
+                {
+                    String name = entry.getName();
+                    if (name.endsWith(".DSA") || name.endsWith(".SF"))
+                    {
+                        continue; // signatures wont match anymore, same as specialsource
+                    }
+
+                    if (!entry.isDirectory() && name.endsWith(".class"))
+                    {
+                        window.add(entry, new RemapJob(remapper, inputClasses, name.substring(0, name.length() - 6), entry.getDosTime(), getPostTransformers()));
+                    }
+                    else
+                    {
+                        window.add(entry, null);
+                    }
+                }
+                window.finish();
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            temp.delete();
+            throw e;
         }
         finally
         {
+            executor.shutdownNow();
+
             if (classLoader != null)
                 classLoader.close();
         }
+
+        // replace the input jar in one go
+        try
+        {
+            java.nio.file.Files.move(temp.toPath(), out.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            java.nio.file.Files.move(temp.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 
-    private void applyExtraTransformers(File inJar, File outJar, List<ReobfTransformer> transformers) throws IOException
+    private static boolean isThreadSafe(List<ReobfTransformer> transformers)
     {
-        try (ZipFile in = new ZipFile(inJar);
-             ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(outJar))))
+        for (ReobfTransformer trans : transformers)
         {
-            for (ZipEntry e : Collections.list(in.entries()))
-            {
-                if (e.isDirectory())
-                {
-                    out.putNextEntry(e);
-                    continue;
-                }
-                ZipEntry n = new ZipEntry(e.getName());
-                n.setTime(e.getTime());
-                out.putNextEntry(n);
+            if (!trans.isThreadSafe())
+                return false;
+        }
+        return true;
+    }
 
-                byte[] data = ByteStreams.toByteArray(in.getInputStream(e));
+    private static byte[] transform(byte[] data, List<ReobfTransformer> transformers)
+    {
+        for (ReobfTransformer trans : transformers)
+        {
+            data = trans.transform(data);
+        }
+        return data;
+    }
 
-                // correct source name
-                if (e.getName().endsWith(".class"))
-                {
-                    for (ReobfTransformer trans : transformers)
-                    {
-                        data = trans.transform(data);
-                    }
-                }
+    private static class PreTransformJob implements Callable<byte[]>
+    {
+        private final RawZipFile             jar;
+        private final RawZipFile.Entry       entry;
+        private final List<ReobfTransformer> transformers;
 
-                out.write(data);
-            }
+        private PreTransformJob(RawZipFile jar, RawZipFile.Entry entry, List<ReobfTransformer> transformers)
+        {
+            this.jar = jar;
+            this.entry = entry;
+            this.transformers = transformers;
+        }
+
+        @Override
+        public byte[] call() throws IOException
+        {
+            return transform(jar.getBytes(entry), transformers);
+        }
+    }
+
+    private static class RemapJob implements Callable<PreparedEntry>
+    {
+        private final JarRemapper            remapper;
+        private final InputClasses           classes;
+        private final String                 name;
+        private final int                    dosTime;
+        private final List<ReobfTransformer> transformers;
+
+        private RemapJob(JarRemapper remapper, InputClasses classes, String name, int dosTime, List<ReobfTransformer> transformers)
+        {
+            this.remapper = remapper;
+            this.classes = classes;
+            this.name = name;
+            this.dosTime = dosTime;
+            this.transformers = transformers;
+        }
+
+        @Override
+        public PreparedEntry call() throws IOException
+        {
+            byte[] data = remapper.remapClassFile(classes.getBytes(name), classes);
+            data = transform(data, transformers);
+            return RawZipOutput.prepare(remapper.map(name) + ".class", data, dosTime);
+        }
+    }
+
+    /**
+     * The pre-transformed classes of the jar, standing in for specialsource's JarRepo and JarProvider.
+     */
+    private static class InputClasses extends CachingRepo implements InheritanceProvider
+    {
+        private final Map<String, byte[]> classes;
+
+        private InputClasses(Map<String, byte[]> classes)
+        {
+            this.classes = classes;
+        }
+
+        private byte[] getBytes(String name)
+        {
+            return classes.get(name);
+        }
+
+        @Override
+        protected ClassNode findClass0(String name)
+        {
+            byte[] data = classes.get(name);
+            if (data == null)
+                return null;
+
+            ClassNode node = new ClassNode();
+            new ClassReader(data).accept(node, 0);
+            return node;
+        }
+
+        @Override
+        public Collection<String> getParents(String name)
+        {
+            ClassNode node = findClass(name);
+            if (node == null)
+                return null;
+
+            List<String> parents = Lists.newArrayList(node.interfaces);
+            if (node.superName != null)
+                parents.add(node.superName);
+            return parents;
+        }
+    }
+
+    private static class SyncedInheritanceMap extends InheritanceMap
+    {
+        @Override
+        public synchronized boolean hasParents(String className)
+        {
+            return super.hasParents(className);
+        }
+
+        @Override
+        public synchronized List<String> getParents(String className)
+        {
+            return super.getParents(className);
+        }
+
+        @Override
+        public synchronized void setParents(String className, Collection<String> parents)
+        {
+            super.setParents(className, parents);
         }
     }
 
@@ -299,6 +444,19 @@ public class TaskSingleReobf extends DefaultTask
         this.classpath = classpath;
     }
 
+    /**
+     * @return The number of threads to remap classes on
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     // SRG STUFF
     // --------------------------------------------
 
@@ -21,15 +21,31 @@ package net.minecraftforge.gradle.user;
 
 import groovy.lang.Closure;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import net.minecraftforge.gradle.common.Constants;
+import net.minecraftforge.gradle.util.ParallelUtil;
+
 import org.gradle.api.DefaultTask;
 import org.gradle.api.file.DirectoryTree;
 import org.gradle.api.file.FileCollection;
@@ -42,10 +58,14 @@ import org.gradle.api.tasks.TaskAction;
 import org.gradle.api.tasks.util.PatternSet;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 
 public class TaskSourceCopy extends DefaultTask
 {
+    private static final String STATE_HEADER = "FG-SOURCECOPY 1";
+
     @InputFiles
     SourceDirectorySet      source;
 
@@ -58,6 +78,8 @@ public class TaskSourceCopy extends DefaultTask
     @OutputDirectory
     Object             output;
 
+    private int threads = ParallelUtil.DEFAULT_THREADS;
+
     @SuppressWarnings("unchecked")
     @TaskAction
     public void doTask() throws IOException
@@ -69,27 +91,28 @@ public class TaskSourceCopy extends DefaultTask
 
         // get output
         File out = getOutput();
-        if (out.exists())
-            deleteDir(out);
-
         out.mkdirs();
         out = out.getCanonicalFile();
 
         // resolve replacements
-        HashMap<String, String> repl = new HashMap<String, String>(replacements.size());
+        Map<String, String> repl = Maps.newTreeMap();
         for (Entry<String, Object> e : replacements.entrySet())
         {
-            if (e.getKey() == null || e.getValue() == null)
+            if (e.getKey() == null || e.getValue() == null || e.getKey().isEmpty())
                 continue; // we dont deal with nulls.
             
             Object val = e.getValue();
             while (val instanceof Closure)
                 val = ((Closure<Object>) val).call();
 
-            repl.put(Pattern.quote(e.getKey()), val.toString());
+            repl.put(e.getKey(), val.toString());
         }
 
         getLogger().debug("REPLACE >> " + repl);
+        Pattern pattern = compileReplacements(repl.keySet());
+
+        // relative path -> file, later dirs win like they used to by overwriting.
+        Map<String, File> files = Maps.newTreeMap();
 
         // start traversing tree
         for (DirectoryTree dirTree : source.getSrcDirTrees())
@@ -109,33 +132,218 @@ public class TaskSourceCopy extends DefaultTask
 
             for (File file : tree)
             {
-                File dest = getDest(file, dir, out);
+                files.put(getRelative(file, dir), file);
+            }
+        }
+
+        // what was copied last time, only valid for the same replacements
+        File stateFile = new File(getTemporaryDir(), "copied.bin");
+        String key = Constants.hash(repl.toString() + includes);
+        Map<String, Copied> previous = readState(stateFile, key);
+        Map<String, Copied> copied = Maps.newTreeMap();
+        int written = 0;
+
+        ExecutorService executor = ParallelUtil.newExecutor(getThreads());
+        try
+        {
+            List<Future<Copied>> futures = Lists.newArrayListWithCapacity(files.size());
+            for (Entry<String, File> e : files.entrySet())
+            {
+                File file = e.getValue();
+                futures.add(executor.submit(new CopyJob(e.getKey(), file, new File(out, e.getKey()), isIncluded(file), previous.get(e.getKey()), pattern, repl)));
+            }
+
+            for (Future<Copied> future : futures)
+            {
+                Copied result = ParallelUtil.getResult(future);
+                copied.put(result.path, result);
+                if (result.written)
+                    written++;
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        deleteStale(out, "", copied);
+        getLogger().info("Wrote {} of {} files, the rest were unchanged", written, copied.size());
+
+        try
+        {
+            writeState(stateFile, key, copied);
+        }
+        catch (IOException e)
+        {
+            // the next run will just check every output
+            getLogger().debug("Could not write copy state {}", stateFile, e);
+        }
+    }
+
+    /**
+     * @return a pattern matching every key, the longest key wins where they overlap. null if there are none.
+     */
+    static Pattern compileReplacements(Iterable<String> keys)
+    {
+        List<String> sorted = Lists.newArrayList(keys);
+        if (sorted.isEmpty())
+            return null;
+
+        Collections.sort(sorted, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b)
+            {
+                return a.length() != b.length() ? b.length() - a.length() : a.compareTo(b);
+            }
+        });
+
+        StringBuilder buf = new StringBuilder();
+        for (String key : sorted)
+        {
+            if (buf.length() > 0)
+                buf.append('|');
+            buf.append(Pattern.quote(key));
+        }
+        return Pattern.compile(buf.toString());
+    }
+
+    /**
+     * Replaces every key in one pass, the values are used literally.
+     */
+    static String replace(String text, Pattern pattern, Map<String, String> replacements)
+    {
+        if (pattern == null)
+            return text;
+
+        Matcher matcher = pattern.matcher(text);
+        if (!matcher.find())
+            return text;
+
+        StringBuilder buf = new StringBuilder(text.length() + 64);
+        int last = 0;
+        do
+        {
+            buf.append(text, last, matcher.start()).append(replacements.get(matcher.group()));
+            last = matcher.end();
+        }
+        while (matcher.find());
+
+        return buf.append(text, last, text.length()).toString();
+    }
+
+    private static final class Copied
+    {
+        private final String  path;
+        private final String  hash;
+        private final long    length;
+        private final long    modified;
+        private final boolean written;
+
+        private Copied(String path, String hash, long length, long modified, boolean written)
+        {
+            this.path = path;
+            this.hash = hash;
+            this.length = length;
+            this.modified = modified;
+            this.written = written;
+        }
+    }
+
+    private static final class CopyJob implements Callable<Copied>
+    {
+        private final String              path;
+        private final File                file;
+        private final File                dest;
+        private final boolean             replace;
+        private final Copied              previous;
+        private final Pattern             pattern;
+        private final Map<String, String> replacements;
+
+        private CopyJob(String path, File file, File dest, boolean replace, Copied previous, Pattern pattern, Map<String, String> replacements)
+        {
+            this.path = path;
+            this.file = file;
+            this.dest = dest;
+            this.replace = replace;
+            this.previous = previous;
+            this.pattern = pattern;
+            this.replacements = replacements;
+        }
+
+        @Override
+        public Copied call() throws IOException
+        {
+            byte[] data = Files.toByteArray(file);
+            String hash = Constants.hash(data);
+
+            // same input and replacements, and nobody touched the output since
+            if (previous != null && previous.hash.equals(hash) && dest.isFile() && dest.length() == previous.length && dest.lastModified() == previous.modified)
+                return new Copied(path, hash, previous.length, previous.modified, false);
+
+            byte[] result = data;
+            if (replace)
+                result = TaskSourceCopy.replace(new String(data, Charsets.UTF_8), pattern, replacements).getBytes(Charsets.UTF_8);
+
+            // dont touch outputs that come out the same, so whatever compiles them stays up to date
+            boolean same = dest.isFile() && dest.length() == result.length && Arrays.equals(Files.toByteArray(dest), result);
+            if (!same)
+            {
                 dest.getParentFile().mkdirs();
-                dest.createNewFile();
+                Files.write(result, dest);
+            }
 
-                if (isIncluded(file))
-                {
-                    getLogger().debug("PARSING FILE IN >> " + file);
-                    String text = Files.toString(file, Charsets.UTF_8);
+            return new Copied(path, hash, dest.length(), dest.lastModified(), !same);
+        }
+    }
 
-                    for (Entry<String, String> entry : repl.entrySet())
-                        text = text.replaceAll(entry.getKey(), entry.getValue());
+    private static Map<String, Copied> readState(File file, String key)
+    {
+        Map<String, Copied> state = Maps.newHashMap();
+        if (!file.isFile())
+            return state;
 
-                    getLogger().debug("PARSING FILE OUT >> " + dest);
-                    Files.write(text, dest, Charsets.UTF_8);
-                }
-                else
-                {
-                    Files.copy(file, dest);
-                }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (!STATE_HEADER.equals(in.readUTF()) || !key.equals(in.readUTF()))
+                return state;
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                Copied copied = new Copied(in.readUTF(), in.readUTF(), in.readLong(), in.readLong(), false);
+                state.put(copied.path, copied);
             }
         }
+        catch (IOException e)
+        {
+            // its only a cache, everything gets checked again
+            state.clear();
+        }
+
+        return state;
     }
 
-    private File getDest(File in, File base, File baseOut) throws IOException
+    private static void writeState(File file, String key, Map<String, Copied> state) throws IOException
     {
-        String relative = in.getCanonicalPath().replace(base.getCanonicalPath(), "");
-        return new File(baseOut, relative);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
+        {
+            out.writeUTF(STATE_HEADER);
+            out.writeUTF(key);
+            out.writeInt(state.size());
+            for (Copied copied : state.values())
+            {
+                out.writeUTF(copied.path);
+                out.writeUTF(copied.hash);
+                out.writeLong(copied.length);
+                out.writeLong(copied.modified);
+            }
+        }
+    }
+
+    private static String getRelative(File in, File base) throws IOException
+    {
+        String relative = in.getCanonicalPath().replace(base.getCanonicalPath(), "").replace('\\', '/');
+        return relative.startsWith("/") ? relative.substring(1) : relative;
     }
 
     private boolean isIncluded(File file) throws IOException
@@ -153,27 +361,38 @@ public class TaskSourceCopy extends DefaultTask
         return false;
     }
 
-    private boolean deleteDir(File dir)
+    /**
+     * Deletes whatever in the output wasnt copied this time.
+     * @return TRUE if the dir is now empty
+     */
+    private boolean deleteStale(File dir, String prefix, Map<String, Copied> copied)
     {
-        if (dir.exists())
+        File[] files = dir.listFiles();
+        if (files == null)
+            return true;
+
+        boolean empty = true;
+        for (File file : files)
         {
-            File[] files = dir.listFiles();
-            if (null != files)
+            String path = prefix + file.getName();
+            if (file.isDirectory())
+            {
+                if (deleteStale(file, path + "/", copied))
+                    file.delete();
+                else
+                    empty = false;
+            }
+            else if (!copied.containsKey(path))
+            {
+                getLogger().debug("Removing stale file: " + file);
+                file.delete();
+            }
+            else
             {
-                for (int i = 0; i < files.length; i++)
-                {
-                    if (files[i].isDirectory())
-                    {
-                        deleteDir(files[i]);
-                    }
-                    else
-                    {
-                        files[i].delete();
-                    }
-                }
+                empty = false;
             }
         }
-        return (dir.delete());
+        return empty;
     }
 
     public File getOutput()
@@ -225,4 +444,17 @@ public class TaskSourceCopy extends DefaultTask
     {
         return includes;
     }
+
+    /**
+     * @return The number of threads to copy files on
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
 }
@@ -676,7 +676,17 @@ public abstract class UserBasePlugin<T extends UserBaseExtension> extends BasePl
             }
         }
 
-        int taskId = 0;
+        // nothing to deobfuscate, so dont make a task that would still load the mappings
+        if (config.getIncoming().getDependencies().isEmpty())
+            return;
+
+        // every artifact is done by the one task, on a pool, through the machine wide cache
+        TaskDeobfDeps deobf = makeTask(config.getName() + "DeobfDepsTask", TaskDeobfDeps.class);
+        deobf.setFieldCsv(delayedFile(CSV_FIELD));
+        deobf.setMethodCsv(delayedFile(CSV_METHOD));
+        deobf.setParamCsv(delayedFile(CSV_PARAM));
+        deobf.dependsOn(TASK_EXTRACT_MAPPINGS);
+        dummyTask.dependsOn(deobf);
 
         // FOR SOURCES!
 
@@ -691,13 +701,7 @@ public abstract class UserBasePlugin<T extends UserBaseExtension> extends BasePl
             // Add artifacts that will be remapped to get their sources
             idMap.put(artifact.getId().getComponentIdentifier(), module);
 
-            TaskSingleDeobfBin deobf = makeTask(config.getName() + "DeobfDepTask" + (taskId++), TaskSingleDeobfBin.class);
-            deobf.setInJar(artifact.getFile());
-            deobf.setOutJar(getFile(DIR_DEOBF_DEPS, group, module.getName(), module.getVersion(), null));
-            deobf.setFieldCsv(delayedFile(CSV_FIELD));
-            deobf.setMethodCsv(delayedFile(CSV_METHOD));
-            deobf.dependsOn(TASK_EXTRACT_MAPPINGS);
-            dummyTask.dependsOn(deobf);
+            deobf.addBinary(artifact.getFile(), getFile(DIR_DEOBF_DEPS, group, module.getName(), module.getVersion(), null));
 
             project.getDependencies().add(resolvedConfig, group + ":" + module.getName() + ":" + module.getVersion());
         }
@@ -720,14 +724,7 @@ public abstract class UserBasePlugin<T extends UserBaseExtension> extends BasePl
             for (ArtifactResult art : comp.getArtifacts(SourcesArtifact.class))
             {
                 // there can only be One!
-                RemapSources remap = makeTask(config.getName() + "RemapDepSourcesTask" + (taskId++), RemapSources.class);
-                remap.setInJar(((ResolvedArtifactResult) art).getFile());
-                remap.setOutJar(getFile(DIR_DEOBF_DEPS, group, module.getName(), module.getVersion(), "sources"));
-                remap.setFieldsCsv(delayedFile(CSV_FIELD));
-                remap.setMethodsCsv(delayedFile(CSV_METHOD));
-                remap.setParamsCsv(delayedFile(CSV_PARAM));
-                remap.dependsOn(TASK_EXTRACT_MAPPINGS);
-                dummyTask.dependsOn(remap);
+                deobf.addSources(((ResolvedArtifactResult) art).getFile(), getFile(DIR_DEOBF_DEPS, group, module.getName(), module.getVersion(), "sources"));
                 break;
             }
         }
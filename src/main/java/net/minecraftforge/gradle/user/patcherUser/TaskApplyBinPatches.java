@@ -19,29 +19,15 @@
  */
 package net.minecraftforge.gradle.user.patcherUser;
 
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.jar.JarEntry;
-import java.util.jar.JarInputStream;
-import java.util.jar.JarOutputStream;
-import java.util.jar.Pack200;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Pattern;
 import java.util.zip.Adler32;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
-import org.gradle.api.file.FileVisitDetails;
-import org.gradle.api.file.FileVisitor;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
@@ -52,10 +38,13 @@ import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteStreams;
 import com.nothome.delta.GDiffPatcher;
 
-import lzma.sdk.lzma.Decoder;
-import lzma.streams.LzmaInputStream;
+import net.minecraftforge.gradle.util.ParallelUtil;
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
+import net.minecraftforge.gradle.util.patching.BinPatchReader;
+import net.minecraftforge.gradle.util.zip.RawZipFile;
+import net.minecraftforge.gradle.util.zip.RawZipOutput;
+import net.minecraftforge.gradle.util.zip.RawZipOutput.PreparedEntry;
 
 public class TaskApplyBinPatches extends CachedTask
 {
@@ -70,14 +59,11 @@ public class TaskApplyBinPatches extends CachedTask
     @Cached
     Object                              outJar;
 
-    private HashMap<String, ClassPatch> patchlist = Maps.newHashMap();
-    private GDiffPatcher                patcher   = new GDiffPatcher();
+    private int                         threads   = ParallelUtil.DEFAULT_THREADS;
 
     @TaskAction
     public void doTask() throws IOException
     {
-        setup();
-
         if (getOutJar().exists())
         {
             getOutJar().delete();
@@ -85,152 +71,144 @@ public class TaskApplyBinPatches extends CachedTask
 
         final HashSet<String> entries = new HashSet<String>();
 
-        try (ZipFile in = new ZipFile(getInJar());
-             ZipInputStream classesIn = new ZipInputStream(new FileInputStream(getClassJar()));
-             ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(getOutJar()))))
+        ExecutorService executor = ParallelUtil.newExecutor(getThreads());
+        try (BinPatchReader patches = BinPatchReader.open(getPatches(), getTemporaryDir());
+             RawZipFile in = new RawZipFile(getInJar());
+             RawZipFile classesIn = new RawZipFile(getClassJar());
+             RawZipOutput out = new RawZipOutput(getOutJar()))
         {
+            Map<String, String> patchlist = indexPatches(patches);
+
             // DO PATCHES
             log("Patching Class:");
-            for (ZipEntry e : Collections.list(in.entries()))
+
+            ParallelUtil.OrderedWindow<RawZipFile.Entry, PreparedEntry> window = new ParallelUtil.OrderedWindow<RawZipFile.Entry, PreparedEntry>(executor, getThreads(), new ParallelUtil.ResultWriter<RawZipFile.Entry, PreparedEntry>() {
+                @Override
+                public void write(RawZipFile.Entry entry, PreparedEntry patched) throws IOException
+                {
+                    if (patched == null)
+                    {
+                        out.copy(in, entry);
+                    }
+                    else
+                    {
+                        out.write(patched);
+                    }
+                }
+            });
+
+            for (RawZipFile.Entry e : in.getEntries())
             {
                 if (e.getName().contains("META-INF"))
                     continue;
 
-                if (e.isDirectory())
+                String patch = e.isDirectory() ? null : patchlist.get(e.getName().replace('\\', '/'));
+
+                // add the names to the hashset
+                entries.add(e.getName());
+
+                if (patch == null)
                 {
-                    out.putNextEntry(e);
+                    // unpatched, so it can be copied without inflating it
+                    window.add(e, null);
                 }
                 else
                 {
-                    ZipEntry n = new ZipEntry(e.getName());
-                    n.setTime(e.getTime());
-                    out.putNextEntry(n);
-
-                    byte[] data = ByteStreams.toByteArray(in.getInputStream(e));
-                    ClassPatch patch = patchlist.get(e.getName().replace('\\', '/'));
-
-                    if (patch != null)
-                    {
-                        log("\t%s (%s) (input size %d)", patch.targetClassName, patch.sourceClassName, data.length);
-                        int inputChecksum = adlerHash(data);
-                        if (patch.inputChecksum != inputChecksum)
-                        {
-                            throw new RuntimeException(String.format("There is a binary discrepency between the expected input class %s (%s) and the actual class. Checksum on disk is %x, in patch %x. Things are probably about to go very wrong. Did you put something into the jar file?", patch.targetClassName, patch.sourceClassName, inputChecksum, patch.inputChecksum));
-                        }
-                        synchronized (patcher)
-                        {
-                            data = patcher.patch(data, patch.patch);
-                        }
-                    }
-
-                    out.write(data);
+                    window.add(e, new PatchJob(patches, patch, in, e));
                 }
-
-                // add the names to the hashset
-                entries.add(e.getName());
             }
+            window.finish();
 
             // COPY DATA
-            ZipEntry entry = null;
-            while ((entry = classesIn.getNextEntry()) != null)
+            for (RawZipFile.Entry entry : classesIn.getEntries())
             {
                 if (entries.contains(entry.getName()))
                     continue;
 
-                out.putNextEntry(entry);
-                out.write(ByteStreams.toByteArray(classesIn));
+                out.copy(classesIn, entry);
                 entries.add(entry.getName());
             }
 
-            getProject().zipTree(getResourceJar()).visit(new FileVisitor()
+            try (RawZipFile resources = new RawZipFile(getResourceJar()))
             {
-                @Override
-                public void visitDir(FileVisitDetails dirDetails)
+                for (RawZipFile.Entry entry : resources.getEntries())
                 {
-                }
-
-                @Override
-                public void visitFile(FileVisitDetails file)
-                {
-                    try
+                    if (!entry.isDirectory() && entries.add(entry.getName()))
                     {
-                        String name = file.getRelativePath().toString().replace('\\', '/');
-                        if (!entries.contains(name))
-                        {
-                            ZipEntry n = new ZipEntry(name);
-                            n.setTime(file.getLastModified());
-                            out.putNextEntry(n);
-                            ByteStreams.copy(file.open(), out);
-                            entries.add(name);
-                        }
-                    }
-                    catch (IOException e)
-                    {
-                        throw new RuntimeException(e);
+                        out.copy(resources, entry);
                     }
                 }
-
-            });
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
         }
     }
 
-    private int adlerHash(byte[] input)
-    {
-        Adler32 hasher = new Adler32();
-        hasher.update(input);
-        return (int) hasher.getValue();
-    }
-
-    public void setup()
+    /**
+     * Only reads which class each merged patch is for, the patches themselves are decoded when they are applied.
+     * @return The entry name of the patch for each class it patches
+     */
+    private Map<String, String> indexPatches(BinPatchReader patches) throws IOException
     {
         Pattern matcher = Pattern.compile("binpatch/merged/.*.binpatch");
 
-        byte[] bytes;
-        try (ByteArrayOutputStream jarBytes = new ByteArrayOutputStream())
+        log("Reading Patches:");
+        Map<String, String> patchlist = Maps.newHashMap();
+        for (String name : patches.getNames())
         {
-            try (LzmaInputStream binpatchesDecompressed = new LzmaInputStream(new FileInputStream(getPatches()), new Decoder());
-                 JarOutputStream jos = new JarOutputStream(jarBytes))
+            if (matcher.matcher(name).matches())
             {
-                Pack200.newUnpacker().unpack(binpatchesDecompressed, jos);
+                log("\t%s", name);
+                patchlist.put(patches.getSourceClassName(name).replace('.', '/') + ".class", name);
             }
-            bytes = jarBytes.toByteArray();
         }
-        catch (IOException e)
+
+        log("Read %d binary patches", patchlist.size());
+        log("Patch list :\n\t%s", Joiner.on("\n\t").join(patchlist.entrySet()));
+        return patchlist;
+    }
+
+    private class PatchJob implements Callable<PreparedEntry>
+    {
+        private final BinPatchReader   patches;
+        private final String           patchName;
+        private final RawZipFile       jar;
+        private final RawZipFile.Entry entry;
+
+        private PatchJob(BinPatchReader patches, String patchName, RawZipFile jar, RawZipFile.Entry entry)
         {
-            throw new RuntimeException(e);
+            this.patches = patches;
+            this.patchName = patchName;
+            this.jar = jar;
+            this.entry = entry;
         }
 
-        log("Reading Patches:");
-        try (JarInputStream jis = new JarInputStream(new ByteArrayInputStream(bytes)))
+        @Override
+        public PreparedEntry call() throws IOException
         {
-            do
+            ClassPatch patch = readPatch(patches.read(patchName));
+
+            // the checksum is taken while inflating the class
+            Adler32 hasher = new Adler32();
+            byte[] data = jar.getBytes(entry, hasher);
+            int inputChecksum = (int) hasher.getValue();
+
+            log("\t%s (%s) (input size %d)", patch.targetClassName, patch.sourceClassName, data.length);
+            if (patch.inputChecksum != inputChecksum)
             {
-                JarEntry entry = jis.getNextJarEntry();
-                if (entry == null)
-                {
-                    break;
-                }
+                throw new RuntimeException(String.format("There is a binary discrepency between the expected input class %s (%s) and the actual class. Checksum on disk is %x, in patch %x. Things are probably about to go very wrong. Did you put something into the jar file?", patch.targetClassName, patch.sourceClassName, inputChecksum, patch.inputChecksum));
+            }
 
-                if (matcher.matcher(entry.getName()).matches())
-                {
-                    ClassPatch cp = readPatch(entry, jis);
-                    patchlist.put(cp.sourceClassName.replace('.', '/') + ".class", cp);
-                }
-                jis.closeEntry();
-            } while (true);
-        }
-        catch (IOException e)
-        {
-            throw new RuntimeException(e);
+            data = new GDiffPatcher().patch(data, patch.patch);
+            return RawZipOutput.prepare(entry.getName(), data, entry.getDosTime());
         }
-        log("Read %d binary patches", patchlist.size());
-        log("Patch list :\n\t%s", Joiner.on("\n\t").join(patchlist.entrySet()));
     }
 
-    private ClassPatch readPatch(JarEntry patchEntry, JarInputStream jis) throws IOException
+    private ClassPatch readPatch(byte[] data) throws IOException
     {
-        log("\t%s", patchEntry.getName());
-        ByteArrayDataInput input = ByteStreams.newDataInput(ByteStreams.toByteArray(jis));
+        ByteArrayDataInput input = ByteStreams.newDataInput(data);
 
         String name = input.readUTF();
         String sourceClassName = input.readUTF();
@@ -253,6 +231,19 @@ public class TaskApplyBinPatches extends CachedTask
         getLogger().debug(String.format(format, args));
     }
 
+    /**
+     * @return The number of threads to patch classes on
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     public File getInJar()
     {
         return getProject().file(inJar);
@@ -34,6 +34,8 @@ public class McVersionTransformer implements ReobfTransformer
     private static final long serialVersionUID = 1L;
 
     private Object            mcVersion;
+    // resolved once, rather than from every thread
+    private transient String  resolved;
 
     protected McVersionTransformer(Object mcVersion)
     {
@@ -43,7 +45,7 @@ public class McVersionTransformer implements ReobfTransformer
     @Override
     public byte[] transform(byte[] data)
     {
-        String mcVersion = Constants.resolveString(this.mcVersion);
+        String mcVersion = getMcVersion();
 
         ClassReader reader = new ClassReader(data);
         ClassNode node = new ClassNode();
@@ -73,4 +75,17 @@ public class McVersionTransformer implements ReobfTransformer
         node.accept(writer);
         return writer.toByteArray();
     }
+
+    private synchronized String getMcVersion()
+    {
+        if (resolved == null)
+            resolved = Constants.resolveString(mcVersion);
+        return resolved;
+    }
+
+    @Override
+    public boolean isThreadSafe()
+    {
+        return true;
+    }
 }
@@ -35,6 +35,10 @@ import org.objectweb.asm.Type;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 
 public class AnnotationUtils
 {
@@ -89,6 +93,51 @@ public class AnnotationUtils
         return info;
     }
 
+    /**
+     * Moves the subtype ids of one class's json past the ones used by the classes before it, so they stay unique over the whole jar.
+     * @param json The {@link ASMInfo} of the class, as json
+     * @param offset How many subtypes came before it
+     */
+    public static void offsetSubtypes(JsonElement json, int offset)
+    {
+        if (offset == 0)
+            return;
+
+        if (json.isJsonArray())
+        {
+            for (JsonElement e : json.getAsJsonArray())
+                offsetSubtypes(e, offset);
+        }
+        else if (json.isJsonObject())
+        {
+            JsonObject obj = json.getAsJsonObject();
+            JsonElement type = obj.get("type");
+            String typeName = type != null && type.isJsonPrimitive() ? type.getAsString() : null;
+
+            if (TargetType.SUBTYPE.name().equals(typeName) && obj.has("id"))
+            {
+                obj.addProperty("id", obj.get("id").getAsInt() + offset);
+            }
+            else if (ValueHolder.ValueType.ANNOTATION.name().equals(typeName))
+            {
+                // references to subtypes, by id
+                if (obj.has("value"))
+                    obj.addProperty("value", String.valueOf(obj.get("value").getAsInt() + offset));
+                if (obj.has("values"))
+                {
+                    JsonArray values = new JsonArray();
+                    for (JsonElement e : obj.getAsJsonArray("values"))
+                        values.add(new JsonPrimitive(String.valueOf(e.getAsInt() + offset)));
+                    obj.add("values", values);
+                }
+                return;
+            }
+
+            for (Map.Entry<String, JsonElement> e : obj.entrySet())
+                offsetSubtypes(e.getValue(), offset);
+        }
+    }
+
     public static class ASMInfo
     {
         public String name;
@@ -96,6 +145,12 @@ public class AnnotationUtils
         //public String super_type; // Was used for looking for ModLoader mods, but not used anymore.
         public String[] interfaces;
         public List<Annotation> annotations;
+        private transient int subtypes; // ids are per class, so classes can be scanned in any order
+
+        public int getSubtypeCount()
+        {
+            return subtypes;
+        }
 
         public void add(Annotation anno)
         {
@@ -203,7 +258,6 @@ public class AnnotationUtils
 
     public static class Annotation
     {
-        private static int SUB_COUNT = 1;
         public final TargetType type;
         public final String name;
         public final String target;
@@ -212,11 +266,16 @@ public class AnnotationUtils
         public Map<String, ValueHolder> values;
 
         public Annotation(TargetType type, String name, String target)
+        {
+            this(type, name, target, null);
+        }
+
+        public Annotation(TargetType type, String name, String target, Integer id)
         {
             this.type = type;
             this.name = name;
             this.target = target;
-            this.id = this.type == TargetType.SUBTYPE ? SUB_COUNT++ : null;
+            this.id = id;
         }
 
         // Possible Types: boolean, byte, char, short, int, long, float, double, String, Class, Enum, and annotation.
@@ -280,7 +339,7 @@ public class AnnotationUtils
         @Override
         public AnnotationVisitor visitAnnotation(String name, String desc)
         {
-            Annotation child = new Annotation(TargetType.SUBTYPE, desc, null);
+            Annotation child = new Annotation(TargetType.SUBTYPE, desc, null, ++info.subtypes);
             anno.addProperty(name, ValueHolder.of(child));
             return new ModAnnotationVisitor(info, child);
         }
@@ -0,0 +1,183 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * The executor and result handling shared by the tasks that do their work on several threads.
+ */
+public class ParallelUtil
+{
+    /**
+     * The default number of threads for a task.
+     * The thread count doesnt change what a task outputs, so tasks dont make it an input.
+     */
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The caller is responsible for shutting the executor down.
+     * @return A pool of the given number of threads, or an executor that runs everything on the calling thread if there is only one
+     */
+    public static ExecutorService newExecutor(int threads)
+    {
+        return threads > 1 ? Executors.newFixedThreadPool(threads) : MoreExecutors.newDirectExecutorService();
+    }
+
+    /**
+     * Waits for the result, and rethrows whatever the job threw.
+     */
+    public static <T> T getResult(Future<T> future) throws IOException
+    {
+        return getResult(future, IOException.class);
+    }
+
+    /**
+     * Waits for the result, and rethrows whatever the job threw.
+     * @param declared The other checked exception the job may throw
+     */
+    public static <T, X extends Exception> T getResult(Future<T> future, Class<X> declared) throws IOException, X
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class, declared);
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Takes the results of jobs in the order they were added, whatever order they finish in.
+     */
+    public interface ResultWriter<K, V>
+    {
+        /**
+         * @param key What the job was added with
+         * @param result What the job returned, or null if it was added without one
+         * @throws IOException if it cant be written
+         */
+        void write(K key, V result) throws IOException;
+    }
+
+    /**
+     * Runs jobs on an executor and hands their results to a {@link ResultWriter} in the order they were added.
+     * Only so many jobs are let run ahead of the writer, so the results dont all end up in memory at once.
+     */
+    public static class OrderedWindow<K, V>
+    {
+        private final ExecutorService      executor;
+        private final int                  size;
+        private final ResultWriter<K, V>   writer;
+        private final Deque<Pending<K, V>> pending = new ArrayDeque<Pending<K, V>>();
+        private int                        running;
+
+        /**
+         * @param threads The number of threads the executor has
+         */
+        public OrderedWindow(ExecutorService executor, int threads, ResultWriter<K, V> writer)
+        {
+            this.executor = executor;
+            this.size = Math.max(1, threads) * 4;
+            this.writer = writer;
+        }
+
+        /**
+         * Writes whatever is ready, and waits for the oldest job if too many are running.
+         * @param job NULL if there is nothing to run, the key is still written in order
+         */
+        public void add(K key, Callable<V> job) throws IOException
+        {
+            if (job == null)
+            {
+                pending.add(new Pending<K, V>(key, null));
+            }
+            else
+            {
+                pending.add(new Pending<K, V>(key, executor.submit(job)));
+                running++;
+            }
+
+            while (!pending.isEmpty() && (running >= size || pending.peek().isReady()))
+            {
+                write(pending.poll());
+            }
+        }
+
+        /**
+         * Waits for the remaining jobs and writes their results.
+         */
+        public void finish() throws IOException
+        {
+            while (!pending.isEmpty())
+            {
+                write(pending.poll());
+            }
+        }
+
+        private void write(Pending<K, V> next) throws IOException
+        {
+            if (next.future == null)
+            {
+                writer.write(next.key, null);
+            }
+            else
+            {
+                running--;
+                writer.write(next.key, getResult(next.future));
+            }
+        }
+    }
+
+    private static class Pending<K, V>
+    {
+        private final K         key;
+        // null if there is no job
+        private final Future<V> future;
+
+        private Pending(K key, Future<V> future)
+        {
+            this.key = key;
+            this.future = future;
+        }
+
+        private boolean isReady()
+        {
+            return future == null || future.isDone();
+        }
+    }
+}
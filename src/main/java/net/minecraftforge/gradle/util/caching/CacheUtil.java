@@ -31,6 +31,7 @@ import java.util.List;
 import net.minecraftforge.gradle.common.Constants;
 
 import org.gradle.api.file.FileCollection;
+import org.gradle.api.invocation.Gradle;
 import org.gradle.api.tasks.InputDirectory;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.InputFiles;
@@ -54,13 +55,20 @@ class CacheUtil
             return new File(file.getParentFile(), file.getName() + ".md5");
     }
 
+    protected static HashIndex getHashIndex(ICachableTask task)
+    {
+        Gradle gradle = task.getProject().getGradle();
+        return HashIndex.get(gradle, new File(gradle.getGradleUserHomeDir(), "caches/minecraft/fileHashes.txt"));
+    }
+
     @SuppressWarnings("rawtypes")
     protected static String getHashes(Annotated output, List<Annotated> inputs, ICachableTask task) throws NoSuchMethodException, NoSuchFieldException, IllegalArgumentException, IllegalAccessException, InvocationTargetException
     {
         // TODO: CONVERT TO CacheFile
         List<String> hashes = Lists.newArrayListWithCapacity(inputs.size() + 5);
+        HashIndex index = getHashIndex(task);
 
-        hashes.addAll(Constants.hashAll(task.getProject().file(output.getValue(task))));
+        hashes.addAll(index.hashAll(task.getProject().file(output.getValue(task))));
 
         for (Annotated input : inputs)
         {
@@ -73,20 +81,21 @@ class CacheUtil
             }
             else if (m.isAnnotationPresent(InputFile.class))
             {
-                hashes.add(Constants.hash(task.getProject().file(input.getValue(task))));
-                LOGGER.debug(Constants.hash(task.getProject().file(input.getValue(task))) + " " + input.getValue(task));
+                String hash = index.hash(task.getProject().file(input.getValue(task)));
+                hashes.add(hash);
+                LOGGER.debug(hash + " " + input.getValue(task));
             }
             else if (m.isAnnotationPresent(InputDirectory.class))
             {
                 File dir = (File) input.getValue(task);
-                hashes.addAll(Constants.hashAll(dir));
+                hashes.addAll(index.hashAll(dir));
             }
             else if (m.isAnnotationPresent(InputFiles.class))
             {
                 FileCollection files = (FileCollection) input.getValue(task);
                 for (File file : files.getFiles())
                 {
-                    String hash = Constants.hash(file);
+                    String hash = index.hash(file);
                     hashes.add(hash);
                     LOGGER.debug(hash + " " + input.getValue(task));
                 }
@@ -113,14 +122,16 @@ class CacheUtil
                         Collections.sort(files);
                         for (File i : files)
                         {
-                            hashes.add(Constants.hash(i));
-                            LOGGER.debug(Constants.hash(i) + " " + i);
+                            String hash = index.hash(i);
+                            hashes.add(hash);
+                            LOGGER.debug(hash + " " + i);
                         }
                     }
                     else
                     {
-                        hashes.add(Constants.hash(file));
-                        LOGGER.debug(Constants.hash(file) + " " + file);
+                        String hash = index.hash(file);
+                        hashes.add(hash);
+                        LOGGER.debug(hash + " " + file);
                     }
                 }
                 else if (obj instanceof PatternSet)
@@ -142,6 +153,8 @@ class CacheUtil
             }
         }
 
+        LOGGER.info("Hashed {} bytes so far, {} bytes served from the hash index", HashIndex.getBytesHashed(), HashIndex.getBytesIndexed());
+
         return Joiner.on(Constants.NEWLINE).join(hashes);
     }
 }
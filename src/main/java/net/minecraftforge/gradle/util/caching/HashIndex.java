@@ -0,0 +1,284 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.caching;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.minecraftforge.gradle.common.Constants;
+
+import org.gradle.BuildAdapter;
+import org.gradle.BuildResult;
+import org.gradle.api.invocation.Gradle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/**
+ * Remembers the hashes of files keyed by their absolute path, size and modification time,
+ * so the cache checks dont have to read unchanged files over and over again.
+ * The index is shared by every build using the same gradle home, and merged on save.
+ * Its only written once per build, not on every check.
+ */
+class HashIndex
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(HashIndex.class);
+
+    // bump if the format, or what Constants.hash(File) returns, changes.
+    private static final String HEADER = "FG-HASH-INDEX 1 " + Constants.HASH_FUNC;
+
+    // files touched this recently may still change without their size or time changing.
+    private static final long RACY_MILLIS = 2000;
+
+    private static final Map<File, HashIndex> INDEXES = Maps.newHashMap();
+
+    private static final AtomicLong BYTES_HASHED  = new AtomicLong();
+    private static final AtomicLong BYTES_INDEXED = new AtomicLong();
+
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private volatile boolean dirty = false;
+
+    HashIndex(File file)
+    {
+        this.file = file;
+        entries.putAll(read(file));
+    }
+
+    /**
+     * Gets the index for this file, which is saved once when the build finishes.
+     */
+    public static HashIndex get(Gradle gradle, File file)
+    {
+        final File key = file.getAbsoluteFile();
+
+        synchronized (INDEXES)
+        {
+            HashIndex index = INDEXES.get(key);
+            if (index == null)
+            {
+                final HashIndex newIndex = new HashIndex(key);
+                gradle.addBuildListener(new BuildAdapter()
+                {
+                    @Override
+                    public void buildFinished(BuildResult result)
+                    {
+                        synchronized (INDEXES)
+                        {
+                            INDEXES.remove(key);
+                        }
+                        newIndex.save();
+                    }
+                });
+
+                index = newIndex;
+                INDEXES.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * @return How many bytes have been read to compute hashes so far
+     */
+    public static long getBytesHashed()
+    {
+        return BYTES_HASHED.get();
+    }
+
+    /**
+     * @return How many bytes did not have to be read because their hash was in an index
+     */
+    public static long getBytesIndexed()
+    {
+        return BYTES_INDEXED.get();
+    }
+
+    /**
+     * Same as {@link Constants#hash(File)}, but served from the index when the file is unchanged.
+     * @param file file to hash
+     * @return the hash
+     */
+    public String hash(File file)
+    {
+        if (!file.isFile())
+            return Constants.hash(file);
+
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long modified = file.lastModified();
+
+        Entry entry = entries.get(path);
+        if (entry != null && entry.size == size && entry.modified == modified)
+        {
+            BYTES_INDEXED.addAndGet(size);
+            return entry.hash;
+        }
+
+        String hash = Constants.hash(file);
+        BYTES_HASHED.addAndGet(size);
+
+        if (hash != null && System.currentTimeMillis() - modified > RACY_MILLIS)
+        {
+            entries.put(path, new Entry(hash, size, modified));
+            dirty = true;
+        }
+
+        return hash;
+    }
+
+    /**
+     * Same as {@link Constants#hashAll(File)}, but served from the index when the files are unchanged.
+     * @param file file or directory to hash
+     * @return the hashes
+     */
+    public List<String> hashAll(File file)
+    {
+        List<String> list = Lists.newLinkedList();
+
+        if (file.isDirectory())
+        {
+            for (File f : file.listFiles())
+                list.addAll(hashAll(f));
+        }
+        else if (!file.getName().equals(".cache"))
+            list.add(hash(file));
+
+        return list;
+    }
+
+    /**
+     * Writes the new entries to disk, merged with whatever other builds have written since it was read.
+     */
+    public synchronized void save()
+    {
+        if (!dirty)
+            return;
+
+        dirty = false;
+        file.getParentFile().mkdirs();
+        File lockFile = new File(file.getParentFile(), file.getName() + ".lock");
+
+        try (RandomAccessFile raf = new RandomAccessFile(lockFile, "rw");
+             FileChannel channel = raf.getChannel();
+             FileLock lock = channel.lock())
+        {
+            Map<String, Entry> merged = read(file);
+            merged.putAll(entries);
+
+            File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+            try (BufferedWriter writer = Files.newWriter(temp, Constants.CHARSET))
+            {
+                writer.write(HEADER);
+                writer.newLine();
+
+                for (Map.Entry<String, Entry> e : merged.entrySet())
+                {
+                    // forget files that are gone
+                    if (!new File(e.getKey()).exists())
+                        continue;
+
+                    Entry entry = e.getValue();
+                    writer.write(entry.hash + " " + entry.size + " " + entry.modified + " " + e.getKey());
+                    writer.newLine();
+                }
+            }
+
+            try
+            {
+                java.nio.file.Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                java.nio.file.Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            for (Map.Entry<String, Entry> e : merged.entrySet())
+            {
+                if (!entries.containsKey(e.getKey()))
+                    entries.put(e.getKey(), e.getValue());
+            }
+        }
+        catch (IOException e)
+        {
+            // its only a cache, the hashes will just be computed again.
+            LOGGER.warn("Could not save hash index " + file, e);
+        }
+    }
+
+    private static Map<String, Entry> read(File file)
+    {
+        Map<String, Entry> map = Maps.newHashMap();
+        if (!file.exists())
+            return map;
+
+        try (BufferedReader reader = Files.newReader(file, Constants.CHARSET))
+        {
+            if (!HEADER.equals(reader.readLine()))
+                return map;
+
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                String[] pts = line.split(" ", 4);
+                if (pts.length != 4)
+                    continue;
+
+                map.put(pts[3], new Entry(pts[0], Long.parseLong(pts[1]), Long.parseLong(pts[2])));
+            }
+        }
+        catch (Exception e)
+        {
+            // broken? start over.
+            LOGGER.debug("Could not read hash index " + file, e);
+            map.clear();
+        }
+
+        return map;
+    }
+
+    private static class Entry
+    {
+        public final String hash;
+        public final long   size;
+        public final long   modified;
+
+        Entry(String hash, long size, long modified)
+        {
+            this.hash = hash;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+}
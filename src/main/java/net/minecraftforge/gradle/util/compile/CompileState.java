@@ -0,0 +1,434 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.compile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.minecraftforge.gradle.common.Constants;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * What was compiled from which source, and which classes use which, so a rebuild only has to compile what changed.
+ */
+public class CompileState
+{
+    private static final String  HEADER     = "FG-RECOMPILE 1";
+    private static final Pattern DESC_CLASS = Pattern.compile("L([^;<>\\[]+)[;<]");
+
+    private final String                   key;
+    private final Map<String, String>      units   = Maps.newTreeMap(); // source -> hash
+    private final Map<String, Set<String>> owned   = Maps.newHashMap(); // source -> classes
+    private final Map<String, ClassData>   classes = Maps.newTreeMap(); // internal name -> class
+
+    /**
+     * @param key Anything that invalidates everything when it changes, like the classpath and compiler options
+     */
+    public CompileState(String key)
+    {
+        this.key = key;
+    }
+
+    /**
+     * @return null if there is no state, or it was made with another key
+     */
+    public static CompileState load(File file, String key) throws IOException
+    {
+        if (!file.isFile())
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (!HEADER.equals(in.readUTF()))
+                throw new IOException("Unknown state format");
+            if (!key.equals(in.readUTF()))
+                return null;
+
+            CompileState state = new CompileState(key);
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                String unit = in.readUTF();
+                String hash = in.readUTF();
+
+                int classCount = in.readInt();
+                Map<String, byte[]> compiled = Maps.newTreeMap();
+                for (int j = 0; j < classCount; j++)
+                {
+                    String name = in.readUTF();
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    compiled.put(name, data);
+                }
+
+                state.update(unit, hash, compiled);
+            }
+
+            return state;
+        }
+    }
+
+    public void save(File file) throws IOException
+    {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+            {
+                out.writeUTF(HEADER);
+                out.writeUTF(key);
+                out.writeInt(units.size());
+                for (Map.Entry<String, String> e : units.entrySet())
+                {
+                    out.writeUTF(e.getKey());
+                    out.writeUTF(e.getValue());
+
+                    Map<String, byte[]> compiled = getClasses(e.getKey());
+                    out.writeInt(compiled.size());
+                    for (Map.Entry<String, byte[]> cls : compiled.entrySet())
+                    {
+                        out.writeUTF(cls.getKey());
+                        out.writeInt(cls.getValue().length);
+                        out.write(cls.getValue());
+                    }
+                }
+            }
+
+            try
+            {
+                java.nio.file.Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                java.nio.file.Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Replaces what was compiled from a source.
+     * @param unit The source path
+     * @param hash The hash of the source text
+     * @param compiled The classes compiled from it, keyed on internal name
+     * @return The classes whose api changed, or null if the change can not be followed and everything has to be compiled again
+     */
+    public Set<String> update(String unit, String hash, Map<String, byte[]> compiled)
+    {
+        Set<String> oldNames = owned.remove(unit);
+        Map<String, ClassData> old = Maps.newHashMap();
+        if (oldNames != null)
+        {
+            for (String name : oldNames)
+                old.put(name, classes.remove(name));
+        }
+
+        boolean compatible = oldNames == null || oldNames.equals(compiled.keySet());
+        Set<String> changed = new TreeSet<String>();
+
+        for (Map.Entry<String, byte[]> e : compiled.entrySet())
+        {
+            ClassData data = ClassData.read(unit, e.getValue());
+            if (classes.put(e.getKey(), data) != null)
+                compatible = false; // moved from another source
+
+            ClassData previous = old.get(e.getKey());
+            if (previous == null)
+                continue;
+
+            // constants are inlined into their users, which dont reference the class at all
+            if (!previous.constants.equals(data.constants))
+                compatible = false;
+            else if (!previous.api.equals(data.api))
+                changed.add(e.getKey());
+        }
+
+        units.put(unit, hash);
+        owned.put(unit, Sets.newTreeSet(compiled.keySet()));
+
+        return compatible ? changed : null;
+    }
+
+    /**
+     * @return The source paths, and the hashes of their text
+     */
+    public Map<String, String> getUnits()
+    {
+        return Collections.unmodifiableMap(units);
+    }
+
+    /**
+     * @return The classes compiled from the source
+     */
+    public Map<String, byte[]> getClasses(String unit)
+    {
+        Map<String, byte[]> ret = Maps.newTreeMap();
+        Set<String> names = owned.get(unit);
+        if (names != null)
+        {
+            for (String name : names)
+                ret.put(name, classes.get(name).data);
+        }
+        return ret;
+    }
+
+    /**
+     * @return All the classes, except those compiled from the excluded sources
+     */
+    public Map<String, byte[]> getClasses(Set<String> excluded)
+    {
+        Map<String, byte[]> ret = Maps.newTreeMap();
+        for (Map.Entry<String, ClassData> e : classes.entrySet())
+        {
+            if (!excluded.contains(e.getValue().unit))
+                ret.put(e.getKey(), e.getValue().data);
+        }
+        return ret;
+    }
+
+    /**
+     * @return The source the class was compiled from
+     */
+    public String getUnit(String className)
+    {
+        ClassData data = classes.get(className);
+        return data == null ? null : data.unit;
+    }
+
+    /**
+     * @param changed Classes whose api changed
+     * @return The sources of every class that uses them, or inherits from them
+     */
+    public Set<String> getDependents(Set<String> changed)
+    {
+        // subclasses carry the changed api along with them
+        Set<String> affected = Sets.newHashSet(changed);
+        boolean grown = true;
+        while (grown)
+        {
+            grown = false;
+            for (Map.Entry<String, ClassData> e : classes.entrySet())
+            {
+                if (!affected.contains(e.getKey()) && !Collections.disjoint(e.getValue().supers, affected))
+                {
+                    affected.add(e.getKey());
+                    grown = true;
+                }
+            }
+        }
+
+        Set<String> dependents = new TreeSet<String>();
+        for (ClassData data : classes.values())
+        {
+            if (!Collections.disjoint(data.references, affected))
+                dependents.add(data.unit);
+        }
+        return dependents;
+    }
+
+    private static class ClassData
+    {
+        private final String       unit;
+        private final byte[]       data;
+        private final String       api;
+        private final String       constants;
+        private final List<String> supers;
+        private final Set<String>  references;
+
+        private ClassData(String unit, byte[] data, String api, String constants, List<String> supers, Set<String> references)
+        {
+            this.unit = unit;
+            this.data = data;
+            this.api = api;
+            this.constants = constants;
+            this.supers = supers;
+            this.references = references;
+        }
+
+        private static ClassData read(String unit, byte[] data)
+        {
+            final List<String> members = Lists.newArrayList();
+            final List<String> constants = Lists.newArrayList();
+            final List<String> supers = Lists.newArrayList();
+
+            new ClassReader(data).accept(new ClassVisitor(Opcodes.ASM6) {
+                @Override
+                public void visit(int version, int access, String name, String signature, String superName, String[] interfaces)
+                {
+                    if (superName != null)
+                        supers.add(superName);
+                    if (interfaces != null)
+                        supers.addAll(Arrays.asList(interfaces));
+                    members.add("class " + access + " " + signature + " " + superName + " " + supers);
+                }
+
+                @Override
+                public void visitOuterClass(String owner, String name, String desc)
+                {
+                    members.add("outer " + owner + " " + name + desc);
+                }
+
+                @Override
+                public void visitInnerClass(String name, String outerName, String innerName, int access)
+                {
+                    members.add("inner " + name + " " + outerName + " " + innerName + " " + access);
+                }
+
+                @Override
+                public FieldVisitor visitField(int access, String name, String desc, String signature, Object value)
+                {
+                    if ((access & Opcodes.ACC_PRIVATE) == 0)
+                    {
+                        members.add("field " + access + " " + name + " " + desc + " " + signature);
+                        if (value != null)
+                            constants.add(name + "=" + value);
+                    }
+                    return null;
+                }
+
+                @Override
+                public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions)
+                {
+                    if ((access & Opcodes.ACC_PRIVATE) == 0)
+                        members.add("method " + access + " " + name + desc + " " + signature + " " + (exceptions == null ? "" : Arrays.toString(exceptions)));
+                    return null;
+                }
+            }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+            // the order members are in doesnt matter to the users
+            Collections.sort(members);
+            Collections.sort(constants);
+
+            return new ClassData(unit, data, Constants.hash(Joiner.on('\n').join(members)), Joiner.on('\n').join(constants), supers, readReferences(data));
+        }
+    }
+
+    /**
+     * Every class named in the constant pool, either directly or in a descriptor or signature.
+     */
+    static Set<String> readReferences(byte[] data)
+    {
+        Set<String> refs = Sets.newHashSet();
+        List<String> strings = Lists.newArrayList();
+        List<Integer> classIdx = Lists.newArrayList();
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data)))
+        {
+            in.skipBytes(8); // magic and version
+            int count = in.readUnsignedShort();
+            String[] utf = new String[count];
+
+            for (int i = 1; i < count; i++)
+            {
+                int tag = in.readUnsignedByte();
+                switch (tag)
+                {
+                    case 1: // utf8
+                        utf[i] = in.readUTF();
+                        strings.add(utf[i]);
+                        break;
+                    case 7: // class
+                        classIdx.add(in.readUnsignedShort());
+                        break;
+                    case 8: // string
+                    case 16: // method type
+                    case 19: // module
+                    case 20: // package
+                        in.skipBytes(2);
+                        break;
+                    case 15: // method handle
+                        in.skipBytes(3);
+                        break;
+                    case 3: // int
+                    case 4: // float
+                    case 9: // field
+                    case 10: // method
+                    case 11: // interface method
+                    case 12: // name and type
+                    case 17: // dynamic
+                    case 18: // invoke dynamic
+                        in.skipBytes(4);
+                        break;
+                    case 5: // long
+                    case 6: // double
+                        in.skipBytes(8);
+                        i++;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+                }
+            }
+
+            for (int idx : classIdx)
+            {
+                String name = utf[idx];
+                if (name.startsWith("["))
+                    strings.add(name);
+                else
+                    refs.add(name);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("Broken class file", e);
+        }
+
+        for (String str : strings)
+        {
+            Matcher matcher = DESC_CLASS.matcher(str);
+            while (matcher.find())
+                refs.add(matcher.group(1));
+        }
+
+        return refs;
+    }
+}
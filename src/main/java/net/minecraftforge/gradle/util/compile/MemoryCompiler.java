@@ -0,0 +1,252 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.compile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Compiles java sources held in memory, against classes held in memory, without touching the disk.
+ */
+public class MemoryCompiler
+{
+    private final JavaCompiler compiler;
+    private final List<String> options;
+
+    /**
+     * @param options javac options, like the classpath
+     */
+    public MemoryCompiler(List<String> options)
+    {
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        this.options = options;
+
+        if (compiler == null)
+            throw new IllegalStateException("No java compiler available, this needs a JDK");
+    }
+
+    /**
+     * @return FALSE if this is running on a JRE without javac
+     */
+    public static boolean isAvailable()
+    {
+        return ToolProvider.getSystemJavaCompiler() != null;
+    }
+
+    /**
+     * @param sources Source text keyed on its path, like net/minecraft/Foo.java
+     * @param classpath Compiled classes keyed on internal name, visible to the sources. The ones the sources define should not be in here.
+     * @return The compiled classes of every source, keyed on internal name
+     * @throws IOException if it doesnt compile
+     */
+    public Map<String, Map<String, byte[]>> compile(Map<String, String> sources, Map<String, byte[]> classpath) throws IOException
+    {
+        Map<String, Map<String, byte[]>> output = Maps.newHashMap();
+        List<SourceFile> units = Lists.newArrayListWithCapacity(sources.size());
+        for (Map.Entry<String, String> e : sources.entrySet())
+        {
+            units.add(new SourceFile(e.getKey(), e.getValue()));
+            output.put(e.getKey(), Maps.<String, byte[]> newTreeMap());
+        }
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8);
+        try (MemoryFileManager manager = new MemoryFileManager(standard, classpath, output))
+        {
+            boolean success = compiler.getTask(null, manager, diagnostics, options, null, units).call();
+
+            if (!success)
+            {
+                StringBuilder buf = new StringBuilder("Compilation failed:");
+                for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics())
+                {
+                    if (d.getKind() == Diagnostic.Kind.ERROR)
+                    {
+                        String source = d.getSource() == null ? "" : ((SourceFile) d.getSource()).path + ":" + d.getLineNumber() + ": ";
+                        buf.append('\n').append(source).append(d.getMessage(Locale.ROOT));
+                    }
+                }
+                throw new IOException(buf.toString());
+            }
+        }
+
+        return output;
+    }
+
+    private static class SourceFile extends SimpleJavaFileObject
+    {
+        private final String path;
+        private final String text;
+
+        private SourceFile(String path, String text)
+        {
+            super(URI.create("memory:///" + path), Kind.SOURCE);
+            this.path = path;
+            this.text = text;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors)
+        {
+            return text;
+        }
+    }
+
+    private static class ClassFile extends SimpleJavaFileObject
+    {
+        private final String binaryName;
+        private final byte[] data;
+
+        private ClassFile(String internalName, byte[] data)
+        {
+            super(URI.create("memory:///" + internalName + ".class"), Kind.CLASS);
+            this.binaryName = internalName.replace('/', '.');
+            this.data = data;
+        }
+
+        @Override
+        public InputStream openInputStream()
+        {
+            return new ByteArrayInputStream(data);
+        }
+    }
+
+    private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager>
+    {
+        // package -> classes directly in it
+        private final Map<String, List<JavaFileObject>>  packages = Maps.newHashMap();
+        private final Map<String, Map<String, byte[]>>   output;
+
+        private MemoryFileManager(StandardJavaFileManager standard, Map<String, byte[]> classpath, Map<String, Map<String, byte[]>> output)
+        {
+            super(standard);
+            this.output = output;
+
+            for (Map.Entry<String, byte[]> e : classpath.entrySet())
+            {
+                String name = e.getKey();
+                int idx = name.lastIndexOf('/');
+                String pkg = idx < 0 ? "" : name.substring(0, idx).replace('/', '.');
+
+                List<JavaFileObject> list = packages.get(pkg);
+                if (list == null)
+                {
+                    list = Lists.newArrayList();
+                    packages.put(pkg, list);
+                }
+                list.add(new ClassFile(name, e.getValue()));
+            }
+        }
+
+        @Override
+        public Iterable<JavaFileObject> list(Location location, String packageName, Set<Kind> kinds, boolean recurse) throws IOException
+        {
+            Iterable<JavaFileObject> listed = super.list(location, packageName, kinds, recurse);
+
+            if (location != StandardLocation.CLASS_PATH || !kinds.contains(Kind.CLASS))
+                return listed;
+
+            List<JavaFileObject> memory = Lists.newArrayList();
+            for (Map.Entry<String, List<JavaFileObject>> e : packages.entrySet())
+            {
+                String pkg = e.getKey();
+                if (pkg.equals(packageName) || (recurse && (packageName.isEmpty() || pkg.startsWith(packageName + "."))))
+                    memory.addAll(e.getValue());
+            }
+
+            return memory.isEmpty() ? listed : Iterables.concat(memory, listed);
+        }
+
+        @Override
+        public String inferBinaryName(Location location, JavaFileObject file)
+        {
+            if (file instanceof ClassFile)
+                return ((ClassFile) file).binaryName;
+            return super.inferBinaryName(location, file);
+        }
+
+        @Override
+        public boolean isSameFile(FileObject a, FileObject b)
+        {
+            // the standard manager only knows its own files
+            if (a instanceof SimpleJavaFileObject || b instanceof SimpleJavaFileObject)
+                return a.equals(b);
+            return super.isSameFile(a, b);
+        }
+
+        @Override
+        public boolean hasLocation(Location location)
+        {
+            return location == StandardLocation.CLASS_OUTPUT || super.hasLocation(location);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, final String className, Kind kind, FileObject sibling) throws IOException
+        {
+            if (location != StandardLocation.CLASS_OUTPUT || kind != Kind.CLASS || !(sibling instanceof SourceFile))
+                throw new IOException("Unexpected output " + className + " from " + sibling);
+
+            final Map<String, byte[]> classes = output.get(((SourceFile) sibling).path);
+            final String internalName = className.replace('.', '/');
+
+            return new SimpleJavaFileObject(URI.create("memory:///" + internalName + ".class"), Kind.CLASS) {
+                @Override
+                public OutputStream openOutputStream()
+                {
+                    return new ByteArrayOutputStream() {
+                        @Override
+                        public void close()
+                        {
+                            synchronized (classes)
+                            {
+                                classes.put(internalName, toByteArray());
+                            }
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
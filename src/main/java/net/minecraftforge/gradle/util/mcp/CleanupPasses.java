@@ -0,0 +1,463 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.mcp;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.minecraftforge.gradle.common.Constants;
+
+/**
+ * Single linear scans that do exactly what the cleanup regexes do, without their backtracking.
+ * Each pass reads one buffer and appends to another, so a whole cleanup only makes one String at the end.
+ * The regex each one stands in for is in its doc, the tests hold them to it.
+ */
+final class CleanupPasses
+{
+    // the constant rewrites can all go at once, none of them makes text another one would match.
+    // 185pi100F really does look for 0.8119, see McpCleanup.
+    private static final String[][] PI_DOUBLES = {
+            { "3.1415", "Math.PI" },
+            { "6.2831", "(Math.PI * 2D)" },
+            { "1.5707", "(Math.PI / 2D)" },
+            { "4.7123", "(Math.PI * 3D / 2D)" },
+            { "0.7853", "(Math.PI / 4D)" },
+            { "0.6283", "(Math.PI / 5D)" },
+            { "57.295", "(180D / Math.PI)" },
+            { "0.6981", "(Math.PI * 2D / 9D)" },
+            { "0.3141", "(Math.PI / 10D)" },
+            { "1.2566", "(Math.PI * 2D / 5D)" },
+            { "0.21991", "(Math.PI * 7D / 100D)" },
+            { "5.8119", "(Math.PI * 185D / 100D)" },
+    };
+    private static final String[][] PI_FLOATS = {
+            { "3.1415", "(float)Math.PI" },
+            { "6.2831", "((float)Math.PI * 2F)" },
+            { "1.5707", "((float)Math.PI / 2F)" },
+            { "4.7123", "((float)Math.PI * 3F / 2F)" },
+            { "0.7853", "((float)Math.PI / 4F)" },
+            { "0.6283", "((float)Math.PI / 5F)" },
+            { "57.295", "(180F / (float)Math.PI)" },
+            { "0.6981", "((float)Math.PI * 2F / 9F)" },
+            { "0.3141", "((float)Math.PI / 10F)" },
+            { "1.2566", "((float)Math.PI * 2F / 5F)" },
+            { "0.21991", "((float)Math.PI * 7F / 100F)" },
+            { "0.8119", "((float)Math.PI * 185F / 100F)" },
+    };
+    private static final Pattern CONSTANTS = Pattern.compile(
+            "'\\\\u([0-9a-fA-F]{4})'" +                  // 1: unicode
+            "|Character\\.valueOf\\(('.')\\)" +          // 2: charval
+            "|(1\\.7976[0-9]*[Ee]\\+308[Dd])" +          // 3: maxD
+            "|(" + prefixes(PI_DOUBLES) + ")[0-9]*[Dd]" + // 4: pi doubles
+            "|(" + prefixes(PI_FLOATS) + ")[0-9]*[Ff]");  // 5: pi floats
+
+    private CleanupPasses()
+    {
+    }
+
+    private static String prefixes(String[][] table)
+    {
+        StringBuilder buf = new StringBuilder();
+        for (String[] row : table)
+        {
+            if (buf.length() > 0)
+                buf.append('|');
+            buf.append(Pattern.quote(row[0]));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @return TRUE if $ and ^ treat it as ending a line
+     */
+    private static boolean isTerminator(char c)
+    {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * @return TRUE for what \s matches
+     */
+    private static boolean isSpace(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isBreak(char c)
+    {
+        return c == '\n' || c == '\r';
+    }
+
+    /**
+     * Where a multiline ^ matches.
+     */
+    private static boolean isLineStart(CharSequence in, int i)
+    {
+        if (i == in.length())
+            return false;
+        if (i == 0)
+            return true;
+
+        char prev = in.charAt(i - 1);
+        return isTerminator(prev) && !(prev == '\r' && in.charAt(i) == '\n');
+    }
+
+    /**
+     * Where a multiline $ matches.
+     */
+    private static boolean isLineEnd(CharSequence in, int i)
+    {
+        if (i == in.length())
+            return true;
+
+        char c = in.charAt(i);
+        if (c == '\n')
+            return i == 0 || in.charAt(i - 1) != '\r';
+        return isTerminator(c);
+    }
+
+    private static int skipSpace(CharSequence in, int i)
+    {
+        while (i < in.length() && isSpace(in.charAt(i)))
+            i++;
+        return i;
+    }
+
+    /**
+     * Both of <code>^\s+</code> and then <code>\s+$</code>, without multiline.
+     */
+    static void trimSpace(CharSequence in, StringBuilder out)
+    {
+        int start = skipSpace(in, 0);
+        int end = in.length();
+
+        if (end > start)
+        {
+            char last = in.charAt(end - 1);
+            if (isSpace(last))
+            {
+                while (isSpace(in.charAt(end - 1)))
+                    end--;
+            }
+            else if (isTerminator(last))
+            {
+                // $ also matches before a final line terminator
+                int cut = end - 1;
+                while (cut > start && isSpace(in.charAt(cut - 1)))
+                    cut--;
+                out.append(in, start, cut).append(last);
+                return;
+            }
+        }
+
+        out.append(in, start, end);
+    }
+
+    /**
+     * <code>(?m)[ \t]+$</code> replaced with nothing.
+     */
+    static void stripTrailing(CharSequence in, StringBuilder out)
+    {
+        int len = in.length();
+        int i = 0;
+        while (i < len)
+        {
+            char c = in.charAt(i);
+            if (c != ' ' && c != '\t')
+            {
+                out.append(c);
+                i++;
+                continue;
+            }
+
+            int end = i;
+            while (end < len && (in.charAt(end) == ' ' || in.charAt(end) == '\t'))
+                end++;
+
+            if (!isLineEnd(in, end))
+                out.append(in, i, end);
+            i = end;
+        }
+    }
+
+    /**
+     * <code>(?m)^(?:\r\n|\r|\n){2,}</code> replaced with a newline.
+     */
+    static void collapseBreaks(CharSequence in, StringBuilder out)
+    {
+        int len = in.length();
+        int i = 0;
+        while (i < len)
+        {
+            if (isBreak(in.charAt(i)) && isLineStart(in, i))
+            {
+                int end = i;
+                while (end < len && isBreak(in.charAt(end)))
+                    end++;
+
+                // a lone \r\n still counts twice, as \r and then \n
+                if (end - i >= 2)
+                {
+                    out.append(Constants.NEWLINE);
+                    i = end;
+                    continue;
+                }
+            }
+
+            out.append(in.charAt(i++));
+        }
+    }
+
+    /**
+     * <code>(?m)^\s*(?:\r\n|\r|\n){2,}</code> replaced with a newline.
+     */
+    static void collapseBlankLines(CharSequence in, StringBuilder out)
+    {
+        int len = in.length();
+        int i = 0;
+        while (i < len)
+        {
+            if (!isSpace(in.charAt(i)) || !isLineStart(in, i))
+            {
+                out.append(in.charAt(i++));
+                continue;
+            }
+
+            // \s* backs off to the last run of two or more breaks it can, and the breaks take that whole run.
+            int end = skipSpace(in, i);
+            int match = -1;
+            for (int j = i; j < end;)
+            {
+                if (!isBreak(in.charAt(j)))
+                {
+                    j++;
+                    continue;
+                }
+
+                int run = j;
+                while (run < end && isBreak(in.charAt(run)))
+                    run++;
+                if (run - j >= 2)
+                    match = run;
+                j = run;
+            }
+
+            if (match >= 0)
+            {
+                out.append(Constants.NEWLINE);
+                i = match;
+            }
+            else
+            {
+                // any later start in this whitespace only sees less of it
+                out.append(in, i, end);
+                i = end;
+            }
+        }
+    }
+
+    /**
+     * <code>(?m)(^(?![\s{}]*$).+(?:\r\n|\r|\n))((?:[ \t]+)if.*)</code> replaced with <code>$1 newline $2</code>.
+     */
+    static void spaceIfs(CharSequence in, StringBuilder out)
+    {
+        int len = in.length();
+        int i = 0;
+        while (i < len)
+        {
+            if (!isLineStart(in, i))
+            {
+                out.append(in.charAt(i++));
+                continue;
+            }
+
+            int lineEnd = i;
+            boolean blank = true;
+            while (lineEnd < len && !isTerminator(in.charAt(lineEnd)))
+            {
+                char c = in.charAt(lineEnd++);
+                if (!isSpace(c) && c != '{' && c != '}')
+                    blank = false;
+            }
+
+            int ifEnd = -1;
+            int next = lineEnd;
+            if (!blank && lineEnd < len && isBreak(in.charAt(lineEnd)))
+            {
+                next = lineEnd + (in.charAt(lineEnd) == '\r' && lineEnd + 1 < len && in.charAt(lineEnd + 1) == '\n' ? 2 : 1);
+
+                int indent = next;
+                while (indent < len && (in.charAt(indent) == ' ' || in.charAt(indent) == '\t'))
+                    indent++;
+
+                if (indent > next && indent + 1 < len && in.charAt(indent) == 'i' && in.charAt(indent + 1) == 'f')
+                {
+                    ifEnd = indent + 2;
+                    while (ifEnd < len && !isTerminator(in.charAt(ifEnd)))
+                        ifEnd++;
+                }
+            }
+
+            if (ifEnd >= 0)
+            {
+                out.append(in, i, next).append(Constants.NEWLINE).append(in, next, ifEnd);
+                i = ifEnd;
+            }
+            else
+            {
+                // an empty line still has to move on past its terminator
+                int end = Math.max(lineEnd, i + 1);
+                out.append(in, i, end);
+                i = end;
+            }
+        }
+    }
+
+    /**
+     * <code>(?m)(?&lt;=\{)\s+(?=(?:\r\n|\r|\n)[ \t]*\S)</code> replaced with nothing.
+     */
+    static void closeBlockStarts(CharSequence in, StringBuilder out)
+    {
+        closeBlocks(in, out, true);
+    }
+
+    /**
+     * <code>(?m)(?&lt;=[;}])\s+(?=(?:\r\n|\r|\n)\s*})</code> replaced with nothing.
+     */
+    static void closeBlockEnds(CharSequence in, StringBuilder out)
+    {
+        closeBlocks(in, out, false);
+    }
+
+    private static void closeBlocks(CharSequence in, StringBuilder out, boolean starts)
+    {
+        int len = in.length();
+        int i = 0;
+        while (i < len)
+        {
+            char c = in.charAt(i);
+            out.append(c);
+            i++;
+
+            boolean after = starts ? c == '{' : c == ';' || c == '}';
+            if (!after || i == len || !isSpace(in.charAt(i)))
+                continue;
+
+            int end = skipSpace(in, i);
+
+            // \s+ backs off to the last break, as long as theres something after it
+            int lastBreak = -1;
+            for (int j = end - 1; j > i; j--)
+            {
+                if (isBreak(in.charAt(j)))
+                {
+                    lastBreak = j;
+                    break;
+                }
+            }
+
+            boolean matches = lastBreak >= 0 && end < len;
+            if (matches && starts)
+            {
+                for (int j = lastBreak + 1; j < end; j++)
+                {
+                    if (in.charAt(j) != ' ' && in.charAt(j) != '\t')
+                    {
+                        matches = false;
+                        break;
+                    }
+                }
+            }
+            else if (matches)
+            {
+                matches = in.charAt(end) == '}';
+            }
+
+            if (matches)
+            {
+                i = lastBreak;
+            }
+            else
+            {
+                out.append(in, i, end);
+                i = end;
+            }
+        }
+    }
+
+    /**
+     * The unicode, charval, maxD and pi rewrites of {@link McpCleanup#cleanup(String)}, all in one pass.
+     * @return FALSE if they cant be done in one pass, and nothing was written.
+     */
+    static boolean rewriteConstants(CharSequence in, StringBuilder out)
+    {
+        Matcher matcher = CONSTANTS.matcher(in);
+        int last = 0;
+        while (matcher.find())
+        {
+            String replacement;
+            if (matcher.group(1) != null)
+            {
+                int val = Integer.parseInt(matcher.group(1), 16);
+                // work around the replace('\u00a7', '$') call in MinecraftServer and a couple of '\u0000'
+                if (val <= 255)
+                    continue;
+
+                // the digits could make a pi constant with whats after them, which the separate passes would catch
+                if (matcher.end() < in.length() && in.charAt(matcher.end()) == '.')
+                    return false;
+
+                replacement = Integer.toString(val);
+            }
+            else if (matcher.group(2) != null)
+            {
+                replacement = matcher.group(2);
+            }
+            else if (matcher.group(3) != null)
+            {
+                replacement = "Double.MAX_VALUE";
+            }
+            else if (matcher.group(4) != null)
+            {
+                replacement = lookup(PI_DOUBLES, matcher.group(4));
+            }
+            else
+            {
+                replacement = lookup(PI_FLOATS, matcher.group(5));
+            }
+
+            out.append(in, last, matcher.start()).append(replacement);
+            last = matcher.end();
+        }
+
+        out.append(in, last, in.length());
+        return true;
+    }
+
+    private static String lookup(String[][] table, String prefix)
+    {
+        for (String[] row : table)
+        {
+            if (row[0].equals(prefix))
+                return row[1];
+        }
+        throw new IllegalStateException(prefix);
+    }
+}
@@ -19,22 +19,19 @@
  */
 package net.minecraftforge.gradle.util.mcp;
 
-import net.minecraftforge.gradle.common.Constants;
-
 public class FFPatcher
 {
     static final String MODIFIERS = "public|protected|private|static|abstract|final|native|synchronized|transient|volatile|strictfp";
 
-    // Remove TRAILING whitespace
-    private static final String TRAILING = "(?m)[ \\t]+$";
-
-    //Remove repeated blank lines
-    private static final String NEWLINES = "(?m)^(\\r\\n|\\r|\\n){2,}";
-
+    // Remove TRAILING whitespace, (?m)[ \t]+$
+    // then repeated blank lines, (?m)^(\r\n|\r|\n){2,}
     public static String processFile(String text)
     {
-        text = text.replaceAll(TRAILING, "");
-        text = text.replaceAll(NEWLINES, Constants.NEWLINE);
-        return text;
+        StringBuilder trimmed = new StringBuilder(text.length());
+        CleanupPasses.stripTrailing(text, trimmed);
+
+        StringBuilder out = new StringBuilder(trimmed.length());
+        CleanupPasses.collapseBreaks(trimmed, out);
+        return out.toString();
     }
 }
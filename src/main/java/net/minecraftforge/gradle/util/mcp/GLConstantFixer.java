@@ -31,6 +31,7 @@ import net.minecraftforge.gradle.util.json.GLConstantGroup;
 import net.minecraftforge.gradle.util.json.JsonFactory;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.Maps;
 import com.google.common.io.Resources;
 import com.google.gson.reflect.TypeToken;
 
@@ -52,7 +53,6 @@ public class GLConstantFixer
     };
     //@formatter:on
 
-    private final List<GLConstantGroup> json;
     private static final Pattern        CALL_REGEX     = Pattern.compile("(" + Joiner.on("|").join(PACKAGES) + ")\\.([\\w]+)\\(.+\\)");
     private static final Pattern        CONSTANT_REGEX = Pattern.compile("(?<![-.\\w])\\d+(?![.\\w])");
     private static final String         ADD_AFTER      = "org.lwjgl.opengl.GL11";
@@ -60,10 +60,63 @@ public class GLConstantFixer
     private static final String         IMPORT_CHECK   = "import " + CHECK;
     private static final String         IMPORT_REPLACE = "import " + ADD_AFTER + ";";
 
+    // package -> method -> literal -> replacement, built from gl.json once and shared by every fixer.
+    private static Map<String, Map<String, Map<String, String>>> INDEX;
+
+    private final Map<String, Map<String, Map<String, String>>> index;
+
     public GLConstantFixer() throws IOException
     {
-        String text = Resources.toString(Resources.getResource(GLConstantFixer.class, "gl.json"), Charset.defaultCharset());
-        json = JsonFactory.GSON.fromJson(text, new TypeToken<List<GLConstantGroup>>() {}.getType());
+        index = getIndex();
+    }
+
+    private static synchronized Map<String, Map<String, Map<String, String>>> getIndex() throws IOException
+    {
+        if (INDEX == null)
+        {
+            String text = Resources.toString(Resources.getResource(GLConstantFixer.class, "gl.json"), Charset.defaultCharset());
+            List<GLConstantGroup> json = JsonFactory.GSON.fromJson(text, new TypeToken<List<GLConstantGroup>>() {}.getType());
+            INDEX = buildIndex(json);
+        }
+        return INDEX;
+    }
+
+    /**
+     * Flattens the groups into lookups. Where several groups or constant classes claim the same
+     * literal for a method, the last one wins, same as walking the groups in order did.
+     */
+    private static Map<String, Map<String, Map<String, String>>> buildIndex(List<GLConstantGroup> json)
+    {
+        Map<String, Map<String, Map<String, String>>> index = Maps.newHashMap();
+
+        for (GLConstantGroup group : json)
+        {
+            for (Map.Entry<String, List<String>> func : group.functions.entrySet())
+            {
+                Map<String, Map<String, String>> methods = index.computeIfAbsent(func.getKey(), k -> Maps.newHashMap());
+
+                for (String method : func.getValue())
+                {
+                    Map<String, String> literals = methods.computeIfAbsent(method, k -> Maps.newHashMap());
+
+                    for (Map.Entry<String, Map<String, String>> entry : group.constants.entrySet())
+                    {
+                        for (Map.Entry<String, String> constant : entry.getValue().entrySet())
+                        {
+                            literals.put(constant.getKey(), entry.getKey() + "." + constant.getValue());
+                        }
+                    }
+                }
+            }
+        }
+
+        // nothing to replace in these, so dont even look at their arguments.
+        for (Map<String, Map<String, String>> methods : index.values())
+        {
+            methods.values().removeIf(Map::isEmpty);
+        }
+
+        return index;
     }
 
     public String fixOGL(String text)
@@ -74,7 +127,20 @@ public class GLConstantFixer
             return text;
         }
 
-        text = annotateConstants(text);
+        boolean calls = false;
+        for (String pack : PACKAGES)
+        {
+            if (index.containsKey(pack) && text.contains(pack + "."))
+            {
+                calls = true;
+                break;
+            }
+        }
+
+        if (calls)
+        {
+            text = annotateConstants(text);
+        }
 
         for (String pack : PACKAGES)
         {
@@ -90,65 +156,69 @@ public class GLConstantFixer
     private String annotateConstants(String text)
     {
         Matcher rootMatch = CALL_REGEX.matcher(text);
-        String pack, method, fullCall;
-        StringBuffer out = new StringBuffer(text.length());
-        StringBuffer innerOut;
-
-        // search with regex.
-        while (rootMatch.find())
+        StringBuilder out = null;
+        int last = 0;
+        int pos = 0;
+        int gl = text.indexOf("GL");
+        int arb = text.indexOf("ARB");
+
+        // every package starts with GL or ARB, so only try the regex where one of those is.
+        while (gl >= 0 || arb >= 0)
         {
-            // helper variables
-            fullCall = rootMatch.group();
-            pack = rootMatch.group(1);
-            method = rootMatch.group(2);
+            if (gl >= 0 && gl < pos)
+                gl = text.indexOf("GL", pos);
+            if (arb >= 0 && arb < pos)
+                arb = text.indexOf("ARB", pos);
+            if (gl < 0 && arb < 0)
+                break;
+            pos = gl < 0 ? arb : arb < 0 ? gl : Math.min(gl, arb);
+
+            rootMatch.region(pos, text.length());
+            if (!rootMatch.lookingAt())
+            {
+                pos++;
+                continue;
+            }
+            pos = rootMatch.end();
+
+            // only calls that can have a constant in them are worth looking into
+            Map<String, Map<String, String>> methods = index.get(rootMatch.group(1));
+            Map<String, String> literals = methods == null ? null : methods.get(rootMatch.group(2));
+            if (literals == null)
+            {
+                continue;
+            }
 
+            String fullCall = rootMatch.group();
             Matcher constantMatcher = CONSTANT_REGEX.matcher(fullCall);
-            innerOut = new StringBuffer(fullCall.length());
 
             // search for hardcoded numbers
             while (constantMatcher.find())
             {
-                // helper variables and return variable.
-                String constant = constantMatcher.group();
-                String answer = null;
-
-                // iterrate over the JSON
-                for (GLConstantGroup group : json)
+                String answer = literals.get(constantMatcher.group());
+                if (answer == null)
                 {
-
-                    // ensure that the package and method are defined
-                    if (group.functions.containsKey(pack) && group.functions.get(pack).contains(method))
-                    {
-                        // itterrate through the map.
-                        for (Map.Entry<String, Map<String, String>> entry : group.constants.entrySet())
-                        {
-                            // find the actual constant for the number from the regex
-                            if (entry.getValue().containsKey(constant))
-                            {
-                                // construct the final line
-                                answer = entry.getKey() + "." + entry.getValue().get(constant);
-                            }
-                        }
-                    }
-
+                    continue;
                 }
 
-                // replace the final line.
-                if (answer != null)
+                if (out == null)
                 {
-                    constantMatcher.appendReplacement(innerOut, Matcher.quoteReplacement(answer));
+                    out = new StringBuilder(text.length() + 1024);
                 }
-            }
-            constantMatcher.appendTail(innerOut);
 
-            // replace the final line.
-            if (fullCall != null)
-            {
-                rootMatch.appendReplacement(out, Matcher.quoteReplacement(innerOut.toString()));
+                // copy everything up to the number, then the constant in its place.
+                out.append(text, last, rootMatch.start() + constantMatcher.start());
+                out.append(answer);
+                last = rootMatch.start() + constantMatcher.end();
             }
         }
-        rootMatch.appendTail(out);
 
+        if (out == null)
+        {
+            return text;
+        }
+
+        out.append(text, last, text.length());
         return out.toString();
     }
 
@@ -19,12 +19,14 @@
  */
 package net.minecraftforge.gradle.util.mcp;
 
-import java.io.StringWriter;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import net.minecraftforge.gradle.common.Constants;
 
+import com.google.common.collect.Lists;
+
 public class McpCleanup
 {
     public static final Pattern COMMENTS_TRAILING = Pattern.compile("(?m)[ \\t]+$");
@@ -43,44 +45,46 @@ public class McpCleanup
     {
         CommentState state = CommentState.CODE;
         int i = 0;
-        try (StringWriter out = new StringWriter(text.length()))
+        char[] chars = text.toCharArray();
+        StringBuilder out = new StringBuilder(chars.length);
+        try
         {
-            while (i < text.length())
+            while (i < chars.length)
             {
                 if (state == CommentState.CODE)
                 {
-                    out.write(text.charAt(i++));
+                    out.append(chars[i++]);
                 }
                 else if (state == CommentState.STRING || state == CommentState.CHARACTER)
                 {
                     // write the first quote
-                    out.write(text.charAt(i++));
+                    out.append(chars[i++]);
                     char end = state == CommentState.STRING ? '"' : '\'';
-                    while (i < text.length() && text.charAt(i) != end)
+                    while (i < chars.length && chars[i] != end)
                     {
                         // escape characters
-                        if (text.charAt(i) == '\\')
+                        if (chars[i] == '\\')
                         {
-                            out.write(text.charAt(i++));
+                            out.append(chars[i++]);
                         }
                         // the slash might have been the last character
-                        if (i >= text.length())
+                        if (i >= chars.length)
                         {
                             break;
                         }
-                        out.write(text.charAt(i++));
+                        out.append(chars[i++]);
                     }
                     // write the second quote
                     // check because the text might not have ended
-                    if (i < text.length())
+                    if (i < chars.length)
                     {
-                        out.write(text.charAt(i++));
+                        out.append(chars[i++]);
                     }
                 }
                 else if (state == CommentState.SINGLE_LINE_COMMENT)
                 {
                     i += 2; // skip "//"
-                    while (i < text.length() && text.charAt(i) != '\n' && text.charAt(i) != '\r')
+                    while (i < chars.length && chars[i] != '\n' && chars[i] != '\r')
                     {
                         i++;
                     }
@@ -89,31 +93,31 @@ public class McpCleanup
                 else // state == CommentState.MULTI_LINE_COMMENT
                 {
                     i += 2; // skip "/*"
-                    while (i < text.length() && (text.charAt(i) != '*' || text.charAt(i + 1) != '/'))
+                    while (i < chars.length && (chars[i] != '*' || chars[i + 1] != '/'))
                     {
                         i++;
                     }
                     i += 2; //skip "*/"
                 }
                 state = null;
-                if (i < text.length())
+                if (i < chars.length)
                 {
-                    if (text.charAt(i) == '"')
+                    if (chars[i] == '"')
                     {
                         state = CommentState.STRING;
                     }
-                    else if (text.charAt(i) == '\'')
+                    else if (chars[i] == '\'')
                     {
                         state = CommentState.CHARACTER;
                     }
                 }
-                if (i + 1 < text.length() && state == null)
+                if (i + 1 < chars.length && state == null)
                 {
-                    if (text.charAt(i) == '/' && text.charAt(i + 1) == '/')
+                    if (chars[i] == '/' && chars[i + 1] == '/')
                     {
                         state = CommentState.SINGLE_LINE_COMMENT;
                     }
-                    else if (text.charAt(i) == '/' && text.charAt(i + 1) == '*')
+                    else if (chars[i] == '/' && chars[i + 1] == '*')
                     {
                         state = CommentState.MULTI_LINE_COMMENT;
                     }
@@ -123,17 +127,19 @@ public class McpCleanup
                     state = CommentState.CODE;
                 }
             }
-            text = out.toString();
         }
         catch (Exception e)
         {
             throw new RuntimeException(e);
         }
 
-        text = COMMENTS_TRAILING.matcher(text).replaceAll("");
-        text = COMMENTS_NEWLINES.matcher(text).replaceAll(Constants.NEWLINE);
+        // COMMENTS_TRAILING then COMMENTS_NEWLINES
+        StringBuilder trimmed = new StringBuilder(out.length());
+        CleanupPasses.stripTrailing(out, trimmed);
+        out.setLength(0);
+        CleanupPasses.collapseBreaks(trimmed, out);
 
-        return text;
+        return out.toString();
     }
 
     //---------------------------------------------
@@ -252,15 +258,54 @@ public class McpCleanup
 
     public static String cleanup(String text)
     {
-        // simple replacements
-        text = CLEANUP_header.matcher(text).replaceAll("");
-        text = CLEANUP_footer.matcher(text).replaceAll("");
-        text = CLEANUP_trailing.matcher(text).replaceAll("");
-        text = CLEANUP_newlines.matcher(text).replaceAll(Constants.NEWLINE);
-        text = CLEANUP_ifstarts.matcher(text).replaceAll("$1" + Constants.NEWLINE + "$2");
-        text = CLEANUP_blockstarts.matcher(text).replaceAll("");
-        text = CLEANUP_blockends.matcher(text).replaceAll("");
-        text = CLEANUP_gl.matcher(text).replaceAll("");
+        // CLEANUP_header, CLEANUP_footer, then the rest in order, each a single linear pass.
+        StringBuilder buf = new StringBuilder(text.length() + 256);
+        StringBuilder spare = new StringBuilder(text.length() + 256);
+        CleanupPasses.trimSpace(text, buf);
+
+        for (Pass pass : WHITESPACE_PASSES)
+        {
+            spare.setLength(0);
+            pass.apply(buf, spare);
+
+            StringBuilder tmp = buf;
+            buf = spare;
+            spare = tmp;
+        }
+
+        // GL comments were stripped with the others, these can only be in strings
+        if (buf.indexOf("/*") >= 0)
+        {
+            String replaced = CLEANUP_gl.matcher(buf).replaceAll("");
+            buf.setLength(0);
+            buf.append(replaced);
+        }
+
+        spare.setLength(0);
+        if (CleanupPasses.rewriteConstants(buf, spare))
+            return spare.toString();
+
+        return rewriteConstants(buf.toString());
+    }
+
+    private interface Pass
+    {
+        void apply(CharSequence in, StringBuilder out);
+    }
+
+    private static final Pass[] WHITESPACE_PASSES = {
+            CleanupPasses::stripTrailing,      // CLEANUP_trailing
+            CleanupPasses::collapseBlankLines, // CLEANUP_newlines
+            CleanupPasses::spaceIfs,           // CLEANUP_ifstarts
+            CleanupPasses::closeBlockStarts,   // CLEANUP_blockstarts
+            CleanupPasses::closeBlockEnds,     // CLEANUP_blockends
+    };
+
+    /**
+     * The constant rewrites one pattern at a time, for the odd file they cant all be done at once.
+     */
+    private static String rewriteConstants(String text)
+    {
         text = CLEANUP_maxD.matcher(text).replaceAll("Double.MAX_VALUE");
     
         // unicode chars
@@ -327,14 +372,61 @@ public class McpCleanup
         {
             String pack = match.group(1);
 
+            List<String> redundant = Lists.newArrayList();
             Matcher match2 = CLEANUP_import.matcher(text);
             while (match2.find())
             {
                 if (match2.group(1).equals(pack))
                 {
-                    text = text.replace(match2.group(), "");
+                    redundant.add(match2.group());
                 }
             }
+
+            if (redundant.isEmpty())
+                return text;
+
+            // the imports cant overlap, so theyre all cut out in one go
+            StringBuilder buf = new StringBuilder(text.length());
+            int last = 0;
+            int idx = text.indexOf("import ");
+            while (idx >= 0)
+            {
+                String found = null;
+                for (String imp : redundant)
+                {
+                    if (text.startsWith(imp, idx))
+                    {
+                        found = imp;
+                        break;
+                    }
+                }
+
+                if (found == null)
+                {
+                    idx = text.indexOf("import ", idx + 1);
+                }
+                else
+                {
+                    buf.append(text, last, idx);
+                    last = idx + found.length();
+                    idx = text.indexOf("import ", last);
+                }
+            }
+            buf.append(text, last, text.length());
+            String fixed = buf.toString();
+
+            // unless cutting one joined up another, which one at a time would have cut depending on the order
+            for (String imp : redundant)
+            {
+                if (fixed.contains(imp))
+                {
+                    for (String again : redundant)
+                        text = text.replace(again, "");
+                    return text;
+                }
+            }
+
+            return fixed;
         }
 
         return text;
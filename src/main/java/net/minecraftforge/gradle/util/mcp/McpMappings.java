@@ -0,0 +1,336 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.mcp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import net.minecraftforge.gradle.common.Constants;
+
+import org.gradle.api.Project;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * The SRG to MCP names from the methods, fields and params CSVs.
+ * Loaded once per set of CSVs and shared by every task that needs them for as long as the daemon lives,
+ * and snapshotted in a binary form keyed on the CSV contents so a fresh daemon doesnt have to parse them either.
+ */
+public final class McpMappings
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(McpMappings.class);
+
+    // bump if the format, or what is read from the CSVs, changes.
+    private static final String HEADER = "FG-MAPPINGS 1";
+
+    private static final Cache<List<Object>, McpMappings> LOADED = CacheBuilder.newBuilder().maximumSize(4).softValues().build();
+
+    private final Map<String, String> methods;
+    private final Map<String, String> methodDocs;
+    private final Map<String, String> fields;
+    private final Map<String, String> fieldDocs;
+    private final Map<String, String> params;
+    private final String hash;
+
+    private McpMappings(String hash, Map<String, String> methods, Map<String, String> methodDocs, Map<String, String> fields, Map<String, String> fieldDocs, Map<String, String> params)
+    {
+        this.hash = hash;
+        this.methods = Collections.unmodifiableMap(methods);
+        this.methodDocs = Collections.unmodifiableMap(methodDocs);
+        this.fields = Collections.unmodifiableMap(fields);
+        this.fieldDocs = Collections.unmodifiableMap(fieldDocs);
+        this.params = Collections.unmodifiableMap(params);
+    }
+
+    /**
+     * Loads the mappings, snapshotting them in the gradle home.
+     * Any of the CSVs may be null, in which case its names are empty.
+     */
+    public static McpMappings load(Project project, File methodCsv, File fieldCsv, File paramCsv) throws IOException
+    {
+        return load(new File(project.getGradle().getGradleUserHomeDir(), "caches/minecraft/mappingSnapshots"), methodCsv, fieldCsv, paramCsv);
+    }
+
+    /**
+     * Loads the mappings. Any of the CSVs may be null, in which case its names are empty.
+     * @param snapshotDir Where to keep the binary snapshots, or null to not keep them
+     */
+    public static McpMappings load(final File snapshotDir, final File methodCsv, final File fieldCsv, final File paramCsv) throws IOException
+    {
+        List<Object> key = Lists.newArrayList(stamp(methodCsv), stamp(fieldCsv), stamp(paramCsv), snapshotDir);
+        try
+        {
+            return LOADED.get(key, new Callable<McpMappings>() {
+                @Override
+                public McpMappings call() throws IOException
+                {
+                    return read(snapshotDir, methodCsv, fieldCsv, paramCsv);
+                }
+            });
+        }
+        catch (ExecutionException e)
+        {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    static void clearLoaded()
+    {
+        LOADED.invalidateAll();
+    }
+
+    private static List<Object> stamp(File file)
+    {
+        if (file == null)
+            return null;
+        return Arrays.<Object> asList(file.getAbsolutePath(), file.length(), file.lastModified());
+    }
+
+    private static McpMappings read(File snapshotDir, File methodCsv, File fieldCsv, File paramCsv) throws IOException
+    {
+        String hash = Constants.hash(contentHash(methodCsv) + contentHash(fieldCsv) + contentHash(paramCsv));
+
+        File snapshot = null;
+        if (snapshotDir != null)
+        {
+            snapshot = new File(snapshotDir, hash + ".bin");
+
+            if (snapshot.isFile())
+            {
+                try
+                {
+                    return readSnapshot(snapshot, hash);
+                }
+                catch (IOException e)
+                {
+                    LOGGER.debug("Ignoring broken mapping snapshot {}", snapshot, e);
+                }
+            }
+        }
+
+        Map<String, String> methods = Maps.newHashMap();
+        Map<String, String> methodDocs = Maps.newHashMap();
+        Map<String, String> fields = Maps.newHashMap();
+        Map<String, String> fieldDocs = Maps.newHashMap();
+        Map<String, String> params = Maps.newHashMap();
+
+        readCsv(methodCsv, methods, methodDocs);
+        readCsv(fieldCsv, fields, fieldDocs);
+        readCsv(paramCsv, params, null);
+
+        McpMappings mappings = new McpMappings(hash, methods, methodDocs, fields, fieldDocs, params);
+
+        if (snapshot != null)
+        {
+            try
+            {
+                mappings.writeSnapshot(snapshot);
+            }
+            catch (IOException e)
+            {
+                // its only a cache
+                LOGGER.debug("Could not write mapping snapshot {}", snapshot, e);
+            }
+        }
+
+        return mappings;
+    }
+
+    private static String contentHash(File file)
+    {
+        return file == null ? "null" : Constants.hash(file);
+    }
+
+    private static void readCsv(File csv, Map<String, String> names, Map<String, String> docs) throws IOException
+    {
+        if (csv == null)
+            return;
+
+        try (CSVReader reader = Constants.getReader(csv))
+        {
+            for (String[] s : reader.readAll())
+            {
+                names.put(s[0], s[1]);
+                if (docs != null && s.length > 3 && !s[3].isEmpty())
+                    docs.put(s[0], s[3]);
+            }
+        }
+    }
+
+    private static McpMappings readSnapshot(File snapshot, String hash) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot), 1 << 16)))
+        {
+            if (!HEADER.equals(in.readUTF()))
+                throw new IOException("Unknown snapshot format");
+
+            return new McpMappings(hash, readMap(in), readMap(in), readMap(in), readMap(in), readMap(in));
+        }
+    }
+
+    private static Map<String, String> readMap(DataInputStream in) throws IOException
+    {
+        int size = in.readInt();
+        Map<String, String> map = Maps.newHashMapWithExpectedSize(size);
+        for (int i = 0; i < size; i++)
+        {
+            map.put(readString(in), readString(in));
+        }
+        return map;
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeSnapshot(File snapshot) throws IOException
+    {
+        snapshot.getParentFile().mkdirs();
+        File temp = File.createTempFile(snapshot.getName(), ".tmp", snapshot.getParentFile());
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16)))
+            {
+                out.writeUTF(HEADER);
+                writeMap(out, methods);
+                writeMap(out, methodDocs);
+                writeMap(out, fields);
+                writeMap(out, fieldDocs);
+                writeMap(out, params);
+            }
+
+            try
+            {
+                Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            temp.delete();
+        }
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException
+    {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> e : map.entrySet())
+        {
+            writeString(out, e.getKey());
+            writeString(out, e.getValue());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException
+    {
+        // not writeUTF, a long enough javadoc would go over its limit
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @return A hash of the contents of the CSVs these were read from
+     */
+    public String getHash()
+    {
+        return hash;
+    }
+
+    /**
+     * @return The MCP name of a SRG method or field, or null if it has none
+     */
+    public String getName(String srg)
+    {
+        String name = methods.get(srg);
+        return name != null ? name : fields.get(srg);
+    }
+
+    /**
+     * @return SRG method name to MCP name
+     */
+    public Map<String, String> getMethods()
+    {
+        return methods;
+    }
+
+    /**
+     * @return SRG method name to its javadoc, only for those that have one
+     */
+    public Map<String, String> getMethodDocs()
+    {
+        return methodDocs;
+    }
+
+    /**
+     * @return SRG field name to MCP name
+     */
+    public Map<String, String> getFields()
+    {
+        return fields;
+    }
+
+    /**
+     * @return SRG field name to its javadoc, only for those that have one
+     */
+    public Map<String, String> getFieldDocs()
+    {
+        return fieldDocs;
+    }
+
+    /**
+     * @return SRG parameter name to MCP name
+     */
+    public Map<String, String> getParams()
+    {
+        return params;
+    }
+}
@@ -30,11 +30,17 @@ import static org.objectweb.asm.Opcodes.PUTFIELD;
 import static org.objectweb.asm.Opcodes.PUTSTATIC;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -50,6 +56,8 @@ import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
@@ -58,14 +66,21 @@ import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import com.google.common.io.LineProcessor;
 
+import net.minecraftforge.gradle.common.Constants;
+
 public class ReobfExceptor
 {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReobfExceptor.class);
+    private static final String INDEX_HEADER = "FG-ACCESS 1";
+
     // info supplied.
     public File toReobfJar;
     public File deobfJar;
     public File methodCSV;
     public File fieldCSV;
     public File excConfig;
+    // if set, used instead of reading the CSVs
+    public McpMappings mappings;
     
     // state stuff
     Map<String, String> clsMap = Maps.newHashMap();
@@ -92,61 +107,149 @@ public class ReobfExceptor
      */
     public void doFirstThings() throws IOException
     {
-        Map<String, String> csvData = readCSVs();
-        JarInfo oldInfo = readJar(deobfJar);
+        McpMappings csvData = mappings != null ? mappings : McpMappings.load((File) null, methodCSV, fieldCSV, null);
+        Map<String, AccessInfo> oldAccess = readAccess(deobfJar);
         JarInfo newInfo = readJar(toReobfJar);
         
         clsMap = createClassMap(newInfo.map, newInfo.interfaces);
-        renameAccess(oldInfo.access, csvData);
-        access = mergeAccess(newInfo.access, oldInfo.access);
+        renameAccess(oldAccess, csvData);
+        access = mergeAccess(newInfo.access, oldAccess);
     }
-    
-    // Preliminary things here
-    
-    private Map<String, String> readCSVs() throws IOException
+
+    /**
+     * Reads the synthetic accessors of the deobf jar, from the index next to it if its still for the same jar.
+     * @param deobfJar The deobfuscated minecraft jar
+     * @return The accessors keyed on owner/name+desc
+     * @throws IOException if the jar cant be read
+     */
+    static Map<String, AccessInfo> readAccess(File deobfJar) throws IOException
     {
-        final Map<String, String> csvData = Maps.newHashMap();
-        File[] csvs = new File[]
+        File index = new File(deobfJar.getPath() + ".access");
+        // the raw bytes are hashed, inflating the jar would cost most of what reading it does
+        String hash = Constants.hash(deobfJar, Constants.HASH_FUNC);
+
+        if (hash != null && index.isFile())
         {
-            fieldCSV == null ? null : fieldCSV,
-            methodCSV == null ? null : methodCSV
-        };
+            try
+            {
+                Map<String, AccessInfo> access = readIndex(index, hash);
+                if (access != null)
+                    return access;
+            }
+            catch (IOException e)
+            {
+                LOGGER.debug("Ignoring broken access index {}", index, e);
+            }
+        }
+
+        Map<String, AccessInfo> access = readJar(deobfJar).access;
 
-        for (File f : csvs)
+        if (hash != null)
         {
-            if (f == null) continue;
-           
-            Files.readLines(f, Charset.defaultCharset(), new LineProcessor<Object>()
+            try
+            {
+                writeIndex(index, hash, access);
+            }
+            catch (IOException e)
             {
-                @Override
-                public boolean processLine(String line) throws IOException
+                // its only a cache
+                LOGGER.debug("Could not write access index {}", index, e);
+            }
+        }
+
+        return access;
+    }
+
+    /**
+     * @return null if the index is for another jar
+     */
+    private static Map<String, AccessInfo> readIndex(File index, String hash) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index))))
+        {
+            if (!INDEX_HEADER.equals(in.readUTF()))
+                throw new IOException("Unknown index format");
+            if (!hash.equals(in.readUTF()))
+                return null;
+
+            int size = in.readInt();
+            Map<String, AccessInfo> access = Maps.newHashMapWithExpectedSize(size);
+            for (int i = 0; i < size; i++)
+            {
+                AccessInfo info = new AccessInfo(in.readUTF(), in.readUTF(), in.readUTF());
+                info.access = in.readInt();
+
+                int insns = in.readInt();
+                for (int j = 0; j < insns; j++)
                 {
-                    String[] s = line.split(",");
-                    csvData.put(s[0], s[1]);
-                    return true;
+                    info.add(in.readInt(), in.readUTF(), in.readUTF(), in.readUTF());
                 }
-                @Override public Object getResult() { return null; }
-            });
+
+                access.put(info.owner + "/" + info.name + info.desc, info);
+            }
+            return access;
         }
-        
-        return csvData;
     }
+
+    private static void writeIndex(File index, String hash, Map<String, AccessInfo> access) throws IOException
+    {
+        File temp = File.createTempFile(index.getName(), ".tmp", index.getAbsoluteFile().getParentFile());
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+            {
+                out.writeUTF(INDEX_HEADER);
+                out.writeUTF(hash);
+                out.writeInt(access.size());
+                for (AccessInfo info : access.values())
+                {
+                    out.writeUTF(info.owner);
+                    out.writeUTF(info.name);
+                    out.writeUTF(info.desc);
+                    out.writeInt(info.access);
+                    out.writeInt(info.insns.size());
+                    for (Insn i : info.insns)
+                    {
+                        out.writeInt(i.opcode);
+                        out.writeUTF(i.owner);
+                        out.writeUTF(i.name);
+                        out.writeUTF(i.desc);
+                    }
+                }
+            }
+
+            try
+            {
+                java.nio.file.Files.move(temp.toPath(), index.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                java.nio.file.Files.move(temp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            temp.delete();
+        }
+    }
+    
+    // Preliminary things here
     
     // ACTUAL things here...
     
-    private void renameAccess(Map<String, AccessInfo> data, Map<String, String> csvData) throws IOException
+    private void renameAccess(Map<String, AccessInfo> data, McpMappings csvData) throws IOException
     {
         for (AccessInfo info : data.values())
         {
             for (Insn i : info.insns)
             {
-                String tmp = csvData.get(i.name);
+                String tmp = csvData.getName(i.name);
                 i.name = tmp == null ? i.name : tmp;
             }
         }
     }
     
-    private JarInfo readJar(File inJar) throws IOException
+    private static JarInfo readJar(File inJar) throws IOException
     {
         try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(new FileInputStream(inJar))))
         {
@@ -402,7 +505,7 @@ public class ReobfExceptor
     }
 
     @SuppressWarnings("unused")
-    private static class AccessInfo
+    static class AccessInfo
     {
         public String owner;
         public String name;
@@ -444,7 +547,7 @@ public class ReobfExceptor
         }
     }
     
-    private static class Insn
+    static class Insn
     {   
         public int opcode;
         public String owner;
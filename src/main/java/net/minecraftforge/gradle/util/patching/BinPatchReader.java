@@ -0,0 +1,302 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.patching;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+
+import lzma.sdk.lzma.Decoder;
+import lzma.streams.LzmaInputStream;
+import net.minecraftforge.gradle.util.zip.RawZipFile;
+
+/**
+ * Reads binpatches written by {@link BinPatchWriter}, in any of the {@link BinPatches.Format}s.
+ * Patches are only decoded when they are asked for, and can be read from several threads at once.
+ */
+public abstract class BinPatchReader implements Closeable
+{
+    private static final int PACK200_MAGIC = 0xCAFED00D;
+    private static final int ZIP_MAGIC     = 0x504B0304;
+
+    /**
+     * @param file The binpatches
+     * @param tempDir Where the LZMA compressed containers get expanded to, so they can be read in any order
+     * @return A reader for the patches
+     * @throws IOException if the file cant be read
+     */
+    public static BinPatchReader open(File file, File tempDir) throws IOException
+    {
+        if (isIndexed(file))
+        {
+            return new IndexedReader(file);
+        }
+
+        // jar or pack200 in one LZMA stream, only readable from the start. expand it once.
+        tempDir.mkdirs();
+        File expanded = File.createTempFile("binpatches", ".jar", tempDir);
+        try
+        {
+            try (InputStream in = new BufferedInputStream(new LzmaInputStream(new FileInputStream(file), new Decoder()));
+                 OutputStream out = new BufferedOutputStream(new FileOutputStream(expanded)))
+            {
+                in.mark(4);
+                int magic = new DataInputStream(in).readInt();
+                in.reset();
+
+                if (magic == ZIP_MAGIC)
+                {
+                    ByteStreams.copy(in, out);
+                }
+                else if (magic == PACK200_MAGIC)
+                {
+                    try (JarOutputStream jar = new JarOutputStream(out))
+                    {
+                        Unpacking.unpack(in, jar);
+                    }
+                }
+                else
+                {
+                    throw new IOException("Unknown binpatch format in " + file);
+                }
+            }
+
+            return new JarReader(expanded);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            expanded.delete();
+            throw e;
+        }
+    }
+
+    private static boolean isIndexed(File file) throws IOException
+    {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"))
+        {
+            if (raf.length() < 12)
+                return false;
+
+            raf.seek(raf.length() - 4);
+            return raf.readInt() == BinPatchWriter.INDEX_MAGIC;
+        }
+    }
+
+    /**
+     * @return The names of all the entries, in the order they were written
+     */
+    public abstract List<String> getNames();
+
+    /**
+     * @param name An entry name from {@link #getNames()}
+     * @return The binpatch, as {@link BinPatches#getBinPatchBytesWithHeader} made it
+     * @throws IOException if it cant be read
+     */
+    public abstract byte[] read(String name) throws IOException;
+
+    /**
+     * @param name An entry name from {@link #getNames()}
+     * @return The notch name of the class the patch applies to, found without decoding the whole patch where the format allows it
+     * @throws IOException if it cant be read
+     */
+    public abstract String getSourceClassName(String name) throws IOException;
+
+    /**
+     * Kept apart so nothing touches pack200 unless its asked for, newer javas dont have it.
+     */
+    private static class Unpacking
+    {
+        private static void unpack(InputStream in, JarOutputStream out) throws IOException
+        {
+            try
+            {
+                java.util.jar.Pack200.newUnpacker().unpack(in, out);
+            }
+            catch (NoClassDefFoundError e)
+            {
+                throw new IOException("Pack200 is not available on this java, the binpatches need to be in the JAR or INDEXED format", e);
+            }
+        }
+    }
+
+    private static class JarReader extends BinPatchReader
+    {
+        private final File                          file;
+        private final RawZipFile                    zip;
+        private final List<String>                  names   = Lists.newArrayList();
+        private final Map<String, RawZipFile.Entry> entries = Maps.newHashMap();
+
+        private JarReader(File file) throws IOException
+        {
+            this.file = file;
+            this.zip = new RawZipFile(file);
+
+            for (RawZipFile.Entry entry : zip.getEntries())
+            {
+                if (!entry.isDirectory())
+                {
+                    names.add(entry.getName());
+                    entries.put(entry.getName(), entry);
+                }
+            }
+        }
+
+        @Override
+        public List<String> getNames()
+        {
+            return Collections.unmodifiableList(names);
+        }
+
+        @Override
+        public byte[] read(String name) throws IOException
+        {
+            RawZipFile.Entry entry = entries.get(name);
+            if (entry == null)
+                throw new IOException("No binpatch named " + name);
+            return zip.getBytes(entry);
+        }
+
+        @Override
+        public String getSourceClassName(String name) throws IOException
+        {
+            // only deflated, so reading the whole patch is cheap
+            return BinPatches.getSourceClassName(read(name));
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            zip.close();
+            file.delete();
+        }
+    }
+
+    private static class IndexedReader extends BinPatchReader
+    {
+        private final FileChannel        channel;
+        private final List<String>        names   = Lists.newArrayList();
+        private final Map<String, String> sources = Maps.newHashMap();
+        private final Map<String, long[]> entries = Maps.newHashMap();
+
+        private IndexedReader(File file) throws IOException
+        {
+            channel = new RandomAccessFile(file, "r").getChannel();
+            try
+            {
+                long size = channel.size();
+                long indexOffset = read(size - 12, 8).getLong();
+
+                DataInputStream index = new DataInputStream(new ByteArrayInputStream(read(indexOffset, (int) (size - 12 - indexOffset)).array()));
+                int count = index.readInt();
+                for (int i = 0; i < count; i++)
+                {
+                    String name = index.readUTF();
+                    names.add(name);
+                    sources.put(name, index.readUTF());
+                    entries.put(name, new long[] { index.readLong(), index.readInt() });
+                }
+            }
+            catch (IOException | RuntimeException e)
+            {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private ByteBuffer read(long position, int length) throws IOException
+        {
+            // positional reads, so several threads can share the channel
+            ByteBuffer buf = ByteBuffer.allocate(length);
+            while (buf.hasRemaining())
+            {
+                if (channel.read(buf, position + buf.position()) < 0)
+                    throw new IOException("Unexpected end of binpatches");
+            }
+            buf.flip();
+            return buf;
+        }
+
+        @Override
+        public List<String> getNames()
+        {
+            return Collections.unmodifiableList(names);
+        }
+
+        @Override
+        public byte[] read(String name) throws IOException
+        {
+            long[] entry = entries.get(name);
+            if (entry == null)
+                throw new IOException("No binpatch named " + name);
+
+            InputStream in = new ByteArrayInputStream(read(entry[0], (int) entry[1]).array());
+
+            // the lzma streams spin up a thread each, so the decoder is driven directly.
+            byte[] props = new byte[5];
+            ByteStreams.readFully(in, props);
+            long outSize = new DataInputStream(in).readLong();
+            outSize = Long.reverseBytes(outSize);
+
+            Decoder decoder = new Decoder();
+            if (!decoder.setDecoderProperties(props))
+                throw new IOException("Bad LZMA properties for " + name);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(outSize > 0 ? (int) outSize : (int) entry[1] * 4);
+            if (!decoder.code(in, out, outSize))
+                throw new IOException("Could not decode " + name);
+            return out.toByteArray();
+        }
+
+        @Override
+        public String getSourceClassName(String name) throws IOException
+        {
+            String source = sources.get(name);
+            if (source == null)
+                throw new IOException("No binpatch named " + name);
+            return source;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            channel.close();
+        }
+    }
+}
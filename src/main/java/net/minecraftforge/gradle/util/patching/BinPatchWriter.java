@@ -0,0 +1,266 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.patching;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+
+import lzma.streams.LzmaOutputStream;
+
+/**
+ * Writes binpatches to one of the {@link BinPatches.Format}s.
+ * The entries are written in the order they are given, so the caller decides the order of the archive.
+ */
+public abstract class BinPatchWriter implements Closeable
+{
+    /** Marks the end of an {@link BinPatches.Format#INDEXED} file */
+    public static final int  INDEX_MAGIC = 0x46474250; // FGBP
+
+
+    public static BinPatchWriter create(File file, BinPatches.Format format) throws IOException
+    {
+        switch (format)
+        {
+            case PACK200:
+                return new PackedJarWriter(file);
+            case JAR:
+                return new JarWriter(lzma(new BufferedOutputStream(new FileOutputStream(file))));
+            case INDEXED:
+                return new IndexedWriter(file);
+            default:
+                throw new IllegalArgumentException("Unknown binpatch format " + format);
+        }
+    }
+
+    /**
+     * Does whatever per-entry work the format needs, so it can be spread over threads.
+     * @param patch The binpatch, as {@link BinPatches#getBinPatchBytesWithHeader} made it
+     * @return What to pass to {@link #write(String, byte[])}
+     * @throws IOException if the data cant be encoded
+     */
+    public byte[] encode(byte[] patch) throws IOException
+    {
+        return patch;
+    }
+
+    /**
+     * @param name The entry name, like binpatch/client/net.minecraft.Foo.binpatch
+     * @param encoded What {@link #encode(byte[])} returned
+     * @throws IOException if it cant be written
+     */
+    public abstract void write(String name, byte[] encoded) throws IOException;
+
+    /**
+     * The jar entries get a fixed time, so the same patches always give the same bytes.
+     * Zips store the time in the local timezone, so its local midnight like gradle does.
+     */
+    private static long getEntryTime()
+    {
+        return new GregorianCalendar(2000, Calendar.JANUARY, 1).getTimeInMillis();
+    }
+
+    static OutputStream lzma(OutputStream out) throws IOException
+    {
+        return new LzmaOutputStream.Builder(out).useEndMarkerMode(true).build();
+    }
+
+    private static class JarWriter extends BinPatchWriter
+    {
+        private final JarOutputStream jar;
+
+        private JarWriter(OutputStream out) throws IOException
+        {
+            jar = new JarOutputStream(out);
+        }
+
+        @Override
+        public void write(String name, byte[] encoded) throws IOException
+        {
+            JarEntry entry = new JarEntry(name);
+            entry.setTime(getEntryTime());
+            jar.putNextEntry(entry);
+            jar.write(encoded);
+            jar.closeEntry();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            jar.close();
+        }
+    }
+
+    /**
+     * Pack200 needs the whole jar, so this one cant stream.
+     */
+    private static class PackedJarWriter extends JarWriter
+    {
+        private final File                  file;
+        private final ByteArrayOutputStream buffer;
+
+        private PackedJarWriter(File file) throws IOException
+        {
+            this(file, new ByteArrayOutputStream());
+        }
+
+        private PackedJarWriter(File file, ByteArrayOutputStream buffer) throws IOException
+        {
+            super(buffer);
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            super.close();
+
+            try (JarInputStream in = new JarInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+                 OutputStream out = lzma(new BufferedOutputStream(new FileOutputStream(file))))
+            {
+                Packing.pack(in, out);
+            }
+        }
+    }
+
+    /**
+     * Kept apart so nothing touches pack200 unless its asked for, newer javas dont have it.
+     */
+    private static class Packing
+    {
+        private static void pack(JarInputStream in, OutputStream out) throws IOException
+        {
+            java.util.jar.Pack200.Packer packer;
+            try
+            {
+                packer = java.util.jar.Pack200.newPacker();
+            }
+            catch (NoClassDefFoundError e)
+            {
+                throw new IOException("Pack200 is not available on this java, use the JAR or INDEXED binpatch format", e);
+            }
+
+            SortedMap<String, String> props = packer.properties();
+            props.put(java.util.jar.Pack200.Packer.EFFORT, "9");
+            props.put(java.util.jar.Pack200.Packer.KEEP_FILE_ORDER, java.util.jar.Pack200.Packer.TRUE);
+            props.put(java.util.jar.Pack200.Packer.UNKNOWN_ATTRIBUTE, java.util.jar.Pack200.Packer.PASS);
+
+            final PrintStream err = System.err;
+            System.setErr(new PrintStream(ByteStreams.nullOutputStream()));
+            try
+            {
+                packer.pack(in, out);
+            }
+            finally
+            {
+                System.setErr(err);
+            }
+        }
+    }
+
+    /**
+     * Each patch is LZMA compressed on its own, followed by the index:
+     * <pre>
+     * int count
+     * count * (UTF name, UTF sourceClassName, long offset, int length)
+     * long indexOffset
+     * int INDEX_MAGIC
+     * </pre>
+     */
+    private static class IndexedWriter extends BinPatchWriter
+    {
+        private final DataOutputStream out;
+        private final List<String>     names   = Lists.newArrayList();
+        private final List<String>     sources = Lists.newArrayList();
+        private final List<long[]>     entries = Lists.newArrayList();
+
+        private IndexedWriter(File file) throws IOException
+        {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        }
+
+        @Override
+        public byte[] encode(byte[] patch) throws IOException
+        {
+            // the source class goes in front, so write can move it to the index without decoding anything
+            ByteArrayOutputStream buf = new ByteArrayOutputStream(patch.length / 2 + 64);
+            new DataOutputStream(buf).writeUTF(BinPatches.getSourceClassName(patch));
+            try (OutputStream lzma = lzma(buf))
+            {
+                lzma.write(patch);
+            }
+            return buf.toByteArray();
+        }
+
+        @Override
+        public void write(String name, byte[] encoded) throws IOException
+        {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+            sources.add(in.readUTF());
+            int start = encoded.length - in.available();
+
+            names.add(name);
+            entries.add(new long[] { out.size(), encoded.length - start });
+            out.write(encoded, start, encoded.length - start);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                long indexOffset = out.size();
+                out.writeInt(names.size());
+                for (int i = 0; i < names.size(); i++)
+                {
+                    out.writeUTF(names.get(i));
+                    out.writeUTF(sources.get(i));
+                    out.writeLong(entries.get(i)[0]);
+                    out.writeInt((int) entries.get(i)[1]);
+                }
+                out.writeLong(indexOffset);
+                out.writeInt(INDEX_MAGIC);
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+    }
+}
@@ -28,6 +28,19 @@ import java.util.zip.*;
 
 public class BinPatches
 {
+    /**
+     * The containers a set of binpatches can be written in. All of them are LZMA compressed.
+     */
+    public enum Format
+    {
+        /** A pack200 packed jar, what forge has always shipped. Needs a java that still has pack200. */
+        PACK200,
+        /** A plain jar */
+        JAR,
+        /** Every patch compressed on its own, with an index at the end so they can be read in any order */
+        INDEXED
+    }
+
     private BinPatches()
     {
         throw new RuntimeException("Utility class should not be instantiated");
@@ -51,6 +64,17 @@ public class BinPatches
         return out.toByteArray();
     }
 
+    /**
+     * @param patch A binpatch, as {@link #getBinPatchBytesWithHeader} made it
+     * @return The notch name of the class it patches, read from the header
+     */
+    public static String getSourceClassName(byte[] patch) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(patch));
+        in.readUTF(); // Clean name
+        return in.readUTF();
+    }
+
     private static int adlerHash(byte[] input)
     {
         Adler32 hasher = new Adler32();
@@ -47,7 +47,10 @@ import org.apache.commons.io.IOUtils;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -71,6 +74,7 @@ public final class ContextualPatch
     private final Pattern normalAddRangePattern = Pattern.compile("(\\d+)a(\\d+),(\\d+)");
     private final Pattern normalDeleteRangePattern = Pattern.compile("(\\d+),(\\d+)d(\\d+)");
     private final Pattern binaryHeaderPattern = Pattern.compile("MIME: (.*?); encoding: (.*?); length: (-?\\d+?)");
+    private static final Pattern WHITESPACE = Pattern.compile("[\t| ]+");
 
     private final File patchFile;
     private final File suggestedContext;
@@ -80,6 +84,7 @@ public final class ContextualPatch
     private int maxFuzz = 0;
     private boolean c14nWhitespace = false;
     private boolean c14nAccess = false;
+    private boolean contextIndex = true;
 
 
     private File context;
@@ -87,6 +92,7 @@ public final class ContextualPatch
     private String patchLine;
     private boolean patchLineRead;
     private int lastPatchedLine;    // the last line that was successfuly patched
+    private LineIndex targetIndex;  // lazily built when a hunk isnt where it says it is
 
     public static ContextualPatch create(File patchFile, File context)
     {
@@ -130,6 +136,18 @@ public final class ContextualPatch
         return this;
     }
 
+    /**
+     * When a hunk is not found at the line it specifies, look up candidate lines in an index of the target instead of
+     * trying every line of the file. Both ways find the same line, the index just gets there faster on big files.
+     * @param useIndex true to use the index (the default), false to scan every line
+     * @return this
+     */
+    public ContextualPatch setContextIndex(boolean useIndex)
+    {
+        this.contextIndex = useIndex;
+        return this;
+    }
+
     /**
      * @param dryRun true if the method should not make any modifications to files, false otherwise
      * @return List of patch reports. Never null, may be empty.
@@ -139,6 +157,42 @@ public final class ContextualPatch
     public List<PatchReport> patch(boolean dryRun) throws PatchException, IOException
     {
         List<PatchReport> report = new ArrayList<PatchReport>();
+        List<SinglePatch> patches = readPatches();
+        computeContext(patches);
+        for (SinglePatch patch : patches)
+        {
+            try
+            {
+                report.add(applyPatch(patch, dryRun));
+                //report.add(new PatchReport(patch.targetFile, computeBackup(patch.targetFile), patch.binary, PatchStatus.Patched, null));
+            }
+            catch (Exception e)
+            {
+                report.add(new PatchReport(patch.targetPath, patch.binary, PatchStatus.Failure, e, new ArrayList<HunkReport>()));
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Parses the patch without applying it.
+     * Useful to find out which files a patch touches before deciding how to schedule it.
+     * @return the target paths of every file patch in this patch, in order. Never null, may be empty.
+     * @throws PatchException for a malformed patch file
+     * @throws IOException because it reads the patch file
+     */
+    public List<String> getTargets() throws PatchException, IOException
+    {
+        List<String> targets = new ArrayList<String>();
+        for (SinglePatch patch : readPatches())
+        {
+            targets.add(patch.targetPath);
+        }
+        return targets;
+    }
+
+    private List<SinglePatch> readPatches() throws PatchException, IOException
+    {
         init();
         try
         {
@@ -153,20 +207,7 @@ public final class ContextualPatch
                 }
                 patches.add(patch);
             }
-            computeContext(patches);
-            for (SinglePatch patch : patches)
-            {
-                try
-                {
-                    report.add(applyPatch(patch, dryRun));
-                    //report.add(new PatchReport(patch.targetFile, computeBackup(patch.targetFile), patch.binary, PatchStatus.Patched, null));
-                }
-                catch (Exception e)
-                {
-                    report.add(new PatchReport(patch.targetPath, patch.binary, PatchStatus.Failure, e, new ArrayList<HunkReport>()));
-                }
-            }
-            return report;
+            return patches;
         }
         finally
         {
@@ -219,6 +260,7 @@ public final class ContextualPatch
     private PatchReport applyPatch(SinglePatch patch, boolean dryRun) throws IOException, PatchException
     {
         lastPatchedLine = 1;
+        targetIndex = null;
         List<HunkReport> ret = new ArrayList<HunkReport>();
 
         if (this.contextProvider != null)
@@ -446,27 +488,127 @@ public final class ContextualPatch
         {
             return idx;
         }
-        else
+
+        if (contextIndex)
         {
-            // try to search for the context
-            for (int i = idx - 1; i >= lastPatchedLine; i--)
+            if (targetIndex == null || targetIndex.target != target)
             {
-                if (applyHunk(target, hunk, i, true, fuzz, hunkID).getStatus().isSuccess())
-                {
-                    return i;
-                }
+                targetIndex = new LineIndex(target);
             }
-            for (int i = idx + 1; i < target.size(); i++)
+
+            int anchor = findAnchor(hunk, fuzz);
+            if (anchor != -1)
             {
-                if (applyHunk(target, hunk, i, true, fuzz, hunkID).getStatus().isSuccess())
-                {
-                    return i;
-                }
+                return findIndexedHunkIndex(target, hunk, idx, anchor, fuzz, hunkID);
+            }
+        }
+
+        // try to search for the context
+        for (int i = idx - 1; i >= lastPatchedLine; i--)
+        {
+            if (applyHunk(target, hunk, i, true, fuzz, hunkID).getStatus().isSuccess())
+            {
+                return i;
+            }
+        }
+        for (int i = idx + 1; i < target.size(); i++)
+        {
+            if (applyHunk(target, hunk, i, true, fuzz, hunkID).getStatus().isSuccess())
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Same search order as the linear scan in {@link #findHunkIndex(List, Hunk, int, int)}: backwards from the guess down
+     * to the last patched line, then forwards from the guess to the end of the file. Only the lines where the anchor
+     * line of the hunk would land on a similar line are tried though.
+     */
+    private int findIndexedHunkIndex(List<String> target, Hunk hunk, int idx, int anchor, int fuzz, int hunkID) throws PatchException
+    {
+        // the anchor is this many target lines after the start of the hunk
+        int offset = 0;
+        for (int i = 0; i < anchor; i++)
+        {
+            if (!isAdditionLine(hunk.lines.get(i)))
+            {
+                offset++;
+            }
+        }
+
+        // the positions are sorted, and a hunk starting at i has its anchor at the 0 based line i - 1 + offset
+        List<Integer> positions = targetIndex.get(canonicalize(hunk.lines.get(anchor).substring(1)));
+
+        for (int p = positions.size() - 1; p >= 0; p--)
+        {
+            int i = positions.get(p) - offset + 1;
+            if (i >= idx)
+            {
+                continue;
+            }
+            if (i < lastPatchedLine)
+            {
+                break;
+            }
+            if (applyHunk(target, hunk, i, true, fuzz, hunkID).getStatus().isSuccess())
+            {
+                return i;
+            }
+        }
+        for (int p = 0; p < positions.size(); p++)
+        {
+            int i = positions.get(p) - offset + 1;
+            if (i <= idx)
+            {
+                continue;
+            }
+            if (i >= target.size())
+            {
+                break;
+            }
+            if (applyHunk(target, hunk, i, true, fuzz, hunkID).getStatus().isSuccess())
+            {
+                return i;
             }
         }
         return -1;
     }
 
+    /**
+     * Picks the hunk line with the fewest similar lines in the target, out of the lines that have to match for the hunk to apply.
+     * @return the index of the line in the hunk, or -1 if every line could be fuzzed away
+     */
+    private int findAnchor(Hunk hunk, int fuzz)
+    {
+        int anchor = -1;
+        int best = Integer.MAX_VALUE;
+
+        for (int hunkIdx = 0; hunkIdx < hunk.lines.size(); hunkIdx++)
+        {
+            String hunkLine = hunk.lines.get(hunkIdx);
+            if (isAdditionLine(hunkLine))
+            {
+                continue;
+            }
+
+            // mirrors the fuzz check in applyHunk
+            if (fuzz != 0 && !isRemovalLine(hunkLine) && (hunkIdx < fuzz || hunkIdx >= hunk.lines.size() - fuzz))
+            {
+                continue;
+            }
+
+            int count = targetIndex.get(canonicalize(hunkLine.substring(1))).size();
+            if (count < best)
+            {
+                anchor = hunkIdx;
+                best = count;
+            }
+        }
+        return anchor;
+    }
+
     /**
      * @return true if the application succeeded
      */
@@ -521,10 +663,18 @@ public final class ContextualPatch
                 if (isAddition)
                 {
                     target.add(idx, hunkLine.substring(1));
+                    if (targetIndex != null && targetIndex.target == target)
+                    {
+                        targetIndex.add(idx, hunkLine.substring(1));
+                    }
                 }
                 else if (isRemovalLine(hunkLine))
                 {
                     target.remove(idx);
+                    if (targetIndex != null && targetIndex.target == target)
+                    {
+                        targetIndex.remove(idx);
+                    }
                     idx--;
                 }
             }
@@ -1252,8 +1402,8 @@ public final class ContextualPatch
         {
             if (c14nWhitespace)
             {
-                target = target.replaceAll("[\t| ]+", " ");
-                hunk = hunk.replaceAll("[\t| ]+", " ");
+                target = WHITESPACE.matcher(target).replaceAll(" ");
+                hunk = WHITESPACE.matcher(hunk).replaceAll(" ");
             }
             String[] t = target.split(" ");
             String[] h = hunk.split(" ");
@@ -1292,7 +1442,7 @@ public final class ContextualPatch
         }
         if (c14nWhitespace)
         {
-            return target.replaceAll("[\t| ]+", " ").equals(hunk.replaceAll("[\t| ]+", " "));
+            return WHITESPACE.matcher(target).replaceAll(" ").equals(WHITESPACE.matcher(hunk).replaceAll(" "));
         }
         else
         {
@@ -1300,6 +1450,88 @@ public final class ContextualPatch
         }
     }
 
+    /**
+     * Reduces a line to a key such that lines that are {@link #similar(String, String, char)} always have the same key.
+     * Lines with the same key are not necessarily similar, so matches still have to be checked.
+     */
+    private String canonicalize(String line)
+    {
+        if (c14nWhitespace)
+        {
+            line = WHITESPACE.matcher(line).replaceAll(" ");
+        }
+        if (!c14nAccess)
+        {
+            return line;
+        }
+
+        // similar() skips the access modifiers and considers all labels equal, so leave those out of the key
+        StringBuilder key = new StringBuilder(line.length());
+        for (String part : line.split(" "))
+        {
+            if (isAccess(part))
+            {
+                continue;
+            }
+            key.append(isLabel(part) ? "label" : part).append(' ');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Canonicalized lines of a target file, kept in sync with the target as hunks are applied.
+     * The positions are only worked out again when a search needs them.
+     */
+    private final class LineIndex
+    {
+        private final List<String> target;
+        private final List<String> keys;
+        private Map<String, List<Integer>> positions;
+
+        private LineIndex(List<String> target)
+        {
+            this.target = target;
+            this.keys = new ArrayList<String>(target.size());
+            for (String line : target)
+            {
+                keys.add(canonicalize(line));
+            }
+        }
+
+        private void add(int idx, String line)
+        {
+            keys.add(idx, canonicalize(line));
+            positions = null;
+        }
+
+        private void remove(int idx)
+        {
+            keys.remove(idx);
+            positions = null;
+        }
+
+        private List<Integer> get(String key)
+        {
+            if (positions == null)
+            {
+                positions = new HashMap<String, List<Integer>>();
+                for (int i = 0; i < keys.size(); i++)
+                {
+                    List<Integer> list = positions.get(keys.get(i));
+                    if (list == null)
+                    {
+                        list = new ArrayList<Integer>();
+                        positions.put(keys.get(i), list);
+                    }
+                    list.add(i);
+                }
+            }
+
+            List<Integer> list = positions.get(key);
+            return list == null ? Collections.<Integer>emptyList() : list;
+        }
+    }
+
     private boolean isAccess(String data)
     {
         return data.equalsIgnoreCase("public") ||
@@ -0,0 +1,487 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.zip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+
+import net.minecraftforge.gradle.util.ParallelUtil;
+
+/**
+ * Signs jars the same way the jarsigner tool does by default, with SHA-256 digests and a PKCS#7 block without signed attributes.
+ * The entries are digested on the given executor and the signed jar is written in a single pass, with every entry
+ * copied as it is stored in the input.
+ */
+public class JarSigner
+{
+    private static final Logger LOGGER = Logging.getLogger(JarSigner.class);
+
+    private static final String MANIFEST      = "META-INF/MANIFEST.MF";
+    private static final String CREATED_BY    = "ForgeGradle";
+    private static final String DIGEST        = "SHA-256";
+    private static final String DIGEST_ATTR   = DIGEST + "-Digest";
+
+    // OIDs, already DER encoded
+    private static final byte[] OID_DATA        = oid(1, 2, 840, 113549, 1, 7, 1);
+    private static final byte[] OID_SIGNED_DATA = oid(1, 2, 840, 113549, 1, 7, 2);
+    private static final byte[] OID_SHA256      = oid(2, 16, 840, 1, 101, 3, 4, 2, 1);
+    private static final byte[] OID_RSA         = oid(1, 2, 840, 113549, 1, 1, 1);
+    private static final byte[] OID_DSA         = oid(1, 2, 840, 10040, 4, 1);
+    private static final byte[] OID_EC          = oid(1, 2, 840, 10045, 2, 1);
+    private static final byte[] DER_NULL        = new byte[] { 0x05, 0x00 };
+    private static final byte[] DER_ONE         = new byte[] { 0x02, 0x01, 0x01 };
+
+    private final String            name;
+    private final PrivateKey        key;
+    private final X509Certificate[] chain;
+
+    public JarSigner(String alias, PrivateKey key, X509Certificate[] chain)
+    {
+        this.name = signatureName(alias);
+        this.key = key;
+        this.chain = chain;
+    }
+
+    /**
+     * Loads the key and certificate chain of the alias from a JKS, JCEKS or PKCS12 keystore.
+     * @param keyPass The password of the key, if null the store password is used
+     */
+    public static JarSigner load(File keyStore, String storePass, String alias, String keyPass) throws IOException, GeneralSecurityException
+    {
+        KeyStore store;
+        try (InputStream in = new FileInputStream(keyStore))
+        {
+            byte[] data = ByteStreams.toByteArray(in);
+            store = KeyStore.getInstance(getStoreType(data));
+            store.load(new ByteArrayInputStream(data), storePass == null ? null : storePass.toCharArray());
+        }
+
+        String pass = keyPass == null ? storePass : keyPass;
+        if (!store.isKeyEntry(alias))
+            throw new UnrecoverableKeyException("No key for alias " + alias + " in " + keyStore);
+
+        PrivateKey key = (PrivateKey) store.getKey(alias, pass == null ? new char[0] : pass.toCharArray());
+        Certificate[] certs = store.getCertificateChain(alias);
+        X509Certificate[] chain = new X509Certificate[certs.length];
+        for (int i = 0; i < certs.length; i++)
+        {
+            chain[i] = (X509Certificate) certs[i];
+        }
+
+        return new JarSigner(alias, key, chain);
+    }
+
+    // the default keystore type differs between java versions, so go by the magic number instead
+    private static String getStoreType(byte[] data) throws IOException
+    {
+        if (data.length < 4)
+            throw new IOException("Not a keystore, too short");
+
+        int magic = new DataInputStream(new ByteArrayInputStream(data)).readInt();
+        if (magic == 0xFEEDFEED)
+            return "JKS";
+        else if (magic == 0xCECECECE)
+            return "JCEKS";
+        else
+            return "PKCS12";
+    }
+
+    /**
+     * Writes a signed copy of the jar. Entries not in the signed set are copied without being signed.
+     * Any manifest in the input is kept, with the digests added to it.
+     * @param signed The names of the entries to sign
+     */
+    public void sign(RawZipFile input, Set<String> signed, File output, ExecutorService executor) throws IOException, GeneralSecurityException
+    {
+        RawZipFile.Entry oldManifest = null;
+        List<RawZipFile.Entry> copied = Lists.newArrayList();
+        Set<String> seen = Sets.newHashSet();
+        Map<String, Future<byte[]>> digests = Maps.newLinkedHashMap();
+        for (final RawZipFile.Entry entry : input.getEntries())
+        {
+            // shaded jars can have the same name twice, the first one wins
+            if (!seen.add(entry.getName()))
+            {
+                LOGGER.warn("Skipping duplicate entry {} in {}", entry.getName(), input.getFile());
+                continue;
+            }
+
+            if (MANIFEST.equalsIgnoreCase(entry.getName()))
+            {
+                oldManifest = entry;
+                continue;
+            }
+
+            // the old signature files of this signer are replaced
+            if (!isOwnSignature(entry.getName()))
+            {
+                copied.add(entry);
+            }
+
+            if (!entry.isDirectory() && signed.contains(entry.getName()) && !isSignatureFile(entry.getName()))
+            {
+                digests.put(entry.getName(), executor.submit(new DigestJob(input, entry)));
+            }
+        }
+
+        // MANIFEST
+        Manifest manifest = oldManifest == null ? new Manifest() : new Manifest(new ByteArrayInputStream(input.getBytes(oldManifest)));
+        Attributes main = manifest.getMainAttributes();
+        if (!main.containsKey(Attributes.Name.MANIFEST_VERSION))
+        {
+            main.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+            main.putValue("Created-By", CREATED_BY);
+        }
+
+        for (Map.Entry<String, Future<byte[]>> e : digests.entrySet())
+        {
+            Attributes attrs = manifest.getAttributes(e.getKey());
+            if (attrs == null)
+            {
+                attrs = new Attributes();
+                manifest.getEntries().put(e.getKey(), attrs);
+            }
+            attrs.putValue(DIGEST_ATTR, base64(ParallelUtil.getResult(e.getValue(), GeneralSecurityException.class)));
+        }
+
+        byte[] manifestBytes = write(manifest);
+
+        // SIGNATURE FILE
+        // each section is digested exactly as it was written, the same way the verifier reads it back
+        List<Section> sections = readSections(manifestBytes);
+
+        Manifest sf = new Manifest();
+        main = sf.getMainAttributes();
+        main.put(Attributes.Name.SIGNATURE_VERSION, "1.0");
+        main.putValue("Created-By", CREATED_BY);
+        main.putValue(DIGEST_ATTR + "-Manifest", base64(digest(manifestBytes, 0, manifestBytes.length)));
+        main.putValue(DIGEST_ATTR + "-Manifest-Main-Attributes", base64(digest(manifestBytes, sections.get(0).start, sections.get(0).end)));
+
+        for (Section section : sections)
+        {
+            if (section.name != null && digests.containsKey(section.name))
+            {
+                Attributes attrs = new Attributes();
+                attrs.putValue(DIGEST_ATTR, base64(digest(manifestBytes, section.start, section.end)));
+                sf.getEntries().put(section.name, attrs);
+            }
+        }
+
+        byte[] sfBytes = write(sf);
+
+        // SIGNATURE BLOCK
+        String algorithm = key.getAlgorithm().toUpperCase(Locale.ENGLISH);
+        Signature signature = Signature.getInstance("SHA256with" + ("EC".equals(algorithm) ? "ECDSA" : algorithm));
+        signature.initSign(key);
+        signature.update(sfBytes);
+        byte[] block = signatureBlock(algorithm, signature.sign());
+
+        // WRITE
+        int dosTime = oldManifest == null ? RawZipOutput.toDosTime(System.currentTimeMillis()) : oldManifest.getDosTime();
+        try (RawZipOutput out = new RawZipOutput(output))
+        {
+            out.write(MANIFEST, manifestBytes, dosTime);
+            out.write("META-INF/" + name + ".SF", sfBytes, dosTime);
+            out.write("META-INF/" + name + "." + algorithm, block, dosTime);
+
+            for (RawZipFile.Entry entry : copied)
+            {
+                out.copy(input, entry);
+            }
+        }
+    }
+
+    private boolean isOwnSignature(String entry)
+    {
+        String upper = entry.toUpperCase(Locale.ENGLISH);
+        return upper.startsWith("META-INF/" + name + ".") && isSignatureFile(entry);
+    }
+
+    /**
+     * The files the verifier treats as part of the signatures, rather than contents of the jar.
+     */
+    private static boolean isSignatureFile(String entry)
+    {
+        String upper = entry.toUpperCase(Locale.ENGLISH);
+        if (!upper.startsWith("META-INF/") || upper.indexOf('/', 9) >= 0)
+            return false;
+
+        return upper.endsWith(".SF") || upper.endsWith(".DSA") || upper.endsWith(".RSA") || upper.endsWith(".EC") || upper.startsWith("META-INF/SIG-");
+    }
+
+    /**
+     * The name jarsigner gives the signature files for an alias.
+     */
+    private static String signatureName(String alias)
+    {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < alias.length() && buf.length() < 8; i++)
+        {
+            char c = alias.charAt(i);
+            boolean legal = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
+            buf.append(legal ? Character.toUpperCase(c) : '_');
+        }
+        return buf.toString();
+    }
+
+    private static byte[] write(Manifest manifest) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manifest.write(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Splits a manifest into its sections, each including the blank line that ends it.
+     */
+    private static List<Section> readSections(byte[] data)
+    {
+        List<Section> sections = Lists.newArrayList();
+        int pos = 0;
+        while (pos < data.length)
+        {
+            int start = pos;
+            ByteArrayOutputStream name = null;
+            boolean inName = false;
+
+            while (pos < data.length)
+            {
+                int end = pos;
+                while (end < data.length && data[end] != '\r' && data[end] != '\n')
+                    end++;
+
+                int next = end;
+                if (next < data.length && data[next] == '\r')
+                    next++;
+                if (next < data.length && data[next] == '\n')
+                    next++;
+
+                if (end == pos)
+                {
+                    pos = next;
+                    break;
+                }
+
+                if (data[pos] == ' ')
+                {
+                    if (inName)
+                        name.write(data, pos + 1, end - pos - 1);
+                }
+                else
+                {
+                    inName = name == null && startsWith(data, pos, end, "Name: ");
+                    if (inName)
+                    {
+                        name = new ByteArrayOutputStream();
+                        name.write(data, pos + 6, end - pos - 6);
+                    }
+                }
+                pos = next;
+            }
+
+            sections.add(new Section(name == null ? null : new String(name.toByteArray(), StandardCharsets.UTF_8), start, pos));
+        }
+        return sections;
+    }
+
+    private static boolean startsWith(byte[] data, int start, int end, String prefix)
+    {
+        if (end - start < prefix.length())
+            return false;
+
+        for (int i = 0; i < prefix.length(); i++)
+        {
+            if (Character.toLowerCase((char) data[start + i]) != Character.toLowerCase(prefix.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * A detached PKCS#7 SignedData over the signature file, without any signed attributes.
+     */
+    private byte[] signatureBlock(String algorithm, byte[] signed) throws GeneralSecurityException
+    {
+        byte[] keyAlgorithm;
+        if ("RSA".equals(algorithm))
+            keyAlgorithm = der(0x30, OID_RSA, DER_NULL);
+        else if ("DSA".equals(algorithm))
+            keyAlgorithm = der(0x30, OID_DSA);
+        else if ("EC".equals(algorithm))
+            keyAlgorithm = der(0x30, OID_EC);
+        else
+            throw new GeneralSecurityException("Unsupported key algorithm " + algorithm);
+
+        byte[] digestAlgorithm = der(0x30, OID_SHA256, DER_NULL);
+
+        byte[][] certs = new byte[chain.length][];
+        for (int i = 0; i < chain.length; i++)
+        {
+            certs[i] = chain[i].getEncoded();
+        }
+
+        X509Certificate cert = chain[0];
+        byte[] signerInfo = der(0x30,
+                DER_ONE,
+                der(0x30, cert.getIssuerX500Principal().getEncoded(), integer(cert.getSerialNumber())),
+                digestAlgorithm,
+                keyAlgorithm,
+                der(0x04, signed));
+
+        byte[] signedData = der(0x30,
+                DER_ONE,
+                der(0x31, digestAlgorithm),
+                der(0x30, OID_DATA),
+                der(0xA0, certs),
+                der(0x31, signerInfo));
+
+        return der(0x30, OID_SIGNED_DATA, der(0xA0, signedData));
+    }
+
+    private static byte[] der(int tag, byte[]... contents)
+    {
+        int length = 0;
+        for (byte[] content : contents)
+        {
+            length += content.length;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 6);
+        out.write(tag);
+        if (length < 0x80)
+        {
+            out.write(length);
+        }
+        else
+        {
+            int bytes = (32 - Integer.numberOfLeadingZeros(length) + 7) / 8;
+            out.write(0x80 | bytes);
+            for (int i = bytes - 1; i >= 0; i--)
+            {
+                out.write(length >>> (i * 8));
+            }
+        }
+
+        for (byte[] content : contents)
+        {
+            out.write(content, 0, content.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] integer(BigInteger value)
+    {
+        return der(0x02, value.toByteArray());
+    }
+
+    private static byte[] oid(int... arcs)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(arcs[0] * 40 + arcs[1]);
+        for (int i = 2; i < arcs.length; i++)
+        {
+            int arc = arcs[i];
+            for (int shift = (31 - Integer.numberOfLeadingZeros(arc | 1)) / 7 * 7; shift > 0; shift -= 7)
+            {
+                out.write(0x80 | ((arc >>> shift) & 0x7F));
+            }
+            out.write(arc & 0x7F);
+        }
+        return der(0x06, out.toByteArray());
+    }
+
+    private static byte[] digest(byte[] data, int start, int end) throws GeneralSecurityException
+    {
+        MessageDigest digest = MessageDigest.getInstance(DIGEST);
+        digest.update(data, start, end - start);
+        return digest.digest();
+    }
+
+    private static String base64(byte[] data)
+    {
+        return Base64.getEncoder().encodeToString(data);
+    }
+
+    private static class DigestJob implements Callable<byte[]>
+    {
+        private final RawZipFile       zip;
+        private final RawZipFile.Entry entry;
+
+        private DigestJob(RawZipFile zip, RawZipFile.Entry entry)
+        {
+            this.zip = zip;
+            this.entry = entry;
+        }
+
+        @Override
+        public byte[] call() throws IOException, GeneralSecurityException
+        {
+            byte[] data = zip.getBytes(entry);
+            return digest(data, 0, data.length);
+        }
+    }
+
+    private static class Section
+    {
+        private final String name;
+        private final int    start;
+        private final int    end;
+
+        private Section(String name, int start, int end)
+        {
+            this.name = name;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,470 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.zip;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Reads a zip straight from its central directory, so entries can be copied into a {@link RawZipOutput}
+ * still compressed, or inflated when they are actually needed.
+ * Reads are positional, so entries may be read from several threads at once.
+ */
+public class RawZipFile implements Closeable
+{
+    static final int LOCAL_HEADER   = 0x04034b50;
+    static final int CENTRAL_HEADER = 0x02014b50;
+    static final int END_HEADER     = 0x06054b50;
+    static final int ZIP64_END      = 0x06064b50;
+    static final int ZIP64_LOCATOR  = 0x07064b50;
+
+    static final int ZIP64_EXTRA = 0x0001;
+    // in a size or offset, means the real value is in the ZIP64 extra field
+    static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    static final int STORED   = 0;
+    static final int DEFLATED = 8;
+
+    // the end record, plus the longest possible comment
+    private static final int MAX_END_SIZE = 22 + 0xFFFF;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final List<Entry> entries;
+
+    public RawZipFile(File file) throws IOException
+    {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+
+        try
+        {
+            this.entries = Collections.unmodifiableList(readCentral());
+        }
+        catch (IOException | RuntimeException e)
+        {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private List<Entry> readCentral() throws IOException
+    {
+        long size = channel.size();
+        int tail = (int) Math.min(size, MAX_END_SIZE);
+        ByteBuffer buf = read(size - tail, tail);
+
+        int end = -1;
+        for (int i = tail - 22; i >= 0; i--)
+        {
+            if (buf.getInt(i) == END_HEADER)
+            {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0)
+            throw new ZipException("Not a zip file: " + file);
+
+        long count = buf.getShort(end + 10) & 0xFFFF;
+        long centralSize = buf.getInt(end + 12) & 0xFFFFFFFFL;
+        long centralOffset = buf.getInt(end + 16) & 0xFFFFFFFFL;
+
+        // a ZIP64 zip has the real values in another record, found by a locator just before the end record
+        long endPos = size - tail + end;
+        ByteBuffer locator = endPos >= 20 ? read(endPos - 20, 20) : null;
+        if (locator != null && locator.getInt(0) == ZIP64_LOCATOR)
+        {
+            ByteBuffer record = read(locator.getLong(8), 56);
+            if (record.getInt(0) != ZIP64_END)
+                throw new ZipException("Bad ZIP64 end record in " + file);
+
+            count = record.getLong(32);
+            centralSize = record.getLong(40);
+            centralOffset = record.getLong(48);
+        }
+
+        ByteBuffer central = read(centralOffset, checkedSize(centralSize));
+        List<Entry> list = Lists.newArrayListWithCapacity(checkedSize(count));
+        for (long i = 0; i < count; i++)
+        {
+            int pos = central.position();
+            if (central.getInt(pos) != CENTRAL_HEADER)
+                throw new ZipException("Bad central directory entry in " + file);
+
+            int nameLen = central.getShort(pos + 28) & 0xFFFF;
+            int extraLen = central.getShort(pos + 30) & 0xFFFF;
+            int commentLen = central.getShort(pos + 32) & 0xFFFF;
+
+            byte[] name = new byte[nameLen];
+            byte[] extra = new byte[extraLen];
+            central.position(pos + 46);
+            central.get(name);
+            central.get(extra);
+
+            long compressedSize = central.getInt(pos + 20) & 0xFFFFFFFFL;
+            long uncompressedSize = central.getInt(pos + 24) & 0xFFFFFFFFL;
+            long localOffset = central.getInt(pos + 42) & 0xFFFFFFFFL;
+
+            // only the values that didnt fit are in the extra field, in this order
+            ByteBuffer zip64 = findExtra(extra, ZIP64_EXTRA);
+            if (zip64 != null)
+            {
+                if (uncompressedSize == ZIP64_MAGIC && zip64.remaining() >= 8)
+                    uncompressedSize = zip64.getLong();
+                if (compressedSize == ZIP64_MAGIC && zip64.remaining() >= 8)
+                    compressedSize = zip64.getLong();
+                if (localOffset == ZIP64_MAGIC && zip64.remaining() >= 8)
+                    localOffset = zip64.getLong();
+            }
+
+            Entry entry = new Entry(
+                    new String(name, StandardCharsets.UTF_8),
+                    central.getShort(pos + 4) & 0xFFFF,
+                    central.getShort(pos + 8) & 0xFFFF,
+                    central.getShort(pos + 10) & 0xFFFF,
+                    central.getInt(pos + 12),
+                    central.getInt(pos + 16),
+                    compressedSize,
+                    uncompressedSize,
+                    localOffset,
+                    central.getInt(pos + 38),
+                    removeExtra(extra, ZIP64_EXTRA));
+            list.add(entry);
+
+            central.position(pos + 46 + nameLen + extraLen + commentLen);
+        }
+        return list;
+    }
+
+    /**
+     * @return The data of the extra field with the id, or null if there isnt one
+     */
+    static ByteBuffer findExtra(byte[] extra, int id)
+    {
+        ByteBuffer buf = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.remaining() >= 4)
+        {
+            int fieldId = buf.getShort() & 0xFFFF;
+            int length = buf.getShort() & 0xFFFF;
+            if (length > buf.remaining())
+                break;
+
+            if (fieldId == id)
+            {
+                ByteBuffer data = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+                data.limit(length);
+                return data;
+            }
+            buf.position(buf.position() + length);
+        }
+        return null;
+    }
+
+    /**
+     * @return The extra fields without the one with the id, which is written again as its needed
+     */
+    static byte[] removeExtra(byte[] extra, int id)
+    {
+        if (findExtra(extra, id) == null)
+            return extra;
+
+        ByteBuffer buf = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer out = ByteBuffer.allocate(extra.length);
+        while (buf.remaining() >= 4)
+        {
+            int start = buf.position();
+            int fieldId = buf.getShort() & 0xFFFF;
+            int length = Math.min(buf.getShort() & 0xFFFF, buf.remaining());
+            if (fieldId != id)
+                out.put(extra, start, 4 + length);
+            buf.position(buf.position() + length);
+        }
+
+        byte[] result = new byte[out.position()];
+        out.flip();
+        out.get(result);
+        return result;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining())
+        {
+            if (channel.read(buf, position + buf.position()) < 0)
+                throw new EOFException("Unexpected end of " + file);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @return The entries, in the order of the central directory
+     */
+    public List<Entry> getEntries()
+    {
+        return entries;
+    }
+
+    /**
+     * @return The data of the entry exactly as it is stored, likely still compressed
+     */
+    public byte[] getRaw(Entry entry) throws IOException
+    {
+        return read(getDataOffset(entry), checkedSize(entry.compressedSize)).array();
+    }
+
+    /**
+     * Copies the data of the entry exactly as it is stored, without it going through the heap if the OS can help it.
+     */
+    void transferRaw(Entry entry, WritableByteChannel target) throws IOException
+    {
+        long start = getDataOffset(entry);
+        long done = 0;
+        while (done < entry.compressedSize)
+        {
+            long count = channel.transferTo(start + done, entry.compressedSize - done, target);
+            if (count <= 0)
+                throw new EOFException("Unexpected end of " + file);
+            done += count;
+        }
+    }
+
+    private long getDataOffset(Entry entry) throws IOException
+    {
+        if (entry.dataOffset < 0)
+            readLocal(entry);
+        return entry.dataOffset;
+    }
+
+    /**
+     * @return The extra fields of the local header, which can differ from the ones in the central directory
+     */
+    byte[] getLocalExtra(Entry entry) throws IOException
+    {
+        if (entry.dataOffset < 0)
+            readLocal(entry);
+        return entry.localExtra;
+    }
+
+    private void readLocal(Entry entry) throws IOException
+    {
+        ByteBuffer local = read(entry.localOffset, 30);
+        if (local.getInt(0) != LOCAL_HEADER)
+            throw new ZipException("Bad local header for " + entry.name + " in " + file);
+
+        int nameLen = local.getShort(26) & 0xFFFF;
+        int extraLen = local.getShort(28) & 0xFFFF;
+        byte[] extra = extraLen == 0 ? new byte[0] : read(entry.localOffset + 30 + nameLen, extraLen).array();
+
+        // set last, its what says the rest is there
+        entry.localExtra = removeExtra(extra, ZIP64_EXTRA);
+        entry.dataOffset = entry.localOffset + 30 + nameLen + extraLen;
+    }
+
+    /**
+     * @return The uncompressed data of the entry
+     */
+    public byte[] getBytes(Entry entry) throws IOException
+    {
+        return getBytes(entry, null);
+    }
+
+    /**
+     * @param checksum Updated with the data as it is inflated, so it doesnt need another pass over it. May be null.
+     * @return The uncompressed data of the entry
+     */
+    public byte[] getBytes(Entry entry, Checksum checksum) throws IOException
+    {
+        byte[] raw = getRaw(entry);
+        if (entry.method == STORED)
+        {
+            if (checksum != null)
+                checksum.update(raw, 0, raw.length);
+            return raw;
+        }
+        if (entry.method != DEFLATED)
+            throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name + " in " + file);
+
+        byte[] data = new byte[checkedSize(entry.size)];
+        Inflater inflater = new Inflater(true);
+        try
+        {
+            inflater.setInput(raw);
+            int done = 0;
+            while (done < data.length)
+            {
+                int read = inflater.inflate(data, done, data.length - done);
+                if (read == 0 && (inflater.finished() || inflater.needsInput()))
+                    throw new ZipException("Truncated entry " + entry.name + " in " + file);
+                if (checksum != null)
+                    checksum.update(data, done, read);
+                done += read;
+            }
+        }
+        catch (DataFormatException e)
+        {
+            throw new ZipException("Corrupt entry " + entry.name + " in " + file + ": " + e.getMessage());
+        }
+        finally
+        {
+            inflater.end();
+        }
+        return data;
+    }
+
+    private static int checkedSize(long size) throws ZipException
+    {
+        if (size > Integer.MAX_VALUE - 8)
+            throw new ZipException("Entry too large: " + size);
+        return (int) size;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        raf.close();
+    }
+
+    public static class Entry
+    {
+        private final String name;
+        final int versionMadeBy;
+        final int flags;
+        final int method;
+        final int dosTime;
+        final int crc;
+        final long compressedSize;
+        final long size;
+        final long localOffset;
+        final int externalAttributes;
+        final byte[] extra;
+        // found on the first read
+        volatile byte[] localExtra;
+        volatile long dataOffset = -1;
+
+        Entry(String name, int versionMadeBy, int flags, int method, int dosTime, int crc, long compressedSize, long size, long localOffset, int externalAttributes, byte[] extra)
+        {
+            this.name = name;
+            this.versionMadeBy = versionMadeBy;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localOffset = localOffset;
+            this.externalAttributes = externalAttributes;
+            this.extra = extra;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public boolean isDirectory()
+        {
+            return name.endsWith("/");
+        }
+
+        /**
+         * @return The uncompressed size
+         */
+        public long getSize()
+        {
+            return size;
+        }
+
+        public long getCompressedSize()
+        {
+            return compressedSize;
+        }
+
+        public int getCrc()
+        {
+            return crc;
+        }
+
+        /**
+         * @return The modification time, in the MS-DOS format zips store it in
+         */
+        public int getDosTime()
+        {
+            return dosTime;
+        }
+
+        /**
+         * @return The unix permissions, like 0644, or -1 if the zip wasnt made on unix
+         */
+        public int getUnixMode()
+        {
+            int mode = (externalAttributes >>> 16) & 0777;
+            return (versionMadeBy >> 8) == 3 && mode != 0 ? mode : -1;
+        }
+
+        /**
+         * @return The modification time, as a java timestamp
+         */
+        public long getTime()
+        {
+            Calendar cal = Calendar.getInstance();
+            cal.clear();
+            cal.set(((dosTime >> 25) & 0x7F) + 1980,
+                    ((dosTime >> 21) & 0x0F) - 1,
+                    (dosTime >> 16) & 0x1F,
+                    (dosTime >> 11) & 0x1F,
+                    (dosTime >> 5) & 0x3F,
+                    (dosTime << 1) & 0x3E);
+            return cal.getTimeInMillis();
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Writes a zip from entries that are already compressed, either copied raw from a {@link RawZipFile}
+ * or made by {@link #prepare(String, byte[], int)}, which is safe to call from any thread.
+ * Entries are written in the order they are given, switching to ZIP64 only for the values that need it.
+ */
+public class RawZipOutput implements Closeable
+{
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final int DESCRIPTOR_FLAG = 1 << 3;
+    private static final int VERSION_ZIP64 = 45;
+    private static final byte[] NO_EXTRA = new byte[0];
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private final List<Written> written = Lists.newArrayList();
+    private final Set<String> names = Sets.newHashSet();
+    private long offset = 0;
+
+    public RawZipOutput(File file) throws IOException
+    {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Compresses an entry, ready to be written.
+     * @param dosTime The modification time, see {@link #toDosTime(long)}
+     */
+    public static PreparedEntry prepare(String name, byte[] data, int dosTime)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+
+        if (data.length == 0 || name.endsWith("/"))
+            return new PreparedEntry(name, 0, RawZipFile.STORED, dosTime, (int) crc.getValue(), data.length, data);
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try
+        {
+            deflater.setInput(data);
+            deflater.finish();
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buf = new byte[8192];
+            while (!deflater.finished())
+            {
+                int len = deflater.deflate(buf);
+                compressed.write(buf, 0, len);
+            }
+            return new PreparedEntry(name, 0, RawZipFile.DEFLATED, dosTime, (int) crc.getValue(), data.length, compressed.toByteArray());
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Converts a java timestamp into the MS-DOS format zips store, at a 2 second resolution.
+     */
+    public static int toDosTime(long millis)
+    {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(millis);
+        int year = cal.get(Calendar.YEAR);
+        if (year < 1980)
+            return (1 << 21) | (1 << 16);
+
+        return (year - 1980) << 25
+                | (cal.get(Calendar.MONTH) + 1) << 21
+                | cal.get(Calendar.DAY_OF_MONTH) << 16
+                | cal.get(Calendar.HOUR_OF_DAY) << 11
+                | cal.get(Calendar.MINUTE) << 5
+                | cal.get(Calendar.SECOND) >> 1;
+    }
+
+    /**
+     * Writes an entry exactly as it is stored in another zip, without inflating it.
+     * @param raw The data from {@link RawZipFile#getRaw(RawZipFile.Entry)}
+     */
+    public void copy(RawZipFile.Entry entry, byte[] raw) throws IOException
+    {
+        // reading the raw data read the local header too
+        byte[] localExtra = entry.localExtra == null ? entry.extra : entry.localExtra;
+        write(copied(entry, localExtra, raw));
+    }
+
+    /**
+     * Writes an entry exactly as it is stored in another zip, going straight from one file to the other.
+     */
+    public void copy(RawZipFile zip, RawZipFile.Entry entry) throws IOException
+    {
+        writeHeader(copied(entry, zip.getLocalExtra(entry), null), entry.compressedSize);
+        flush();
+        zip.transferRaw(entry, channel);
+        offset += entry.compressedSize;
+    }
+
+    // keeps the extra fields and attributes, so unix permissions and the like survive
+    private static PreparedEntry copied(RawZipFile.Entry entry, byte[] localExtra, byte[] raw)
+    {
+        PreparedEntry prepared = new PreparedEntry(entry.getName(), entry.flags & ~DESCRIPTOR_FLAG, entry.method, entry.dosTime, entry.crc, entry.size, raw);
+        prepared.versionMadeBy = entry.versionMadeBy;
+        prepared.externalAttributes = entry.externalAttributes;
+        prepared.localExtra = localExtra;
+        prepared.centralExtra = entry.extra;
+        return prepared;
+    }
+
+    public void write(String name, byte[] data, int dosTime) throws IOException
+    {
+        write(prepare(name, data, dosTime));
+    }
+
+    public void write(PreparedEntry entry) throws IOException
+    {
+        writeHeader(entry, entry.data.length);
+        put(entry.data);
+        offset += entry.data.length;
+    }
+
+    private void writeHeader(PreparedEntry entry, long compressedSize) throws IOException
+    {
+        if (!names.add(entry.name))
+            throw new ZipException("duplicate entry: " + entry.name);
+
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        int flags = entry.flags;
+        if (name.length != entry.name.length())
+            flags |= UTF8_FLAG;
+
+        boolean zip64 = entry.size >= RawZipFile.ZIP64_MAGIC || compressedSize >= RawZipFile.ZIP64_MAGIC;
+        byte[] extra = entry.localExtra;
+        if (zip64)
+            extra = concat(localZip64Extra(entry.size, compressedSize), extra);
+        if (extra.length > 0xFFFF)
+            throw new ZipException("Extra fields too long for " + entry.name);
+
+        int version = zip64 ? VERSION_ZIP64 : entry.method == RawZipFile.STORED ? 10 : 20;
+
+        ByteBuffer header = ByteBuffer.allocate(30 + name.length + extra.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(RawZipFile.LOCAL_HEADER);
+        header.putShort((short) version);
+        header.putShort((short) flags);
+        header.putShort((short) entry.method);
+        header.putInt(entry.dosTime);
+        header.putInt(entry.crc);
+        header.putInt((int) (zip64 ? RawZipFile.ZIP64_MAGIC : compressedSize));
+        header.putInt((int) (zip64 ? RawZipFile.ZIP64_MAGIC : entry.size));
+        header.putShort((short) name.length);
+        header.putShort((short) extra.length);
+        header.put(name);
+        header.put(extra);
+
+        written.add(new Written(entry, name, flags, version, compressedSize, offset));
+        put(header.array());
+        offset += header.capacity();
+    }
+
+    /**
+     * The ZIP64 extra field for a local header. Once either size is masked both have to be in it,
+     * streaming readers like ZipInputStream ignore it otherwise.
+     */
+    private static byte[] localZip64Extra(long size, long compressedSize)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(4 + 16).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putShort((short) RawZipFile.ZIP64_EXTRA);
+        buf.putShort((short) 16);
+        buf.putLong(size);
+        buf.putLong(compressedSize);
+        return buf.array();
+    }
+
+    /**
+     * The ZIP64 extra field for the central directory, with only the values that dont fit in the normal header.
+     */
+    private static byte[] zip64Extra(long size, long compressedSize, long offset)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(4 + 24).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putShort((short) RawZipFile.ZIP64_EXTRA);
+        buf.putShort((short) 0);
+        for (long value : new long[] { size, compressedSize, offset })
+        {
+            if (value >= RawZipFile.ZIP64_MAGIC)
+                buf.putLong(value);
+        }
+        buf.putShort(2, (short) (buf.position() - 4));
+
+        byte[] extra = new byte[buf.position()];
+        System.arraycopy(buf.array(), 0, extra, 0, extra.length);
+        return extra.length == 4 ? NO_EXTRA : extra;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second)
+    {
+        byte[] result = new byte[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private void put(byte[] data) throws IOException
+    {
+        if (data.length > buffer.remaining())
+        {
+            flush();
+            if (data.length > buffer.capacity())
+            {
+                // too big to be worth buffering
+                write(ByteBuffer.wrap(data));
+                return;
+            }
+        }
+        buffer.put(data);
+    }
+
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer buf) throws IOException
+    {
+        while (buf.hasRemaining())
+        {
+            channel.write(buf);
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            long start = offset;
+            for (Written entry : written)
+            {
+                byte[] zip64 = zip64Extra(entry.size, entry.compressedSize, entry.offset);
+                byte[] extra = concat(zip64, entry.extra);
+                if (extra.length > 0xFFFF)
+                    throw new ZipException("Extra fields too long for " + new String(entry.name, StandardCharsets.UTF_8));
+
+                ByteBuffer header = ByteBuffer.allocate(46 + entry.name.length + extra.length).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(RawZipFile.CENTRAL_HEADER);
+                // the high byte is the system it was made on, which says how to read the attributes
+                header.putShort((short) (zip64.length == 0 ? entry.versionMadeBy : (entry.versionMadeBy & 0xFF00) | Math.max(entry.versionMadeBy & 0xFF, VERSION_ZIP64)));
+                header.putShort((short) (zip64.length == 0 ? entry.version : VERSION_ZIP64));
+                header.putShort((short) entry.flags);
+                header.putShort((short) entry.method);
+                header.putInt(entry.dosTime);
+                header.putInt(entry.crc);
+                header.putInt((int) Math.min(entry.compressedSize, RawZipFile.ZIP64_MAGIC));
+                header.putInt((int) Math.min(entry.size, RawZipFile.ZIP64_MAGIC));
+                header.putShort((short) entry.name.length);
+                header.putShort((short) extra.length);
+                header.putShort((short) 0); // comment
+                header.putShort((short) 0); // disk
+                header.putShort((short) 0); // internal attributes
+                header.putInt(entry.externalAttributes);
+                header.putInt((int) Math.min(entry.offset, RawZipFile.ZIP64_MAGIC));
+                header.put(entry.name);
+                header.put(extra);
+
+                put(header.array());
+                offset += header.capacity();
+            }
+
+            long count = written.size();
+            long size = offset - start;
+            if (count >= 0xFFFF || size >= RawZipFile.ZIP64_MAGIC || start >= RawZipFile.ZIP64_MAGIC)
+            {
+                ByteBuffer record = ByteBuffer.allocate(56 + 20).order(ByteOrder.LITTLE_ENDIAN);
+                record.putInt(RawZipFile.ZIP64_END);
+                record.putLong(56 - 12); // the size of the rest of the record
+                record.putShort((short) VERSION_ZIP64);
+                record.putShort((short) VERSION_ZIP64);
+                record.putInt(0);
+                record.putInt(0);
+                record.putLong(count);
+                record.putLong(count);
+                record.putLong(size);
+                record.putLong(start);
+
+                record.putInt(RawZipFile.ZIP64_LOCATOR);
+                record.putInt(0);
+                record.putLong(offset);
+                record.putInt(1);
+
+                put(record.array());
+                offset += record.capacity();
+            }
+
+            ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(RawZipFile.END_HEADER);
+            end.putShort((short) 0);
+            end.putShort((short) 0);
+            end.putShort((short) Math.min(count, 0xFFFF));
+            end.putShort((short) Math.min(count, 0xFFFF));
+            end.putInt((int) Math.min(size, RawZipFile.ZIP64_MAGIC));
+            end.putInt((int) Math.min(start, RawZipFile.ZIP64_MAGIC));
+            end.putShort((short) 0);
+            put(end.array());
+            flush();
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * An entry that is compressed and ready to be written.
+     */
+    public static class PreparedEntry
+    {
+        private final String name;
+        private final int flags;
+        private final int method;
+        private final int dosTime;
+        private final int crc;
+        private final long size;
+        private final byte[] data;
+        // only kept from copied entries
+        private int versionMadeBy = 20;
+        private int externalAttributes = 0;
+        private byte[] localExtra = NO_EXTRA;
+        private byte[] centralExtra = NO_EXTRA;
+
+        PreparedEntry(String name, int flags, int method, int dosTime, int crc, long size, byte[] data)
+        {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.size = size;
+            this.data = data;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+    }
+
+    // whats needed for the central directory, without holding on to the data
+    private static class Written
+    {
+        private final byte[] name;
+        private final int versionMadeBy;
+        private final int version;
+        private final int flags;
+        private final int method;
+        private final int dosTime;
+        private final int crc;
+        private final long compressedSize;
+        private final long size;
+        private final long offset;
+        private final int externalAttributes;
+        private final byte[] extra;
+
+        private Written(PreparedEntry entry, byte[] name, int flags, int version, long compressedSize, long offset)
+        {
+            this.name = name;
+            this.versionMadeBy = entry.versionMadeBy;
+            this.version = version;
+            this.flags = flags;
+            this.method = entry.method;
+            this.dosTime = entry.dosTime;
+            this.crc = entry.crc;
+            this.compressedSize = compressedSize;
+            this.size = entry.size;
+            this.offset = offset;
+            this.externalAttributes = entry.externalAttributes;
+            this.extra = entry.centralExtra;
+        }
+    }
+}
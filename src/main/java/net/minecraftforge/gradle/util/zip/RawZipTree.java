@@ -0,0 +1,226 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.zip;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.FileVisitor;
+import org.gradle.api.file.RelativePath;
+
+import com.google.common.io.Files;
+
+/**
+ * Visits a zip the way {@code project.zipTree(file).visit(visitor)} does, but every entry is read straight
+ * out of the zip when its asked for, instead of all of them being extracted to a temporary directory first.
+ */
+public class RawZipTree
+{
+    private final RawZipFile zip;
+
+    public RawZipTree(RawZipFile zip)
+    {
+        this.zip = zip;
+    }
+
+    public static void visit(File file, FileVisitor visitor) throws IOException
+    {
+        try (RawZipFile zip = new RawZipFile(file))
+        {
+            new RawZipTree(zip).visit(visitor);
+        }
+    }
+
+    public void visit(FileVisitor visitor)
+    {
+        for (RawZipFile.Entry entry : zip.getEntries())
+        {
+            Details details = getDetails(entry);
+            if (entry.isDirectory())
+                visitor.visitDir(details);
+            else
+                visitor.visitFile(details);
+
+            if (details.stopped)
+                break;
+        }
+    }
+
+    /**
+     * @return The entry as a gradle file, for pattern specs and the like
+     */
+    public Details getDetails(RawZipFile.Entry entry)
+    {
+        return new Details(entry);
+    }
+
+    public class Details implements FileVisitDetails
+    {
+        private final RawZipFile.Entry entry;
+        private final RelativePath     path;
+        private boolean                stopped;
+        private File                   file;
+
+        private Details(RawZipFile.Entry entry)
+        {
+            this.entry = entry;
+
+            String name = entry.getName();
+            if (entry.isDirectory())
+                name = name.substring(0, name.length() - 1);
+            this.path = RelativePath.parse(!entry.isDirectory(), name);
+        }
+
+        public RawZipFile.Entry getEntry()
+        {
+            return entry;
+        }
+
+        public byte[] getBytes() throws IOException
+        {
+            return zip.getBytes(entry);
+        }
+
+        @Override
+        public void stopVisiting()
+        {
+            stopped = true;
+        }
+
+        @Override
+        public File getFile()
+        {
+            // hardly anything wants an actual file, so its only extracted when asked for
+            if (file == null)
+            {
+                try
+                {
+                    file = File.createTempFile("zipEntry", "." + path.getLastName());
+                    file.deleteOnExit();
+                    copyTo(file);
+                }
+                catch (IOException e)
+                {
+                    throw new GradleException("Could not extract " + entry + " to a temporary file", e);
+                }
+            }
+            return file;
+        }
+
+        @Override
+        public boolean isDirectory()
+        {
+            return entry.isDirectory();
+        }
+
+        @Override
+        public long getLastModified()
+        {
+            return entry.getTime();
+        }
+
+        @Override
+        public long getSize()
+        {
+            return entry.getSize();
+        }
+
+        @Override
+        public InputStream open()
+        {
+            try
+            {
+                return new ByteArrayInputStream(getBytes());
+            }
+            catch (IOException e)
+            {
+                throw new GradleException("Could not read " + entry, e);
+            }
+        }
+
+        @Override
+        public void copyTo(OutputStream output)
+        {
+            try
+            {
+                output.write(getBytes());
+            }
+            catch (IOException e)
+            {
+                throw new GradleException("Could not copy " + entry, e);
+            }
+        }
+
+        @Override
+        public boolean copyTo(File target)
+        {
+            try
+            {
+                if (entry.isDirectory())
+                    target.mkdirs();
+                else
+                    Files.write(getBytes(), target);
+                return true;
+            }
+            catch (IOException e)
+            {
+                throw new GradleException("Could not copy " + entry + " to " + target, e);
+            }
+        }
+
+        @Override
+        public String getName()
+        {
+            return path.getLastName();
+        }
+
+        @Override
+        public String getPath()
+        {
+            return path.getPathString();
+        }
+
+        @Override
+        public RelativePath getRelativePath()
+        {
+            return path;
+        }
+
+        @Override
+        public int getMode()
+        {
+            int mode = entry.getUnixMode();
+            if (mode >= 0)
+                return mode;
+            return entry.isDirectory() ? 0755 : 0644;
+        }
+
+        @Override
+        public String toString()
+        {
+            return entry.toString();
+        }
+    }
+}
@@ -17,7 +17,13 @@ public class AccessTransformer {
     }
 
     public byte[] transformClass(String name, byte[] bytes) {
-    	Transformation transform = transformations.popTransformations(name);
+        return transformClass(bytes, transformations.popTransformations(name));
+    }
+
+    /**
+     * Applies a transformation already popped from the set, which unlike the set can be done from any thread.
+     */
+    public static byte[] transformClass(byte[] bytes, Transformation transform) {
         if (bytes == null || transform == null) {
             return bytes; //Nothing to do
         }
@@ -53,7 +59,7 @@ public class AccessTransformer {
         return writer.toByteArray();
     }
 
-    private int getNewAccessLevel(int access, AccessLevel minimumAccessLevel) {
+    private static int getNewAccessLevel(int access, AccessLevel minimumAccessLevel) {
         AccessLevel.Visibility visibility;
         if ((access & Opcodes.ACC_PUBLIC) != 0)  {
             visibility = AccessLevel.Visibility.PUBLIC;
@@ -0,0 +1,81 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.common;
+
+import java.io.File;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * @see RemoteJson
+ */
+public class TestRemoteJson
+{
+    private static final List<String> URLS = Collections.singletonList("https://example.invalid/test.json");
+    private static final Type         TYPE = new TypeToken<Map<String, Map<String, int[]>>>() {}.getType();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testOfflineUsesCache() throws Exception
+    {
+        File cache = temporaryFolder.newFile("test.json");
+        Files.write("{\"1.8\":{\"stable\":[15,16]}}", cache, Charsets.UTF_8);
+
+        Map<String, Map<String, int[]>> json = RemoteJson.get(RemoteJson.<Map<String, Map<String, int[]>>> fetch(URLS, cache, TYPE, true));
+        Assert.assertArrayEquals(new int[] { 15, 16 }, json.get("1.8").get("stable"));
+    }
+
+    @Test
+    public void testParsedOnlyOnce() throws Exception
+    {
+        File cache = temporaryFolder.newFile("test.json");
+        Files.write("{\"1.8\":{\"stable\":[15]}}", cache, Charsets.UTF_8);
+
+        Object first = RemoteJson.get(RemoteJson.fetch(URLS, cache, TYPE, true));
+        Object second = RemoteJson.get(RemoteJson.fetch(URLS, cache, TYPE, true));
+        Assert.assertSame(first, second);
+
+        // a different file is parsed again
+        Files.write("{\"1.8\":{\"stable\":[16]}}", cache, Charsets.UTF_8);
+        Map<String, Map<String, int[]>> third = RemoteJson.get(RemoteJson.<Map<String, Map<String, int[]>>> fetch(URLS, cache, TYPE, true));
+        Assert.assertNotSame(first, third);
+        Assert.assertArrayEquals(new int[] { 16 }, third.get("1.8").get("stable"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testOfflineWithoutCache() throws Exception
+    {
+        File cache = new File(temporaryFolder.getRoot(), "missing.json");
+        RemoteJson.get(RemoteJson.fetch(URLS, cache, TYPE, true));
+    }
+}
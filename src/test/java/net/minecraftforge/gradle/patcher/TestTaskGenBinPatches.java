@@ -0,0 +1,176 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.patcher;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import lzma.sdk.lzma.Decoder;
+import lzma.streams.LzmaInputStream;
+import net.minecraftforge.gradle.testsupport.TaskTest;
+import net.minecraftforge.gradle.util.patching.BinPatchWriter;
+import net.minecraftforge.gradle.util.patching.BinPatches;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.jar.*;
+
+public class TestTaskGenBinPatches extends TaskTest<TaskGenBinPatches>
+{
+    private static final List<String> RUNTIME_PATCHES = Lists.newArrayList(
+            "binpatch/client/net.minecraft.A$Inner.binpatch",
+            "binpatch/client/net.minecraft.A.binpatch",
+            "binpatch/client/net.minecraft.C.binpatch",
+            "binpatch/server/net.minecraft.A$Inner.binpatch",
+            "binpatch/server/net.minecraft.A.binpatch",
+            "binpatch/server/net.minecraft.C.binpatch");
+
+    @Test
+    public void runTask() throws Exception
+    {
+        File patches = temporaryFolder.newFolder("patches");
+        new File(patches, "net/minecraft").mkdirs();
+        Files.write("patch", new File(patches, "net/minecraft/A.java.patch"), Charsets.UTF_8);
+        Files.write("patch", new File(patches, "net/minecraft/C.java.patch"), Charsets.UTF_8);
+
+        File srg = temporaryFolder.newFile("notch.srg");
+        Files.write("CL: a net/minecraft/A\nCL: b net/minecraft/B\nCL: c net/minecraft/C\nCL: d net/minecraft/A$Inner\n", srg, Charsets.UTF_8);
+
+        File client = jar("client.jar", "client", "a", "b", "d");
+        File server = jar("server.jar", "server", "a", "b", "d");
+        File merged = jar("merged.jar", "merged", "a", "b", "d");
+        File dirty = jar("dirty.jar", "dirty", "a", "b", "c", "d");
+
+        TaskGenBinPatches task = getTask(TaskGenBinPatches.class);
+        task.setCleanClient(client);
+        task.setCleanServer(server);
+        task.setCleanMerged(merged);
+        task.setDirtyJar(dirty);
+        task.setSrg(srg);
+        task.addPatchSet(patches);
+        task.setRuntimeBinPatches(new File(temporaryFolder.getRoot(), "run.lzma"));
+        task.setDevBinPatches(new File(temporaryFolder.getRoot(), "dev.lzma"));
+
+        // the thread count shouldnt change a single byte
+        task.setFormat(BinPatches.Format.JAR);
+        task.setThreads(1);
+        task.doTask();
+        byte[] serialRun = Files.toByteArray(task.getRuntimeBinPatches());
+        byte[] serialDev = Files.toByteArray(task.getDevBinPatches());
+
+        task.setThreads(4);
+        task.doTask();
+        Assert.assertArrayEquals(serialRun, Files.toByteArray(task.getRuntimeBinPatches()));
+        Assert.assertArrayEquals(serialDev, Files.toByteArray(task.getDevBinPatches()));
+
+        Assert.assertEquals(RUNTIME_PATCHES, jarEntries(task.getRuntimeBinPatches()));
+
+        task.setFormat(BinPatches.Format.INDEXED);
+        task.doTask();
+        Assert.assertEquals(RUNTIME_PATCHES, indexEntries(task.getRuntimeBinPatches()));
+    }
+
+    @Test
+    public void sameBytesInEveryTimezone() throws Exception
+    {
+        TimeZone old = TimeZone.getDefault();
+        try
+        {
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            byte[] utc = writePatches();
+            TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+            Assert.assertArrayEquals(utc, writePatches());
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+            Assert.assertArrayEquals(utc, writePatches());
+        }
+        finally
+        {
+            TimeZone.setDefault(old);
+        }
+    }
+
+    private byte[] writePatches() throws IOException
+    {
+        File file = temporaryFolder.newFile();
+        try (BinPatchWriter writer = BinPatchWriter.create(file, BinPatches.Format.JAR))
+        {
+            writer.write("binpatch/client/net.minecraft.A.binpatch", new byte[] { 1, 2, 3 });
+        }
+        return Files.toByteArray(file);
+    }
+
+    private File jar(String name, String content, String... classes) throws IOException
+    {
+        File file = temporaryFolder.newFile(name);
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file)))
+        {
+            for (String cls : classes)
+            {
+                out.putNextEntry(new JarEntry(cls + ".class"));
+                out.write((content + " " + cls).getBytes(Charsets.UTF_8));
+            }
+        }
+        return file;
+    }
+
+    private static List<String> jarEntries(File patches) throws IOException
+    {
+        List<String> names = Lists.newArrayList();
+        try (JarInputStream in = new JarInputStream(new LzmaInputStream(new FileInputStream(patches), new Decoder())))
+        {
+            JarEntry entry;
+            while ((entry = in.getNextJarEntry()) != null)
+            {
+                names.add(entry.getName());
+                Assert.assertTrue(ByteStreams.toByteArray(in).length > 0);
+            }
+        }
+        return names;
+    }
+
+    private static List<String> indexEntries(File patches) throws IOException
+    {
+        byte[] data = Files.toByteArray(patches);
+        DataInputStream trailer = new DataInputStream(new ByteArrayInputStream(data, data.length - 12, 12));
+        int indexOffset = (int) trailer.readLong();
+        Assert.assertEquals(BinPatchWriter.INDEX_MAGIC, trailer.readInt());
+
+        List<String> names = Lists.newArrayList();
+        DataInputStream index = new DataInputStream(new ByteArrayInputStream(data, indexOffset, data.length - indexOffset));
+        int count = index.readInt();
+        for (int i = 0; i < count; i++)
+        {
+            names.add(index.readUTF());
+            String source = index.readUTF();
+            int offset = (int) index.readLong();
+            int length = index.readInt();
+
+            try (InputStream in = new LzmaInputStream(new ByteArrayInputStream(data, offset, length), new Decoder()))
+            {
+                Assert.assertEquals(source, BinPatches.getSourceClassName(ByteStreams.toByteArray(in)));
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.patcher;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import net.minecraftforge.gradle.testsupport.TaskTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+
+public class TestTaskGenPatches extends TaskTest<TaskGenPatches>
+{
+    @Test
+    public void runTask() throws Exception
+    {
+        File original = temporaryFolder.newFolder("original");
+        File changed = temporaryFolder.newFolder("changed");
+        File patches = temporaryFolder.newFolder("patches");
+
+        for (int i = 0; i < 20; i++)
+        {
+            write(original, "pkg/Class" + i + ".java", "class Class" + i + "\n{\n}\n");
+            write(changed, "pkg/Class" + i + ".java", "class Class" + i + "\n{\n" + (i % 5 == 0 ? "    int added;\n" : "") + "}\n");
+        }
+        write(patches, "gone/Old.java.patch", "stale");
+
+        TaskGenPatches task = getTask(TaskGenPatches.class);
+        task.addOriginalSource(original);
+        task.addChangedSource(changed);
+        task.setPatchDir(patches);
+        task.setOriginalPrefix("../a");
+        task.setChangedPrefix("../b");
+        task.setThreads(4);
+        task.doTask();
+
+        String[] made = new File(patches, "pkg").list();
+        java.util.Arrays.sort(made);
+        Assert.assertArrayEquals(new String[] { "Class0.java.patch", "Class10.java.patch", "Class15.java.patch", "Class5.java.patch" }, made);
+        Assert.assertFalse("Stale patches are removed", new File(patches, "gone").exists());
+
+        File patch = new File(patches, "pkg/Class5.java.patch");
+        String text = Files.toString(patch, Charsets.UTF_8);
+        Assert.assertTrue(text.startsWith("--- ../a/pkg/Class5.java\n+++ ../b/pkg/Class5.java\n"));
+        Assert.assertTrue(text.contains("\n+    int added;\n"));
+
+        // unchanged patches arent rewritten
+        Assert.assertTrue(patch.setLastModified(1000L));
+        task.setThreads(1);
+        task.doTask();
+        Assert.assertEquals(1000L, patch.lastModified());
+        Assert.assertEquals(text, Files.toString(patch, Charsets.UTF_8));
+
+        // and a file thats back to the original loses its patch
+        write(changed, "pkg/Class5.java", "class Class5\n{\n}\n");
+        task.doTask();
+        Assert.assertFalse(patch.exists());
+        Assert.assertTrue(new File(patches, "pkg/Class10.java.patch").exists());
+    }
+
+    private static void write(File dir, String path, String text) throws IOException
+    {
+        File file = new File(dir, path);
+        file.getParentFile().mkdirs();
+        Files.write(text, file, Charsets.UTF_8);
+    }
+}
@@ -21,6 +21,7 @@ package net.minecraftforge.gradle.tasks;
 
 import net.minecraftforge.gradle.testsupport.TaskTest;
 import net.minecraftforge.gradle.testsupport.TestResource;
+import com.google.common.io.ByteStreams;
 import org.junit.Assert;
 import org.junit.Test;
 import java.io.*;
@@ -113,6 +114,65 @@ public class TestAbstractEditJarTask extends TaskTest<AbstractEditJarTask>
         }
     }
 
+    @Test
+    public void runTaskParallel() throws Throwable
+    {
+        AbstractEditJarTask task = getTask(AbstractEditJarTaskUpperCase.class);
+        File inJar = TestResource.ORG_EXAMPLE_EXAMPLE_SRC_JAR.getFile(temporaryFolder);
+        File outJar = temporaryFolder.newFile("out.jar");
+        task.setInJar(inJar);
+        task.setOutJar(outJar);
+        task.setThreads(4);
+        task.doTask();
+
+        // same entries in the same order, with every source processed
+        List<String> expected = new ArrayList<>();
+        List<String> actual = new ArrayList<>();
+        try (JarFile inJarFile = new JarFile(inJar);
+             JarFile outJarFile = new JarFile(outJar)) {
+
+            for (ZipEntry e : Collections.list(inJarFile.entries())) {
+                if (!e.getName().contains("META-INF"))
+                    expected.add(e.getName());
+            }
+            for (ZipEntry e : Collections.list(outJarFile.entries())) {
+                actual.add(e.getName());
+                if (task.isSourceFile(e)) {
+                    String expectedSource = new String(readEntry(inJarFile, inJarFile.getEntry(e.getName())), "UTF-8").toUpperCase();
+                    Assert.assertEquals(expectedSource, new String(readEntry(outJarFile, e), "UTF-8"));
+                }
+            }
+        }
+        Assert.assertEquals(expected, actual);
+    }
+
+    private static byte[] readEntry(ZipFile zip, ZipEntry entry) throws IOException
+    {
+        try (InputStream in = zip.getInputStream(entry)) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    static class AbstractEditJarTaskUpperCase extends AbstractEditJarTaskDoNothing
+    {
+        public AbstractEditJarTaskUpperCase()
+        {
+            super();
+        }
+
+        @Override
+        public String asRead(String name, String file) throws Exception
+        {
+            return file.toUpperCase();
+        }
+
+        @Override
+        protected boolean readInParallel()
+        {
+            return true;
+        }
+    }
+
     static class AbstractEditJarTaskDoNothing extends AbstractEditJarTask
     {
         public AbstractEditJarTaskDoNothing()
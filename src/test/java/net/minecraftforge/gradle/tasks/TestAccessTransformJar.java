@@ -0,0 +1,92 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.tasks;
+
+import net.minecraftforge.gradle.testsupport.TaskTest;
+import net.minecraftforge.gradle.testsupport.TestResource;
+import net.minecraftforge.gradle.util.zip.RawZipFile;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.jar.*;
+
+public class TestAccessTransformJar extends TaskTest<AccessTransformJar>
+{
+    @Test
+    public void runTask() throws Exception
+    {
+        AccessTransformJar task = getTask(AccessTransformJar.class);
+        File inJar = TestResource.ACTUAL_CLEAN_JAR.getFile(temporaryFolder);
+        File at = temporaryFolder.newFile("test_at.cfg");
+        Files.write("public class test/actual/DepUser\n", at, StandardCharsets.UTF_8);
+
+        task.setInJar(inJar);
+        task.addAts(at);
+
+        File serial = temporaryFolder.newFile("serial.jar");
+        task.setOutJar(serial);
+        task.setThreads(1);
+        task.doTask();
+
+        File parallel = temporaryFolder.newFile("parallel.jar");
+        task.setOutJar(parallel);
+        task.setThreads(4);
+        task.doTask();
+
+        Assert.assertArrayEquals("Output should not depend on the thread count", Files.toByteArray(serial), Files.toByteArray(parallel));
+
+        try (RawZipFile in = new RawZipFile(inJar);
+             RawZipFile out = new RawZipFile(parallel);
+             JarFile outJar = new JarFile(parallel))
+        {
+            Assert.assertEquals(in.getEntries().size(), out.getEntries().size());
+            for (int i = 0; i < in.getEntries().size(); i++)
+            {
+                RawZipFile.Entry inEntry = in.getEntries().get(i);
+                RawZipFile.Entry outEntry = out.getEntries().get(i);
+                Assert.assertEquals(inEntry.getName(), outEntry.getName());
+                Assert.assertEquals(inEntry.getDosTime(), outEntry.getDosTime());
+
+                byte[] data;
+                try (InputStream stream = outJar.getInputStream(outJar.getEntry(outEntry.getName())))
+                {
+                    data = ByteStreams.toByteArray(stream);
+                }
+
+                if (inEntry.getName().equals("test/actual/DepUser.class"))
+                {
+                    Assert.assertTrue((new ClassReader(data).getAccess() & Opcodes.ACC_PUBLIC) != 0);
+                }
+                else
+                {
+                    // untouched entries are copied still compressed
+                    Assert.assertArrayEquals(inEntry.getName(), in.getRaw(inEntry), out.getRaw(outEntry));
+                    Assert.assertArrayEquals(inEntry.getName(), in.getBytes(inEntry), data);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.minecraftforge.gradle.common.Constants;
+import net.minecraftforge.gradle.testsupport.TaskTest;
+import net.minecraftforge.gradle.util.delayed.DelayedFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestDownloadAssetsTask extends TaskTest<DownloadAssetsTask>
+{
+    private static final byte[] SOUND = "not really a sound".getBytes(Charsets.UTF_8);
+    private static final byte[] LANG  = "lang.key=Some Text".getBytes(Charsets.UTF_8);
+
+    private final Map<String, byte[]>        objects  = new ConcurrentHashMap<String, byte[]>();
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+    private HttpServer server;
+    private String     corrupt;
+
+    @Before
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void downloadsOnce() throws IOException, InterruptedException
+    {
+        String soundHash = add(SOUND);
+        String langHash = add(LANG);
+        // the first response for this one is garbage, so it has to be retried
+        corrupt = langHash;
+
+        File assets = temporaryFolder.newFolder("assets");
+        DownloadAssetsTask task = makeTask(assets, "{\"virtual\": true, \"objects\": {"
+                + "\"sounds/a.ogg\": " + entry(soundHash, SOUND) + ", "
+                + "\"sounds/b.ogg\": " + entry(soundHash, SOUND) + ", "
+                + "\"lang/en_US.lang\": " + entry(langHash, LANG) + "}}");
+        task.doTask();
+
+        Assert.assertArrayEquals(SOUND, Files.toByteArray(new File(assets, "objects/" + soundHash.substring(0, 2) + "/" + soundHash)));
+        Assert.assertArrayEquals(LANG, Files.toByteArray(new File(assets, "objects/" + langHash.substring(0, 2) + "/" + langHash)));
+        Assert.assertArrayEquals(SOUND, Files.toByteArray(new File(assets, "virtual/index/sounds/a.ogg")));
+        Assert.assertArrayEquals(SOUND, Files.toByteArray(new File(assets, "virtual/index/sounds/b.ogg")));
+        Assert.assertArrayEquals(LANG, Files.toByteArray(new File(assets, "virtual/index/lang/en_US.lang")));
+
+        Assert.assertEquals(1, requests.get(soundHash).get());
+        Assert.assertEquals(2, requests.get(langHash).get());
+
+        // everything is already there, so nothing should be requested again.
+        task.doTask();
+        Assert.assertEquals(1, requests.get(soundHash).get());
+        Assert.assertEquals(2, requests.get(langHash).get());
+    }
+
+    @Test
+    public void resumesPartial() throws IOException, InterruptedException
+    {
+        String hash = add(SOUND);
+
+        File assets = temporaryFolder.newFolder("assets");
+        File part = new File(assets, "objects/" + hash.substring(0, 2) + "/" + hash + ".part");
+        part.getParentFile().mkdirs();
+        Files.write(new String(SOUND, Charsets.UTF_8).substring(0, 5).getBytes(Charsets.UTF_8), part);
+
+        DownloadAssetsTask task = makeTask(assets, "{\"objects\": {\"sounds/a.ogg\": " + entry(hash, SOUND) + "}}");
+        task.doTask();
+
+        Assert.assertArrayEquals(SOUND, Files.toByteArray(new File(assets, "objects/" + hash.substring(0, 2) + "/" + hash)));
+        Assert.assertFalse(part.exists());
+        Assert.assertEquals(1, requests.get(hash).get());
+    }
+
+    private DownloadAssetsTask makeTask(File assets, String index) throws IOException
+    {
+        File indexFile = temporaryFolder.newFile("index.json");
+        Files.write(index, indexFile, Charsets.UTF_8);
+
+        DownloadAssetsTask task = getTask(DownloadAssetsTask.class);
+        task.setAssetsDir(new DelayedFile(TestDownloadAssetsTask.class, assets));
+        task.setAssetsIndex(new DelayedFile(TestDownloadAssetsTask.class, indexFile));
+        task.setAssetsUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        task.setThreads(2);
+        return task;
+    }
+
+    private String add(byte[] data)
+    {
+        String hash = Constants.hash(data, "SHA1");
+        objects.put(hash, data);
+        requests.put(hash, new AtomicInteger());
+        return hash;
+    }
+
+    private static String entry(String hash, byte[] data)
+    {
+        return "{\"hash\": \"" + hash + "\", \"size\": " + data.length + "}";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        String path = exchange.getRequestURI().getPath();
+        String hash = path.substring(path.lastIndexOf('/') + 1);
+        byte[] data = objects.get(hash);
+
+        if (data == null)
+        {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        int count = requests.get(hash).incrementAndGet();
+        if (hash.equals(corrupt) && count == 1)
+        {
+            data = new byte[data.length];
+        }
+
+        int code = 200;
+        int offset = 0;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=") && range.endsWith("-"))
+        {
+            code = 206;
+            offset = Integer.parseInt(range.substring(6, range.length() - 1));
+        }
+
+        exchange.sendResponseHeaders(code, data.length - offset);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(data, offset, data.length - offset);
+        }
+    }
+}
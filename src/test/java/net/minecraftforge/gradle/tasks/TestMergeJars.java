@@ -26,6 +26,11 @@ import net.minecraftforge.gradle.testsupport.TaskTest;
 import net.minecraftforge.gradle.testsupport.TestResource;
 import org.junit.Assert;
 import org.junit.Test;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+
+import com.google.common.io.Files;
 
 import java.io.*;
 import java.util.*;
@@ -80,6 +85,186 @@ public class TestMergeJars extends TaskTest<MergeJars>
         }
     }
 
+    @Test
+    public void runTaskParallel() throws IOException
+    {
+        File a = TestResource.MERGE_A_ZIP.getFile(temporaryFolder);
+        File b = TestResource.MERGE_B_ZIP.getFile(temporaryFolder);
+        File serial = temporaryFolder.newFile("serial.jar");
+        File parallel = temporaryFolder.newFile("parallel.jar");
+
+        MergeJars mergeJars = getTask(MergeJars.class);
+        mergeJars.setClient(fileClosure(a));
+        mergeJars.setServer(fileClosure(b));
+
+        mergeJars.setThreads(1);
+        mergeJars.setOutJar(serial);
+        mergeJars.doTask();
+
+        mergeJars.setThreads(4);
+        mergeJars.setOutJar(parallel);
+        mergeJars.doTask();
+
+        Assert.assertArrayEquals("Parallel merge should write exactly the same jar", Files.toByteArray(serial), Files.toByteArray(parallel));
+    }
+
+    @Test
+    public void fieldsMatchScan() throws IOException
+    {
+        MergeJars mergeJars = getTask(MergeJars.class);
+        Random rand = new Random(42);
+
+        for (int run = 0; run < 2000; run++)
+        {
+            List<String> cNames = randomNames(rand);
+            List<String> sNames = randomNames(rand);
+
+            ClassNode expectedC = classWithFields(cNames), expectedS = classWithFields(sNames);
+            ClassNode actualC = classWithFields(cNames), actualS = classWithFields(sNames);
+
+            String message = cNames + " " + sNames;
+            boolean expectedFail = false, actualFail = false;
+
+            // the merge gives up on some orders, which it has to keep doing.
+            try
+            {
+                scanFields(expectedC.fields, expectedS.fields);
+            }
+            catch (IndexOutOfBoundsException e)
+            {
+                expectedFail = true;
+            }
+            try
+            {
+                mergeJars.processFields(actualC, actualS);
+            }
+            catch (IndexOutOfBoundsException e)
+            {
+                actualFail = true;
+            }
+
+            Assert.assertEquals(message, expectedFail, actualFail);
+            Assert.assertEquals(message, describe(expectedC.fields), describe(actualC.fields));
+            Assert.assertEquals(message, describe(expectedS.fields), describe(actualS.fields));
+        }
+    }
+
+    private static List<String> randomNames(Random rand)
+    {
+        List<String> names = new ArrayList<>();
+        int count = rand.nextInt(8);
+        for (int i = 0; i < count; i++)
+        {
+            // few names, so there are plenty of repeats and mismatches
+            names.add(String.valueOf((char) ('a' + rand.nextInt(6))));
+        }
+        return names;
+    }
+
+    private static ClassNode classWithFields(List<String> names)
+    {
+        ClassNode node = new ClassNode();
+        for (String name : names)
+        {
+            node.fields.add(new FieldNode(0, name, "I", null, null));
+        }
+        return node;
+    }
+
+    private static List<String> describe(List<FieldNode> fields)
+    {
+        List<String> ret = new ArrayList<>();
+        for (FieldNode field : fields)
+        {
+            StringBuilder buf = new StringBuilder(field.name);
+            if (field.visibleAnnotations != null)
+            {
+                for (AnnotationNode ann : field.visibleAnnotations)
+                {
+                    buf.append(' ').append(((String[]) ann.values.get(1))[1]);
+                }
+            }
+            ret.add(buf.toString());
+        }
+        return ret;
+    }
+
+    /**
+     * How MergeJars used to merge fields, with a nested search over the lists, to compare against.
+     */
+    private static void scanFields(List<FieldNode> cFields, List<FieldNode> sFields)
+    {
+        int serverFieldIdx = 0;
+        for (int clientFieldIdx = 0; clientFieldIdx < cFields.size(); clientFieldIdx++)
+        {
+            FieldNode clientField = cFields.get(clientFieldIdx);
+            if (serverFieldIdx < sFields.size())
+            {
+                FieldNode serverField = sFields.get(serverFieldIdx);
+                if (!clientField.name.equals(serverField.name))
+                {
+                    boolean foundServerField = false;
+                    for (int i = serverFieldIdx + 1; i < sFields.size(); i++)
+                    {
+                        if (clientField.name.equals(sFields.get(i).name))
+                        {
+                            foundServerField = true;
+                            break;
+                        }
+                    }
+                    if (foundServerField)
+                    {
+                        boolean foundClientField = false;
+                        for (int i = clientFieldIdx + 1; i < cFields.size(); i++)
+                        {
+                            if (serverField.name.equals(cFields.get(i).name))
+                            {
+                                foundClientField = true;
+                                break;
+                            }
+                        }
+                        if (!foundClientField)
+                        {
+                            mark(serverField, "SERVER");
+                            cFields.add(clientFieldIdx, serverField);
+                        }
+                    }
+                    else
+                    {
+                        mark(clientField, "CLIENT");
+                        sFields.add(serverFieldIdx, clientField);
+                    }
+                }
+            }
+            else
+            {
+                mark(clientField, "CLIENT");
+                sFields.add(serverFieldIdx, clientField);
+            }
+            serverFieldIdx++;
+        }
+        if (sFields.size() != cFields.size())
+        {
+            for (int x = cFields.size(); x < sFields.size(); x++)
+            {
+                FieldNode sF = sFields.get(x);
+                mark(sF, "CLIENT");
+                cFields.add(x++, sF);
+            }
+        }
+    }
+
+    private static void mark(FieldNode field, String side)
+    {
+        AnnotationNode ann = new AnnotationNode("Lside;");
+        ann.values = new ArrayList<>(Arrays.asList("value", new String[] { "Lside;", side }));
+        if (field.visibleAnnotations == null)
+        {
+            field.visibleAnnotations = new ArrayList<>();
+        }
+        field.visibleAnnotations.add(ann);
+    }
+
     /**
      * directory entries are not required by the zip spec so it's fine if those aren't matching
      */
@@ -0,0 +1,106 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.tasks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.minecraftforge.gradle.common.Constants;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.io.ByteStreams;
+
+public class TestRemapSources
+{
+    // the regex the remapper used to use, to compare against.
+    // \b is spelled out as it behaved on java 8, newer javas only count ASCII as word characters for it.
+    private static final Pattern SRG_FINDER = Pattern.compile("func_[0-9]+_[a-zA-Z_]+|field_[0-9]+_[a-zA-Z_]+|p_[\\w]+_\\d+_(?![\\p{L}\\p{Nd}_])");
+
+    private static final Function<String, String> NAMES = name -> name.endsWith("_") ? null : "mcp" + name.hashCode();
+    private static final Function<String, String> DOCS  = name -> name.contains("3") ? null : "Javadoc For: " + name;
+
+    @Test
+    public void testJavadocResource() throws IOException
+    {
+        String input;
+        try (InputStream stream = this.getClass().getClassLoader().getResourceAsStream("JavadocInserterTest"))
+        {
+            input = new String(ByteStreams.toByteArray(stream));
+        }
+
+        Assert.assertEquals(remapWithRegex(input, true), RemapSources.remap(input, NAMES, NAMES, NAMES, DOCS, DOCS));
+        Assert.assertEquals(remapWithRegex(input, false), RemapSources.remap(input, NAMES, NAMES, NAMES, null, null));
+    }
+
+    @Test
+    public void testMatchesRegex()
+    {
+        String[] parts = new String[] {
+                "func_", "field_", "p_", "123", "_", "a", "Z", "9", " ", "(", ";", "=", "@Nullable", "    ", "\t",
+                "\n", "\r\n", "\r", "public ", "int ", "\u00e9", "$", "//", "func_1234_a", "field_70170_p", "p_70091_1_", "p_i1234_2_"
+        };
+
+        Random rand = new Random(42);
+        for (int run = 0; run < 5000; run++)
+        {
+            StringBuilder buf = new StringBuilder();
+            int count = rand.nextInt(40);
+            for (int i = 0; i < count; i++)
+            {
+                buf.append(parts[rand.nextInt(parts.length)]);
+            }
+
+            String input = buf.toString();
+            Assert.assertEquals(input, remapWithRegex(input, true), RemapSources.remap(input, NAMES, NAMES, NAMES, DOCS, DOCS));
+        }
+    }
+
+    private static String remapWithRegex(String text, boolean javadocs)
+    {
+        List<String> newLines = new ArrayList<String>();
+        for (String line : Constants.lines(text))
+        {
+            if (javadocs)
+            {
+                RemapSources.injectJavadoc(newLines, line, DOCS, DOCS);
+            }
+
+            StringBuffer buf = new StringBuffer();
+            Matcher matcher = SRG_FINDER.matcher(line);
+            while (matcher.find())
+            {
+                String find = NAMES.apply(matcher.group());
+                matcher.appendReplacement(buf, find == null ? matcher.group() : find);
+            }
+            matcher.appendTail(buf);
+            newLines.add(buf.toString());
+        }
+        return Joiner.on(Constants.NEWLINE).join(newLines);
+    }
+}
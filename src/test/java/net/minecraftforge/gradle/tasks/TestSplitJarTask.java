@@ -0,0 +1,82 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.tasks;
+
+import net.minecraftforge.gradle.testsupport.TaskTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.jar.*;
+
+public class TestSplitJarTask extends TaskTest<SplitJarTask>
+{
+    @Test
+    public void testDuplicateEntries() throws IOException
+    {
+        // java wont write the same name twice, so rename the entries afterwards
+        File in = temporaryFolder.newFile("in.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(in)))
+        {
+            for (String name : new String[] { "net/A.class", "net/B.class", "res/a.txt", "res/b.txt" })
+            {
+                out.putNextEntry(new JarEntry(name));
+                out.write(name.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        String data = new String(Files.readAllBytes(in.toPath()), StandardCharsets.ISO_8859_1);
+        Files.write(in.toPath(), data.replace("net/B.class", "net/A.class").replace("res/b.txt", "res/a.txt").getBytes(StandardCharsets.ISO_8859_1));
+
+        File first = temporaryFolder.newFile("first.jar");
+        File second = temporaryFolder.newFile("second.jar");
+
+        SplitJarTask task = getTask(SplitJarTask.class);
+        task.setInJar(in);
+        task.setOutFirst(first);
+        task.setOutSecond(second);
+        task.include("**/*.class");
+        task.doTask();
+
+        Assert.assertEquals(Collections.singletonMap("net/A.class", "net/A.class"), read(first));
+        Assert.assertEquals(Collections.singletonMap("res/a.txt", "res/a.txt"), read(second));
+    }
+
+    private static Map<String, String> read(File file) throws IOException
+    {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (JarFile jar = new JarFile(file))
+        {
+            for (JarEntry entry : Collections.list(jar.entries()))
+            {
+                try (InputStream stream = jar.getInputStream(entry))
+                {
+                    entries.put(entry.getName(), new String(ByteStreams.toByteArray(stream), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.tasks.fernflower;
+
+import com.google.common.collect.Sets;
+import net.minecraftforge.gradle.testsupport.TestResource;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+public class TestDecompilerWorkerService
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testWorkerIsReused() throws Exception
+    {
+        Set<File> classpath = new LinkedHashSet<>();
+        for (String path : System.getProperty("java.class.path").split(File.pathSeparator))
+        {
+            classpath.add(new File(path));
+        }
+
+        File in = TestResource.ACTUAL_CLEAN_JAR.getFile(temporaryFolder);
+        DecompilerWorkerService service = new DecompilerWorkerService(classpath, "256M", 1);
+        try
+        {
+            for (int run = 0; run < 2; run++)
+            {
+                File dir = temporaryFolder.newFolder("run" + run);
+                Map<String, Object> options = new HashMap<>();
+                options.put(IFernflowerPreferences.DECOMPILE_INNER, "1");
+                FernFlowerSettings settings = new FernFlowerSettings(dir, in, new File(dir, in.getName()), new File(dir, "log.txt"), Sets.<File>newHashSet(), options);
+
+                DecompileResult result = service.decompile(settings);
+                Assert.assertTrue(result.getError(), result.isSuccess());
+                Assert.assertTrue(result.getMillis() >= 0);
+                Assert.assertTrue(result.getPeakMemory() > 0);
+                Assert.assertTrue(new File(dir, in.getName()).exists());
+            }
+
+            Assert.assertEquals("Both decompiles should run in the same JVM", 1, service.getStarted());
+        }
+        finally
+        {
+            service.close();
+        }
+    }
+
+    @Test
+    public void testParseMemory()
+    {
+        Assert.assertEquals(3L * 1024 * 1024 * 1024, ApplyFernFlowerTask.parseMemory("3G"));
+        Assert.assertEquals(512L * 1024 * 1024, ApplyFernFlowerTask.parseMemory("512m"));
+        Assert.assertEquals(1000, ApplyFernFlowerTask.parseMemory("1000"));
+    }
+
+    @Test
+    public void testRequiredMemory()
+    {
+        // never less than the decompile needs, but a bigger configured heap is needed in process too
+        Assert.assertEquals((long) (2.5 * 1024 * 1024 * 1024), ApplyFernFlowerTask.getRequiredMemory("1G"));
+        Assert.assertEquals(4L * 1024 * 1024 * 1024, ApplyFernFlowerTask.getRequiredMemory("4G"));
+    }
+}
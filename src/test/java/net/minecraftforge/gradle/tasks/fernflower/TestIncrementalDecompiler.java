@@ -0,0 +1,193 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.tasks.fernflower;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import net.minecraftforge.gradle.testsupport.TestResource;
+import org.jetbrains.java.decompiler.main.decompiler.PrintStreamLogger;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.*;
+import java.util.*;
+import java.util.jar.*;
+
+public class TestIncrementalDecompiler
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSecondRunIsCached() throws IOException
+    {
+        File in = TestResource.ACTUAL_CLEAN_JAR.getFile(temporaryFolder);
+        File cache = temporaryFolder.newFolder("classCache");
+
+        List<String> first = new ArrayList<>();
+        Map<String, String> firstOut = decompile(in, cache, first);
+        List<String> second = new ArrayList<>();
+        Map<String, String> secondOut = decompile(in, cache, second);
+
+        Assert.assertTrue(first.toString(), first.contains("Decompiling 2 of 2 classes, the rest are cached"));
+        Assert.assertTrue(second.toString(), second.contains("Decompiling 0 of 2 classes, the rest are cached"));
+
+        Assert.assertTrue(firstOut.containsKey("test/actual/DepUser.java"));
+        Assert.assertTrue(firstOut.containsKey("test/actual/NonDepUser.java"));
+        Assert.assertEquals("Cached output should match the fresh output", firstOut, secondOut);
+    }
+
+    @Test
+    public void testCleansOldClasses() throws IOException
+    {
+        File cache = temporaryFolder.newFolder("classCache");
+        long now = System.currentTimeMillis();
+        long day = 24 * 60 * 60 * 1000L;
+
+        File used = file(cache, "ab/used", now - 2 * day);
+        File unused = file(cache, "ab/unused", now - 31 * day);
+        File temp = file(cache, "ab/died.tmp", now - 2 * day);
+        File gone = file(cache, "cd/unused", now - 31 * day);
+
+        IncrementalDecompiler.cleanCache(cache, now);
+        Assert.assertTrue(used.exists());
+        Assert.assertFalse(unused.exists());
+        Assert.assertFalse(temp.exists());
+        Assert.assertFalse(gone.getParentFile().exists());
+
+        // only once a day
+        File later = file(cache, "ab/later", now - 31 * day);
+        IncrementalDecompiler.cleanCache(cache, now + 1000);
+        Assert.assertTrue(later.exists());
+        IncrementalDecompiler.cleanCache(cache, now + day + 1000);
+        Assert.assertFalse(later.exists());
+        Assert.assertTrue(used.exists());
+    }
+
+    @Test
+    public void testGroupsNestedClasses()
+    {
+        Map<String, IncrementalDecompiler.ClassInfo> classes = new LinkedHashMap<>();
+        for (IncrementalDecompiler.ClassInfo info : ImmutableList.of(
+                classInfo("a/Outer", null, null),
+                classInfo("a/Outer$Inner", "a/Outer", null),
+                classInfo("a/Outer$Inner$Deeper", "a/Outer$Inner", null),
+                classInfo("a/Outer$1", null, "a/Outer"),
+                classInfo("a/Lonely$Inner", "a/Lonely", null),
+                classInfo("a/Other", null, null)))
+        {
+            classes.put(info.name, info);
+        }
+
+        Map<String, IncrementalDecompiler.Group> groups = IncrementalDecompiler.group(classes);
+        Assert.assertEquals(ImmutableList.of("a/Outer", "a/Lonely$Inner", "a/Other"), ImmutableList.copyOf(groups.keySet()));
+        Assert.assertEquals(4, groups.get("a/Outer").members.size());
+    }
+
+    @Test
+    public void testKeyCoversWholeHierarchy()
+    {
+        String before = keyOfLeaf(ImmutableList.<String>of());
+        Assert.assertEquals(before, keyOfLeaf(ImmutableList.<String>of()));
+        // only the grandparent changes
+        Assert.assertNotEquals(before, keyOfLeaf(ImmutableList.of("java/io/Serializable")));
+    }
+
+    private static String keyOfLeaf(List<String> rootInterfaces)
+    {
+        Map<String, IncrementalDecompiler.ClassInfo> classes = new LinkedHashMap<>();
+        for (IncrementalDecompiler.ClassInfo info : ImmutableList.of(
+                subclassInfo("a/Root", "java/lang/Object", rootInterfaces),
+                subclassInfo("a/Middle", "a/Root", ImmutableList.<String>of()),
+                subclassInfo("a/Leaf", "a/Middle", ImmutableList.<String>of())))
+        {
+            classes.put(info.name, info);
+        }
+
+        return IncrementalDecompiler.group(classes).get("a/Leaf").key("base", classes);
+    }
+
+    private Map<String, String> decompile(File in, File cache, List<String> messages) throws IOException
+    {
+        File out = new File(temporaryFolder.newFolder(), in.getName());
+        Map<String, Object> options = new HashMap<>();
+        options.put(IFernflowerPreferences.DECOMPILE_INNER, "1");
+
+        FernFlowerSettings settings = new FernFlowerSettings(temporaryFolder.newFolder(), in, out, temporaryFolder.newFile(), Collections.<File>emptySet(), options, cache, 2);
+        new IncrementalDecompiler(settings, new PrintStreamLogger(System.err) {
+            @Override
+            public void writeMessage(String message, Severity severity)
+            {
+                messages.add(message);
+            }
+        }).decompile();
+
+        Map<String, String> entries = new TreeMap<>();
+        try (JarFile jar = new JarFile(out))
+        {
+            for (JarEntry entry : Collections.list(jar.entries()))
+            {
+                try (InputStream stream = jar.getInputStream(entry))
+                {
+                    entries.put(entry.getName(), new String(ByteStreams.toByteArray(stream), "UTF-8"));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static File file(File dir, String name, long modified) throws IOException
+    {
+        File file = new File(dir, name);
+        file.getParentFile().mkdirs();
+        Files.touch(file);
+        file.setLastModified(modified);
+        return file;
+    }
+
+    private static IncrementalDecompiler.ClassInfo classInfo(String name, String outer, String enclosing)
+    {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+        if (enclosing != null)
+        {
+            writer.visitOuterClass(enclosing, null, null);
+            writer.visitInnerClass(name, null, null, 0);
+        }
+        if (outer != null)
+        {
+            writer.visitInnerClass(name, outer, name.substring(name.lastIndexOf('$') + 1), Opcodes.ACC_PUBLIC);
+        }
+        writer.visitEnd();
+        return new IncrementalDecompiler.ClassInfo(name + ".class", writer.toByteArray());
+    }
+
+    private static IncrementalDecompiler.ClassInfo subclassInfo(String name, String superName, List<String> interfaces)
+    {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, interfaces.toArray(new String[0]));
+        writer.visitEnd();
+        return new IncrementalDecompiler.ClassInfo(name + ".class", writer.toByteArray());
+    }
+}
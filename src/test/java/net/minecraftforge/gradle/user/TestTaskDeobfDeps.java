@@ -0,0 +1,187 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.user;
+
+import net.minecraftforge.gradle.common.Constants;
+import net.minecraftforge.gradle.testsupport.JarComparison;
+import net.minecraftforge.gradle.testsupport.TaskTest;
+import net.minecraftforge.gradle.testsupport.TestResource;
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.zip.*;
+
+public class TestTaskDeobfDeps extends TaskTest<TaskDeobfDeps>
+{
+    @Test
+    public void runTaskBinary() throws IOException
+    {
+        File cache = temporaryFolder.newFolder("cache");
+        File outJar = new File(temporaryFolder.getRoot(), "repo/out.jar");
+
+        TaskDeobfDeps task = getTask(TaskDeobfDeps.class);
+        task.setMethodCsv(TestResource.METHODS_CSV.getFile(temporaryFolder));
+        task.setFieldCsv(TestResource.FIELDS_CSV.getFile(temporaryFolder));
+        task.setParamCsv(csv("params.csv", "param,name,side"));
+        task.setCacheDir(cache);
+        task.addBinary(TestResource.ACTUAL_OBF_JAR.getFile(temporaryFolder), outJar);
+        task.doTask();
+
+        // the same as deobfuscating it alone
+        JarComparison.compareJarClassMembers(TestResource.ACTUAL_OBF_CSV_JAR.getFile(temporaryFolder), outJar);
+
+        // another project wanting the same artifact gets it from the cache
+        byte[] first = Files.toByteArray(outJar);
+        outJar.delete();
+        task.doTask();
+        Assert.assertArrayEquals(first, Files.toByteArray(outJar));
+        Assert.assertEquals(1, cache.listFiles(File::isDirectory).length);
+    }
+
+    @Test
+    public void runTaskNothing() throws IOException
+    {
+        // no artifacts, so the mappings are never loaded
+        TaskDeobfDeps task = getTask(TaskDeobfDeps.class);
+        task.setMethodCsv(new File(temporaryFolder.getRoot(), "missing.csv"));
+        task.setFieldCsv(new File(temporaryFolder.getRoot(), "missing.csv"));
+        task.setParamCsv(new File(temporaryFolder.getRoot(), "missing.csv"));
+        task.setCacheDir(temporaryFolder.newFolder("cache"));
+        task.doTask();
+    }
+
+    @Test
+    public void runTaskSources() throws IOException
+    {
+        File sources = temporaryFolder.newFile("sources.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(sources)))
+        {
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            out.write("Manifest-Version: 1.0\n".getBytes(Charsets.UTF_8));
+            out.putNextEntry(new ZipEntry("a/A.java"));
+            out.write("class A {\n    int field_2_b;\n    void func_1_a(int p_1_1_) {}\n}".getBytes(Charsets.UTF_8));
+            out.putNextEntry(new ZipEntry("a/res.txt"));
+            out.write("func_1_a".getBytes(Charsets.UTF_8));
+        }
+
+        File outJar = new File(temporaryFolder.getRoot(), "repo/out-sources.jar");
+        TaskDeobfDeps task = getTask(TaskDeobfDeps.class);
+        task.setMethodCsv(csv("methods.csv", "searge,name,side,desc", "func_1_a,doThing,0,"));
+        task.setFieldCsv(csv("fields.csv", "searge,name,side,desc", "field_2_b,thing,0,"));
+        task.setParamCsv(csv("params.csv", "param,name,side", "p_1_1_,amount,0"));
+        task.setCacheDir(temporaryFolder.newFolder("cache"));
+        task.addSources(sources, outJar);
+        task.doTask();
+
+        try (ZipFile zip = new ZipFile(outJar))
+        {
+            Assert.assertNull("META-INF is not copied", zip.getEntry("META-INF/MANIFEST.MF"));
+            Assert.assertEquals(String.join(Constants.NEWLINE, "class A {", "    int thing;", "    void doThing(int amount) {}", "}"), read(zip, "a/A.java"));
+            Assert.assertEquals("Resources are not remapped", "func_1_a", read(zip, "a/res.txt"));
+        }
+    }
+
+    @Test
+    public void runTaskSourcesDuplicates() throws IOException
+    {
+        // java wont write the same name twice, so rename the second entry afterwards
+        File sources = temporaryFolder.newFile("dupes-sources.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(sources)))
+        {
+            out.putNextEntry(new ZipEntry("a/A.java"));
+            out.write("class A {}".getBytes(Charsets.UTF_8));
+            out.putNextEntry(new ZipEntry("a/B.java"));
+            out.write("class B {}".getBytes(Charsets.UTF_8));
+        }
+        String data = new String(java.nio.file.Files.readAllBytes(sources.toPath()), Charsets.ISO_8859_1);
+        java.nio.file.Files.write(sources.toPath(), data.replace("a/B.java", "a/A.java").getBytes(Charsets.ISO_8859_1));
+
+        File outJar = new File(temporaryFolder.getRoot(), "repo/dupes-sources.jar");
+        TaskDeobfDeps task = getTask(TaskDeobfDeps.class);
+        task.setMethodCsv(csv("methods.csv", "searge,name,side,desc"));
+        task.setFieldCsv(csv("fields.csv", "searge,name,side,desc"));
+        task.setParamCsv(csv("params.csv", "param,name,side"));
+        task.setCacheDir(temporaryFolder.newFolder("cache"));
+        task.addSources(sources, outJar);
+        task.doTask();
+
+        // the first one wins, like it did when the sources were remapped on their own
+        try (ZipFile zip = new ZipFile(outJar))
+        {
+            Assert.assertEquals(1, zip.size());
+            Assert.assertEquals("class A {}", read(zip, "a/A.java"));
+        }
+    }
+
+    @Test
+    public void testCleanCache() throws IOException
+    {
+        long day = 24 * 60 * 60 * 1000L;
+        long now = System.currentTimeMillis();
+
+        File cache = temporaryFolder.newFolder("cache");
+        File used = file(cache, "ab/used.jar", now - day);
+        File unused = file(cache, "ab/unused.jar", now - 31 * day);
+        File temp = file(cache, "ab/died.tmp", now - 2 * day);
+        File gone = file(cache, "cd/unused.jar", now - 31 * day);
+
+        TaskDeobfDeps.cleanCache(cache, now);
+        Assert.assertTrue(used.exists());
+        Assert.assertFalse(unused.exists());
+        Assert.assertFalse(temp.exists());
+        Assert.assertFalse(gone.getParentFile().exists());
+
+        // only once a day
+        File later = file(cache, "ab/later.jar", now - 31 * day);
+        TaskDeobfDeps.cleanCache(cache, now + 1000);
+        Assert.assertTrue(later.exists());
+        TaskDeobfDeps.cleanCache(cache, now + day + 1000);
+        Assert.assertFalse(later.exists());
+        Assert.assertTrue(used.exists());
+    }
+
+    private static File file(File dir, String name, long modified) throws IOException
+    {
+        File file = new File(dir, name);
+        file.getParentFile().mkdirs();
+        Files.touch(file);
+        file.setLastModified(modified);
+        return file;
+    }
+
+    private static String read(ZipFile zip, String name) throws IOException
+    {
+        try (InputStream in = zip.getInputStream(zip.getEntry(name)))
+        {
+            return new String(ByteStreams.toByteArray(in), Charsets.UTF_8);
+        }
+    }
+
+    private File csv(String name, String... lines) throws IOException
+    {
+        File file = new File(temporaryFolder.getRoot(), name);
+        Files.write(String.join("\n", lines) + "\n", file, Charsets.UTF_8);
+        return file;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.user;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import net.minecraftforge.gradle.testsupport.TaskTest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class TestTaskExtractAnnotations extends TaskTest<TaskExtractAnnotations>
+{
+    @Test
+    public void runTask() throws IOException
+    {
+        File jar = temporaryFolder.newFile("mod.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar)))
+        {
+            for (String name : new String[] { "pkg/B", "pkg/A", "pkg/C" })
+            {
+                ZipEntry entry = new ZipEntry(name + ".class");
+                entry.setTime(1500000000000L);
+                out.putNextEntry(entry);
+                out.write(makeClass(name, !name.endsWith("C")));
+            }
+        }
+
+        TaskExtractAnnotations task = getTask(TaskExtractAnnotations.class);
+        task.setJar(jar);
+        task.doTask();
+        byte[] first = Files.toByteArray(jar);
+
+        JsonObject json;
+        try (JarFile out = new JarFile(jar))
+        {
+            ZipEntry cache = out.getEntry("META-INF/fml_cache_annotation.json");
+            Assert.assertEquals(out.getEntry("pkg/A.class").getTime(), cache.getTime());
+            json = new JsonParser().parse(new String(ByteStreams.toByteArray(out.getInputStream(cache)), Charsets.UTF_8)).getAsJsonObject();
+            Assert.assertNotNull(out.getEntry("META-INF/fml_cache_class_versions.json"));
+        }
+
+        // C has nothing worth mentioning, and the subtype ids are unique
+        Assert.assertEquals(2, json.entrySet().size());
+        Set<Integer> ids = new HashSet<Integer>();
+        for (String name : new String[] { "pkg/A", "pkg/B" })
+        {
+            // the nested one ends first
+            JsonArray annos = json.getAsJsonObject(name).getAsJsonArray("annotations");
+            JsonObject anno = annos.get(0).getAsJsonObject();
+            Assert.assertEquals("SUBTYPE", anno.get("type").getAsString());
+            ids.add(anno.get("id").getAsInt());
+
+            JsonElement ref = annos.get(1).getAsJsonObject().getAsJsonObject("value").get("value");
+            Assert.assertEquals(anno.get("id").getAsString(), ref.getAsString());
+        }
+        Assert.assertEquals(2, ids.size());
+
+        // running again, from the cache and over its own output, changes nothing
+        task.doTask();
+        Assert.assertArrayEquals(first, Files.toByteArray(jar));
+
+        task.setThreads(1);
+        task.doTask();
+        Assert.assertArrayEquals(first, Files.toByteArray(jar));
+    }
+
+    private static byte[] makeClass(String name, boolean annotated)
+    {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+        if (annotated)
+        {
+            AnnotationVisitor anno = writer.visitAnnotation("Lpkg/Outer;", true);
+            anno.visitAnnotation("value", "Lpkg/Inner;").visit("x", 1);
+            anno.visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
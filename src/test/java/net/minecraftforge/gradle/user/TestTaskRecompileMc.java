@@ -25,6 +25,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.*;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.util.jar.*;
 import java.util.zip.*;
 
@@ -64,4 +67,85 @@ public class TestTaskRecompileMc extends TaskTest<TaskRecompileMc>
             Assert.assertNotEquals("output jar '" + outJarFile + "' should not be empty", 0, outJarFile.size());
         }
     }
+
+    @Test
+    public void runTaskIncremental() throws Exception
+    {
+        File sourceJar = temporaryFolder.newFile("sources.jar");
+        File outJar = temporaryFolder.newFile("out.jar");
+
+        TaskRecompileMc task = getTask(TaskRecompileMc.class);
+        task.setInSources(sourceJar);
+        task.setOutJar(outJar);
+        task.getProject().getConfigurations().maybeCreate("test_configuration");
+        task.setClasspath("test_configuration");
+
+        String a = "package test; public class A { public static final int C = 1; public static int f() { return %s; } %s }";
+        String b = "package test; public class B { public int g() { return A.f(); } }";
+        String c = "package test; public class C { public int h() { return %s; } }";
+        String d = "package test; public class D extends A { }";
+
+        writeSources(sourceJar, String.format(a, "1", ""), b, String.format(c, "1"), d);
+        task.doStuff();
+        Assert.assertEquals(4, task.getCompiledUnits());
+        Assert.assertEquals(1, call(outJar, "test.B", "g"));
+
+        // nothing changed
+        task.doStuff();
+        Assert.assertEquals(0, task.getCompiledUnits());
+
+        // a body changed, nobody else cares
+        writeSources(sourceJar, String.format(a, "2", ""), b, String.format(c, "1"), d);
+        task.doStuff();
+        Assert.assertEquals(1, task.getCompiledUnits());
+        Assert.assertEquals(2, call(outJar, "test.B", "g"));
+        Assert.assertEquals(1, call(outJar, "test.C", "h"));
+
+        // the api changed, so its users and subclasses compile again
+        writeSources(sourceJar, String.format(a, "2", "public void added() {}"), b, String.format(c, "1"), d);
+        task.doStuff();
+        Assert.assertEquals(3, task.getCompiledUnits());
+
+        // constants are inlined, so everything compiles again
+        writeSources(sourceJar, String.format(a, "2", "public void added() {}").replace("C = 1", "C = 2"), b, String.format(c, "A.C"), d);
+        task.doStuff();
+        Assert.assertEquals(4, task.getCompiledUnits());
+        Assert.assertEquals(2, call(outJar, "test.C", "h"));
+
+        // and again, as C inlined it
+        writeSources(sourceJar, String.format(a, "2", "public void added() {}").replace("C = 1", "C = 3"), b, String.format(c, "A.C"), d);
+        task.doStuff();
+        Assert.assertEquals(4, task.getCompiledUnits());
+        Assert.assertEquals(3, call(outJar, "test.C", "h"));
+
+        try (JarFile jar = new JarFile(outJar))
+        {
+            Assert.assertNotNull(jar.getEntry("test/"));
+            Assert.assertNotNull(jar.getEntry("test/D.class"));
+            Assert.assertNull(jar.getEntry("test/A.java"));
+        }
+    }
+
+    private static void writeSources(File jar, String a, String b, String c, String d) throws IOException
+    {
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar)))
+        {
+            String[] names = { "A", "B", "C", "D" };
+            String[] sources = { a, b, c, d };
+            for (int i = 0; i < names.length; i++)
+            {
+                out.putNextEntry(new ZipEntry("test/" + names[i] + ".java"));
+                out.write(sources[i].getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static Object call(File jar, String cls, String method) throws Exception
+    {
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { jar.toURI().toURL() }, null))
+        {
+            Class<?> clazz = loader.loadClass(cls);
+            return clazz.getMethod(method).invoke(clazz.newInstance());
+        }
+    }
 }
@@ -25,8 +25,16 @@ import net.minecraftforge.gradle.testsupport.TestResource;
 import org.junit.Test;
 
 import java.io.*;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.*;
 
+import org.junit.Assert;
+
+import com.google.common.io.Files;
+
 public class TestTaskSingleReobf extends TaskTest<TaskSingleReobf>
 {
     @Test
@@ -46,4 +54,102 @@ public class TestTaskSingleReobf extends TaskTest<TaskSingleReobf>
             JarComparison.compareJarClassMembers(expectedJarFile, outJarFile);
         }
     }
+
+    @Test
+    public void runTaskParallel() throws IOException
+    {
+        File primarySrg = TestResource.OBFUSCATE_SRG.getFile(temporaryFolder);
+        File clean = TestResource.ACTUAL_CLEAN_JAR.getFile(temporaryFolder);
+
+        File serial = temporaryFolder.newFile("serial.jar");
+        File parallel = temporaryFolder.newFile("parallel.jar");
+        Files.copy(clean, serial);
+        Files.copy(clean, parallel);
+
+        CountingTransformer pre = new CountingTransformer(true);
+        CountingTransformer post = new CountingTransformer(true);
+
+        TaskSingleReobf task = getTask(TaskSingleReobf.class);
+        task.setPrimarySrg(primarySrg);
+        task.addPreTransformer(pre);
+        task.addPostTransformer(post);
+
+        for (File jar : new File[] { serial, parallel })
+        {
+            task.setJar(jar);
+            task.setThreads(jar == serial ? 1 : 4);
+            task.doTask();
+        }
+
+        int classes = 0;
+        try (JarFile jar = new JarFile(clean))
+        {
+            for (JarEntry entry : Collections.list(jar.entries()))
+            {
+                if (entry.getName().endsWith(".class"))
+                    classes++;
+            }
+        }
+
+        // each class goes through each transformer once, and the thread count doesnt change the jar
+        Assert.assertEquals(classes * 2, pre.count.get());
+        Assert.assertEquals(classes * 2, post.count.get());
+        Assert.assertArrayEquals(Files.toByteArray(serial), Files.toByteArray(parallel));
+        Assert.assertFalse(new File(parallel.getPath() + ".tmp").exists());
+
+        try (JarFile expectedJarFile = new JarFile(TestResource.ACTUAL_OBF_JAR.getFile(temporaryFolder));
+             JarFile outJarFile = new JarFile(parallel))
+        {
+            JarComparison.compareJarClassMembers(expectedJarFile, outJarFile);
+        }
+    }
+
+    @Test
+    public void runTaskUnsafeTransformers() throws IOException
+    {
+        File primarySrg = TestResource.OBFUSCATE_SRG.getFile(temporaryFolder);
+        File jarToReObf = TestResource.ACTUAL_CLEAN_JAR.getFile(temporaryFolder);
+
+        CountingTransformer pre = new CountingTransformer(false);
+        CountingTransformer post = new CountingTransformer(false);
+
+        TaskSingleReobf task = getTask(TaskSingleReobf.class);
+        task.setPrimarySrg(primarySrg);
+        task.setJar(jarToReObf);
+        task.setThreads(4);
+        task.addPreTransformer(pre);
+        task.addPostTransformer(post);
+        task.doTask();
+
+        // transformers that didnt opt in only ever see the task thread
+        Assert.assertEquals(Collections.singleton(Thread.currentThread()), pre.threads);
+        Assert.assertEquals(Collections.singleton(Thread.currentThread()), post.threads);
+    }
+
+    @SuppressWarnings("serial")
+    private static class CountingTransformer implements ReobfTransformer
+    {
+        private final AtomicInteger count = new AtomicInteger();
+        private final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        private final boolean threadSafe;
+
+        private CountingTransformer(boolean threadSafe)
+        {
+            this.threadSafe = threadSafe;
+        }
+
+        @Override
+        public byte[] transform(byte[] data)
+        {
+            count.incrementAndGet();
+            threads.add(Thread.currentThread());
+            return data;
+        }
+
+        @Override
+        public boolean isThreadSafe()
+        {
+            return threadSafe;
+        }
+    }
 }
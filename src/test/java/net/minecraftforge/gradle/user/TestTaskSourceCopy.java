@@ -0,0 +1,111 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.user;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import net.minecraftforge.gradle.testsupport.TaskTest;
+
+import org.gradle.api.file.SourceDirectorySet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+public class TestTaskSourceCopy extends TaskTest<TaskSourceCopy>
+{
+    @Test
+    public void testReplace()
+    {
+        Map<String, String> repl = ImmutableMap.of("@VERSION@", "1.0", "@VERSION@_FULL", "$1.0-full\\", "@MC@", "@VERSION@");
+        Pattern pattern = TaskSourceCopy.compileReplacements(repl.keySet());
+
+        // longest key wins, values are literal, and replaced text isnt replaced again
+        Assert.assertEquals("a 1.0 b $1.0-full\\ c @VERSION@ d", TaskSourceCopy.replace("a @VERSION@ b @VERSION@_FULL c @MC@ d", pattern, repl));
+        Assert.assertEquals("nothing here", TaskSourceCopy.replace("nothing here", pattern, repl));
+        Assert.assertEquals("@VERSION@", TaskSourceCopy.replace("@VERSION@", null, repl));
+    }
+
+    @Test
+    public void runTaskIncremental() throws IOException
+    {
+        TaskSourceCopy task = getTask(TaskSourceCopy.class);
+        task.getProject().getPluginManager().apply("java");
+
+        File srcDir = temporaryFolder.newFolder("src");
+        File outDir = new File(temporaryFolder.getRoot(), "out");
+        SourceDirectorySet source = ((SourceSetContainer) task.getProject().property("sourceSets")).getByName("main").getJava();
+        source.setSrcDirs(Collections.singleton(srcDir));
+
+        task.setSource(source);
+        task.setOutput(outDir);
+        task.replace("@VERSION@", "1.0");
+        task.include("Mod.java");
+
+        write(srcDir, "pkg/Mod.java", "class Mod { String v = \"@VERSION@\"; }");
+        write(srcDir, "pkg/Other.java", "class Other { String v = \"@VERSION@\"; }");
+        File stale = write(srcDir, "pkg/Stale.java", "class Stale { }");
+
+        task.doTask();
+        File modOut = new File(outDir, "pkg/Mod.java");
+        File otherOut = new File(outDir, "pkg/Other.java");
+        Assert.assertEquals("class Mod { String v = \"1.0\"; }", Files.toString(modOut, Charsets.UTF_8));
+        Assert.assertEquals("class Other { String v = \"@VERSION@\"; }", Files.toString(otherOut, Charsets.UTF_8));
+
+        // nothing changed, so nothing is touched
+        modOut.setLastModified(1000);
+        otherOut.setLastModified(1000);
+        task.doTask();
+        Assert.assertEquals(1000, modOut.lastModified());
+        Assert.assertEquals(1000, otherOut.lastModified());
+
+        // a changed input, a removed one, and an edited output
+        write(srcDir, "pkg/Other.java", "class Other { }");
+        stale.delete();
+        Files.write("broken", modOut, Charsets.UTF_8);
+        task.doTask();
+        Assert.assertEquals("class Mod { String v = \"1.0\"; }", Files.toString(modOut, Charsets.UTF_8));
+        Assert.assertEquals("class Other { }", Files.toString(otherOut, Charsets.UTF_8));
+        Assert.assertFalse(new File(outDir, "pkg/Stale.java").exists());
+
+        // changed replacements redo everything, but identical output is left alone
+        modOut.setLastModified(1000);
+        otherOut.setLastModified(1000);
+        task.replace("@VERSION@", "2.0");
+        task.doTask();
+        Assert.assertEquals("class Mod { String v = \"2.0\"; }", Files.toString(modOut, Charsets.UTF_8));
+        Assert.assertEquals(1000, otherOut.lastModified());
+    }
+
+    private static File write(File dir, String path, String text) throws IOException
+    {
+        File file = new File(dir, path);
+        file.getParentFile().mkdirs();
+        Files.write(text, file, Charsets.UTF_8);
+        return file;
+    }
+}
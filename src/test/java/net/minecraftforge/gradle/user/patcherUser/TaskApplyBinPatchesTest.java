@@ -23,6 +23,7 @@ import com.google.common.io.ByteStreams;
 import com.nothome.delta.Delta;
 import lzma.streams.LzmaOutputStream;
 import net.minecraftforge.gradle.testsupport.TaskTest;
+import net.minecraftforge.gradle.util.patching.BinPatchWriter;
 import net.minecraftforge.gradle.util.patching.BinPatches;
 import org.junit.Assert;
 import org.junit.Test;
@@ -59,12 +60,7 @@ public class TaskApplyBinPatchesTest extends TaskTest<TaskApplyBinPatches>
     @Test
     public void runTask() throws Exception
     {
-        File inputJar = temporaryFolder.newFile("before.jar");
-        File outputJar = temporaryFolder.newFile("after.jar");
         File patchJar = temporaryFolder.newFile("patches.jar.pack200.lzma");
-        File classJar = temporaryFolder.newFile("empty.jar");
-        File resourceJar = classJar;
-
 
         byte[] uncompressedPatchJar;
 
@@ -86,6 +82,45 @@ public class TaskApplyBinPatchesTest extends TaskTest<TaskApplyBinPatches>
             packJar(new JarInputStream(new ByteArrayInputStream(uncompressedPatchJar)), patchOutputStream);
         }
 
+        runWithPatches(patchJar);
+    }
+
+    @Test
+    public void runTaskJarFormat() throws Exception
+    {
+        runWithPatches(writePatches(BinPatches.Format.JAR));
+    }
+
+    @Test
+    public void runTaskIndexedFormat() throws Exception
+    {
+        runWithPatches(writePatches(BinPatches.Format.INDEXED));
+    }
+
+    private File writePatches(BinPatches.Format format) throws IOException
+    {
+        File patches = temporaryFolder.newFile("patches." + format);
+        try (BinPatchWriter writer = BinPatchWriter.create(patches, format);
+             InputStream beforeInputStream = getClass().getResourceAsStream(BEFORE_PATH);
+             InputStream afterInputStream = getClass().getResourceAsStream(AFTER_PATH))
+        {
+            ByteArrayOutputStream patch = new ByteArrayOutputStream();
+            createPatch(beforeInputStream, afterInputStream, patch);
+
+            // one that isnt for merged, which has to be ignored
+            writer.write("binpatch/client/" + PATCHED_FILE_NAME_IN_JAR + ".binpatch", writer.encode(patch.toByteArray()));
+            writer.write("binpatch/merged/" + PATCHED_FILE_NAME_IN_JAR + ".binpatch", writer.encode(patch.toByteArray()));
+        }
+        return patches;
+    }
+
+    private void runWithPatches(File patchJar) throws Exception
+    {
+        File inputJar = temporaryFolder.newFile("before.jar");
+        File outputJar = temporaryFolder.newFile("after.jar");
+        File classJar = temporaryFolder.newFile("empty.jar");
+        File resourceJar = classJar;
+
         try (JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(classJar)))
         {
             // TODO: add some test classes/resources?
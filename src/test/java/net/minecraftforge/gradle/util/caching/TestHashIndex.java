@@ -0,0 +1,113 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.caching;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.minecraftforge.gradle.common.Constants;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.Files;
+
+public class TestHashIndex
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void servesUnchangedFiles() throws IOException
+    {
+        File indexFile = new File(temporaryFolder.getRoot(), "hashes.txt");
+        File file = temporaryFolder.newFile("input.txt");
+        write(file, "some input", 10000);
+
+        HashIndex index = new HashIndex(indexFile);
+        long hashed = HashIndex.getBytesHashed();
+        long indexed = HashIndex.getBytesIndexed();
+
+        Assert.assertEquals(Constants.hash(file), index.hash(file));
+        Assert.assertEquals(hashed + file.length(), HashIndex.getBytesHashed());
+
+        Assert.assertEquals(Constants.hash(file), index.hash(file));
+        Assert.assertEquals(hashed + file.length(), HashIndex.getBytesHashed());
+        Assert.assertEquals(indexed + file.length(), HashIndex.getBytesIndexed());
+
+        // a fresh index reads what the last one saved
+        index.save();
+        HashIndex reloaded = new HashIndex(indexFile);
+        Assert.assertEquals(Constants.hash(file), reloaded.hash(file));
+        Assert.assertEquals(hashed + file.length(), HashIndex.getBytesHashed());
+
+        // changed files are hashed again
+        hashed = HashIndex.getBytesHashed();
+        write(file, "other input", 20000);
+        Assert.assertEquals(Constants.hash(file), reloaded.hash(file));
+        Assert.assertEquals(hashed + file.length(), HashIndex.getBytesHashed());
+    }
+
+    @Test
+    public void skipsRecentFiles() throws IOException
+    {
+        File file = temporaryFolder.newFile("input.txt");
+        Files.write("just written", file, Constants.CHARSET);
+
+        HashIndex index = new HashIndex(new File(temporaryFolder.getRoot(), "hashes.txt"));
+        long hashed = HashIndex.getBytesHashed();
+
+        // it could still change within the same timestamp, so it must not be remembered yet.
+        index.hash(file);
+        index.hash(file);
+        Assert.assertEquals(hashed + 2 * file.length(), HashIndex.getBytesHashed());
+    }
+
+    @Test
+    public void mergesOnSave() throws IOException
+    {
+        File indexFile = new File(temporaryFolder.getRoot(), "hashes.txt");
+        File first = temporaryFolder.newFile("first.txt");
+        File second = temporaryFolder.newFile("second.txt");
+        write(first, "first", 10000);
+        write(second, "second", 10000);
+
+        HashIndex a = new HashIndex(indexFile);
+        HashIndex b = new HashIndex(indexFile);
+        a.hash(first);
+        b.hash(second);
+        a.save();
+        b.save();
+
+        HashIndex merged = new HashIndex(indexFile);
+        long hashed = HashIndex.getBytesHashed();
+        Assert.assertEquals(Constants.hash(first), merged.hash(first));
+        Assert.assertEquals(Constants.hash(second), merged.hash(second));
+        Assert.assertEquals(hashed, HashIndex.getBytesHashed());
+    }
+
+    private static void write(File file, String data, long age) throws IOException
+    {
+        Files.write(data, file, Constants.CHARSET);
+        file.setLastModified(System.currentTimeMillis() - age);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.mcp;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.minecraftforge.gradle.common.Constants;
+import net.minecraftforge.gradle.util.json.GLConstantGroup;
+import net.minecraftforge.gradle.util.json.JsonFactory;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+import com.google.gson.reflect.TypeToken;
+
+public class GLConstantFixerTest
+{
+    private static final String HEADER = "package net.minecraft.client.renderer;\n\nimport java.util.List;\nimport org.lwjgl.opengl.GL11;\n\npublic class Render {\n";
+
+    // the pattern the fixer matches calls with, for the reference implementation
+    private static final Pattern CALL_REGEX     = Pattern.compile("(GL11|GL12|GL13|GL14|GL15|GL20|GL21|ARBMultitexture|ARBOcclusionQuery|ARBVertexBufferObject|ARBShaderObjects)\\.([\\w]+)\\(.+\\)");
+    private static final Pattern CONSTANT_REGEX = Pattern.compile("(?<![-.\\w])\\d+(?![.\\w])");
+
+    @Test
+    public void testKnownCalls() throws IOException
+    {
+        String input = HEADER
+                + "      GL11.glEnable(3042);\n"
+                + "      GL11.glBlendFunc(770, 771);\n"
+                + "      GL11.glClear(16640);\n"
+                + "      GL11.glTranslatef(-1.0F, 3042.0F, 3042);\n"
+                + "      GL14.glBlendFuncSeparate(770, 771, 1, 0);\n"
+                + "      this.glEnable(3042);\n"
+                + "}\n";
+
+        String output = new GLConstantFixer().fixOGL(input);
+
+        Assert.assertEquals(fixWithJson(input, loadJson()), output);
+        Assert.assertTrue(output.contains("GL11.glEnable(GL11.GL_BLEND);"));
+        Assert.assertTrue(output.contains("GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);"));
+        Assert.assertTrue(output.contains("GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);"));
+        Assert.assertTrue(output.contains("this.glEnable(3042);"));
+        Assert.assertTrue(output.contains("import org.lwjgl.opengl.GL14;"));
+
+        // no openGL import, so nothing to do
+        String noImport = input.replace("import org.lwjgl.opengl.GL11;\n", "");
+        Assert.assertSame(noImport, new GLConstantFixer().fixOGL(noImport));
+    }
+
+    @Test
+    public void testMatchesGroupScan() throws IOException
+    {
+        List<GLConstantGroup> json = loadJson();
+        GLConstantFixer fixer = new GLConstantFixer();
+
+        // calls and numbers straight out of the json, so there are plenty of hits and overlaps between groups
+        List<String> calls = Lists.newArrayList();
+        List<String> literals = Lists.newArrayList();
+        for (GLConstantGroup group : json)
+        {
+            for (Map.Entry<String, List<String>> entry : group.functions.entrySet())
+            {
+                for (String method : entry.getValue())
+                {
+                    calls.add(entry.getKey() + "." + method);
+                }
+            }
+            for (Map<String, String> constants : group.constants.values())
+            {
+                literals.addAll(constants.keySet());
+            }
+        }
+        calls.add("GL11.glNotAFunction");
+        calls.add("Tessellator.draw");
+        calls.add("MyGL11.glEnable");
+        literals.add("-1");
+        literals.add("2.0F");
+        literals.add("p_1_");
+
+        Random rand = new Random(42);
+        for (int run = 0; run < 500; run++)
+        {
+            StringBuilder buf = new StringBuilder(HEADER);
+            int count = rand.nextInt(40);
+            for (int i = 0; i < count; i++)
+            {
+                buf.append("      ").append(calls.get(rand.nextInt(calls.size()))).append('(');
+                int args = rand.nextInt(4);
+                for (int j = 0; j < args; j++)
+                {
+                    buf.append(j == 0 ? "" : ", ").append(literals.get(rand.nextInt(literals.size())));
+                }
+                buf.append(rand.nextInt(5) == 0 ? "); GL11.glEnable(2896);\n" : ");\n");
+            }
+            buf.append("}\n");
+
+            String input = buf.toString();
+            Assert.assertEquals(input, fixWithJson(input, json), fixer.fixOGL(input));
+        }
+    }
+
+    private static List<GLConstantGroup> loadJson() throws IOException
+    {
+        String text = Resources.toString(Resources.getResource(GLConstantFixer.class, "gl.json"), Charset.defaultCharset());
+        return JsonFactory.GSON.fromJson(text, new TypeToken<List<GLConstantGroup>>() {}.getType());
+    }
+
+    // how the fixer used to look every number up, walking all the groups each time.
+    private static String fixWithJson(String text, List<GLConstantGroup> json)
+    {
+        Matcher rootMatch = CALL_REGEX.matcher(text);
+        StringBuffer out = new StringBuffer(text.length());
+        while (rootMatch.find())
+        {
+            String fullCall = rootMatch.group();
+            String pack = rootMatch.group(1);
+            String method = rootMatch.group(2);
+
+            Matcher constantMatcher = CONSTANT_REGEX.matcher(fullCall);
+            StringBuffer innerOut = new StringBuffer(fullCall.length());
+            while (constantMatcher.find())
+            {
+                String constant = constantMatcher.group();
+                String answer = null;
+                for (GLConstantGroup group : json)
+                {
+                    if (group.functions.containsKey(pack) && group.functions.get(pack).contains(method))
+                    {
+                        for (Map.Entry<String, Map<String, String>> entry : group.constants.entrySet())
+                        {
+                            if (entry.getValue().containsKey(constant))
+                            {
+                                answer = entry.getKey() + "." + entry.getValue().get(constant);
+                            }
+                        }
+                    }
+                }
+                if (answer != null)
+                {
+                    constantMatcher.appendReplacement(innerOut, Matcher.quoteReplacement(answer));
+                }
+            }
+            constantMatcher.appendTail(innerOut);
+            rootMatch.appendReplacement(out, Matcher.quoteReplacement(innerOut.toString()));
+        }
+        rootMatch.appendTail(out);
+        text = out.toString();
+
+        for (String pack : new String[] {"GL11", "GL12", "GL13", "GL14", "GL15", "GL20", "GL21", "ARBMultitexture", "ARBOcclusionQuery", "ARBVertexBufferObject", "ARBShaderObjects"})
+        {
+            String imp = "import org.lwjgl.opengl." + pack + ";";
+            if (text.contains(pack + ".") && !text.contains(imp))
+            {
+                text = text.replace("import org.lwjgl.opengl.GL11;", "import org.lwjgl.opengl.GL11;" + Constants.NEWLINE + imp);
+            }
+        }
+        return text;
+    }
+}
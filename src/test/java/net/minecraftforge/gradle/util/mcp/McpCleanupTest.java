@@ -0,0 +1,225 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.mcp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.minecraftforge.gradle.common.Constants;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+public class McpCleanupTest
+{
+    private static final String[] INPUTS = new String[] {"CleanupTest", "TestClass", "AnonymousTest", "StripComments"};
+    private static final String OUTPUT_POSTFIX = "Out";
+
+    // bits of decompiled code, and the whitespace the regexes treat specially.
+    private static final String[] PARTS = new String[] {
+            "\n", "\r\n", "\r", "\n\n", "\r\n\r\n", " ", "  ", "\t", "\f", "\u000B", "\u0085", "\u2028",
+            "{", "}", ";", "x", "    if(x) {", "if", "   ", "//", "\"", "'", "/* GL_QUADS */", "\"/* GL_X */\"",
+            "3.14159F", "3.1415926D", "0.8119F", "5.8119D", "57.295D", "1.7976931348623157E+308D", "'\\u20ac'", "'\\u0041'", "'\\u20ac'.",
+            "Character.valueOf('a')", "package a.b;", "import a.b.C;\n", "import a.c.D;\r\n", "import a.b.C;import a.b.C;\n"
+    };
+
+    @Test
+    public void testGolden() throws IOException
+    {
+        for (String name : INPUTS)
+        {
+            String input = readResource(name);
+            String actual = process(input);
+
+            // the regexes are the reference, byte for byte
+            Assert.assertEquals(name, processWithRegex(input), actual);
+
+            if (name.startsWith("CleanupTest"))
+            {
+                String[] expected = readResource(name + OUTPUT_POSTFIX).split("\r\n|\r|\n");
+                Assert.assertArrayEquals(name, expected, actual.split("\r\n|\r|\n"));
+            }
+
+            // git checks the resources out with whatever line endings it likes, so try both
+            String crlf = input.replace("\r\n", "\n").replace("\n", "\r\n");
+            Assert.assertEquals(name + " (crlf)", processWithRegex(crlf), process(crlf));
+        }
+    }
+
+    @Test
+    public void testPassesMatchRegex()
+    {
+        Random rand = new Random(42);
+        for (int run = 0; run < 20000; run++)
+        {
+            String input = randomInput(rand);
+
+            assertPass(input, "(?m)[ \\t]+$", "", CleanupPasses::stripTrailing);
+            assertPass(input, "(?m)^(?:\\r\\n|\\r|\\n){2,}", Constants.NEWLINE, CleanupPasses::collapseBreaks);
+            assertPass(input, McpCleanup.CLEANUP_newlines.pattern(), Constants.NEWLINE, CleanupPasses::collapseBlankLines);
+            assertPass(input, McpCleanup.CLEANUP_ifstarts.pattern(), "$1" + Constants.NEWLINE + "$2", CleanupPasses::spaceIfs);
+            assertPass(input, McpCleanup.CLEANUP_blockstarts.pattern(), "", CleanupPasses::closeBlockStarts);
+            assertPass(input, McpCleanup.CLEANUP_blockends.pattern(), "", CleanupPasses::closeBlockEnds);
+
+            StringBuilder out = new StringBuilder();
+            CleanupPasses.trimSpace(input, out);
+            String expected = McpCleanup.CLEANUP_footer.matcher(McpCleanup.CLEANUP_header.matcher(input).replaceAll("")).replaceAll("");
+            Assert.assertEquals(escape(input), escape(expected), escape(out.toString()));
+        }
+    }
+
+    @Test
+    public void testChainMatchesRegex()
+    {
+        Random rand = new Random(42);
+        for (int run = 0; run < 20000; run++)
+        {
+            String input = randomInput(rand);
+            Assert.assertEquals(escape(input), escape(processWithRegex(input)), escape(process(input)));
+        }
+    }
+
+    private static void assertPass(String input, String regex, String replacement, BiConsumer<CharSequence, StringBuilder> pass)
+    {
+        StringBuilder out = new StringBuilder();
+        pass.accept(input, out);
+        String expected = Pattern.compile(regex).matcher(input).replaceAll(replacement);
+        Assert.assertEquals(regex + " on " + escape(input), escape(expected), escape(out.toString()));
+    }
+
+    private static String randomInput(Random rand)
+    {
+        StringBuilder buf = new StringBuilder();
+        int count = rand.nextInt(30);
+        for (int i = 0; i < count; i++)
+        {
+            buf.append(PARTS[rand.nextInt(PARTS.length)]);
+        }
+        return buf.toString();
+    }
+
+    private static String process(String text)
+    {
+        text = FFPatcher.processFile(text);
+        text = McpCleanup.stripComments(text);
+        text = McpCleanup.fixImports(text);
+        return McpCleanup.cleanup(text);
+    }
+
+    // what PostDecompileTask did before the passes were written out, to compare against.
+    private static String processWithRegex(String text)
+    {
+        text = text.replaceAll("(?m)[ \\t]+$", "");
+        text = text.replaceAll("(?m)^(\\r\\n|\\r|\\n){2,}", Constants.NEWLINE);
+
+        // the comment scanner didnt change, and the passes after it are checked on their own above
+        text = McpCleanup.stripComments(text);
+
+        Matcher match = McpCleanup.CLEANUP_package.matcher(text);
+        if (match.find())
+        {
+            String pack = match.group(1);
+            Matcher match2 = McpCleanup.CLEANUP_import.matcher(text);
+            while (match2.find())
+            {
+                if (match2.group(1).equals(pack))
+                {
+                    text = text.replace(match2.group(), "");
+                }
+            }
+        }
+
+        return cleanupWithRegex(text);
+    }
+
+    private static String cleanupWithRegex(String text)
+    {
+        text = McpCleanup.CLEANUP_header.matcher(text).replaceAll("");
+        text = McpCleanup.CLEANUP_footer.matcher(text).replaceAll("");
+        text = McpCleanup.CLEANUP_trailing.matcher(text).replaceAll("");
+        text = McpCleanup.CLEANUP_newlines.matcher(text).replaceAll(Constants.NEWLINE);
+        text = McpCleanup.CLEANUP_ifstarts.matcher(text).replaceAll("$1" + Constants.NEWLINE + "$2");
+        text = McpCleanup.CLEANUP_blockstarts.matcher(text).replaceAll("");
+        text = McpCleanup.CLEANUP_blockends.matcher(text).replaceAll("");
+        text = McpCleanup.CLEANUP_gl.matcher(text).replaceAll("");
+        text = McpCleanup.CLEANUP_maxD.matcher(text).replaceAll("Double.MAX_VALUE");
+
+        Matcher matcher = McpCleanup.CLEANUP_unicode.matcher(text);
+        StringBuffer buffer = new StringBuffer(text.length());
+        while (matcher.find())
+        {
+            int val = Integer.parseInt(matcher.group(1), 16);
+            if (val > 255)
+            {
+                matcher.appendReplacement(buffer, Matcher.quoteReplacement("" + val));
+            }
+        }
+        matcher.appendTail(buffer);
+        text = buffer.toString();
+
+        text = McpCleanup.CLEANUP_charval.matcher(text).replaceAll("$1");
+
+        text = McpCleanup.CLEANUP_piD.matcher(text).replaceAll("Math.PI");
+        text = McpCleanup.CLEANUP_piF.matcher(text).replaceAll("(float)Math.PI");
+        text = McpCleanup.CLEANUP_2piD.matcher(text).replaceAll("(Math.PI * 2D)");
+        text = McpCleanup.CLEANUP_2piF.matcher(text).replaceAll("((float)Math.PI * 2F)");
+        text = McpCleanup.CLEANUP_pi2D.matcher(text).replaceAll("(Math.PI / 2D)");
+        text = McpCleanup.CLEANUP_pi2F.matcher(text).replaceAll("((float)Math.PI / 2F)");
+        text = McpCleanup.CLEANUP_3pi2D.matcher(text).replaceAll("(Math.PI * 3D / 2D)");
+        text = McpCleanup.CLEANUP_3pi2F.matcher(text).replaceAll("((float)Math.PI * 3F / 2F)");
+        text = McpCleanup.CLEANUP_pi4D.matcher(text).replaceAll("(Math.PI / 4D)");
+        text = McpCleanup.CLEANUP_pi4F.matcher(text).replaceAll("((float)Math.PI / 4F)");
+        text = McpCleanup.CLEANUP_pi5D.matcher(text).replaceAll("(Math.PI / 5D)");
+        text = McpCleanup.CLEANUP_pi5F.matcher(text).replaceAll("((float)Math.PI / 5F)");
+        text = McpCleanup.CLEANUP_180piD.matcher(text).replaceAll("(180D / Math.PI)");
+        text = McpCleanup.CLEANUP_180piF.matcher(text).replaceAll("(180F / (float)Math.PI)");
+        text = McpCleanup.CLEANUP_2pi9D.matcher(text).replaceAll("(Math.PI * 2D / 9D)");
+        text = McpCleanup.CLEANUP_2pi9F.matcher(text).replaceAll("((float)Math.PI * 2F / 9F)");
+        text = McpCleanup.CLEANUP_pi10D.matcher(text).replaceAll("(Math.PI / 10D)");
+        text = McpCleanup.CLEANUP_pi10F.matcher(text).replaceAll("((float)Math.PI / 10F)");
+        text = McpCleanup.CLEANUP_2pi5D.matcher(text).replaceAll("(Math.PI * 2D / 5D)");
+        text = McpCleanup.CLEANUP_2pi5F.matcher(text).replaceAll("((float)Math.PI * 2F / 5F)");
+        text = McpCleanup.CLEANUP_7pi100D.matcher(text).replaceAll("(Math.PI * 7D / 100D)");
+        text = McpCleanup.CLEANUP_7pi100F.matcher(text).replaceAll("((float)Math.PI * 7F / 100F)");
+        text = McpCleanup.CLEANUP_185pi100D.matcher(text).replaceAll("(Math.PI * 185D / 100D)");
+        text = McpCleanup.CLEANUP_185pi100F.matcher(text).replaceAll("((float)Math.PI * 185F / 100F)");
+
+        return text;
+    }
+
+    private static String escape(String text)
+    {
+        return text.replace("\r", "\\r").replace("\n", "\\n");
+    }
+
+    private String readResource(String name) throws IOException
+    {
+        try (InputStream stream = this.getClass().getClassLoader().getResourceAsStream(name))
+        {
+            return new String(ByteStreams.toByteArray(stream), "UTF-8");
+        }
+    }
+}
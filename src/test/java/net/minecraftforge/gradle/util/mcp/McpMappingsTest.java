@@ -0,0 +1,87 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.mcp;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class McpMappingsTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testLoadAndSnapshot() throws IOException
+    {
+        File methods = csv("methods.csv", "searge,name,side,desc", "func_1_a,doThing,0,\"Does the thing, well\"", "func_2_b,other,2,");
+        File fields = csv("fields.csv", "searge,name,side,desc", "field_3_c,thing,0,");
+        File params = csv("params.csv", "param,name,side", "p_1_1_,amount,0");
+        File snapshots = temporaryFolder.newFolder("snapshots");
+
+        McpMappings parsed = McpMappings.load(snapshots, methods, fields, params);
+        Assert.assertEquals("doThing", parsed.getName("func_1_a"));
+        Assert.assertEquals("thing", parsed.getName("field_3_c"));
+        Assert.assertNull(parsed.getName("searge"));
+        Assert.assertEquals("amount", parsed.getParams().get("p_1_1_"));
+        Assert.assertEquals("Does the thing, well", parsed.getMethodDocs().get("func_1_a"));
+        Assert.assertFalse("Empty javadocs are not kept", parsed.getMethodDocs().containsKey("func_2_b"));
+
+        Assert.assertSame("Should only be loaded once", parsed, McpMappings.load(snapshots, methods, fields, params));
+        Assert.assertEquals(1, snapshots.list().length);
+
+        // a fresh daemon should get the same thing back from the snapshot
+        McpMappings.clearLoaded();
+        methods.delete();
+        csv("methods.csv", "searge,name,side,desc", "func_1_a,doThing,0,\"Does the thing, well\"", "func_2_b,other,2,");
+        McpMappings snapshot = McpMappings.load(snapshots, methods, fields, params);
+        Assert.assertNotSame(parsed, snapshot);
+        Assert.assertEquals(parsed.getMethods(), snapshot.getMethods());
+        Assert.assertEquals(parsed.getMethodDocs(), snapshot.getMethodDocs());
+        Assert.assertEquals(parsed.getFields(), snapshot.getFields());
+        Assert.assertEquals(parsed.getFieldDocs(), snapshot.getFieldDocs());
+        Assert.assertEquals(parsed.getParams(), snapshot.getParams());
+        Assert.assertEquals(1, snapshots.list().length);
+    }
+
+    @Test
+    public void testMissingCsvsAreEmpty() throws IOException
+    {
+        File fields = csv("fields.csv", "searge,name,side,desc", "field_3_c,thing,0,");
+        McpMappings mappings = McpMappings.load((File) null, null, fields, null);
+        Assert.assertTrue(mappings.getMethods().isEmpty());
+        Assert.assertTrue(mappings.getParams().isEmpty());
+        Assert.assertEquals("thing", mappings.getName("field_3_c"));
+    }
+
+    private File csv(String name, String... lines) throws IOException
+    {
+        File file = new File(temporaryFolder.getRoot(), name);
+        Files.write(String.join("\n", lines) + "\n", file, Charsets.UTF_8);
+        return file;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.mcp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+public class ReobfExceptorTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testAccessIndex() throws IOException
+    {
+        File jar = temporaryFolder.newFile("deobf.jar");
+        File index = new File(jar.getPath() + ".access");
+        writeJar(jar, "field_1_a");
+
+        String parsed = describe(ReobfExceptor.readAccess(jar));
+        Assert.assertTrue(parsed.contains("GETSTATIC net/minecraft/Foo/field_1_a I"));
+        Assert.assertTrue(index.isFile());
+
+        // the second time its read from the index
+        Assert.assertEquals(parsed, describe(ReobfExceptor.readAccess(jar)));
+
+        // a changed jar isnt matched against the old index
+        writeJar(jar, "field_2_b");
+        String changed = describe(ReobfExceptor.readAccess(jar));
+        Assert.assertTrue(changed.contains("GETSTATIC net/minecraft/Foo/field_2_b I"));
+        Assert.assertEquals(changed, describe(ReobfExceptor.readAccess(jar)));
+    }
+
+    private static String describe(Map<String, ReobfExceptor.AccessInfo> access)
+    {
+        Map<String, String> sorted = new TreeMap<String, String>();
+        for (Map.Entry<String, ReobfExceptor.AccessInfo> e : access.entrySet())
+        {
+            ReobfExceptor.AccessInfo info = e.getValue();
+            sorted.put(e.getKey(), info.owner + " " + info.name + " " + info.desc + " " + info.access + " " + info);
+        }
+        return sorted.toString();
+    }
+
+    private static void writeJar(File jar, String field) throws IOException
+    {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "net/minecraft/Foo", null, "java/lang/Object", null);
+        writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, field, "I", null, null).visitEnd();
+
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, "access$000", "()I", null, null);
+        mv.visitCode();
+        mv.visitFieldInsn(Opcodes.GETSTATIC, "net/minecraft/Foo", field, "I");
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(1, 0);
+        mv.visitEnd();
+        writer.visitEnd();
+
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar)))
+        {
+            out.putNextEntry(new ZipEntry("net/minecraft/Foo.class"));
+            out.write(writer.toByteArray());
+            out.closeEntry();
+        }
+    }
+}
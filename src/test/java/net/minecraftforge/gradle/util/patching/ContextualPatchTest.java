@@ -0,0 +1,228 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.patching;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.minecraftforge.gradle.util.patching.ContextualPatch.HunkReport;
+import net.minecraftforge.gradle.util.patching.ContextualPatch.PatchReport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Joiner;
+
+public class ContextualPatchTest
+{
+    private static final String TARGET = "Test.java";
+
+    private static final String[] ORIGINAL = new String[] {
+            "public class Test",
+            "{",
+            "    private int a;",
+            "    private int b;",
+            "",
+            "    public void foo()",
+            "    {",
+            "        label10:",
+            "        for (int i = 0; i < a; i++)",
+            "        {",
+            "            b++;",
+            "        }",
+            "    }",
+            "",
+            "    public void bar()",
+            "    {",
+            "        b++;",
+            "    }",
+            "}",
+    };
+
+    @Test
+    public void testOffsetHunk() throws Exception
+    {
+        // line numbers are off by 4, and the access and label differ from the target.
+        String patch = Joiner.on('\n').join(
+                "--- a/" + TARGET,
+                "+++ b/" + TARGET,
+                "@@ -1,5 +1,6 @@",
+                "     protected void foo()",
+                "     {",
+                "         label20:",
+                "+        a = 0;",
+                "         for (int i = 0; i < a; i++)",
+                "         {",
+                "");
+
+        for (boolean index : new boolean[] { true, false })
+        {
+            Provider provider = new Provider(Joiner.on('\n').join(ORIGINAL));
+            List<PatchReport> reports = ContextualPatch.create(patch, provider).setAccessC14N(true).setContextIndex(index).patch(false);
+
+            Assert.assertEquals(1, reports.size());
+            Assert.assertTrue(reports.get(0).getStatus().isSuccess());
+            Assert.assertEquals(6, reports.get(0).getHunks().get(0).getIndex());
+            Assert.assertEquals("        a = 0;", provider.lines().get(8));
+        }
+    }
+
+    @Test
+    public void testIndexMatchesScan() throws Exception
+    {
+        Random rand = new Random(42);
+
+        for (int run = 0; run < 200; run++)
+        {
+            // few distinct lines, so there are plenty of false candidates
+            List<String> lines = new ArrayList<String>();
+            for (int i = 0; i < 200; i++)
+            {
+                lines.add(randomLine(rand));
+            }
+
+            String patch = randomPatch(rand, lines);
+            int fuzz = rand.nextInt(3);
+            boolean whitespace = rand.nextBoolean();
+
+            Provider scanned = new Provider(Joiner.on('\n').join(lines));
+            Provider indexed = new Provider(Joiner.on('\n').join(lines));
+
+            List<PatchReport> expected = ContextualPatch.create(patch, scanned).setAccessC14N(true).setWhitespaceC14N(whitespace).setMaxFuzz(fuzz).setContextIndex(false).patch(false);
+            List<PatchReport> actual = ContextualPatch.create(patch, indexed).setAccessC14N(true).setWhitespaceC14N(whitespace).setMaxFuzz(fuzz).setContextIndex(true).patch(false);
+
+            Assert.assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++)
+            {
+                List<HunkReport> expectedHunks = expected.get(i).getHunks();
+                List<HunkReport> actualHunks = actual.get(i).getHunks();
+
+                Assert.assertEquals(expected.get(i).getStatus(), actual.get(i).getStatus());
+                Assert.assertEquals(expectedHunks.size(), actualHunks.size());
+                for (int j = 0; j < expectedHunks.size(); j++)
+                {
+                    Assert.assertEquals(expectedHunks.get(j).getStatus(), actualHunks.get(j).getStatus());
+                    Assert.assertEquals(expectedHunks.get(j).getIndex(), actualHunks.get(j).getIndex());
+                }
+            }
+            Assert.assertEquals(scanned.data, indexed.data);
+        }
+    }
+
+    private static String randomLine(Random rand)
+    {
+        switch (rand.nextInt(6))
+        {
+            case 0:
+                return "}";
+            case 1:
+                return "    private int field" + rand.nextInt(4) + ";";
+            case 2:
+                return "        label" + rand.nextInt(20) + ":";
+            case 3:
+                return "   \tb++;";
+            case 4:
+                return "";
+            default:
+                return "        call(" + rand.nextInt(8) + ");";
+        }
+    }
+
+    private static String randomPatch(Random rand, List<String> lines)
+    {
+        List<String> patch = new ArrayList<String>();
+        patch.add("--- a/" + TARGET);
+        patch.add("+++ b/" + TARGET);
+
+        int start = 1;
+        for (int hunk = 0; hunk < 4; hunk++)
+        {
+            start += rand.nextInt(30) + 1;
+            int length = rand.nextInt(5) + 2;
+            if (start + length > lines.size())
+            {
+                break;
+            }
+
+            // lie about where the hunk is.
+            patch.add(String.format("@@ -%d,%d +%d,%d @@", start, length, Math.max(1, start + rand.nextInt(20) - 10), length + 1));
+
+            for (int i = 0; i < length; i++)
+            {
+                String line = lines.get(start - 1 + i);
+
+                // sometimes change the access, sometimes break the context completely.
+                if (line.startsWith("    private") && rand.nextBoolean())
+                {
+                    line = line.replace("private", "public final");
+                }
+                else if (rand.nextInt(10) == 0)
+                {
+                    line = randomLine(rand);
+                }
+
+                if (i == length / 2)
+                {
+                    patch.add("+        added(" + hunk + ");");
+                }
+                patch.add((rand.nextInt(4) == 0 ? "-" : " ") + line);
+            }
+
+            start += length;
+        }
+
+        patch.add("");
+        return Joiner.on('\n').join(patch);
+    }
+
+    private static class Provider implements ContextualPatch.IContextProvider
+    {
+        private String data;
+
+        public Provider(String data)
+        {
+            this.data = data;
+        }
+
+        public List<String> lines()
+        {
+            List<String> lines = new ArrayList<String>();
+            for (String line : data.split("\n", -1))
+            {
+                lines.add(line);
+            }
+            return lines;
+        }
+
+        @Override
+        public List<String> getData(String target)
+        {
+            Assert.assertEquals(TARGET, target);
+            return lines();
+        }
+
+        @Override
+        public void setData(String target, List<String> data)
+        {
+            this.data = Joiner.on('\n').join(data);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.zip;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.jar.*;
+
+public class TestJarSigner
+{
+    private static final String ALIAS = "test.key";
+    private static final String PASS  = "password";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRsa() throws Exception
+    {
+        testSign("RSA", MoreExecutors.newDirectExecutorService());
+    }
+
+    @Test
+    public void testEcParallel() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            testSign("EC", executor);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDuplicateEntries() throws Exception
+    {
+        File keyStore = genKey("RSA");
+
+        // java wont write the same name twice, so rename the second entry afterwards
+        File in = temporaryFolder.newFile("dupes.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(in)))
+        {
+            for (String name : new String[] { "net/A.class", "net/B.class" })
+            {
+                out.putNextEntry(new JarEntry(name));
+                out.write(bytes(name));
+                out.closeEntry();
+            }
+        }
+        byte[] data = Files.readAllBytes(in.toPath());
+        Files.write(in.toPath(), new String(data, StandardCharsets.ISO_8859_1).replace("net/B.class", "net/A.class").getBytes(StandardCharsets.ISO_8859_1));
+
+        File signed = temporaryFolder.newFile("dupes-signed.jar");
+        try (RawZipFile zip = new RawZipFile(in))
+        {
+            Assert.assertEquals(2, zip.getEntries().size());
+            JarSigner.load(keyStore, PASS, ALIAS, null).sign(zip, Collections.singleton("net/A.class"), signed, MoreExecutors.newDirectExecutorService());
+        }
+
+        try (JarFile jar = new JarFile(signed, true))
+        {
+            JarEntry entry = jar.getJarEntry("net/A.class");
+            try (InputStream stream = jar.getInputStream(entry))
+            {
+                Assert.assertArrayEquals(bytes("net/A.class"), ByteStreams.toByteArray(stream));
+            }
+            Assert.assertNotNull(entry.getCodeSigners());
+            Assert.assertEquals(4, Collections.list(jar.entries()).size());
+        }
+    }
+
+    private File genKey(String keyAlg) throws Exception
+    {
+        File keyStore = new File(temporaryFolder.getRoot(), "keystore-" + keyAlg);
+        Process keytool = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/keytool").getPath(),
+                "-genkeypair", "-keyalg", keyAlg, "-alias", ALIAS, "-dname", "CN=Test", "-validity", "10",
+                "-keystore", keyStore.getPath(), "-storepass", PASS, "-keypass", PASS)
+                .redirectErrorStream(true).start();
+        ByteStreams.toByteArray(keytool.getInputStream());
+        Assert.assertEquals(0, keytool.waitFor());
+        return keyStore;
+    }
+
+    private void testSign(String keyAlg, ExecutorService executor) throws Exception
+    {
+        File keyStore = genKey(keyAlg);
+
+        // long names so the manifest has to wrap them
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        contents.put("net/", new byte[0]);
+        contents.put("net/A.class", bytes("class a"));
+        contents.put("net/really/long/package/name/that/has/to/be/wrapped/in/the/Manifest\u00fc\u00fc\u00fc\u00fc\u00fcUnicode.class", bytes("wrapped"));
+        contents.put("assets/unsigned.txt", bytes("not signed"));
+        contents.put("net/B.class", bytes("class b"));
+
+        File in = temporaryFolder.newFile("in-" + keyAlg + ".jar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "net.A");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(in), manifest))
+        {
+            for (Map.Entry<String, byte[]> e : contents.entrySet())
+            {
+                out.putNextEntry(new JarEntry(e.getKey()));
+                out.write(e.getValue());
+                out.closeEntry();
+            }
+        }
+
+        File signed = temporaryFolder.newFile("signed-" + keyAlg + ".jar");
+        JarSigner signer = JarSigner.load(keyStore, PASS, ALIAS, null);
+        try (RawZipFile zip = new RawZipFile(in))
+        {
+            Set<String> toSign = new HashSet<>(contents.keySet());
+            toSign.remove("assets/unsigned.txt");
+            signer.sign(zip, toSign, signed, executor);
+        }
+
+        try (JarFile jar = new JarFile(signed, true))
+        {
+            Assert.assertEquals("net.A", jar.getManifest().getMainAttributes().getValue(Attributes.Name.MAIN_CLASS));
+            Assert.assertNotNull(jar.getEntry("META-INF/TEST_KEY.SF"));
+            Assert.assertNotNull(jar.getEntry("META-INF/TEST_KEY." + keyAlg));
+
+            for (Map.Entry<String, byte[]> e : contents.entrySet())
+            {
+                JarEntry entry = jar.getJarEntry(e.getKey());
+                try (InputStream stream = jar.getInputStream(entry))
+                {
+                    Assert.assertArrayEquals(e.getValue(), ByteStreams.toByteArray(stream));
+                }
+
+                boolean shouldSign = !entry.isDirectory() && !e.getKey().startsWith("assets/");
+                Assert.assertEquals(e.getKey(), shouldSign, entry.getCodeSigners() != null);
+            }
+        }
+
+        // resigning replaces the old signature instead of adding another
+        File resigned = temporaryFolder.newFile("resigned-" + keyAlg + ".jar");
+        try (RawZipFile zip = new RawZipFile(signed))
+        {
+            signer.sign(zip, new HashSet<>(contents.keySet()), resigned, executor);
+        }
+
+        try (JarFile jar = new JarFile(resigned, true))
+        {
+            int signatures = 0;
+            for (JarEntry entry : Collections.list(jar.entries()))
+            {
+                if (entry.getName().endsWith(".SF"))
+                    signatures++;
+
+                try (InputStream stream = jar.getInputStream(entry))
+                {
+                    ByteStreams.toByteArray(stream);
+                }
+                if (!entry.isDirectory() && !entry.getName().startsWith("META-INF/"))
+                    Assert.assertNotNull(entry.getName(), entry.getCodeSigners());
+            }
+            Assert.assertEquals(1, signatures);
+        }
+    }
+
+    private static byte[] bytes(String str)
+    {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013-2019 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.zip;
+
+import com.google.common.io.ByteStreams;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.FileVisitor;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.*;
+
+public class TestRawZip
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCopyAndWrite() throws IOException
+    {
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        contents.put("dir/", new byte[0]);
+        contents.put("dir/deflated.txt", repeat("deflate me ", 500));
+        contents.put("dir/stored.txt", repeat("store me", 3));
+        contents.put("dir/empty.txt", new byte[0]);
+        contents.put("dir/\u00fcnicode.txt", repeat("\u00fc", 10));
+        contents.put("dir/big.bin", random(200000));
+
+        // written with java, including data descriptors and a stored entry
+        File in = temporaryFolder.newFile("in.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(in)))
+        {
+            for (Map.Entry<String, byte[]> e : contents.entrySet())
+            {
+                ZipEntry entry = new ZipEntry(e.getKey());
+                if (e.getKey().equals("dir/stored.txt"))
+                {
+                    CRC32 crc = new CRC32();
+                    crc.update(e.getValue());
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(e.getValue().length);
+                    entry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(entry);
+                out.write(e.getValue());
+                out.closeEntry();
+            }
+        }
+
+        File copy = temporaryFolder.newFile("copy.zip");
+        byte[] added = repeat("added ", 100);
+        try (RawZipFile zip = new RawZipFile(in);
+             RawZipOutput out = new RawZipOutput(copy))
+        {
+            List<String> names = new ArrayList<>();
+            for (RawZipFile.Entry entry : zip.getEntries())
+            {
+                names.add(entry.getName());
+                Assert.assertArrayEquals(entry.getName(), contents.get(entry.getName()), zip.getBytes(entry));
+
+                // both through the heap, and straight between the files
+                if (names.size() % 2 == 0)
+                    out.copy(entry, zip.getRaw(entry));
+                else
+                    out.copy(zip, entry);
+            }
+            Assert.assertEquals(new ArrayList<>(contents.keySet()), names);
+
+            out.write("added.txt", added, RawZipOutput.toDosTime(System.currentTimeMillis()));
+        }
+        contents.put("added.txt", added);
+
+        // both the central directory and the local headers should be readable
+        try (ZipFile zip = new ZipFile(copy))
+        {
+            for (Map.Entry<String, byte[]> e : contents.entrySet())
+            {
+                try (InputStream stream = zip.getInputStream(zip.getEntry(e.getKey())))
+                {
+                    Assert.assertArrayEquals(e.getKey(), e.getValue(), ByteStreams.toByteArray(stream));
+                }
+            }
+        }
+
+        try (ZipInputStream stream = new ZipInputStream(new FileInputStream(copy)))
+        {
+            ZipEntry entry;
+            int count = 0;
+            while ((entry = stream.getNextEntry()) != null)
+            {
+                Assert.assertArrayEquals(entry.getName(), contents.get(entry.getName()), ByteStreams.toByteArray(stream));
+                count++;
+            }
+            Assert.assertEquals(contents.size(), count);
+        }
+    }
+
+    @Test
+    public void testTree() throws IOException
+    {
+        File in = temporaryFolder.newFile("tree.zip");
+        long time = System.currentTimeMillis() - 86400000L;
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(in)))
+        {
+            for (String name : new String[] { "a/", "a/b.txt", "a/c/", "a/c/d.txt", "e.txt" })
+            {
+                ZipEntry entry = new ZipEntry(name);
+                entry.setTime(time);
+                out.putNextEntry(entry);
+                out.write(name.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+
+        final List<String> visited = new ArrayList<>();
+        RawZipTree.visit(in, new FileVisitor() {
+            @Override
+            public void visitDir(FileVisitDetails details)
+            {
+                Assert.assertTrue(details.isDirectory());
+                visited.add("dir " + details.getPath());
+            }
+
+            @Override
+            public void visitFile(FileVisitDetails details)
+            {
+                Assert.assertFalse(details.isDirectory());
+                Assert.assertEquals(details.getPath(), details.getRelativePath().getPathString());
+                Assert.assertEquals(details.getRelativePath().getLastName(), details.getName());
+
+                // zips keep times to the 2 seconds
+                Assert.assertEquals(time / 2000, details.getLastModified() / 2000);
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                details.copyTo(out);
+                visited.add("file " + details.getPath() + " " + new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+                if (details.getPath().equals("a/c/d.txt"))
+                    details.stopVisiting();
+            }
+        });
+
+        Assert.assertEquals(Arrays.asList("dir a", "file a/b.txt a/b.txt", "dir a/c", "file a/c/d.txt a/c/d.txt"), visited);
+    }
+
+    @Test
+    public void testZip64() throws IOException
+    {
+        // more entries than the normal end record can count, so java writes a ZIP64 one
+        int count = 0x10000 + 10;
+        File in = temporaryFolder.newFile("many.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(in))))
+        {
+            out.setLevel(Deflater.NO_COMPRESSION);
+            for (int i = 0; i < count; i++)
+            {
+                out.putNextEntry(new ZipEntry("e" + i));
+                out.write(i & 0xFF);
+                out.closeEntry();
+            }
+        }
+
+        File copy = temporaryFolder.newFile("many-copy.zip");
+        try (RawZipFile zip = new RawZipFile(in);
+             RawZipOutput out = new RawZipOutput(copy))
+        {
+            Assert.assertEquals(count, zip.getEntries().size());
+            for (RawZipFile.Entry entry : zip.getEntries())
+            {
+                out.copy(zip, entry);
+            }
+        }
+
+        try (ZipFile zip = new ZipFile(copy))
+        {
+            Assert.assertEquals(count, zip.size());
+            try (InputStream stream = zip.getInputStream(zip.getEntry("e" + (count - 1))))
+            {
+                Assert.assertEquals((count - 1) & 0xFF, stream.read());
+            }
+        }
+
+        try (RawZipFile zip = new RawZipFile(copy))
+        {
+            Assert.assertEquals(count, zip.getEntries().size());
+        }
+    }
+
+    @Test
+    public void testZip64OneLargeSize() throws IOException
+    {
+        // over 4GiB inflated but tiny deflated, without actually having to deflate that much
+        long size = 0x140000000L;
+        byte[] data = new byte[] { 3, 0 };
+        File file = temporaryFolder.newFile("large.zip");
+        try (RawZipOutput out = new RawZipOutput(file))
+        {
+            out.write(new RawZipOutput.PreparedEntry("large.bin", 0, RawZipFile.DEFLATED, 0, 0, size, data));
+        }
+
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+
+        // the local header has both sizes, even though only one is too big
+        Assert.assertEquals(-1, buf.getInt(18));
+        Assert.assertEquals(-1, buf.getInt(22));
+        int extra = 30 + buf.getShort(26);
+        Assert.assertEquals(RawZipFile.ZIP64_EXTRA, buf.getShort(extra));
+        Assert.assertEquals(16, buf.getShort(extra + 2));
+        Assert.assertEquals(size, buf.getLong(extra + 4));
+        Assert.assertEquals(data.length, buf.getLong(extra + 12));
+
+        // the central directory only has what doesnt fit
+        int central = extra + 20 + data.length;
+        Assert.assertEquals(RawZipFile.CENTRAL_HEADER, buf.getInt(central));
+        Assert.assertEquals(data.length, buf.getInt(central + 20));
+        Assert.assertEquals(-1, buf.getInt(central + 24));
+        extra = central + 46 + buf.getShort(central + 28);
+        Assert.assertEquals(RawZipFile.ZIP64_EXTRA, buf.getShort(extra));
+        Assert.assertEquals(8, buf.getShort(extra + 2));
+        Assert.assertEquals(size, buf.getLong(extra + 4));
+
+        try (RawZipFile zip = new RawZipFile(file))
+        {
+            RawZipFile.Entry entry = zip.getEntries().get(0);
+            Assert.assertEquals(size, entry.getSize());
+            Assert.assertEquals(data.length, entry.getCompressedSize());
+            Assert.assertArrayEquals(data, zip.getRaw(entry));
+        }
+    }
+
+    @Test
+    public void testCopyKeepsAttributes() throws IOException
+    {
+        byte[] extra = new byte[] { (byte) 0xFE, (byte) 0xCA, 2, 0, 1, 2 };
+        File in = temporaryFolder.newFile("attrs.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(in)))
+        {
+            ZipEntry entry = new ZipEntry("run.sh");
+            entry.setExtra(extra);
+            out.putNextEntry(entry);
+            out.write(repeat("echo hi", 1));
+            out.closeEntry();
+        }
+
+        // java cant set these, so mark it as made on unix with an executable mode afterwards
+        byte[] data = Files.readAllBytes(in.toPath());
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < data.length - 4; i++)
+        {
+            if (buf.getInt(i) == RawZipFile.CENTRAL_HEADER)
+            {
+                buf.putShort(i + 4, (short) 0x0314);
+                buf.putInt(i + 38, 0100755 << 16);
+            }
+        }
+        Files.write(in.toPath(), data);
+
+        File copy = temporaryFolder.newFile("attrs-copy.zip");
+        try (RawZipFile zip = new RawZipFile(in);
+             RawZipOutput out = new RawZipOutput(copy))
+        {
+            Assert.assertEquals(0755, zip.getEntries().get(0).getUnixMode());
+            out.copy(zip, zip.getEntries().get(0));
+        }
+
+        try (RawZipFile zip = new RawZipFile(copy))
+        {
+            RawZipFile.Entry entry = zip.getEntries().get(0);
+            Assert.assertEquals(0755, entry.getUnixMode());
+            Assert.assertEquals(0755, new RawZipTree(zip).getDetails(entry).getMode());
+            Assert.assertArrayEquals(extra, entry.extra);
+            Assert.assertArrayEquals(extra, zip.getLocalExtra(entry));
+        }
+
+        try (ZipFile zip = new ZipFile(copy))
+        {
+            Assert.assertArrayEquals(extra, zip.getEntry("run.sh").getExtra());
+        }
+    }
+
+    @Test(expected = ZipException.class)
+    public void testDuplicateEntry() throws IOException
+    {
+        try (RawZipOutput out = new RawZipOutput(temporaryFolder.newFile("dupe.zip")))
+        {
+            out.write("a.txt", new byte[] { 1 }, 0);
+            out.write("a.txt", new byte[] { 2 }, 0);
+        }
+    }
+
+    private static byte[] random(int size)
+    {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] repeat(String str, int times)
+    {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < times; i++)
+        {
+            buf.append(str);
+        }
+        return buf.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}